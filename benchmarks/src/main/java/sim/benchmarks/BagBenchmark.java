@@ -0,0 +1,95 @@
+/*
+  Copyright 2019 by Sean Luke and George Mason University
+  Licensed under the Academic Free License version 3.0
+  See the file "LICENSE" for more information
+*/
+
+package sim.benchmarks;
+import sim.util.*;
+import ec.util.*;
+import java.util.concurrent.*;
+import org.openjdk.jmh.annotations.*;
+
+/**
+   Measures the Bag operations that agents and fields lean on: appending, removing by index (which moves the last
+   element into the hole), removing by object (a linear search), iterating, and shuffling.
+*/
+
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class BagBenchmark
+    {
+    @Param({"100", "10000"})
+    public int size;
+
+    Bag bag;
+    Object[] objects;
+    MersenneTwisterFast random;
+
+    @Setup(Level.Trial)
+    public void setup()
+        {
+        random = new MersenneTwisterFast(1);
+        objects = new Object[size];
+        bag = new Bag();
+        for(int i = 0; i < size; i++)
+            {
+            objects[i] = Integer.valueOf(i);
+            bag.add(objects[i]);
+            }
+        }
+
+    /** Adds size objects to an emptied Bag, which keeps its capacity.  The score is per add. */
+    @Benchmark
+    public Bag addAll()
+        {
+        Bag bag = this.bag;
+        bag.clear();
+        Object[] objects = this.objects;
+        for(int i = 0; i < objects.length; i++)
+            bag.add(objects[i]);
+        return bag;
+        }
+
+    /** Removes a random element by index and puts it back at the end. */
+    @Benchmark
+    public Bag removeIndex()
+        {
+        Object obj = bag.remove(random.nextInt(bag.numObjs));
+        bag.add(obj);
+        return bag;
+        }
+
+    /** Removes a random element by searching for it and puts it back at the end. */
+    @Benchmark
+    public Bag removeObject()
+        {
+        Object obj = objects[random.nextInt(objects.length)];
+        bag.remove(obj);
+        bag.add(obj);
+        return bag;
+        }
+
+    /** Walks the Bag's array directly, as field code does. */
+    @Benchmark
+    public int scan()
+        {
+        Object[] objs = bag.objs;
+        int n = bag.numObjs;
+        int hash = 0;
+        for(int i = 0; i < n; i++)
+            hash += System.identityHashCode(objs[i]);
+        return hash;
+        }
+
+    @Benchmark
+    public Bag shuffle()
+        {
+        bag.shuffle(random);
+        return bag;
+        }
+    }
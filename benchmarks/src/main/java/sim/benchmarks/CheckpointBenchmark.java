@@ -0,0 +1,86 @@
+/*
+  Copyright 2019 by Sean Luke and George Mason University
+  Licensed under the Academic Free License version 3.0
+  See the file "LICENSE" for more information
+*/
+
+package sim.benchmarks;
+import sim.engine.*;
+import sim.app.heatbugs.*;
+import java.io.*;
+import java.util.concurrent.*;
+import org.openjdk.jmh.annotations.*;
+
+/**
+   Measures checkpointing HeatBugs: the original gzipped serialization of SimState.writeToCheckpoint(...),
+   and full and delta checkpoints in the chunked Checkpoint format at each level of compression.
+*/
+
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class CheckpointBenchmark
+    {
+    @Param({"0", "1", "2"})  // Checkpoint.COMPRESSION_NONE, COMPRESSION_FAST, COMPRESSION_SMALL
+    public int compression;
+
+    HeatBugs state;
+    Checkpoint checkpoint;
+    File file;
+    File deltaFile;
+
+    /** Discards everything written to it. */
+    static class NullOutputStream extends OutputStream
+        {
+        public void write(int b) { }
+        public void write(byte[] b, int off, int len) { }
+        }
+
+    @Setup(Level.Trial)
+    public void setup() throws IOException
+        {
+        state = new HeatBugs(1);
+        state.start();
+        for(int i = 0; i < 10; i++)
+            state.schedule.step(state);
+        file = File.createTempFile("mason", ".checkpoint");
+        deltaFile = File.createTempFile("mason", ".delta.checkpoint");
+        checkpoint = new Checkpoint(compression, Integer.MAX_VALUE);
+        checkpoint.writeFull(state, file);  // the base for the deltas
+        }
+
+    @TearDown(Level.Trial)
+    public void tearDown() throws IOException
+        {
+        checkpoint.close();
+        file.delete();
+        deltaFile.delete();
+        state.finish();
+        state.stop();
+        }
+
+    @Benchmark
+    public SimState legacy() throws IOException
+        {
+        state.writeToCheckpoint(new NullOutputStream());
+        return state;
+        }
+
+    @Benchmark
+    public SimState full() throws IOException
+        {
+        checkpoint.writeFull(state, file);
+        return state;
+        }
+
+    /** Each delta is taken against the state after the same step, so it measures the cost of finding no changes. */
+    @Benchmark
+    public SimState delta() throws IOException
+        {
+        checkpoint.writeDelta(state, deltaFile);
+        return state;
+        }
+    }
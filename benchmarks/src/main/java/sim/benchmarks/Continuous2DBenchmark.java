@@ -0,0 +1,120 @@
+/*
+  Copyright 2019 by Sean Luke and George Mason University
+  Licensed under the Academic Free License version 3.0
+  See the file "LICENSE" for more information
+*/
+
+package sim.benchmarks;
+import sim.field.continuous.*;
+import sim.util.*;
+import ec.util.*;
+import java.util.concurrent.*;
+import org.openjdk.jmh.annotations.*;
+
+/**
+   Measures moving objects in a Continuous2D and querying their neighbors: through the original Double2D-based
+   query, the allocation-free query into a reused Bag, and the visitor, with and without primitive maps.  Also
+   runs the same queries against a SortedContinuous2D.  Run with -prof gc to see the allocation of each.
+*/
+
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class Continuous2DBenchmark
+    {
+    @Param({"false", "true"})
+    public boolean primitiveMaps;
+
+    @Param({"10000"})
+    public int agents;
+
+    @Param({"10"})
+    public double discretization;
+
+    @Param({"5"})
+    public double distance;
+
+    public static final double SIZE = 500;
+
+    Continuous2D field;
+    SortedContinuous2D sorted;
+    Object[] objects;
+    MersenneTwisterFast random;
+    Bag result = new Bag();
+
+    @Setup(Level.Trial)
+    public void setup()
+        {
+        random = new MersenneTwisterFast(1);
+        field = new Continuous2D(discretization, SIZE, SIZE, primitiveMaps);
+        sorted = new SortedContinuous2D(discretization, SIZE, SIZE);
+        objects = new Object[agents];
+        for(int i = 0; i < agents; i++)
+            {
+            objects[i] = new Object();
+            double x = random.nextDouble() * SIZE;
+            double y = random.nextDouble() * SIZE;
+            field.setObjectLocation(objects[i], new Double2D(x, y));
+            sorted.setObjectLocation(objects[i], x, y);
+            }
+        sorted.sort();
+        }
+
+    /** Moves a random object a short distance, usually within its cell. */
+    @Benchmark
+    public boolean move()
+        {
+        Object obj = objects[random.nextInt(objects.length)];
+        Double2D loc = field.getObjectLocation(obj);
+        return field.setObjectLocation(obj, new Double2D(field.stx(loc.x + random.nextDouble() - 0.5), field.sty(loc.y + random.nextDouble() - 0.5)));
+        }
+
+    @Benchmark
+    public Bag neighborsDouble2D()
+        {
+        return field.getNeighborsExactlyWithinDistance(new Double2D(random.nextDouble() * SIZE, random.nextDouble() * SIZE), distance, true);
+        }
+
+    @Benchmark
+    public Bag neighborsIntoBag()
+        {
+        return field.getNeighborsExactlyWithinDistance(random.nextDouble() * SIZE, random.nextDouble() * SIZE, distance, true, false, result);
+        }
+
+    double sum;
+    Continuous2D.NeighborVisitor visitor = new Continuous2D.NeighborVisitor()
+        {
+        public boolean visit(Object object, double x, double y, double distanceSq)
+            {
+            sum += distanceSq;
+            return true;
+            }
+        };
+
+    @Benchmark
+    public double neighborsVisitor()
+        {
+        field.visitNeighborsExactlyWithinDistance(random.nextDouble() * SIZE, random.nextDouble() * SIZE, distance, true, false, visitor);
+        return sum;
+        }
+
+    @Benchmark
+    public Bag sortedNeighborsIntoBag()
+        {
+        return sorted.getNeighborsExactlyWithinDistance(random.nextDouble() * SIZE, random.nextDouble() * SIZE, distance, true, false, result);
+        }
+
+    /** Moves every object to a new location and re-sorts the field. */
+    @Benchmark
+    public SortedContinuous2D sortedMoveAndSort()
+        {
+        Object[] objects = this.objects;
+        for(int i = 0; i < objects.length; i++)
+            sorted.setObjectLocation(objects[i], random.nextDouble() * SIZE, random.nextDouble() * SIZE);
+        sorted.sort();
+        return sorted;
+        }
+    }
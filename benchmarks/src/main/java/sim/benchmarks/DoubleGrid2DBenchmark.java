@@ -0,0 +1,84 @@
+/*
+  Copyright 2019 by Sean Luke and George Mason University
+  Licensed under the Academic Free License version 3.0
+  See the file "LICENSE" for more information
+*/
+
+package sim.benchmarks;
+import sim.field.grid.*;
+import sim.util.*;
+import ec.util.*;
+import java.util.concurrent.*;
+import org.openjdk.jmh.annotations.*;
+
+/**
+   Measures whole-grid operations on DoubleGrid2D, sequentially and in parallel: element-wise bulk operations,
+   reductions, and convolution and diffusion.  The score is the time per operation on the whole grid.
+*/
+
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class DoubleGrid2DBenchmark
+    {
+    @Param({"100", "1000"})
+    public int size;
+
+    @Param({"false", "true"})
+    public boolean parallel;
+
+    DoubleGrid2D grid;
+    DoubleGrid2D other;
+
+    // a 3x3 blur, as HeatBugs' Diffuser does by hand
+    static final double[][] KERNEL = { { 1, 1, 1 }, { 1, 1, 1 }, { 1, 1, 1 } };
+
+    @Setup(Level.Trial)
+    public void setup()
+        {
+        MersenneTwisterFast random = new MersenneTwisterFast(1);
+        grid = new DoubleGrid2D(size, size);
+        other = new DoubleGrid2D(size, size);
+        for(int x = 0; x < size; x++)
+            for(int y = 0; y < size; y++)
+                {
+                grid.field[x][y] = random.nextDouble();
+                other.field[x][y] = random.nextDouble();
+                }
+        grid.setParallel(parallel);
+        other.setParallel(parallel);
+        }
+
+    @Benchmark
+    public DoubleGrid2D multiplyScalar()
+        {
+        return grid.multiply(1.0000001);
+        }
+
+    @Benchmark
+    public DoubleGrid2D addGrid()
+        {
+        return grid.add(other);
+        }
+
+    @Benchmark
+    public double mean()
+        {
+        return grid.mean();
+        }
+
+    @Benchmark
+    public DoubleGrid2D convolve()
+        {
+        return grid.convolve(KERNEL, 1.0 / 9, Grid2D.TOROIDAL);
+        }
+
+    @Benchmark
+    public DoubleGrid2D diffuse()
+        {
+        return grid.diffuse(0.01, 0.5, Grid2D.TOROIDAL);
+        }
+    }
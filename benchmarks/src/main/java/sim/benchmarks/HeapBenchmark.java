@@ -0,0 +1,102 @@
+/*
+  Copyright 2019 by Sean Luke and George Mason University
+  Licensed under the Academic Free License version 3.0
+  See the file "LICENSE" for more information
+*/
+
+package sim.benchmarks;
+import sim.engine.*;
+import sim.util.*;
+import ec.util.*;
+import java.util.concurrent.*;
+import org.openjdk.jmh.annotations.*;
+
+/**
+   Compares the Schedule's binary Heap with the CalendarQueue using the classic "hold" model: the queue is filled
+   with events, and then each operation extracts the earliest event and reinserts it a random interval later.  Also
+   measures filling and emptying a queue from scratch.
+*/
+
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class HeapBenchmark
+    {
+    @Param({"heap", "calendar"})
+    public String queue;
+
+    @Param({"1000", "100000"})
+    public int size;
+
+    Heap heap;
+    MersenneTwisterFast random;
+    Bag bag = new Bag();
+    double[] times;
+
+    /** Schedule.Key is only visible to Schedule and its subclasses. */
+    static class Keys extends Schedule
+        {
+        private static final long serialVersionUID = 1;
+        static Comparable key(double time, int ordering) { return new Key(time, ordering); }
+        static double time(Object key) { return ((Key) key).getTime(); }
+        }
+
+    /* A CalendarQueue works best when a bucket holds a few events: so the bucket width is about three times the
+       average spacing between events, which have the given density per unit time. */
+    Heap newHeap(double density)
+        {
+        return (queue.equals("heap") ? new Heap() : new CalendarQueue(3.0 / density));
+        }
+
+    @Setup(Level.Trial)
+    public void setup()
+        {
+        random = new MersenneTwisterFast(1);
+        heap = newHeap(size / 2.0);  // once holding, the events are spread over about 2 time units
+        for(int i = 0; i < size; i++)
+            heap.add(new Object(), Keys.key(random.nextDouble() * 10, 0));
+        times = new double[size];
+        for(int i = 0; i < size; i++)
+            times[i] = random.nextDouble() * 10;
+        }
+
+    /** Extracts the earliest event and reschedules it between 0 and 2 time units later. */
+    @Benchmark
+    public Object hold()
+        {
+        double time = Keys.time(heap.getMinKey());
+        Object obj = heap.extractMin();
+        heap.add(obj, Keys.key(time + random.nextDouble() * 2, 0));
+        return obj;
+        }
+
+    /** Extracts all the events at the earliest time and ordering at once, as the Schedule does, and reschedules them between one and two time units later. */
+    @Benchmark
+    public Bag holdAll()
+        {
+        double time = Keys.time(heap.getMinKey());
+        heap.extractMin(bag);
+        Comparable next = Keys.key(time + 1 + random.nextDouble(), 0);
+        for(int i = 0; i < bag.numObjs; i++)
+            heap.add(bag.objs[i], next);
+        bag.clear();
+        return bag;
+        }
+
+    /** Fills a new queue with 1000 events and then empties it.  The score is per event. */
+    @Benchmark
+    @OperationsPerInvocation(1000)
+    public Heap fillAndEmpty()
+        {
+        Heap h = newHeap(100);
+        double[] times = this.times;
+        for(int i = 0; i < 1000; i++)
+            h.add(times, Keys.key(times[i], 0));
+        while(!h.isEmpty())
+            h.extractMin();
+        return h;
+        }
+    }
@@ -0,0 +1,67 @@
+/*
+  Copyright 2019 by Sean Luke and George Mason University
+  Licensed under the Academic Free License version 3.0
+  See the file "LICENSE" for more information
+*/
+
+package sim.benchmarks;
+import sim.engine.*;
+import sim.app.heatbugs.*;
+import sim.app.flockers.*;
+import sim.app.schelling.*;
+import sim.app.virus.*;
+import java.util.concurrent.*;
+import org.openjdk.jmh.annotations.*;
+
+/**
+   Measures one Schedule step of several of the demo models, run headless with their default parameters.
+   Each model is started once per trial and then stepped continuously.
+*/
+
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class ModelBenchmark
+    {
+    @Param({"heatbugs", "flockers", "schelling", "virus"})
+    public String model;
+
+    SimState state;
+
+    static SimState newModel(String model, long seed)
+        {
+        if (model.equals("heatbugs")) return new HeatBugs(seed);
+        else if (model.equals("flockers")) return new Flockers(seed);
+        else if (model.equals("schelling")) return new Schelling(seed);
+        else if (model.equals("virus")) return new VirusInfectionDemo(seed);
+        else throw new IllegalArgumentException("Unknown model " + model);
+        }
+
+    @Setup(Level.Trial)
+    public void setup()
+        {
+        state = newModel(model, 1);
+        state.start();
+        }
+
+    @TearDown(Level.Trial)
+    public void tearDown()
+        {
+        state.finish();
+        if (state instanceof HeatBugs) ((HeatBugs) state).stop();  // kill the ThreadedDiffuser's threads
+        }
+
+    @Benchmark
+    public boolean step()
+        {
+        if (!state.schedule.step(state))  // some models may run out
+            {
+            state.finish();
+            state.start();
+            }
+        return true;
+        }
+    }
@@ -0,0 +1,100 @@
+/*
+  Copyright 2019 by Sean Luke and George Mason University
+  Licensed under the Academic Free License version 3.0
+  See the file "LICENSE" for more information
+*/
+
+package sim.benchmarks;
+import sim.field.grid.*;
+import sim.util.*;
+import ec.util.*;
+import java.util.concurrent.*;
+import org.openjdk.jmh.annotations.*;
+
+/**
+   Compares gathering Moore neighborhoods from the jagged DoubleGrid2D and the flat FlatDoubleGrid2D, both through
+   the Grid2D API into reused Bags, and by hand with direct array access.  The score is per query.
+*/
+
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class NeighborhoodBenchmark
+    {
+    @Param({"1000"})
+    public int size;
+
+    @Param({"1", "3"})
+    public int distance;
+
+    @Param({"0", "2"})  // Grid2D.BOUNDED, Grid2D.TOROIDAL
+    public int mode;
+
+    DoubleGrid2D jagged;
+    FlatDoubleGrid2D flat;
+    MersenneTwisterFast random;
+    DoubleBag result = new DoubleBag();
+    IntBag xPos = new IntBag();
+    IntBag yPos = new IntBag();
+
+    @Setup(Level.Trial)
+    public void setup()
+        {
+        random = new MersenneTwisterFast(1);
+        jagged = new DoubleGrid2D(size, size);
+        for(int x = 0; x < size; x++)
+            for(int y = 0; y < size; y++)
+                jagged.field[x][y] = random.nextDouble();
+        flat = new FlatDoubleGrid2D(jagged);
+        }
+
+    @Benchmark
+    public DoubleBag jaggedMoore()
+        {
+        return jagged.getMooreNeighbors(random.nextInt(size), random.nextInt(size), distance, mode, true, result, xPos, yPos);
+        }
+
+    @Benchmark
+    public DoubleBag flatMoore()
+        {
+        return flat.getMooreNeighbors(random.nextInt(size), random.nextInt(size), distance, mode, true, result, xPos, yPos);
+        }
+
+    /** Sums a toroidal Moore neighborhood straight out of the jagged arrays. */
+    @Benchmark
+    public double jaggedSum()
+        {
+        double[][] field = jagged.field;
+        int cx = random.nextInt(size);
+        int cy = random.nextInt(size);
+        double sum = 0;
+        for(int x = cx - distance; x <= cx + distance; x++)
+            {
+            double[] fieldx = field[jagged.stx(x)];
+            for(int y = cy - distance; y <= cy + distance; y++)
+                sum += fieldx[jagged.sty(y)];
+            }
+        return sum;
+        }
+
+    /** Sums a toroidal Moore neighborhood straight out of the flat array. */
+    @Benchmark
+    public double flatSum()
+        {
+        double[] field = flat.getField();
+        int height = flat.getHeight();
+        int cx = random.nextInt(size);
+        int cy = random.nextInt(size);
+        double sum = 0;
+        for(int x = cx - distance; x <= cx + distance; x++)
+            {
+            int column = flat.stx(x) * height;
+            for(int y = cy - distance; y <= cy + distance; y++)
+                sum += field[column + flat.sty(y)];
+            }
+        return sum;
+        }
+    }
@@ -0,0 +1,104 @@
+/*
+  Copyright 2019 by Sean Luke and George Mason University
+  Licensed under the Academic Free License version 3.0
+  See the file "LICENSE" for more information
+*/
+
+package sim.benchmarks;
+import sim.field.network.*;
+import sim.util.*;
+import ec.util.*;
+import java.util.*;
+import java.util.concurrent.*;
+import org.openjdk.jmh.annotations.*;
+
+/**
+   Measures traversing the edges of a random directed Network: visiting every out-edge of every node through
+   getEdgesOut(...) and through an adjacency list, and a breadth-first search from a random node.  The score is the
+   time per traversal of the whole graph.
+*/
+
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class NetworkBenchmark
+    {
+    @Param({"10000"})
+    public int nodes;
+
+    @Param({"10"})
+    public int degree;
+
+    Network network;
+    Edge[][] adjacency;
+    MersenneTwisterFast random;
+    Object[] nodeArray;
+
+    @Setup(Level.Trial)
+    public void setup()
+        {
+        random = new MersenneTwisterFast(1);
+        network = new Network(true);
+        nodeArray = new Object[nodes];
+        for(int i = 0; i < nodes; i++)
+            {
+            nodeArray[i] = Integer.valueOf(i);
+            network.addNode(nodeArray[i]);
+            }
+        for(int i = 0; i < nodes; i++)
+            for(int j = 0; j < degree; j++)
+                network.addEdge(nodeArray[i], nodeArray[random.nextInt(nodes)], null);
+        adjacency = network.getAdjacencyList(true);
+        }
+
+    @Benchmark
+    public int edgesOut()
+        {
+        Bag allNodes = network.allNodes;
+        int sum = 0;
+        for(int i = 0; i < allNodes.numObjs; i++)
+            {
+            Bag edges = network.getEdgesOut(allNodes.objs[i]);
+            for(int j = 0; j < edges.numObjs; j++)
+                sum += ((Integer)(((Edge)(edges.objs[j])).to())).intValue();
+            }
+        return sum;
+        }
+
+    @Benchmark
+    public int adjacencyList()
+        {
+        Edge[][] adjacency = this.adjacency;
+        int sum = 0;
+        for(int i = 0; i < adjacency.length; i++)
+            {
+            Edge[] edges = adjacency[i];
+            for(int j = 0; j < edges.length; j++)
+                sum += ((Integer)(edges[j].to())).intValue();
+            }
+        return sum;
+        }
+
+    @Benchmark
+    public int breadthFirstSearch()
+        {
+        HashSet<Object> visited = new HashSet<Object>();
+        ArrayDeque<Object> queue = new ArrayDeque<Object>();
+        Object start = nodeArray[random.nextInt(nodes)];
+        visited.add(start);
+        queue.add(start);
+        while(!queue.isEmpty())
+            {
+            Bag edges = network.getEdgesOut(queue.poll());
+            for(int j = 0; j < edges.numObjs; j++)
+                {
+                Object to = ((Edge)(edges.objs[j])).to();
+                if (visited.add(to)) queue.add(to);
+                }
+            }
+        return visited.size();
+        }
+    }
@@ -0,0 +1,49 @@
+/*
+  Copyright 2019 by Sean Luke and George Mason University
+  Licensed under the Academic Free License version 3.0
+  See the file "LICENSE" for more information
+*/
+
+package sim.benchmarks;
+import ec.util.*;
+import java.util.concurrent.*;
+import org.openjdk.jmh.annotations.*;
+
+/**
+   Measures MersenneTwisterFast's most common calls.
+*/
+
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class RandomBenchmark
+    {
+    MersenneTwisterFast random = new MersenneTwisterFast(1);
+
+    @Benchmark
+    public double nextDouble()
+        {
+        return random.nextDouble();
+        }
+
+    @Benchmark
+    public double nextGaussian()
+        {
+        return random.nextGaussian();
+        }
+
+    @Benchmark
+    public int nextInt()
+        {
+        return random.nextInt(1000);
+        }
+
+    @Benchmark
+    public boolean nextBoolean()
+        {
+        return random.nextBoolean(0.3);
+        }
+    }
@@ -0,0 +1,63 @@
+/*
+  Copyright 2019 by Sean Luke and George Mason University
+  Licensed under the Academic Free License version 3.0
+  See the file "LICENSE" for more information
+*/
+
+package sim.benchmarks;
+import sim.engine.*;
+import sim.app.heatbugs.*;
+import java.util.concurrent.*;
+import org.openjdk.jmh.annotations.*;
+
+/**
+   Measures runs per second of many short runs of HeatBugs, as doLoop(...) -repeat and ParameterSweep do them:
+   constructing a new model for each run, or reusing one model (which HeatBugs permits, see SimState.reusable())
+   and resetting its fields in place.  Run with -prof gc to compare the allocation per run.
+*/
+
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class RepeatedRunsBenchmark
+    {
+    @Param({"10"})
+    public int steps;
+
+    HeatBugs reused;
+    long seed;
+
+    @Setup(Level.Trial)
+    public void setup()
+        {
+        reused = new HeatBugs(1);
+        }
+
+    void run(HeatBugs state)
+        {
+        state.start();
+        for(int i = 0; i < steps; i++)
+            state.schedule.step(state);
+        state.finish();
+        state.stop();
+        }
+
+    @Benchmark
+    public SimState fresh()
+        {
+        HeatBugs state = new HeatBugs(++seed);
+        run(state);
+        return state;
+        }
+
+    @Benchmark
+    public SimState reuse()
+        {
+        reused.setSeed(++seed);
+        run(reused);
+        return reused;
+        }
+    }
@@ -0,0 +1,71 @@
+/*
+  Copyright 2019 by Sean Luke and George Mason University
+  Licensed under the Academic Free License version 3.0
+  See the file "LICENSE" for more information
+*/
+
+package sim.benchmarks;
+import sim.engine.*;
+import java.util.concurrent.*;
+import org.openjdk.jmh.annotations.*;
+
+/**
+   Measures Schedule.step() with a number of trivial agents repeating every step, spread over a few orderings,
+   using the default Heap or a CalendarQueue, sequentially or (with -p parallelThreads=N) in parallel.  The score
+   is the time per step of the whole Schedule, so divide by the number of agents for the cost per agent.
+*/
+
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class ScheduleBenchmark
+    {
+    @Param({"1000", "100000"})
+    public int agents;
+
+    @Param({"1", "4"})
+    public int orderings;
+
+    @Param({"0", "1"})
+    public double calendarQueueBucketWidth;
+
+    @Param({"1"})
+    public int parallelThreads;
+
+    SimState state;
+
+    /** A trivial agent, which just does a little arithmetic so it can't be optimized away. */
+    public static class Agent implements Steppable
+        {
+        private static final long serialVersionUID = 1;
+        public long count;
+        public void step(SimState state) { count++; }
+        }
+
+    @Setup(Level.Trial)
+    public void setup()
+        {
+        state = new SimState(1);
+        state.start();
+        state.schedule.setCalendarQueueBucketWidth(calendarQueueBucketWidth);
+        state.schedule.setParallelThreads(parallelThreads);
+        for(int i = 0; i < agents; i++)
+            state.schedule.scheduleRepeating(new Agent(), i % orderings, 1.0);
+        }
+
+    @TearDown(Level.Trial)
+    public void tearDown()
+        {
+        state.finish();
+        state.schedule.setParallelThreads(0);  // shut down the pool
+        }
+
+    @Benchmark
+    public boolean step()
+        {
+        return state.schedule.step(state);
+        }
+    }
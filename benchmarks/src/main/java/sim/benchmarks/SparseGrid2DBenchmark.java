@@ -0,0 +1,71 @@
+/*
+  Copyright 2019 by Sean Luke and George Mason University
+  Licensed under the Academic Free License version 3.0
+  See the file "LICENSE" for more information
+*/
+
+package sim.benchmarks;
+import sim.field.grid.*;
+import sim.util.*;
+import ec.util.*;
+import java.util.concurrent.*;
+import org.openjdk.jmh.annotations.*;
+
+/**
+   Measures moving objects around a SparseGrid2D and gathering their Moore neighborhoods, with the default
+   hash maps and with primitive maps.
+*/
+
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class SparseGrid2DBenchmark
+    {
+    @Param({"false", "true"})
+    public boolean primitiveMaps;
+
+    @Param({"10000"})
+    public int agents;
+
+    @Param({"200"})
+    public int size;
+
+    SparseGrid2D grid;
+    Object[] objects;
+    MersenneTwisterFast random;
+    Bag result = new Bag();
+    IntBag xPos = new IntBag();
+    IntBag yPos = new IntBag();
+
+    @Setup(Level.Trial)
+    public void setup()
+        {
+        random = new MersenneTwisterFast(1);
+        grid = new SparseGrid2D(size, size, primitiveMaps);
+        objects = new Object[agents];
+        for(int i = 0; i < agents; i++)
+            {
+            objects[i] = new Object();
+            grid.setObjectLocation(objects[i], random.nextInt(size), random.nextInt(size));
+            }
+        }
+
+    /** Moves a random object to a random neighboring cell. */
+    @Benchmark
+    public boolean move()
+        {
+        Object obj = objects[random.nextInt(objects.length)];
+        Int2D loc = grid.getObjectLocation(obj);
+        return grid.setObjectLocation(obj, grid.stx(loc.x + random.nextInt(3) - 1), grid.sty(loc.y + random.nextInt(3) - 1));
+        }
+
+    /** Gathers the objects within a toroidal Moore neighborhood of radius 2 around a random cell. */
+    @Benchmark
+    public Bag mooreNeighbors()
+        {
+        return grid.getMooreNeighbors(random.nextInt(size), random.nextInt(size), 2, Grid2D.TOROIDAL, true, result, xPos, yPos);
+        }
+    }
@@ -96,22 +96,14 @@ public class CentralizationStatistics
 // TODO I should use a Centrality measure: 1/max geodesic.
     public static Bag getGraphTheoreticCenter(final Network network)
         {
-        double[][] distances = NetworkStatistics.getShortestPathsMatrix(network, UnitEdgeMetric.defaultInstance);
+        double[] eccentricities = NetworkStatistics.getEccentricities(network, UnitEdgeMetric.defaultInstance);
         int n = network.allNodes.numObjs;
         int[] maxGeodesics = new int[n];
         int count=0;
         int min = n;
         for(int i=0;i<n;i++)
             {
-            double[] distances_i = distances[i];
-            int maxG_i = 0;
-            for(int j=0; j<n;j++)
-                {
-                int dist_ij = (int)distances_i[j];
-                if(dist_ij>maxG_i)
-                    maxG_i = dist_ij;
-                //I could also compare with min to skip the rest of the column
-                }
+            int maxG_i = (int)eccentricities[i];
             maxGeodesics[i]=maxG_i;
             if(maxG_i>0 && maxG_i < min)//I do min>0 to avoid giving the price to an isolated node
                 {
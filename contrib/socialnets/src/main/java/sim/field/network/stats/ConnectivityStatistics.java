@@ -35,7 +35,8 @@ public class ConnectivityStatistics
         if( !network.isDirected() )
             throw new RuntimeException( "Connect.getStronglyConnectedComponents should be called only with directed graphs" );
         Bag result = new Bag();
-        final int N = NetworkStatistics.getNumberNodes(network);
+        final NetworkSnapshot snapshot = new NetworkSnapshot(network);
+        final int N = snapshot.numNodes;
         double[] finishingTime = new double[N];  // double vector to allow the use of heap later on 
         int[] color = new int[N]; // 0=WHITE, 1=GRAY, 2=BLACK
         int time = 0;
@@ -56,11 +57,9 @@ public class ConnectivityStatistics
                         color[j] = 1;
                         myStack.push(j);
                         time++;
-                        final Bag edgesOut = network.getEdgesOut(network.allNodes.objs[j]);
-                        for( int k = 0 ; k < edgesOut.numObjs ; k++ )
+                        for( int k = snapshot.outStart[j] ; k < snapshot.outStart[j+1] ; k++ )
                             {
-                            final Edge edge = (Edge)(edgesOut.objs[k]);
-                            final int toNode = network.getNodeIndex(edge.to());
+                            final int toNode = snapshot.outTarget[k];
                             if( color[toNode] == 0 )
                                 myStack.push(toNode);
                             }
@@ -97,12 +96,11 @@ public class ConnectivityStatistics
                     if( color[j] == 0 ) // if it's a white node
                         {
                         color[j] = 1;
-                        component.add( network.allNodes.objs[j] );
-                        final Bag edgesOut = network.getEdgesIn(network.allNodes.objs[j]); // here we use the in-edges, because the graph should have been transposed
-                        for( int k = 0 ; k < edgesOut.numObjs ; k++ )
+                        component.add( snapshot.nodes[j] );
+                        // here we use the in-edges, because the graph should have been transposed
+                        for( int k = snapshot.inStart[j] ; k < snapshot.inStart[j+1] ; k++ )
                             {
-                            final Edge edge = (Edge)(edgesOut.objs[k]);
-                            final int toNode = network.getNodeIndex(edge.from());  // this is now edge.from() because the graph should have been transposed
+                            final int toNode = snapshot.inSource[k];
                             if( color[toNode] == 0 )
                                 myStack.push(toNode);
                             }
@@ -138,41 +136,32 @@ public class ConnectivityStatistics
 
     static class ConnectedComponentFactory
         {
-        final Network network;
+        final NetworkSnapshot snapshot;
         final int n;
         final Bag components;
                 
-        //instead of making a new hashtable, stick all nodes in it
-        //and remove them as they get visited,
-        //I rely on the hashtable inside the Network and 
-        //the nodes' indices in the allNodes bag. 
         final boolean[] visited;
         int countVisited;
+        final IntBag stack = new IntBag();
                 
         public ConnectedComponentFactory( final Network network)
             {
-            this.network = network;
-            n = network.allNodes.numObjs;
+            snapshot = new NetworkSnapshot(network);
+            n = snapshot.numNodes;
             visited = new boolean[n];
-            for(int i=0;i<n;i++)
-                visited[i]=false;
             countVisited = 0;
             components = new Bag(n);
             }
 
         public Bag getComponents()
             {
-            boolean directed = network.isDirected();
             for( int i = 0 ; i < n; i++ )
                 {
                 if(!visited[i])
                     {
                     Bag component = new Bag();  
                     components.add(component);
-                    if(directed)
-                        exploreWD(network.allNodes.objs[i], i, component);
-                    else
-                        exploreU(network.allNodes.objs[i], i, component);
+                    explore(i, component);
                     }
                 }
             return components;
@@ -180,55 +169,41 @@ public class ConnectivityStatistics
 
         public boolean isConnected()
             {
-            if(network.isDirected())
-                exploreWD(network.allNodes.objs[0], 0, null);
-            else
-                exploreU(network.allNodes.objs[0], 0, null);
+            explore(0, null);
             return (countVisited ==n);
             }
+
         /**
-         * explore for Weakly connected components in a Directed graph
+         * Visits every node reachable from the given one, following edges either way if the graph is directed
+         * (so we find weakly connected components), and adds them to the component.
          * The Bag 'component' can be null if I'm only interested in whether the graph is connected.
+         * We use our own stack rather than recursion, so big components don't overflow the Java stack.
          */
-        private void exploreWD(Object nodeObj, int nodeIndex, Bag component)
+        void explore(int nodeIndex, Bag component)
             {
             visited[nodeIndex]=true; countVisited++;
-            if(component!=null)
-                component.add(nodeObj);
-            Bag temp;
-            temp = network.getEdgesOut( nodeObj );
-            for(int i=0;i<temp.numObjs;i++)
+            stack.push(nodeIndex);
+            while( !stack.isEmpty() )
                 {
-                Object node2 = ((Edge)temp.objs[i]).getOtherNode(nodeObj);
-                int node2Index = network.getNodeIndex(node2); 
-                if(!visited[node2Index])
-                    exploreWD(node2, node2Index, component);
+                final int node = stack.pop();
+                if(component!=null)
+                    component.add(snapshot.nodes[node]);
+                for(int e=snapshot.outStart[node];e<snapshot.outStart[node+1];e++)
+                    push(snapshot.outTarget[e]);
+                if(snapshot.directed)
+                    for(int e=snapshot.inStart[node];e<snapshot.inStart[node+1];e++)
+                        push(snapshot.inSource[e]);
                 }
-            temp = network.getEdgesIn ( nodeObj );
-            for(int i=0;i<temp.numObjs;i++)
-                {
-                Object node2 = ((Edge)temp.objs[i]).getOtherNode(nodeObj);
-                int node2Index = network.getNodeIndex(node2); 
-                if(!visited[node2Index])
-                    exploreWD(node2, node2Index, component);
-                }       
             }
-
-        // The Bag 'component' can be null if I'm only interested in whether the graph is connected.
-        private void exploreU(Object nodeObj, int nodeIndex, Bag component)
+            
+        void push(int node2Index)
             {
-            visited[nodeIndex]=true;countVisited++;
-            if(component!=null) component.add(nodeObj);
-            Bag temp = network.getEdgesOut( nodeObj );
-            for(int i=0;i<temp.numObjs;i++)
+            if(!visited[node2Index])
                 {
-                Object node2 = ((Edge)temp.objs[i]).getOtherNode(nodeObj);
-                int node2Index = network.getNodeIndex(node2); 
-                if(!visited[node2Index])
-                    exploreU(node2, node2Index, component);
+                visited[node2Index]=true; countVisited++;
+                stack.push(node2Index);
                 }
             }
-                
         }
 
     static class FlowData
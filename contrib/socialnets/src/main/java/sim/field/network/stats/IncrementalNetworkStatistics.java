@@ -0,0 +1,775 @@
+/*
+  Copyright 2019 by Sean Luke and George Mason University
+  Licensed under the Academic Free License version 3.0
+  See the file "LICENSE" for more information
+*/
+
+package sim.field.network.stats;
+import sim.field.network.*;
+import sim.util.*;
+import java.util.*;
+
+/**
+   Statistics about a Network which are kept up to date as it changes, rather than recomputed from scratch.  This is a
+   NetworkListener: it is told of every node and edge added to or removed from the Network and adjusts its numbers
+   accordingly, so that a model which rewires its Network a little every step can chart them every step for almost nothing.
+   It keeps:
+
+   <ul>
+   <li>The number of nodes and edges, and the density, as in NetworkStatistics.
+   <li>The in- and out-degree of every node, and their distributions, minimum, maximum, mean, and variance.  As in
+   DegreeStatistics, the degree of a node is the size of its getEdgesIn(...) or getEdgesOut(...) Bag, so in an undirected
+   Network a self-loop adds two to the degree, and in- and out-degrees are the same.  The mean and variance are those of
+   these degrees.  In directed Networks they match DegreeStatistics, but in undirected Networks they don't.  There,
+   DegreeStatistics divides the number of edges, rather than the sum of the degrees (twice as much), by the number of
+   nodes, so its mean is half of getMeanOutDegree(), and its variance is computed around that mean.
+   <li>For every node, the number of edges among its neighbors, and from these the clustering coefficient, exactly as
+   NetworkStatistics.getClusteringCoefficient(...) would compute it, and in undirected Networks the number of triangles.
+   <li>The (weakly) connected components, as ConnectivityStatistics.getConnectedComponents(...) would find them, in a
+   union-find structure.
+   </ul>
+
+   <p>Adding an edge between nodes u and v costs O(min(d<sub>u</sub>, d<sub>v</sub>)) where d is the number of distinct
+   neighbors, to find their common neighbors, plus O(d<sub>u</sub> + d<sub>v</sub>) if they weren't already neighbors.
+   Removing one costs the same, and also checks whether u and v are still connected by searching a little way
+   (at most SEARCH_LIMIT neighbors) out from both of them.  In networks with any clustering they usually are, in which case the
+   components are unchanged.  If not, the components may have split, which union-find can't undo: they are rebuilt, in
+   O(n + m) time, the next time they're asked for.  Likewise the clustering coefficient is kept as a running sum, which is
+   recomputed in O(n) after every n or so changes to keep rounding errors from creeping in.  Nodes are hashed just
+   once per event, and neighbors are counted in small primitive hash tables.
+
+   <p>Edge weights play no part.  Changes made wholesale (clear(), removeAllEdges(), and so on) cause everything to be
+   rebuilt from the Network.  Like Network, this class isn't threadsafe.
+*/
+
+public class IncrementalNetworkStatistics implements NetworkListener
+    {
+    private static final long serialVersionUID = 1;
+
+    /** How many neighbors to look at, after an edge is removed, in trying to show that its nodes are still connected. */
+    public static final int SEARCH_LIMIT = 1024;
+
+    final Network network;
+    boolean directed;
+
+    // Nodes are given ids of their own, which unlike their positions in allNodes don't change when other nodes are removed.
+    HashMap ids;                // node -> Integer id
+    Object[] nodes;             // id -> node, or null if the id is free
+    IntBag freeIds;
+    int numIds;                 // ids at or above this have never been used
+    int numNodes;
+    int numEdges;
+
+    Neighbors[] out;            // out[u] counts the edges from u to each other node (self-loops aren't counted)
+    Neighbors[] in;             // in[v] counts the edges to v from each other node; the same as out if undirected
+    int[] outDegree;
+    int[] inDegree;             // the same as outDegree if undirected
+    Histogram outDegrees;
+    Histogram inDegrees;        // the same as outDegrees if undirected
+
+    long[] pairs;               // the number of edges among each node's neighbors, counted as in getClusteringCoefficient
+    long triangles;             // in an undirected network
+    double clusteringSum;       // the sum of the nodes' clustering coefficients, kept up to date as they change
+    int clusteringChanges;      // changes to clusteringSum since it was last computed from scratch
+
+    int[] parent;               // the union-find forest of the components
+    int[] size;                 // the size of each component, at its root
+    int numComponents;
+    int largestComponent;
+    boolean componentsStale;    // true if the components may have split since they were last built
+
+    int[] seen;                 // for searching after edges are removed
+    int searchStamp;
+    IntBag queueU;
+    IntBag queueV;
+
+    /** Computes statistics for the Network as it is, and then keeps them up to date as it changes. */
+    public IncrementalNetworkStatistics(final Network network)
+        {
+        this.network = network;
+        rebuild();
+        network.addListener(this);
+        }
+
+    /** Returns the Network being tracked. */
+    public Network getNetwork() { return network; }
+
+    /** Stops tracking the Network.  The statistics are then no longer updated. */
+    public void detach()
+        {
+        network.removeListener(this);
+        }
+
+    /** Throws away all the statistics and computes them again from the Network. */
+    public void rebuild()
+        {
+        directed = network.isDirected();
+        final int n = network.allNodes.numObjs;
+        ids = new HashMap();
+        freeIds = new IntBag();
+        queueU = new IntBag();
+        queueV = new IntBag();
+        numIds = 0;
+        numNodes = 0;
+        numEdges = 0;
+        int capacity = Math.max(n, 16);
+        nodes = new Object[capacity];
+        out = new Neighbors[capacity];
+        in = (directed ? new Neighbors[capacity] : out);
+        outDegree = new int[capacity];
+        inDegree = (directed ? new int[capacity] : outDegree);
+        outDegrees = new Histogram();
+        inDegrees = (directed ? new Histogram() : outDegrees);
+        pairs = new long[capacity];
+        triangles = 0;
+        clusteringSum = 0;
+        clusteringChanges = 0;
+        parent = new int[capacity];
+        size = new int[capacity];
+        numComponents = 0;
+        largestComponent = 0;
+        componentsStale = false;
+        seen = new int[capacity];
+        searchStamp = 0;
+
+        for(int i = 0; i < n; i++)
+            nodeAdded(network, network.allNodes.objs[i]);
+        for(int i = 0; i < n; i++)
+            {
+            final Object node = network.allNodes.objs[i];
+            final Bag edges = network.getEdgesOut(node);
+            for(int j = 0; j < edges.numObjs; j++)
+                {
+                final Edge edge = (Edge)(edges.objs[j]);
+                // an undirected edge is in the Bags of both of its nodes (twice in one if it's a self-loop), so count it just where it leaves
+                if (directed || (edge.indexFrom() == j && edge.from().equals(node)))
+                    edgeAdded(network, edge);
+                }
+            }
+        }
+
+
+    //// NetworkListener
+
+
+    public void nodeAdded(final Network network, final Object node)
+        {
+        final int id;
+        if (freeIds.numObjs > 0) id = freeIds.pop();
+        else
+            {
+            if (numIds == nodes.length) grow();
+            id = numIds++;
+            }
+        ids.put(node, Integer.valueOf(id));
+        nodes[id] = node;
+        out[id] = new Neighbors();
+        if (directed) in[id] = new Neighbors();
+        outDegree[id] = 0;
+        inDegree[id] = 0;
+        outDegrees.add(0);
+        if (directed) inDegrees.add(0);
+        pairs[id] = 0;
+        numNodes++;
+        if (!componentsStale)
+            {
+            parent[id] = id;
+            size[id] = 1;
+            numComponents++;
+            if (largestComponent < 1) largestComponent = 1;
+            }
+        }
+
+    public void nodeRemoved(final Network network, final Object node)
+        {
+        final int id = ((Integer)(ids.remove(node))).intValue();
+        // its edges have all been removed already, so its degrees are 0 and it's no longer in anyone's Neighbors
+        if (!componentsStale)
+            {
+            if (size[find(id)] == 1)
+                {
+                numComponents--;
+                if (numNodes == 1) largestComponent = 0;
+                }
+            else componentsStale = true;
+            }
+        outDegrees.remove(0);
+        if (directed) inDegrees.remove(0);
+        nodes[id] = null;
+        out[id] = null;
+        in[id] = null;
+        freeIds.add(id);
+        numNodes--;
+        }
+
+    public void edgeAdded(final Network network, final Edge edge)
+        {
+        final int u = getId(edge.from());
+        final int v = getId(edge.to());
+        numEdges++;
+        if (u != v)
+            {
+            // count the new neighbors and edges among neighbors before adding the edge itself
+            final boolean first = (out[u].get(v) == 0);
+            final int common = link(u, v, 1);
+            if (!directed)
+                {
+                link(v, u, 1);
+                if (first) triangles += common;
+                }
+            out[u].increment(v);
+            in[v].increment(u);
+            }
+        addDegree(u, v, 1);
+        if (!componentsStale) union(u, v);
+        }
+
+    public void edgeRemoved(final Network network, final Edge edge)
+        {
+        final int u = getId(edge.from());
+        final int v = getId(edge.to());
+        numEdges--;
+        addDegree(u, v, -1);
+        if (u != v)
+            {
+            // remove the edge itself, and then take away what it had added
+            out[u].decrement(v);
+            in[v].decrement(u);
+            final int common = link(u, v, -1);
+            if (!directed)
+                {
+                link(v, u, -1);
+                if (out[u].get(v) == 0) triangles -= common;
+                }
+            if (!componentsStale && !adjacent(u, v) && !reachable(u, v))
+                componentsStale = true;
+            }
+        }
+
+    public void networkChanged(final Network network)
+        {
+        rebuild();
+        }
+
+
+    //// Nodes and Edges
+
+
+    /** Returns the number of nodes. */
+    public int getNumNodes() { return numNodes; }
+
+    /** Returns the number of edges, counting each undirected edge once, as in NetworkStatistics.getNumberActualEdges(...). */
+    public int getNumEdges() { return numEdges; }
+
+    /** Returns the ratio of the number of edges to the number of edges there could be between distinct nodes,
+        as in NetworkStatistics.getDensity(...). */
+    public double getDensity()
+        {
+        if (numNodes == 0) return 0;
+        final double potential = (double)numNodes * (numNodes - 1);
+        return numEdges / (directed ? potential : potential / 2);
+        }
+
+
+    //// Degrees
+
+
+    /** Returns the out-degree of a node, the size of its getEdgesOut(...) Bag. */
+    public int getOutDegree(final Object node) { return outDegree[getId(node)]; }
+
+    /** Returns the in-degree of a node, the size of its getEdgesIn(...) Bag. */
+    public int getInDegree(final Object node) { return inDegree[getId(node)]; }
+
+    /** Returns the minimum out-degree, or Integer.MAX_VALUE if there are no nodes. */
+    public int getMinOutDegree() { return (numNodes == 0 ? Integer.MAX_VALUE : outDegrees.min); }
+
+    /** Returns the minimum in-degree, or Integer.MAX_VALUE if there are no nodes. */
+    public int getMinInDegree() { return (numNodes == 0 ? Integer.MAX_VALUE : inDegrees.min); }
+
+    /** Returns the maximum out-degree, or Integer.MIN_VALUE if there are no nodes. */
+    public int getMaxOutDegree() { return (numNodes == 0 ? Integer.MIN_VALUE : outDegrees.max); }
+
+    /** Returns the maximum in-degree, or Integer.MIN_VALUE if there are no nodes. */
+    public int getMaxInDegree() { return (numNodes == 0 ? Integer.MIN_VALUE : inDegrees.max); }
+
+    /** Returns the mean out-degree, or 0 if there are no nodes.  In undirected Networks this is twice the number of
+        edges divided by the number of nodes, and twice DegreeStatistics.getMeanOutDegree(...). */
+    public double getMeanOutDegree() { return outDegrees.getMean(); }
+
+    /** Returns the mean in-degree, or 0 if there are no nodes.  In undirected Networks this is the same as getMeanOutDegree(). */
+    public double getMeanInDegree() { return inDegrees.getMean(); }
+
+    /** Returns the (sample) variance of the out-degrees.  In undirected Networks this differs from
+        DegreeStatistics.getVarOutDegree(...), as described in the class comment. */
+    public double getVarOutDegree() { return outDegrees.getVariance(); }
+
+    /** Returns the (sample) variance of the in-degrees. */
+    public double getVarInDegree() { return inDegrees.getVariance(); }
+
+    /** Returns how many nodes have the given out-degree. */
+    public int getNumNodesWithOutDegree(final int degree) { return outDegrees.get(degree); }
+
+    /** Returns how many nodes have the given in-degree. */
+    public int getNumNodesWithInDegree(final int degree) { return inDegrees.get(degree); }
+
+    /** Returns the distribution of out-degrees (or in-degrees): element d is the number of nodes with degree d,
+        up to the maximum degree. */
+    public int[] getDegreeDistribution(final boolean out)
+        {
+        Histogram histogram = (out ? outDegrees : inDegrees);
+        return Arrays.copyOf(histogram.counts, numNodes == 0 ? 0 : histogram.max + 1);
+        }
+
+
+    //// Clustering
+
+
+    /** Returns the clustering coefficient of the network, the mean of the nodes' clustering coefficients, as in
+        NetworkStatistics.getClusteringCoefficient(...) (give or take rounding). */
+    public double getClusteringCoefficient()
+        {
+        if (clusteringChanges > numNodes)
+            {
+            // start afresh now and then, so rounding errors don't accumulate
+            clusteringSum = 0;
+            for(int id = 0; id < numIds; id++)
+                if (nodes[id] != null)
+                    clusteringSum += clustering(id);
+            clusteringChanges = 0;
+            }
+        return clusteringSum / numNodes;
+        }
+
+    /** Returns the clustering coefficient of one node: the number of edges among its neighbors over d(d-1), where
+        d is its out-degree, or 0 if d is less than 2. */
+    public double getClusteringCoefficient(final Object node)
+        {
+        return clustering(getId(node));
+        }
+
+    /** Returns the number of triangles in an undirected network: sets of three nodes each joined to the other two,
+        however many edges join them. */
+    public long getNumTriangles()
+        {
+        if (directed)
+            throw new RuntimeException("IncrementalNetworkStatistics.getNumTriangles should be called only with undirected graphs");
+        return triangles;
+        }
+
+
+    //// Components
+
+
+    /** Returns the number of connected components, or weakly connected components if the network is directed. */
+    public int getNumComponents()
+        {
+        if (componentsStale) rebuildComponents();
+        return numComponents;
+        }
+
+    /** Returns true if the network has at most one (weakly) connected component. */
+    public boolean isConnected()
+        {
+        return getNumComponents() <= 1;
+        }
+
+    /** Returns the number of nodes in the largest (weakly) connected component. */
+    public int getLargestComponentSize()
+        {
+        if (componentsStale) rebuildComponents();
+        return largestComponent;
+        }
+
+    /** Returns the number of nodes in the (weakly) connected component containing the given node. */
+    public int getComponentSize(final Object node)
+        {
+        if (componentsStale) rebuildComponents();
+        return size[find(getId(node))];
+        }
+
+    /** Returns true if the two nodes are in the same (weakly) connected component. */
+    public boolean areConnected(final Object node1, final Object node2)
+        {
+        if (componentsStale) rebuildComponents();
+        return find(getId(node1)) == find(getId(node2));
+        }
+
+    /** Returns the (weakly) connected components, as a Bag of Bags of nodes, like ConnectivityStatistics.getConnectedComponents(...). */
+    public Bag getComponents()
+        {
+        if (componentsStale) rebuildComponents();
+        final Bag result = new Bag(numComponents);
+        final int[] component = new int[numIds];    // 1 + the component's index in result, at each root
+        for(int id = 0; id < numIds; id++)
+            if (nodes[id] != null)
+                {
+                final int root = find(id);
+                if (component[root] == 0)
+                    {
+                    result.add(new Bag(size[root]));
+                    component[root] = result.numObjs;
+                    }
+                ((Bag)(result.objs[component[root] - 1])).add(nodes[id]);
+                }
+        return result;
+        }
+
+
+    //// Internals
+
+
+    int getId(final Object node)
+        {
+        final Integer id = (Integer)(ids.get(node));
+        if (id == null)
+            throw new RuntimeException("Object parameter is not a node in the network.");
+        return id.intValue();
+        }
+
+    void grow()
+        {
+        final int capacity = nodes.length * 2;
+        nodes = Arrays.copyOf(nodes, capacity);
+        out = Arrays.copyOf(out, capacity);
+        in = (directed ? Arrays.copyOf(in, capacity) : out);
+        outDegree = Arrays.copyOf(outDegree, capacity);
+        inDegree = (directed ? Arrays.copyOf(inDegree, capacity) : outDegree);
+        pairs = Arrays.copyOf(pairs, capacity);
+        parent = Arrays.copyOf(parent, capacity);
+        size = Arrays.copyOf(size, capacity);
+        seen = Arrays.copyOf(seen, capacity);
+        }
+
+    double clustering(final int id)
+        {
+        final int degree = outDegree[id];
+        //Gabriel: "An object must have at least two neighbors to calculate the clustering coefficient"
+        return (degree >= 2 ? pairs[id] / (degree * (degree - 1.0)) : 0);
+        }
+
+    /* Adds delta to the degrees of an edge's nodes */
+    void addDegree(final int u, final int v, final int delta)
+        {
+        setOutDegree(u, outDegree[u] + delta);
+        if (directed)
+            {
+            inDegrees.add(inDegree[v] + delta);
+            inDegrees.remove(inDegree[v]);
+            inDegree[v] += delta;
+            }
+        else setOutDegree(v, outDegree[v] + delta);
+        }
+
+    void setOutDegree(final int id, final int degree)
+        {
+        clusteringSum -= clustering(id);
+        outDegrees.add(degree);    // add before removing, so the minimum and maximum needn't search far
+        outDegrees.remove(outDegree[id]);
+        outDegree[id] = degree;
+        clusteringSum += clustering(id);
+        clusteringChanges++;
+        }
+
+    void addPairs(final int id, final long delta)
+        {
+        clusteringSum -= clustering(id);
+        pairs[id] += delta;
+        clusteringSum += clustering(id);
+        clusteringChanges++;
+        }
+
+    /* Accounts for an edge from u to v (u != v) being added (sign = 1) or removed (sign = -1), in the number of edges
+       among each node's neighbors, given the Neighbors as they are without that edge.  In an undirected network this is
+       called both ways round, and the neighbors of a node are both its out- and its in-neighbors.  Returns the number of
+       nodes with edges to both u and v. */
+    int link(final int u, final int v, final int sign)
+        {
+        // every node w with edges to both u and v now has one more (or one fewer) edge among its neighbors
+        Neighbors small = in[u];
+        Neighbors large = in[v];
+        if (small.size > large.size) { small = in[v]; large = in[u]; }
+        final int[] keys = small.keys;
+        int common = 0;
+        for(int s = 0; s < keys.length; s++)
+            if (keys[s] != 0 && large.get(keys[s] - 1) > 0)
+                {
+                addPairs(keys[s] - 1, sign);
+                common++;
+                }
+
+        // if this is u's first (or last) edge to v, then v joins (or leaves) u's neighbors, along with its edges to and from them
+        if (out[u].get(v) == 0)
+            {
+            final Neighbors ou = out[u];
+            final Neighbors ov = out[v];
+            final Neighbors iv = in[v];
+            long count = 0;
+            if (ou.size <= ov.size + iv.size)
+                {
+                final int[] k = ou.keys;
+                for(int s = 0; s < k.length; s++)
+                    if (k[s] != 0)
+                        count += ov.get(k[s] - 1) + iv.get(k[s] - 1);
+                }
+            else    // look from v's side instead
+                {
+                final int[] k = ov.keys;
+                final int[] c = ov.counts;
+                for(int s = 0; s < k.length; s++)
+                    if (k[s] != 0 && ou.get(k[s] - 1) > 0)
+                        count += c[s];
+                final int[] k2 = iv.keys;
+                final int[] c2 = iv.counts;
+                for(int s = 0; s < k2.length; s++)
+                    if (k2[s] != 0 && ou.get(k2[s] - 1) > 0)
+                        count += c2[s];
+                }
+            if (count != 0) addPairs(u, sign * count);
+            }
+        return common;
+        }
+
+    boolean adjacent(final int u, final int v)
+        {
+        return out[u].get(v) > 0 || in[u].get(v) > 0;
+        }
+
+    /* Searches breadth-first from both u and v at once, ignoring the direction of edges, for a path between them, always
+       growing whichever search has found fewer nodes.  Returns false if it gives up after looking at SEARCH_LIMIT
+       neighbors, or if either search runs out of nodes, in which case there is no such path. */
+    boolean reachable(final int u, final int v)
+        {
+        if (searchStamp >= Integer.MAX_VALUE - 2)
+            {
+            Arrays.fill(seen, 0);
+            searchStamp = 0;
+            }
+        searchStamp += 2;
+        final int stampU = searchStamp - 1;
+        final int stampV = searchStamp;
+        queueU.clear();
+        queueV.clear();
+        queueU.add(u);
+        queueV.add(v);
+        seen[u] = stampU;
+        seen[v] = stampV;
+        int headU = 0;
+        int headV = 0;
+        int looked = 0;
+        while(headU < queueU.numObjs && headV < queueV.numObjs)
+            {
+            final boolean fromU = (queueU.numObjs <= queueV.numObjs);
+            final IntBag queue = (fromU ? queueU : queueV);
+            final int mine = (fromU ? stampU : stampV);
+            final int theirs = (fromU ? stampV : stampU);
+            final int x = queue.objs[fromU ? headU++ : headV++];
+            for(int side = 0; side < (directed ? 2 : 1); side++)
+                {
+                final int[] keys = (side == 0 ? out[x] : in[x]).keys;
+                for(int s = 0; s < keys.length; s++)
+                    {
+                    if (keys[s] == 0) continue;
+                    final int y = keys[s] - 1;
+                    if (seen[y] == theirs) return true;
+                    if (++looked > SEARCH_LIMIT) return false;
+                    if (seen[y] != mine)
+                        {
+                        seen[y] = mine;
+                        queue.add(y);
+                        }
+                    }
+                }
+            }
+        return false;
+        }
+
+    int find(int id)
+        {
+        while(parent[id] != id)
+            {
+            parent[id] = parent[parent[id]];    // path halving
+            id = parent[id];
+            }
+        return id;
+        }
+
+    void union(final int u, final int v)
+        {
+        int a = find(u);
+        int b = find(v);
+        if (a == b) return;
+        if (size[a] < size[b]) { int temp = a; a = b; b = temp; }
+        parent[b] = a;
+        size[a] += size[b];
+        numComponents--;
+        if (size[a] > largestComponent) largestComponent = size[a];
+        }
+
+    void rebuildComponents()
+        {
+        numComponents = 0;
+        largestComponent = 0;
+        for(int id = 0; id < numIds; id++)
+            if (nodes[id] != null)
+                {
+                parent[id] = id;
+                size[id] = 1;
+                numComponents++;
+                largestComponent = 1;
+                }
+        for(int id = 0; id < numIds; id++)
+            if (nodes[id] != null)
+                {
+                final int[] keys = out[id].keys;
+                for(int s = 0; s < keys.length; s++)
+                    if (keys[s] != 0)
+                        union(id, keys[s] - 1);
+                }
+        componentsStale = false;
+        }
+
+
+    /** Counts the edges from a node to each of its neighbors, in an open-addressed hash table keyed by id + 1,
+        with 0 marking an empty slot. */
+    static class Neighbors implements java.io.Serializable
+        {
+        private static final long serialVersionUID = 1;
+
+        int[] keys = new int[4];
+        int[] counts = new int[4];
+        int size;
+
+        static int hash(final int key)
+            {
+            int h = key * 0x9E3779B9;
+            return h ^ (h >>> 16);
+            }
+
+        /* Returns the slot holding id, or the empty slot where it would go. */
+        int slot(final int id)
+            {
+            final int mask = keys.length - 1;
+            final int key = id + 1;
+            int s = hash(key) & mask;
+            while(keys[s] != 0 && keys[s] != key)
+                s = (s + 1) & mask;
+            return s;
+            }
+
+        int get(final int id)
+            {
+            return counts[slot(id)];
+            }
+
+        void increment(final int id)
+            {
+            int s = slot(id);
+            if (keys[s] == 0)
+                {
+                if ((size + 1) * 2 > keys.length)
+                    {
+                    resize(keys.length * 2);
+                    s = slot(id);
+                    }
+                keys[s] = id + 1;
+                size++;
+                }
+            counts[s]++;
+            }
+
+        void decrement(final int id)
+            {
+            int s = slot(id);
+            if (--counts[s] > 0) return;
+            // remove the key, shifting back any later keys in its run which would no longer be found
+            final int mask = keys.length - 1;
+            int t = s;
+            while(true)
+                {
+                t = (t + 1) & mask;
+                if (keys[t] == 0) break;
+                final int home = hash(keys[t]) & mask;
+                if (s < t ? (home <= s || home > t) : (home <= s && home > t))
+                    {
+                    keys[s] = keys[t];
+                    counts[s] = counts[t];
+                    s = t;
+                    }
+                }
+            keys[s] = 0;
+            counts[s] = 0;
+            size--;
+            if (size * 8 < keys.length && keys.length > 4)
+                resize(keys.length / 2);
+            }
+
+        void resize(final int capacity)
+            {
+            final int[] oldKeys = keys;
+            final int[] oldCounts = counts;
+            keys = new int[capacity];
+            counts = new int[capacity];
+            for(int s = 0; s < oldKeys.length; s++)
+                if (oldKeys[s] != 0)
+                    {
+                    int t = slot(oldKeys[s] - 1);
+                    keys[t] = oldKeys[s];
+                    counts[t] = oldCounts[s];
+                    }
+            }
+        }
+
+
+    /** How many nodes have each degree, with running totals for the mean and variance. */
+    static class Histogram implements java.io.Serializable
+        {
+        private static final long serialVersionUID = 1;
+
+        int[] counts = new int[16];
+        int numValues;
+        long sum;
+        long sumSquares;
+        int min;
+        int max;
+
+        int get(final int degree)
+            {
+            return (degree >= 0 && degree < counts.length ? counts[degree] : 0);
+            }
+
+        void add(final int degree)
+            {
+            if (degree >= counts.length)
+                counts = Arrays.copyOf(counts, Math.max(degree + 1, counts.length * 2));
+            counts[degree]++;
+            if (numValues == 0 || degree < min) min = degree;
+            if (numValues == 0 || degree > max) max = degree;
+            numValues++;
+            sum += degree;
+            sumSquares += (long)degree * degree;
+            }
+
+        void remove(final int degree)
+            {
+            counts[degree]--;
+            numValues--;
+            sum -= degree;
+            sumSquares -= (long)degree * degree;
+            if (numValues == 0) { min = 0; max = 0; return; }
+            // degrees change by one at a time, and the new one is added first, so these rarely go far
+            while(counts[min] == 0) min++;
+            while(counts[max] == 0) max--;
+            }
+
+        double getMean()
+            {
+            return (numValues == 0 ? 0 : sum / (double)numValues);
+            }
+
+        double getVariance()
+            {
+            final double n = numValues;
+            return (sumSquares * n - (double)sum * sum) / (n * (n - 1));
+            }
+        }
+    }
@@ -0,0 +1,274 @@
+/*
+  Copyright 2019 by Sean Luke and George Mason University
+  Licensed under the Academic Free License version 3.0
+  See the file "LICENSE" for more information
+*/
+
+package sim.field.network.stats;
+import sim.field.network.*;
+import sim.util.*;
+import java.util.*;
+
+/**
+   A frozen, compact copy of the topology of a Network, for statistics which traverse it many times.  Nodes are
+   numbered as they were in the Network's allNodes Bag when the snapshot was made.  The edges leaving node i are numbered
+   outStart[i] through outStart[i+1]-1, and edge e goes to node outTarget[e] with the weight outWeight[e] given by an
+   EdgeMetric: this is the compressed sparse row (CSR) form of the adjacency matrix.  Likewise the edges entering node i
+   are numbered inStart[i] through inStart[i+1]-1, and edge e comes from node inSource[e] with weight inWeight[e]: the
+   compressed sparse column (CSC) form.  If the EdgeMetric is null or a UnitEdgeMetric, every weight is 1, and outWeight
+   and inWeight are null rather than full of 1s.
+
+   <p>In an undirected Network each edge leaves, and enters, both of its nodes, just as it appears in both nodes'
+   getEdgesOut(...) Bags.  So the in-arrays are simply the out-arrays, and a self-loop shows up twice.
+
+   <p>A snapshot is built in one pass over the Network, looking up the node at the far end of each edge just once, and then
+   needs no hashing at all.  It takes 4 bytes per edge, plus 8 if the edges are weighted (twice that in directed networks),
+   as opposed to the n<sup>2</sup> references of Network.getAdjacencyMatrix().  Later changes to the Network are not reflected
+   in the snapshot: make a new one.  A snapshot of an unweighted CompactNetwork is copied straight from its arrays.
+*/
+
+public class NetworkSnapshot implements java.io.Serializable
+    {
+    private static final long serialVersionUID = 1;
+
+    /** Whether the Network was directed. */
+    public final boolean directed;
+    /** The nodes, indexed as in the Network's allNodes Bag. */
+    public final Object[] nodes;
+    public final int numNodes;
+
+    public final int[] outStart;
+    public final int[] outTarget;
+    public final double[] outWeight;
+
+    public final int[] inStart;
+    public final int[] inSource;
+    public final double[] inWeight;
+
+    /** Takes a snapshot of the network, with every edge having a weight of 1. */
+    public NetworkSnapshot(final Network network)
+        {
+        this(network, null);
+        }
+
+    /** Takes a snapshot of the network, with edge weights given by the metric. */
+    public NetworkSnapshot(final Network network, final EdgeMetric metric)
+        {
+        directed = network.isDirected();
+        numNodes = network.allNodes.numObjs;
+        nodes = Arrays.copyOf(network.allNodes.objs, numNodes);
+        boolean weighted = (metric != null && !(metric instanceof UnitEdgeMetric));
+
+        if (network instanceof CompactNetwork && !weighted)
+            {
+            // read the topology straight out of its arrays rather than making an Edge for each edge
+            CompactNetwork compact = (CompactNetwork)network;
+            outStart = new int[numNodes + 1];
+            for(int i = 0; i < numNodes; i++)
+                outStart[i + 1] = outStart[i] + compact.getOutDegree(i);
+            outTarget = new int[outStart[numNodes]];
+            outWeight = null;
+            for(int i = 0; i < numNodes; i++)
+                {
+                int e = outStart[i];
+                for(int f = compact.outStart[i]; f < compact.outStart[i + 1]; f++)
+                    outTarget[e++] = compact.target[f];
+                if (!directed)
+                    for(int k = compact.inStart[i]; k < compact.inStart[i + 1]; k++)
+                        outTarget[e++] = compact.getFrom(compact.inEdge[k]);
+                }
+            if (directed)
+                {
+                inStart = Arrays.copyOf(compact.inStart, numNodes + 1);
+                inSource = new int[compact.numEdges];
+                for(int k = 0; k < compact.numEdges; k++)
+                    inSource[k] = compact.getFrom(compact.inEdge[k]);
+                }
+            else
+                {
+                inStart = outStart;
+                inSource = outTarget;
+                }
+            inWeight = null;
+            return;
+            }
+
+        Bag[] edges = new Bag[numNodes];
+        outStart = new int[numNodes + 1];
+        for(int i = 0; i < numNodes; i++)
+            {
+            edges[i] = network.getEdgesOut(nodes[i]);
+            outStart[i + 1] = outStart[i] + edges[i].numObjs;
+            }
+        int numArcs = outStart[numNodes];
+        outTarget = new int[numArcs];
+        outWeight = (weighted ? new double[numArcs] : null);
+        for(int i = 0; i < numNodes; i++)
+            {
+            Object node = nodes[i];
+            Object[] objs = edges[i].objs;
+            for(int j = 0, e = outStart[i]; e < outStart[i + 1]; j++, e++)
+                {
+                Edge edge = (Edge)(objs[j]);
+                outTarget[e] = network.getNodeIndex(edge.getOtherNode(node));
+                if (weighted) outWeight[e] = metric.getWeight(edge);
+                }
+            }
+
+        if (!directed)
+            {
+            inStart = outStart;
+            inSource = outTarget;
+            inWeight = outWeight;
+            }
+        else    // transpose the out-edges by counting sort on their targets
+            {
+            inStart = new int[numNodes + 1];
+            for(int e = 0; e < numArcs; e++)
+                inStart[outTarget[e] + 1]++;
+            for(int i = 0; i < numNodes; i++)
+                inStart[i + 1] += inStart[i];
+            inSource = new int[numArcs];
+            inWeight = (weighted ? new double[numArcs] : null);
+            int[] next = Arrays.copyOf(inStart, numNodes);
+            for(int i = 0; i < numNodes; i++)
+                for(int e = outStart[i]; e < outStart[i + 1]; e++)
+                    {
+                    int f = next[outTarget[e]]++;
+                    inSource[f] = i;
+                    if (weighted) inWeight[f] = outWeight[e];
+                    }
+            }
+        }
+
+    /** Returns the number of edges, counting each undirected edge once. */
+    public int getNumEdges()
+        {
+        return (directed ? outTarget.length : outTarget.length / 2);
+        }
+
+    /** Returns true if every edge has a weight of 1, so distances are simply numbers of hops. */
+    public boolean isUnweighted()
+        {
+        return outWeight == null;
+        }
+
+    public int getOutDegree(final int node) { return outStart[node + 1] - outStart[node]; }
+
+    public int getInDegree(final int node) { return inStart[node + 1] - inStart[node]; }
+
+    /** Returns the lengths of the shortest paths from the source node to every node, or Double.POSITIVE_INFINITY
+        for nodes which cannot be reached, indexed as in the Network's allNodes Bag.  This is a breadth-first search
+        if the snapshot is unweighted, else Dijkstra's algorithm, so weights ought not to be negative.  If result is
+        not null, it is filled and returned, else a new array is. */
+    public double[] getShortestPaths(final int source, final double[] result)
+        {
+        return search(source, result, false, null, null);
+        }
+
+    /** Returns the lengths of the shortest paths from every node to the target node, or Double.POSITIVE_INFINITY
+        for nodes which cannot reach it, following the edges backwards.  Otherwise the same as getShortestPaths(...). */
+    public double[] getShortestPathsTo(final int target, final double[] result)
+        {
+        return search(target, result, true, null, null);
+        }
+
+    /* Searches from the source along the out-edges, or along the in-edges if reverse is true.  queue and position are
+       workspace arrays of length numNodes, or null to allocate them. */
+    double[] search(final int source, double[] result, final boolean reverse, int[] queue, int[] position)
+        {
+        final int[] start = (reverse ? inStart : outStart);
+        final int[] other = (reverse ? inSource : outTarget);
+        final double[] weight = (reverse ? inWeight : outWeight);
+        if (result == null) result = new double[numNodes];
+        if (queue == null) queue = new int[numNodes];
+        Arrays.fill(result, Double.POSITIVE_INFINITY);
+        result[source] = 0;
+        if (weight == null)
+            {
+            queue[0] = source;
+            int tail = 1;
+            for(int head = 0; head < tail; head++)
+                {
+                int v = queue[head];
+                double d = result[v] + 1;
+                for(int e = start[v]; e < start[v + 1]; e++)
+                    {
+                    int w = other[e];
+                    if (result[w] == Double.POSITIVE_INFINITY)
+                        {
+                        result[w] = d;
+                        queue[tail++] = w;
+                        }
+                    }
+                }
+            }
+        else
+            {
+            // queue is a binary heap of nodes keyed by distance, and position[v] is v's place in it
+            if (position == null) position = new int[numNodes];
+            Arrays.fill(position, -1);
+            int size = 0;
+            queue[size] = source;
+            position[source] = size++;
+            while(size > 0)
+                {
+                int v = queue[0];
+                position[v] = -2;   // done
+                size--;
+                if (size > 0) siftDown(queue, position, result, queue[size], 0, size);
+                double d = result[v];
+                for(int e = start[v]; e < start[v + 1]; e++)
+                    {
+                    int w = other[e];
+                    double dw = d + weight[e];
+                    if (dw < result[w])
+                        {
+                        result[w] = dw;
+                        if (position[w] == -1)
+                            {
+                            queue[size] = w;
+                            position[w] = size++;
+                            }
+                        siftUp(queue, position, result, w, position[w]);
+                        }
+                    }
+                }
+            }
+        return result;
+        }
+
+    static void siftUp(final int[] heap, final int[] position, final double[] key, final int v, int i)
+        {
+        double k = key[v];
+        while(i > 0)
+            {
+            int parent = (i - 1) >>> 1;
+            int p = heap[parent];
+            if (key[p] <= k) break;
+            heap[i] = p;
+            position[p] = i;
+            i = parent;
+            }
+        heap[i] = v;
+        position[v] = i;
+        }
+
+    static void siftDown(final int[] heap, final int[] position, final double[] key, final int v, int i, final int size)
+        {
+        double k = key[v];
+        while(true)
+            {
+            int child = 2 * i + 1;
+            if (child >= size) break;
+            if (child + 1 < size && key[heap[child + 1]] < key[heap[child]]) child++;
+            int c = heap[child];
+            if (k <= key[c]) break;
+            heap[i] = c;
+            position[c] = i;
+            i = child;
+            }
+        heap[i] = v;
+        position[v] = i;
+        }
+    }
@@ -8,6 +8,7 @@ package sim.field.network.stats;
 import sim.field.network.*;
 import sim.util.*;
 import java.util.*;
+import java.util.concurrent.atomic.*;
 
 /**
    Contributor:  Martin Pokropp <mapokropp@googlemail.com> 
@@ -110,47 +111,7 @@ public class NetworkStatistics
     */
     public static double[] getShortestPaths( final Network network, final Object startNode, final EdgeMetric computer )
         {
-        double[] result = new double[network.allNodes.numObjs];
-        for( int i = 0 ; i < result.length ; i++ )
-            result[i] = Double.POSITIVE_INFINITY;
-        DoubleHeap heap = new DoubleHeap();
-//              System.out.println("***" + startNode);
-        heap.add( startNode, 0.0 );
-
-        // TODO: we need to check this thing again!
-        // extract nodes from the heap, until the heap becomes empty.  to make the code easier, we do not
-        // modify the information on the heap, but we rather make sure the information is not too old.  that is,
-        // once we pop a node from the heap, we verify that it has not already been visited with a lower cost
-        // (in which case, we just discard the current information).  this incurs some extra costs (i am not sure
-        // exactly how slower this can make things go), but i think the costs are not that significant.  once we
-        // check this, the same check/modifications will need to be performed to the getShortestPath and
-        // johnsonShortestPathsMatrix methods, where I basically just copied/pasted the code.
-        while( !heap.isEmpty() )
-            {
-            final double dist = heap.getMinKey();
-            final Object node = heap.extractMin();
-            int nodeIndex = network.getNodeIndex(node);
-            if( result[nodeIndex] <= dist ) // if node was already visited and it was closer than it is now, skip it
-                continue;
-            result[nodeIndex] = dist;
-            final Bag edgesOut = network.getEdgesOut(node);
-            for( int i = 0 ; i < edgesOut.numObjs ; i++ )
-                {
-                final Edge edge = (Edge)(edgesOut.objs[i]);
-                int toNode = network.getNodeIndex(((Edge)(edgesOut.objs[i])).getOtherNode(node));
-//System.out.println("%%%");                            
-//System.out.println("" + edge + " " + nodeIndex + " " + ((Edge)(edgesOut.objs[i])).getOtherNode(node) + " " + toNode + " " + network.allNodes.numObjs);
-//System.out.println("!!!" + java.lang.Thread.currentThread());
-                final double newDist = dist + computer.getWeight(edge);
-                if( result[toNode] > newDist )
-                    {
-//                                      System.out.println("+++" + network.allNodes.objs[toNode]);
-                    heap.add( network.allNodes.objs[toNode], newDist );
-                    }
-                }
-            }
-
-        return result;
+        return new NetworkSnapshot(network, computer).getShortestPaths(network.getNodeIndex(startNode), null);
         }
 
     /**
@@ -197,38 +158,42 @@ public class NetworkStatistics
     public static double getClusteringCoefficient( final Network network )
         {
         double clusteringCoefficient = 0;
-        int N = getNumberNodes(network);
-        boolean[] allFalse = new boolean[N];
-        HashSet neighbors = new HashSet();
+        final NetworkSnapshot snapshot = new NetworkSnapshot(network);
+        final int N = snapshot.numNodes;
+        final int[] start = snapshot.outStart;
+        final int[] target = snapshot.outTarget;
+        final int[] mark = new int[N];  // mark[j] == i+1 if j is a neighbor of i
+        final int[] neighbors = new int[N];
         for( int i = 0 ; i < N ; i++ )
             {
-            // collect all the neighbors of a node into a single hash set
-            neighbors.clear();
-            final Bag edgesOut = network.getEdgesOut(network.allNodes.objs[i]);
-            for( int j = 0 ; j < edgesOut.numObjs ; j++ )
+            // collect all the distinct neighbors of a node
+            int numNeighbors = 0;
+            for( int e = start[i] ; e < start[i+1] ; e++ )
                 {
-                Object toNode = ((Edge)(edgesOut.objs[j])).getOtherNode(network.allNodes.objs[i]);
-                if( !toNode.equals(network.allNodes.objs[i]) )
-                    neighbors.add(toNode);
+                final int toNode = target[e];
+                if( toNode != i && mark[toNode] != i+1 )
+                    {
+                    mark[toNode] = i+1;
+                    neighbors[numNeighbors++] = toNode;
+                    }
                 }
 
             // go through the neighbors, and compute how many pairs of them have direct edges connecting them
             int pairs = 0;
-            Iterator iter = neighbors.iterator();
-            while( iter.hasNext() )
+            for( int j = 0 ; j < numNeighbors ; j++ )
                 {
-                Object neigh = iter.next();
-                final Bag edgesOutOfNeigh = network.getEdgesOut(neigh);
-                for( int j = 0 ; j < edgesOutOfNeigh.numObjs ; j++ )
+                final int neigh = neighbors[j];
+                for( int e = start[neigh] ; e < start[neigh+1] ; e++ )
                     {
-                    Object toNode = ((Edge)(edgesOutOfNeigh.objs[j])).getOtherNode(neigh);
-                    if( (!toNode.equals(network.allNodes.objs[i])) && (!toNode.equals(neigh)) && neighbors.contains(toNode) )
+                    final int toNode = target[e];
+                    if( toNode != i && toNode != neigh && mark[toNode] == i+1 )
                         pairs++;
                     }
                 }
-            if( edgesOut.numObjs >= 2 )
+            final int degree = start[i+1] - start[i];
+            if( degree >= 2 )
                 //Gabriel: "An object must have at least two neighbors to calculate the clustering coefficient"
-                clusteringCoefficient += (double)pairs/(double)(edgesOut.numObjs*(edgesOut.numObjs-1));
+                clusteringCoefficient += (double)pairs/(double)(degree*(degree-1));
             }
         return clusteringCoefficient/N;
         }
@@ -334,15 +299,10 @@ public class NetworkStatistics
                 result[i][j] = Double.POSITIVE_INFINITY;
 
         // initialize the distance matrix with the weights of the existing edges
+        final NetworkSnapshot snapshot = new NetworkSnapshot(network, computer);
         for( int i = 0 ; i < N ; i++ )
-            {
-            Bag bag = network.getEdgesOut(network.allNodes.objs[i]);
-            for( int j = 0 ; j < bag.numObjs ; j++ )
-                {
-                Edge edge = (Edge)(bag.objs[j]);
-                result[i][network.getNodeIndex(edge.getOtherNode(network.allNodes.objs[i]))] = computer.getWeight(edge);
-                }
-            }
+            for( int e = snapshot.outStart[i] ; e < snapshot.outStart[i+1] ; e++ )
+                result[i][snapshot.outTarget[e]] = (snapshot.outWeight == null ? 1.0 : snapshot.outWeight[e]);
 
         // initialize the distance matrix with 0s on the main diagonal
         for( int i = 0 ; i < N ; i++ )
@@ -367,100 +327,128 @@ public class NetworkStatistics
     */
     public static double[][] johnsonShortestPathsMatrix( final Network network, final EdgeMetric computer )
         {
-        final int N = getNumberNodes(network);
-        double[][] result = new double[N][N];
-        DoubleHeap heap = new DoubleHeap();
+        final NetworkSnapshot snapshot = new NetworkSnapshot(network, computer);
+        final int N = snapshot.numNodes;
+        double[][] result = new double[N][];
         for( int i = 0 ; i < N ; i++ )
-            {
-            for( int j = 0 ; j < result.length ; j++ )
-                result[i][j] = Double.POSITIVE_INFINITY;
-            heap.clear();
-            heap.add( network.allNodes.objs[i], 0.0 );
-
-            while( !heap.isEmpty() )
-                {
-                final double dist = heap.getMinKey();
-                final Object node = heap.extractMin();
-                int nodeIndex = network.getNodeIndex(node);
-                if( result[i][nodeIndex] > -1 && result[i][nodeIndex] <= dist ) // if node was already visited and it was closer than it is now, skip it
-                    continue;
-                result[i][nodeIndex] = dist;
-                final Bag edgesOut = network.getEdgesOut(node);
-                for( int j = 0 ; j < edgesOut.numObjs ; j++ )
-                    {
-                    final Edge edge = (Edge)(edgesOut.objs[j]);
-                    int toNode = network.getNodeIndex(((Edge)(edgesOut.objs[j])).getOtherNode(node));
-                    final double newDist = dist + computer.getWeight(edge);
-                    if( result[i][toNode] > newDist )
-                        heap.add( network.allNodes.objs[toNode], newDist );
-                    }
-                }
-
-            result[i][i] = 0;
-            }
+            result[i] = snapshot.getShortestPaths(i, null);
         return result;
         }
 
     /**
        Returns the average length of the shortest path between nodes in the network.  Ignores self-loops.
+       The shortest paths from each node are summed as they are found, in parallel, so this doesn't need the
+       shortest paths matrix.
     */
     public static double getMeanShortestPath( final Network network, final EdgeMetric computer )
         {
-        try
-            {
-            double result = 0;
-            double[][] paths = getShortestPathsMatrix(network, computer);
-            int N = paths.length;
-            for( int i = 0 ; i < N ; i++ )  
-                for( int j = 0 ; j < N ; j++ )
-                    if( i != j )
-                        result += paths[i][j];
-            return result / (double)(N*(N-1));
-            }
-        catch (OutOfMemoryError e)
+        final int N = getNumberNodes(network);
+        final double[] sums = reduceShortestPaths(new NetworkSnapshot(network, computer), new ShortestPathsReducer()
             {
-            throw new RuntimeException("You ran out of memory!  getMeanShortestPath(...) has large memory requirements and may " +
-                "not be appropriate for big networks.  You should try getLargeNetworkMeanShortestPath(...) instead.", e);
-            }
+            public double reduce( final int node, final double[] distances )
+                {
+                double sum = 0;
+                for( int j = 0 ; j < distances.length ; j++ )
+                    if( j != node )
+                        sum += distances[j];
+                return sum;
+                }
+            }, false, 0);
+        double result = 0;
+        for( int i = 0 ; i < N ; i++ )
+            result += sums[i];
+        return result / ((double)N * (N-1));
         }
 
 
     /**
        Returns the average length of the shortest path between nodes in the network: memory-constrained version. Ignores self-loops. 
-       This method can be used if your machine does not provide enough heap memory to store the shortest 
-       paths matrix required in NetworkStatistics.getMeanShortestPath above (which is much faster if enough memory 
-       is provided). The problem is likely to occur with very large networks (some > 20k nodes??).
+       Now that getMeanShortestPath(...) no longer builds the shortest paths matrix, this simply calls it.
            
        @author  Martin Pokropp <mapokropp@googlemail.com>
     */
     public static double getLargeNetworkMeanShortestPath( final Network network, final EdgeMetric computer )
         {
-        double result = 0;
-        Bag nodes = network.getAllNodes();
-        int N = nodes.numObjs;
-        if(!network.isDirected())
+        return getMeanShortestPath(network, computer);
+        }
+
+
+    /**
+       Computes the shortest paths from every node in the snapshot (or to every node, if reverse is true) with a breadth-first
+       search or with Dijkstra's algorithm, and returns the reducer's value for each node, indexed as in the Network's allNodes Bag.
+       The nodes are shared out among the given number of threads (0 means one per processor).  Each thread reuses its own distances
+       and workspace from node to node, so memory is O(n) per thread rather than the O(n^2) of the shortest paths matrix.
+    */
+    public static double[] reduceShortestPaths( final NetworkSnapshot snapshot, final ShortestPathsReducer reducer, final boolean reverse, int threads )
+        {
+        final int N = snapshot.numNodes;
+        final double[] result = new double[N];
+        if( threads <= 0 )
+            threads = Runtime.getRuntime().availableProcessors();
+        if( threads > N )
+            threads = N;
+        if( N == 0 )
+            return result;
+
+        final AtomicInteger next = new AtomicInteger(0);
+        final Throwable[] errors = new Throwable[threads];
+        final Thread[] workers = new Thread[threads];
+        for( int t = 0 ; t < threads ; t++ )
             {
-            for( int i = 0; i < N - 1; i++ )
+            final int thread = t;
+            workers[t] = new Thread(new Runnable()
                 {
-                Object node = (Object) nodes.get(i);
-                double[] paths = getShortestPaths( network, node, computer );
-                for( int j = i + 1 ; j < N ; j++ )
-                    result += paths[j];
-                }
-            return result / ( N * (N - 1) / 2d );
+                public void run()
+                    {
+                    try
+                        {
+                        final double[] distances = new double[N];
+                        final int[] queue = new int[N];
+                        final int[] position = (snapshot.isUnweighted() ? null : new int[N]);
+                        while( true )
+                            {
+                            // take the next few nodes; small batches keep the threads evenly loaded
+                            final int start = next.getAndAdd(SOURCES_PER_BATCH);
+                            if( start >= N )
+                                break;
+                            final int end = Math.min(N, start + SOURCES_PER_BATCH);
+                            for( int i = start ; i < end ; i++ )
+                                result[i] = reducer.reduce(i, snapshot.search(i, distances, reverse, queue, position));
+                            }
+                        }
+                    catch (Throwable e) { errors[thread] = e; }
+                    }
+                });
             }
+        if( threads == 1 )
+            workers[0].run();
         else
             {
-            for( int i = 0; i < N; i++ )
+            for( int t = 0 ; t < threads ; t++ )
+                workers[t].start();
+            for( int t = 0 ; t < threads ; t++ )
                 {
-                Object node = (Object) nodes.get(i);
-                double[] paths = getShortestPaths( network, node, computer );
-                for( int j = 0 ; j < N ; j++ )
-                    if( i != j )
-                        result += paths[j];
+                try { workers[t].join(); }
+                catch (InterruptedException e) { throw new RuntimeException("Interrupted while computing shortest paths", e); }
                 }
-            return result / (double) ( N * (N - 1) );
             }
+        for( int t = 0 ; t < threads ; t++ )
+            if( errors[t] != null )
+                throw new RuntimeException("Error while computing shortest paths", errors[t]);
+        return result;
+        }
+
+    static final int SOURCES_PER_BATCH = 16;
+
+    /**
+       Returns the eccentricity of every node, indexed as in the Network's allNodes Bag, computed in parallel.
+    */
+    public static double[] getEccentricities( final Network network, final EdgeMetric computer )
+        {
+        return reduceShortestPaths(new NetworkSnapshot(network, computer), new ShortestPathsReducer()
+            {
+            public double reduce( final int node, final double[] distances ) { return max(distances); }
+            }, false, 0);
         }
 
 
@@ -475,7 +463,11 @@ public class NetworkStatistics
         final int N = getNumberNodes(network);
         if( N == 0 )
             return 0;
-        double[] dist = getShortestPaths( network, node, computer );
+        return max( getShortestPaths( network, node, computer ) );
+        }
+
+    static double max( final double[] dist )
+        {
         double max = dist[0];
         for( int i = 1 ; i < dist.length ; i++ )
             if( max < dist[i] )
@@ -491,10 +483,11 @@ public class NetworkStatistics
         final int N = getNumberNodes(network);
         if( N == 0 || N == 1 )
             return 0;
+        final double[] eccentricities = getEccentricities( network, computer );
         double min = Double.POSITIVE_INFINITY;
         for( int nn = 0 ; nn < N ; nn++ )
             {
-            double dist = getNodeEccentricity( network, network.allNodes.objs[nn], computer );
+            double dist = eccentricities[nn];
             if( min > dist )
                 min = dist;
             }
@@ -509,10 +502,11 @@ public class NetworkStatistics
         final int N = getNumberNodes(network);
         if( N == 0 || N == 1 )
             return 0;
+        final double[] eccentricities = getEccentricities( network, computer );
         double max = -1;
         for( int nn = 0 ; nn < N ; nn++ )
             {
-            double dist = getNodeEccentricity( network, network.allNodes.objs[nn], computer );
+            double dist = eccentricities[nn];
             if( max < dist )
                 max = dist;
             }
@@ -613,17 +607,14 @@ public class NetworkStatistics
                 }
 
         // initialize the distance matrix with the weights of the existing edges
+        final NetworkSnapshot snapshot = new NetworkSnapshot(network, computer);
         for( int i = 0 ; i < N ; i++ )
-            {
-            Bag bag = network.getEdgesOut(network.allNodes.objs[i]);
-            for( int j = 0 ; j < bag.numObjs ; j++ )
+            for( int e = snapshot.outStart[i] ; e < snapshot.outStart[i+1] ; e++ )
                 {
-                Edge edge = (Edge)(bag.objs[j]);
-                final int k = network.getNodeIndex(edge.getOtherNode(network.allNodes.objs[i]));
-                result[i][k] = computer.getWeight(edge);
+                final int k = snapshot.outTarget[e];
+                result[i][k] = (snapshot.outWeight == null ? 1.0 : snapshot.outWeight[e]);
                 number[i][k]++;
                 }
-            }
 
         // initialize the distance matrix with 0s on the main diagonal
         for( int i = 0 ; i < N ; i++ )
@@ -668,17 +659,14 @@ public class NetworkStatistics
                 }
 
         // initialize the distance matrix with the weights of the existing edges
+        final NetworkSnapshot snapshot = new NetworkSnapshot(network, computer);
         for( int i = 0 ; i < N ; i++ )
-            {
-            Bag bag = network.getEdgesOut(network.allNodes.objs[i]);
-            for( int j = 0 ; j < bag.numObjs ; j++ )
+            for( int e = snapshot.outStart[i] ; e < snapshot.outStart[i+1] ; e++ )
                 {
-                Edge edge = (Edge)(bag.objs[j]);
-                final int k = network.getNodeIndex(edge.getOtherNode(network.allNodes.objs[i]));
-                result[i][k] = computer.getWeight(edge);
+                final int k = snapshot.outTarget[e];
+                result[i][k] = (snapshot.outWeight == null ? 1.0 : snapshot.outWeight[e]);
                 number[i][k]++;
                 }
-            }
 
         // initialize the distance matrix with 0s on the main diagonal
         for( int i = 0 ; i < N ; i++ )
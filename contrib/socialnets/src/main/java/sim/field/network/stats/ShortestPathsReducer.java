@@ -0,0 +1,21 @@
+/*
+  Copyright 2019 by Sean Luke and George Mason University
+  Licensed under the Academic Free License version 3.0
+  See the file "LICENSE" for more information
+*/
+
+package sim.field.network.stats;
+
+/**
+   Boils the lengths of the shortest paths from one node to every node down to a single number, such as the node's
+   eccentricity or the sum of its distances.  NetworkStatistics.reduceShortestPaths(...) hands a reducer the distances
+   from every node in turn, on several threads at once, so that all-pairs statistics never need the full matrix of distances.
+   The distances array belongs to the calling thread and is reused for its next source, so don't hold onto it, and
+   keep reduce(...) free of side effects unless they are threadsafe.
+*/
+
+public interface ShortestPathsReducer
+    {
+    /** Returns a value computed from the distances from (or to) the given node, indexed as in the Network's allNodes Bag. */
+    public double reduce( final int node, final double[] distances );
+    }
@@ -7,67 +7,140 @@
 package sim.field.network.stats.actorcentrality;
 import sim.field.network.*;
 import sim.field.network.stats.*;
+import ec.util.*;
+import java.util.*;
 
 /**
- * 
+ *
  * Actor Betweenness Centrality:
  * <ul>
- * <li>For undirected graphs (Wasserman and Faust, page 190) I count the geodesics between k and j just once 
- * (look for <code>j &lt k</code> in <code>getValue()</code>)</li>
+ * <li>For undirected graphs (Wasserman and Faust, page 190) I count the geodesics between k and j just once.</li>
  * <li>For directed graphs (Wasserman and Faust, page 201) the geodesics from k to j are different from those from j to k, hence the
- * x2 in <code>getMaxValue()</code>. I am not 100% sure about the x2 in 
+ * x2 in <code>getMaxValue()</code>. I am not 100% sure about the x2 in
  * <code>getMaxCummulativeDifference()</code></li>
  * </ul>
- * 
+ *
+ * <p>The betweenness of every node is computed up front with Brandes' algorithm (U. Brandes, "A Faster Algorithm for
+ * Betweenness Centrality", Journal of Mathematical Sociology 25(2), 2001), which needs O(n+m) memory and O(nm) time
+ * when counting hops (a breadth-first search from each node), or O(nm + n<sup>2</sup>log n) time with real-valued
+ * edge lengths such as those of the WeightedEdgeMetric (Dijkstra's algorithm from each node).  The searches from different
+ * source nodes are independent, so they are divided among several threads, each adding into its own totals.
+ * Parallel edges count as distinct paths, and nodes which cannot reach one another contribute nothing.
+ *
+ * <p>For very large networks you may instead estimate betweenness from a random sample of source nodes, scaling up the
+ * result accordingly (U. Brandes and C. Pich, "Centrality Estimation in Large Networks", International Journal of
+ * Bifurcation and Chaos 17(7), 2007).  A few hundred sources usually rank the most central nodes well.
+ *
  * @author Gabriel Catalin Balan
  */
-//TODO I believe that they say "transform the directed graph into and undirected one -by 
+//TODO I believe that they say "transform the directed graph into and undirected one -by
 //ignoring edges ij when there's no ji-, perform the standard computation and x2 the results."
 
 public class BetweennessCentrality extends FreemanNodeIndex {
-    final long[][][]g3;//g_{ikj}= # shortest paths between i and j that go through k
-    final long[][]g2;  //g_{ij} = # shortest paths between i and j 
-        
+    final double[] values;  // indexed as in network.allNodes
+
+    /** Computes the betweenness of every node, counting hops, on as many threads as there are processors. */
     public BetweennessCentrality(final Network network)
         {
-        super(network);
-        g3 = NetworkStatistics.getNumberShortestPathsWithIntermediatesMatrix(   network,
-            UnitEdgeMetric.defaultInstance,
-            0d);
-        g2 = NetworkStatistics.getNumberShortestPathsMatrix(    network, 
-            UnitEdgeMetric.defaultInstance,
-            0d);
-        //(since the weights are integer values (hops), precisison is 0)
+        this(network, UnitEdgeMetric.defaultInstance, 0d);
         }
-        
-    //note that g3[][0][0] is zero, so we are consistent with the idea that i must be distinct from k and j in g3[k][i][j];
-    public double getValue(final Object node) {
-        int index = network.getNodeIndex(node);
-        int n = network.allNodes.numObjs;
-        double sum = 0;
 
+    /** Computes the betweenness of every node, with edge lengths given by the metric, on as many threads as there are
+        processors.  Two path lengths are the same if they differ by no more than precision.  Edge lengths must be positive. */
+    public BetweennessCentrality(final Network network, final EdgeMetric metric, final double precision)
+        {
+        this(network, metric, precision, Runtime.getRuntime().availableProcessors(), 0, null);
+        }
 
-        if(network.isDirected())
-            for(int k=0;k<n;k++)
+    /** Computes the betweenness of every node, with edge lengths given by the metric, on the given number of threads.
+        Two path lengths are the same if they differ by no more than precision.  Edge lengths must be positive.
+        If samples is greater than 0 and less than the number of nodes, then only that many source nodes, chosen
+        at random without replacement using the given generator, are searched from, and the resulting betweenness
+        is an estimate. */
+    public BetweennessCentrality(final Network network, final EdgeMetric metric, final double precision,
+        int threads, final int samples, final MersenneTwisterFast random)
+        {
+        super(network);
+        final int n = network.allNodes.numObjs;
+        values = new double[n];
+        if (n == 0) return;
+
+        final int[] sources = new int[n];
+        for(int i = 0; i < n; i++)
+            sources[i] = i;
+        final int numSources = (samples > 0 && samples < n ? samples : n);
+        if (numSources < n && random == null)
+            throw new IllegalArgumentException("A random number generator is needed to sample source nodes");
+        for(int i = 0; i < numSources && numSources < n; i++)  // partial shuffle: the first numSources are our sample
+            {
+            int j = i + random.nextInt(n - i);
+            int temp = sources[i];
+            sources[i] = sources[j];
+            sources[j] = temp;
+            }
+
+        final NetworkSnapshot snapshot = new NetworkSnapshot(network, metric);
+        final boolean hops = snapshot.isUnweighted();
+        if (threads < 1) threads = 1;
+        if (threads > numSources) threads = numSources;
+        final int numThreads = threads;
+        final Searcher[] searchers = new Searcher[numThreads];
+        final Throwable[] errors = new Throwable[numThreads];
+        Thread[] workers = new Thread[numThreads];
+        for(int t = 0; t < numThreads; t++)
+            {
+            final int thread = t;
+            searchers[thread] = new Searcher(snapshot, precision);
+            workers[thread] = new Thread(new Runnable()
                 {
-                if(k==index) continue;
-                long[] g2_k = g2[k];
-                long[] g3_ki = g3[k][index];
-                for(int j=0;j<n;j++)
-                    sum  += ((double)g3_ki[j])/g2_k[j];
-                }               
+                public void run()
+                    {
+                    try
+                        {
+                        // each thread takes every numThreads-th source, so the totals don't depend on timing
+                        for(int i = thread; i < numSources; i += numThreads)
+                            searchers[thread].search(sources[i], hops);
+                        }
+                    catch (Throwable e) { errors[thread] = e; }
+                    }
+                });
+            }
+        if (numThreads == 1) workers[0].run();
         else
-            for(int k=1;k<n;k++)//I start from 1 since no j can be <0.
+            {
+            for(int t = 0; t < numThreads; t++)
+                workers[t].start();
+            for(int t = 0; t < numThreads; t++)
                 {
-                if(k==index) continue;
-                long[] g2_k = g2[k];
-                long[] g3_ki = g3[k][index];
-                for(int j=0;j<k;j++)
-                    sum  += ((double)g3_ki[j])/g2_k[j];
-                }               
-        return sum;
+                try { workers[t].join(); }
+                catch (InterruptedException e) { throw new RuntimeException("Interrupted while computing betweenness", e); }
+                }
+            }
+        for(int t = 0; t < numThreads; t++)
+            if (errors[t] != null)
+                throw new RuntimeException("Error while computing betweenness", errors[t]);
+
+        // undirected geodesics were found from both ends
+        double scale = (network.isDirected() ? 1.0 : 0.5) * n / numSources;
+        for(int t = 0; t < numThreads; t++)
+            {
+            double[] totals = searchers[t].totals;
+            for(int i = 0; i < n; i++)
+                values[i] += totals[i];
+            }
+        for(int i = 0; i < n; i++)
+            values[i] *= scale;
+        }
+
+    public double getValue(final Object node)
+        {
+        return values[network.getNodeIndex(node)];
         }
 
+    public double getValue(final int nodeIndex)
+        {
+        return values[nodeIndex];
+        }
 
     public double getMaxCummulativeDifference()
         {
@@ -77,7 +150,7 @@ public class BetweennessCentrality extends FreemanNodeIndex {
             return value;
         return .5*value;
         }
-        
+
     public double getMaxValue()
         {
         int n = network.allNodes.numObjs;
@@ -86,4 +159,176 @@ public class BetweennessCentrality extends FreemanNodeIndex {
             return value;
         return 0.5*value;
         }
+
+    /** Searches from one source node at a time, adding each node's share of the geodesics from the source into its totals.
+        All arrays are O(n), and only the entries touched by a search are cleared before the next. */
+    static class Searcher
+        {
+        final NetworkSnapshot snapshot;
+        final double precision;
+        final double[] totals;
+        final double[] distance;
+        final double[] paths;       // the number of geodesics from the source
+        final double[] dependency;  // the source's dependency on each node
+        final int[] order;          // nodes in the order they were reached (BFS) or finalized (Dijkstra)
+        final int[] heap;           // a binary heap of nodes, keyed by distance
+        final int[] position;       // each node's position in the heap, or UNSEEN or DONE
+        int numReached = 0;
+
+        static final int UNSEEN = -1;
+        static final int DONE = -2;
+
+        Searcher(final NetworkSnapshot snapshot, final double precision)
+            {
+            this.snapshot = snapshot;
+            this.precision = precision;
+            int n = snapshot.numNodes;
+            totals = new double[n];
+            distance = new double[n];
+            paths = new double[n];
+            dependency = new double[n];
+            order = new int[n];
+            heap = new int[n];
+            position = new int[n];
+            Arrays.fill(distance, Double.POSITIVE_INFINITY);
+            Arrays.fill(position, UNSEEN);
+            }
+
+        void search(final int source, final boolean hops)
+            {
+            for(int i = 0; i < numReached; i++)
+                {
+                int v = order[i];
+                distance[v] = Double.POSITIVE_INFINITY;
+                paths[v] = 0;
+                dependency[v] = 0;
+                position[v] = UNSEEN;
+                }
+            distance[source] = 0;
+            paths[source] = 1;
+            if (hops) breadthFirst(source);
+            else dijkstra(source);
+            accumulate(hops);
+            }
+
+        void breadthFirst(final int source)
+            {
+            final int[] outStart = snapshot.outStart;
+            final int[] outTarget = snapshot.outTarget;
+            order[0] = source;
+            numReached = 1;
+            for(int head = 0; head < numReached; head++)
+                {
+                int v = order[head];
+                double d = distance[v] + 1;
+                for(int e = outStart[v]; e < outStart[v + 1]; e++)
+                    {
+                    int w = outTarget[e];
+                    if (distance[w] == Double.POSITIVE_INFINITY)
+                        {
+                        distance[w] = d;
+                        order[numReached++] = w;
+                        }
+                    if (distance[w] == d)
+                        paths[w] += paths[v];
+                    }
+                }
+            }
+
+        void dijkstra(final int source)
+            {
+            final int[] outStart = snapshot.outStart;
+            final int[] outTarget = snapshot.outTarget;
+            final double[] outWeight = snapshot.outWeight;
+            numReached = 0;
+            int size = 0;
+            heap[size] = source;
+            position[source] = size++;
+            while(size > 0)
+                {
+                int v = heap[0];
+                position[v] = DONE;
+                order[numReached++] = v;
+                size--;
+                if (size > 0) siftDown(heap[size], 0, size);
+                double d = distance[v];
+                for(int e = outStart[v]; e < outStart[v + 1]; e++)
+                    {
+                    int w = outTarget[e];
+                    if (position[w] == DONE) continue;
+                    double dw = d + outWeight[e];
+                    if (dw < distance[w] - precision)
+                        {
+                        distance[w] = dw;
+                        paths[w] = paths[v];
+                        if (position[w] == UNSEEN)
+                            {
+                            heap[size] = w;
+                            position[w] = size++;
+                            }
+                        siftUp(w, position[w]);
+                        }
+                    else if (dw <= distance[w] + precision)
+                        paths[w] += paths[v];
+                    }
+                }
+            }
+
+        void siftUp(final int v, int i)
+            {
+            double d = distance[v];
+            while(i > 0)
+                {
+                int parent = (i - 1) >>> 1;
+                int p = heap[parent];
+                if (distance[p] <= d) break;
+                heap[i] = p;
+                position[p] = i;
+                i = parent;
+                }
+            heap[i] = v;
+            position[v] = i;
+            }
+
+        void siftDown(final int v, int i, final int size)
+            {
+            double d = distance[v];
+            while(true)
+                {
+                int child = 2 * i + 1;
+                if (child >= size) break;
+                if (child + 1 < size && distance[heap[child + 1]] < distance[heap[child]]) child++;
+                int c = heap[child];
+                if (d <= distance[c]) break;
+                heap[i] = c;
+                position[c] = i;
+                i = child;
+                }
+            heap[i] = v;
+            position[v] = i;
+            }
+
+        /* Walks back from the farthest nodes, handing each node's dependency to its predecessors on geodesics.  Rather than
+           storing the predecessors we recognize them among the in-edges by their distance. */
+        void accumulate(final boolean hops)
+            {
+            final int[] inStart = snapshot.inStart;
+            final int[] inSource = snapshot.inSource;
+            final double[] inWeight = snapshot.inWeight;
+            for(int i = numReached - 1; i > 0; i--)  // order[0] is the source
+                {
+                int w = order[i];
+                double d = distance[w];
+                double share = (1 + dependency[w]) / paths[w];
+                for(int e = inStart[w]; e < inStart[w + 1]; e++)
+                    {
+                    int v = inSource[e];
+                    double dv = distance[v];
+                    if (hops ? dv == d - 1 : (v != w && Math.abs(dv + inWeight[e] - d) <= precision))
+                        dependency[v] += paths[v] * share;
+                    }
+                totals[w] += dependency[w];
+                }
+            }
+        }
     }
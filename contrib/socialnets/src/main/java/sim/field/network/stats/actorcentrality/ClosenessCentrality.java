@@ -13,25 +13,27 @@ import sim.field.network.*;
  * @author Gabriel Catalin Balan
  */
 public class ClosenessCentrality extends FreemanNodeIndex {
-    final double[][] allDistances;
+    final double[] values;  // indexed as in network.allNodes
     public ClosenessCentrality(final Network network)
         {
         super(network);
-        allDistances = NetworkStatistics.getShortestPathsMatrix(network, UnitEdgeMetric.defaultInstance);               
+        // the distances from each node are summed as they are found, rather than kept in an n x n matrix
+        values = NetworkStatistics.reduceShortestPaths(new NetworkSnapshot(network), new ShortestPathsReducer()
+            {
+            public double reduce(final int node, final double[] distances)
+                {
+                double sum = 0;
+                for(int i=0;i<distances.length; i++)
+                    sum+=distances[i];
+                //I want to return 1/[Sum_{j!=i} disntance(i,j)] 
+                //but the hop distance(i, i) is 0, so I don't bother not adding it
+                return 1d/sum;
+                }
+            }, false, 0);
         }
 
     public double getValue(final Object node) {
-//              double[] distances = NetworkStatistics.getShortestPaths(network, node, UnitEdgeMetric.defaultInstance);
-
-        double[] distances = allDistances[network.getNodeIndex(node)];
-                
-        double sum = 0;
-        int n= distances.length;
-        for(int i=0;i<distances.length; i++)
-            sum+=distances[i];
-        //I want to return 1/[Sum_{j!=i} disntance(i,j)] 
-        //but the hop distance(i, i) is 0, so I don't bother not adding it
-        return 1d/sum;
+        return values[network.getNodeIndex(node)];
         }
 
     //TODO double check this, I back engineered it from the standardized value on page 186
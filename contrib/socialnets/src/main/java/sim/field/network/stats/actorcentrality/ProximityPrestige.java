@@ -19,29 +19,34 @@ import sim.field.network.*;
  * @author Gabriel Catalin Balan
  **/
 public class ProximityPrestige extends NodeIndex {
-    final double[][] allDistances;
+    final double[] values;  // indexed as in network.allNodes
     public ProximityPrestige(final Network network)
         {
         super(network);
-        allDistances = NetworkStatistics.getShortestPathsMatrix(network, UnitEdgeMetric.defaultInstance);               
+        final int n= network.allNodes.numObjs;
+        // search backwards from each node i to find the distances dji from every other node
+        values = NetworkStatistics.reduceShortestPaths(new NetworkSnapshot(network), new ShortestPathsReducer()
+            {
+            public double reduce(final int i, final double[] distances)
+                {
+                int Ii = 0;
+                double sum = 0;
+                for(int j=0;j<n; j++)
+                    {
+                    double dji = distances[j];
+                    if(dji!=Double.POSITIVE_INFINITY)
+                        Ii++;
+                    sum+=dji;
+                    }
+                //I want to return 1/[Sum_{j!=i} dintance(i,j)] 
+                //but the hop distance(i, i) is 0, so I don't bother
+                return Ii*Ii/sum/(n-1);
+                }
+            }, true, 0);
         }
 
     public double getValue(final Object node) {
-
-        int i = network.getNodeIndex(node);
-        int Ii = 0;
-        double sum = 0;
-        int n= network.allNodes.numObjs;
-        for(int j=0;j<n; j++)
-            {
-            double dji = allDistances[j][i];
-            if(dji!=Double.POSITIVE_INFINITY)
-                Ii++;
-            sum+=dji;
-            }
-        //I want to return 1/[Sum_{j!=i} dintance(i,j)] 
-        //but the hop distance(i, i) is 0, so I don't bother
-        return Ii*Ii/sum/(n-1);
+        return values[network.getNodeIndex(node)];
         }
         
     public double  getMaxValue()
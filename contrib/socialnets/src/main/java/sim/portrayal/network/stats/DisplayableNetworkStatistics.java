@@ -45,11 +45,7 @@ public class DisplayableNetworkStatistics
     // must be callled BEFORE nodeEccentricityLabels
     public double[] nodeEccentricityDistribution(EdgeMetric metric)
         {
-        final int n = net.allNodes.numObjs;
-        double [] eccentricities = new double[n];
-        for( int i = 0 ; i < n ; i++ )
-            eccentricities[i] = NetworkStatistics.getNodeEccentricity( net, net.allNodes.objs[i], metric);
-        return eccentricities;
+        return NetworkStatistics.getEccentricities( net, metric );
         }
 
     public String[] nodeEccentricityLabels()
@@ -4,7 +4,7 @@ import java.util.*;
 
 /** 
  * <h3>MersenneTwister and MersenneTwisterFast</h3>
- * <p><b>Version 22</b>, based on version MT199937(99/10/29)
+ * <p><b>Version 23</b>, based on version MT199937(99/10/29)
  * of the Mersenne Twister algorithm found at 
  * <a href="http://www.math.keio.ac.jp/matumoto/emt.html">
  * The Mersenne Twister Home Page</a>, with the initialization
@@ -42,6 +42,10 @@ import java.util.*;
  *
  * <h3>About this Version</h3>
  *
+ * <p><b>Changes since V22:</b> Added jump(), which advances MersenneTwisterFast
+ * by 2^128 outputs, to build non-overlapping streams for separate threads.
+ * setSeed(long) reuses the state arrays.
+ *
  * <p><b>Changes since V21:</b> Minor documentation HTML fixes. 
  *
  * <p><b>Changes since V20:</b> Added clearGuassian().  Modified stateEquals()
@@ -314,9 +318,10 @@ public strictfp class MersenneTwisterFast implements Serializable, Cloneable
         // doing our own Gaussian variable.
         __haveNextNextGaussian = false;
 
-        mt = new int[N];
+        // reuse the arrays if we have them, so that reseeding doesn't allocate
+        if (mt == null) mt = new int[N];
         
-        mag01 = new int[2];
+        if (mag01 == null) mag01 = new int[2];
         mag01[0] = 0x0;
         mag01[1] = MATRIX_A;
 
@@ -373,6 +378,148 @@ public strictfp class MersenneTwisterFast implements Serializable, Cloneable
         }
 
 
+    // The polynomial x^(2^128 - 1) mod the characteristic polynomial of MT19937, in hex with the highest
+    // coefficient first.  jump() applies it to the state stepped once.  See H. Haramoto, M. Matsumoto,
+    // T. Nishimura, F. Panneton and P. L'Ecuyer, "Efficient Jump Ahead for F2-Linear Random Number
+    // Generators", INFORMS Journal on Computing 20(3), 2008.
+    private static final String JUMP_POLYNOMIAL = 
+        "111f7722bc05250778a8d296575b2b96b39c7a105cb1409dcd09e8494b9ed30721d9103f441e8a2de58649699043916b" +
+        "fd22626efbbae106b3f6092940cf0d3a6b1ce5831af59b076466b7432ff8eaf01efd1430fca87d560d3255b998b2bcae" +
+        "15c151683981d66822d511823d9acdeaf14d1f7383b2020d573cf21ad4729ff92a4ef617a76d7659b89672fea43e98f9" +
+        "c86f95b11090802dca946352559e9eb378396cdbd8a5bfb446533f3ff76e31336d9ae647c3e4311952a9f19fbf23ced3" +
+        "a5cbf95853962dabf9c64642e5b1e697bf4c68501453efd7ebaa532519f3662c54466fdf8c0b6bfa175d5ec3c3836924" +
+        "ac71316c48faf0245a5be353dc817fea0cabcfc7c5143ce2942fedf243c3dc45569e1669f5e5b35098c06d87487314aa" +
+        "f8b80eec6b1b3028cf6b9f71936cd3e5f33ad7cdeb818450a583c5118b2b036061e42869e37f5ac9ea06cfedf3715bed" +
+        "442f753c027cff882445987480f762639ed1b39c6c202da570823f012d42433181e79541c0ddd7e3a6660af2392a31d3" +
+        "7499601c77e33505484affe65a9a8b971c96861e2da09904811951ad90618f642089d6b78d8acc3f6c2328cd10e6fd35" +
+        "e6dfdf5c998160b3080b12192d5ea7112b1f669d948193d132e017a3fa1aeb89c3e82d991f7b22eeb7c66a4d843ff4b9" +
+        "ab00f163adcfb8018e76cfd1c3e8c43325bcb67b803620602e3d0c98d1e0f288d753302a4df473b00bd3d9ddd394ab23" +
+        "f31efe5019b1b82851d0bdbecc5142e03451fe95350cdb3f90953cb1020e1ca646e669b5ef72454931f2b98ca4225b39" +
+        "9c728800372a87edd1d96c5d1172e10bf7d4c918dd8956412acc78ce6fd647fde4da0a670a32f96fc6b2b416d8351433" +
+        "c41f3ff2451ecc3dc0fc43ee8ab2b66522e15aa056c46e41662c83f8de699c39e0092a0e5639c6923932bd1c2d2d1287" +
+        "09a01616ecc39e190d1db990fcb27c288dd00b418118f8873ec35f63d3f113db5ae91346c82a019203d92b47715eb826" +
+        "7c164de3c8bda6a167e17fa5312488ab61ce35c0e1f1e42b0af46ab0cb0482b30c8aaa9c48a8fe802aa45527330b337a" +
+        "8f4e027441e843f112226ace8aeda5e35b4839a8cbfadd3cb856e0c5b46bb1d462de250c45b14021f02e4315423638a5" +
+        "4a04da83ec356d23876a35c9c4a6376469b5428eed932bd2c4e7300f179860674ccc7257ff6fc7895c2ca0a2d454a277" +
+        "ce923abda1048e72644c88a6f416baa6911c3ae7be5800c493917818bd7ff00958eed3a0ba31e84b57288847786f589c" +
+        "61cc58ac03503592e32461ab85141defb72caf5e0bcb3b73d58f69f0be84a2d8de0acbf506f4c50baa3481b252220abf" +
+        "90777c0dfe8c665af576144efec7f48b79e2e5caad702b2095f17c03a43e5f9e4a2f5aa9cfcfa0fa0fc287bfb22401c3" +
+        "2f2fe51e6e2c77142140c80e37262ea7e7d9432631ae37705b2c39d83738b2807324f3c2c2079b0df9a7f40bcdb930d2" +
+        "fc93f011dda6e9819415fd6112e3632a64369991dedcefa83ed9e95613a5c28f23042e7d983e9c6bfca4a1e03a2ba35e" +
+        "17349682c625f19ee9539d0d0dd8199af0b36160da1271cce6fe5312cde23fe6fc832d7a77ebb4b31b4af690ff945c43" +
+        "31f76956b628933f4ef03b0d3754e52d1863153ab506dffcf23d191af40b7a99e29620b33cde39291fc33716d4e6af65" +
+        "57279064e08dace2b0211130730f0735f411815a3c213c0b261b75c1e974244fcaf5addba17180368d488d56edfb49d6" +
+        "b57a024f814620c37ab0413ff0038e5cbc5f2ba863f3bf06d6fe6a43e780512ad067562e4f83adc5c76c24b9e6778891" +
+        "f0a564a962432157f43805b91ba9e0e541e0882b1427331e2473627b9304e5001c7fdcaf51085695fe1b280bd17dd02f" +
+        "6e064327c62a13f0442e1cd903fe29b483c4856ef6251c4c64c02e3d6b30ac50f036c8562b99b82b453e58554dbea3e2" +
+        "1402291f8d91e1576faf5f3f9e8a132ea26405e214b36384f526bfc27a94ff74e84c42132dee467d167d7ad1f529d495" +
+        "20066622155429c1c39c6fe155cba4b33dabafc4c9d16141013032ee0c0b3852bd1a860772a1c256a585b7b31254fd02" +
+        "1343157bdfc5c74b74b002523db00dd940247bbb6d58e8612c0ff4799040299e0107c7a70015a604ac9bb3863a6bcd17" +
+        "447ca81ff5604461811a67065a3e887198a17ee2e3943009baaf188dddc31a35a9b38172fe534460705962b40a68b1c3" +
+        "0f3e7a35a44893452ddc622a2fcc811f1753cca5d4b288c6a611af8b6449ed27743e0d4af8d9975cbebbbf81c827c76c" +
+        "309e7fd97b8b60d70fff5aa9c3ecc10562eb4a01205eee43efe8d218df662e5b2ca934a476cc653bcc9a30ee5d686528" +
+        "c1e76b52d8c885d9ca3dac965be24f3d228de9ac6a4dc759893637cfa1187366cb0151d0a77e34302e215284723167fd" +
+        "e19ddcc9488848720c635d3a46c8eae99ae61426a5f5dc053d6a904822de030ba1e6eef2f44bbaa6c38db4ac9449371c" +
+        "79c1847ac6f8a0991a1ae3ae3e185f72dcb1d1b0954990d6ed12a7216dae18764cb623a48ee4004368a20e4e19ab777b" +
+        "c48e1459caa3add677fd5a17edb8e545b8fb9588d287d3c05b90b0880258019c0079220e77e7d86716313fcf956bccb1" +
+        "42ff4a889eb84123fec86b70aa3efeb4ffa3b2d80ae3bb3bde791679ddbe9b3bacfa08b254a8b8bcb64e51dfb5e56b49" +
+        "fc1a74043a93ee0d4b0f3d578941aca3927d304f944c9577e9db055ba78fd3bcd395aac19405aa9ac36b557db320f576" +
+        "de662414a3fae7518f99589f833f5c871855262644da2dc81a4ebc6e1dfa4dc0af0c8553f9060684b01d121b55f1419c" +
+        "abe5bc0b365ee53791db8176bf5fdb0f8d9a210689630c6a74eb08b5de2c479cb7909d4dad726c74b6734569cd963948" +
+        "2eae337e1d20a4e8e67dd24cbfa9dedf6d3d2c2c1252c206cd945e44ed21b4ba8efd63943df67fc596e91f736b020b45" +
+        "7421398e394c9672650e785a06b6f4074e45041210e84782acba5603352463bbc525c61f6c3c59911cdaf4d1d0fb5543" +
+        "e96266dc48dd08ac79f71e902e9fc292f489dcd4b1a0743f789986642b3f3a8f455e640612177744bcaf87dbdbc508a6" +
+        "49325660201f39e941002b875cc0caabfda793653a9445ac4eb5f42a30c96efcce46566a23fc1416a39dae66c66a1a2a" +
+        "e129e0a4373ae4a8ccf23210c4ecbd76ae53570510ec2cc18ca1c6240df825e000fc8ef0a7a1ccab62b5e7e5e39e6d2f" +
+        "6bbb41dca67292428cab9d0ef43876cb4c0e4f32ce51f71bed95d9dfe787beb07164dc294306efbd6ac2e87604754e7d" +
+        "5c7422174a3a0b0bbe7af9f2deb0e7f69906fdbb0d9cdc7a177ae401dec42381daab0feac7869ef655c19a684cd7f7ab" +
+        "a71533ef328a3ee5f80dec133ff5e83de449d3e41e0c0a63d99aa422b04f5797457b098e9f4b69ce71f4945c185a424d" +
+        "5725856dcdf94096aa45af3ab45a90bbbf3fedd8a820f912c936c1f2cd411fc72c413cddb5ab84f62396f1cb1";
+    
+    private static int[] jumpPolynomial = null;  // JUMP_POLYNOMIAL, decoded lazily into bits
+    
+    static int[] decodePolynomial(String hex)
+        {
+        int len = hex.length();
+        int[] poly = new int[(len + 7) / 8];
+        for(int i = 0; i < len; i++)
+            poly[i >>> 3] |= Character.digit(hex.charAt(len - 1 - i), 16) << ((i & 7) * 4);
+        return poly;
+        }
+
+    /**
+     * Advances the generator by 2^128 32-bit outputs, exactly as if you had
+     * called nextInt() that many times, in a few milliseconds.  Starting from 
+     * one seed, a generator and copies of it jumped once, twice, three times,
+     * and so on produce independent streams which cannot overlap for 2^128
+     * outputs each, which makes them suitable for separate threads.
+     * The Gaussian storage is cleared.
+     */
+    public void jump()
+        {
+        if (jumpPolynomial == null) 
+            jumpPolynomial = decodePolynomial(JUMP_POLYNOMIAL);
+        jump(jumpPolynomial);
+        }
+        
+    /* Sets the state to poly(A) applied to A(state), where A steps the state by one word.
+       The state is treated as a window of 624 words, x[k] ... x[k+623], with mti
+       marking the next word to output: stepping it computes x[k+624] from the
+       recurrence and slides the window along.  The first stepping puts the window into
+       the subspace on which the characteristic polynomial vanishes, so poly(A) is A^(j-1)
+       there if poly is x^(j-1) mod the characteristic polynomial, and the generator as a whole
+       is advanced by j.  We evaluate poly(A) by Horner's rule, keeping windows in circular buffers. */
+    void jump(int[] poly)
+        {
+        final int[] mt = this.mt;
+        final int[] mag01 = this.mag01;
+        int y;
+        
+        // the state stepped once, starting at w[1]
+        int[] w = (int[])(mt.clone());
+        y = (w[0] & UPPER_MASK) | (w[1] & LOWER_MASK);
+        w[0] = w[M] ^ (y >>> 1) ^ mag01[y & 0x1];
+        
+        int[] r = new int[N];  // the result so far, starting at r[p]
+        int p = 0;
+        int i = poly.length * 32 - 1;
+        while(i >= 0 && (poly[i >>> 5] >>> (i & 31) & 1) == 0) i--;
+        for(; i >= 0; i--)
+            {
+            // r = A r
+            int p1 = (p == N - 1 ? 0 : p + 1);
+            int pm = (p >= N - M ? p + (M - N) : p + M);
+            y = (r[p] & UPPER_MASK) | (r[p1] & LOWER_MASK);
+            r[p] = r[pm] ^ (y >>> 1) ^ mag01[y & 0x1];
+            p = p1;
+            
+            // r = r + w if this coefficient is 1
+            if ((poly[i >>> 5] >>> (i & 31) & 1) != 0)
+                {
+                int j = p;
+                int k = 1;
+                int left = N;
+                while(left > 0)
+                    {
+                    int run = Math.min(left, Math.min(N - j, N - k));
+                    for(int c = 0; c < run; c++)
+                        r[j + c] ^= w[k + c];
+                    left -= run;
+                    j += run; if (j == N) j = 0;
+                    k += run; if (k == N) k = 0;
+                    }
+                }
+            }
+        
+        for(int c = 0; c < N; c++)
+            {
+            mt[c] = r[p];
+            p = (p == N - 1 ? 0 : p + 1);
+            }
+        __haveNextNextGaussian = false;
+        }
+
+
     public int nextInt()
         {
         int y;
@@ -117,12 +117,26 @@ public /*strictfp*/ class HeatBugs extends SimState
 
     protected void createGrids()
         {
-        bugs = new HeatBug[bugCount];
-        valgrid = new DoubleGrid2D(gridWidth, gridHeight,0);
-        valgrid2 = new DoubleGrid2D(gridWidth, gridHeight, 0);
-        buggrid = new SparseGrid2D(gridWidth, gridHeight);      
+        // reuse the grids from the last run if they're still the right size
+        if (bugs == null || bugs.length != bugCount)
+            bugs = new HeatBug[bugCount];
+        if (valgrid != null && valgrid.getWidth() == gridWidth && valgrid.getHeight() == gridHeight)
+            {
+            valgrid.reset();
+            valgrid2.reset();
+            buggrid.reset();
+            }
+        else
+            {
+            valgrid = new DoubleGrid2D(gridWidth, gridHeight,0);
+            valgrid2 = new DoubleGrid2D(gridWidth, gridHeight, 0);
+            buggrid = new SparseGrid2D(gridWidth, gridHeight);      
+            }
         }
     
+    /** start() rebuilds everything, so doLoop(...) may run repeated jobs on the same HeatBugs. */
+    public boolean reusable() { return true; }
+    
     ThreadedDiffuser diffuser = null;
         
     /** Resets and starts a simulation */
@@ -0,0 +1,447 @@
+/*
+  Copyright 2006 by Sean Luke and George Mason University
+  Licensed under the Academic Free License version 3.0
+  See the file "LICENSE" for more information
+*/
+
+package sim.engine;
+import sim.util.*;
+
+/**
+   A Calendar Queue (R. Brown, "Calendar Queues: A Fast O(1) Priority Queue Implementation for the
+   Simulation Event Set Problem", CACM 31(10), 1988) which can be used by the Schedule in place of its
+   binary Heap.  You select it by calling Schedule.setCalendarQueueBucketWidth(...).
+
+   <p>Time is divided into consecutive <i>buckets</i> of a fixed width (1.0 by default).  Each bucket covers
+   the half-open interval [n * width, (n+1) * width) for some integer n, which we call the bucket's <i>virtual index</i>.
+   Buckets are stored in a circular array (the <i>calendar</i>) of a power-of-two size, so virtual index n
+   lives in physical bucket n mod calendar size, much like days in a yearly calendar.  Inserting an event
+   simply appends it to its physical bucket, which is O(1).  Extracting all the events of the minimum
+   (time, ordering) scans only the current bucket, and at the same time compacts the bucket and finds the
+   next minimum (time, ordering).  For the common pattern of many agents rescheduled at integer times with
+   a handful of orderings, this makes insertion and extraction O(1) amortized per event.
+
+   <p>Unlike Heap, CalendarQueue does not hold onto the keys it was handed: each bucket stores times and orderings
+   as primitive double and int arrays alongside the scheduled objects.  As a consequence CalendarQueue only accepts
+   Schedule.Key objects as its keys, and getMinKey() and getKeys() return freshly built Schedule.Keys.
+
+   <p>Events with the same time and ordering are extracted by extractMin(Bag) in <i>reverse</i> insertion order,
+   which the Schedule flips back when it is not shuffling.  Thus, unlike Heap, CalendarQueue is stable.
+
+   <p>The calendar doubles in size as the number of events grows so that buckets stay short when
+   events are spread out in time.  It never shrinks on its own, because the Schedule routinely drains and refills
+   its queue every timestep and resizing back and forth would be wasteful.  If all the events in the queue are more
+   than one "year" (calendar size * width) ahead of the current bucket, the queue falls back to a direct O(n) search
+   for the minimum.  If your events are typically scheduled at non-integer intervals, you should pick a bucket width
+   which is about the typical interval between distinct timestamps.
+*/
+
+public class CalendarQueue extends Heap
+    {
+    private static final long serialVersionUID = 1;
+
+    static final int MINIMUM_BUCKETS = 16;
+    static final int MAXIMUM_BUCKETS = 1 << 24;
+
+    /** A single day in the calendar: events stored in insertion order as parallel arrays. */
+    static class Bucket implements java.io.Serializable
+        {
+        private static final long serialVersionUID = 1;
+
+        double[] times = new double[4];
+        int[] orderings = new int[4];
+        Object[] objs = new Object[4];
+        int numObjs = 0;
+
+        void add(Object obj, double time, int ordering)
+            {
+            if (numObjs >= objs.length)
+                {
+                int len = objs.length * 2 + 1;
+                double[] t = new double[len];
+                System.arraycopy(times, 0, t, 0, numObjs);
+                times = t;
+                int[] o = new int[len];
+                System.arraycopy(orderings, 0, o, 0, numObjs);
+                orderings = o;
+                Object[] ob = new Object[len];
+                System.arraycopy(objs, 0, ob, 0, numObjs);
+                objs = ob;
+                }
+            times[numObjs] = time;
+            orderings[numObjs] = ordering;
+            objs[numObjs] = obj;
+            numObjs++;
+            }
+
+        void clear()
+            {
+            Object[] objs = this.objs;
+            for(int x = 0; x < numObjs; x++)
+                objs[x] = null;
+            numObjs = 0;
+            }
+        }
+
+    double width;
+    Bucket[] buckets;
+    int mask;
+    int numElem;
+
+    // The virtual index of the bucket we're presently drawing from
+    long cursor;
+
+    // The cached minimum key.  When valid, cursor == virtualIndex(minTime)
+    boolean minValid;
+    double minTime;
+    int minOrdering;
+
+    /** Builds a CalendarQueue with a bucket width of 1.0, suitable for events scheduled at integer timesteps. */
+    public CalendarQueue()
+        {
+        this(1.0);
+        }
+
+    /** Builds a CalendarQueue with the given bucket width, which must be positive and finite. */
+    public CalendarQueue(double width)
+        {
+        if (!(width > 0) || width == Double.POSITIVE_INFINITY)
+            throw new IllegalArgumentException("CalendarQueue bucket width must be positive and finite: " + width);
+        this.width = width;
+        buckets = new Bucket[MINIMUM_BUCKETS];
+        mask = MINIMUM_BUCKETS - 1;
+        }
+
+    /** Returns the width of each bucket. */
+    public double getBucketWidth() { return width; }
+
+    long virtualIndex(double time)
+        {
+        return (long)(time / width);
+        }
+
+    static boolean lessThan(double time, int ordering, double time2, int ordering2)
+        {
+        return (time < time2 || (time == time2 && ordering < ordering2));
+        }
+
+    /** Adds an element to the queue with the given key, which must be a Schedule.Key. */
+    public void add(Object elem, Comparable key)
+        {
+        Schedule.Key k = (Schedule.Key) key;
+        add(elem, k.time, k.ordering);
+        }
+
+    /** Adds an element to the queue at the given time and ordering without requiring a Schedule.Key. */
+    public void add(Object elem, double time, int ordering)
+        {
+        if (numElem >= (buckets.length << 1) && buckets.length < MAXIMUM_BUCKETS)
+            resize(buckets.length << 1);
+
+        long vb = virtualIndex(time);
+        int b = (int)(vb & mask);
+        Bucket bucket = buckets[b];
+        if (bucket == null) { bucket = new Bucket(); buckets[b] = bucket; }
+        bucket.add(elem, time, ordering);
+
+        if (numElem == 0)
+            {
+            cursor = vb;
+            minValid = true;
+            minTime = time;
+            minOrdering = ordering;
+            }
+        else if (vb < cursor)
+            {
+            cursor = vb;
+            if (minValid)  // the old minimum was at or beyond the old cursor, so we're the new minimum
+                {
+                minTime = time;
+                minOrdering = ordering;
+                }
+            }
+        else if (minValid && lessThan(time, ordering, minTime, minOrdering))
+            {
+            minTime = time;
+            minOrdering = ordering;
+            }
+        numElem++;
+        }
+
+    // Redistributes all the events into a calendar of the given size.  Events with the same
+    // key always share a bucket, so their relative order is preserved.
+    void resize(int newSize)
+        {
+        Bucket[] old = buckets;
+        buckets = new Bucket[newSize];
+        mask = newSize - 1;
+        for(int x = 0; x < old.length; x++)
+            {
+            Bucket bucket = old[x];
+            if (bucket == null) continue;
+            for(int y = 0; y < bucket.numObjs; y++)
+                {
+                double time = bucket.times[y];
+                int b = (int)(virtualIndex(time) & mask);
+                Bucket dest = buckets[b];
+                if (dest == null) { dest = new Bucket(); buckets[b] = dest; }
+                dest.add(bucket.objs[y], time, bucket.orderings[y]);
+                }
+            }
+        }
+
+    // Scans the bucket for the minimum key among events whose virtual index is vb.
+    // Sets the cached minimum and returns true if one was found.
+    boolean scanBucket(Bucket bucket, long vb)
+        {
+        boolean found = false;
+        double mt = 0;
+        int mo = 0;
+        double[] times = bucket.times;
+        int[] orderings = bucket.orderings;
+        int len = bucket.numObjs;
+        for(int x = 0; x < len; x++)
+            {
+            double t = times[x];
+            if (virtualIndex(t) == vb && (!found || lessThan(t, orderings[x], mt, mo)))
+                {
+                found = true;
+                mt = t;
+                mo = orderings[x];
+                }
+            }
+        if (found)
+            {
+            minValid = true;
+            minTime = mt;
+            minOrdering = mo;
+            }
+        return found;
+        }
+
+    // Makes certain that the cached minimum is valid, moving the cursor forward as necessary.
+    // Returns false if the queue is empty.
+    boolean locate()
+        {
+        if (numElem == 0) return false;
+        if (minValid) return true;
+
+        // Walk forward through one year of the calendar
+        Bucket[] buckets = this.buckets;
+        for(int x = 0; x < buckets.length; x++)
+            {
+            Bucket bucket = buckets[(int)(cursor & mask)];
+            if (bucket != null && bucket.numObjs > 0 && scanBucket(bucket, cursor))
+                return true;
+            cursor++;
+            }
+
+        // Everything is more than a year away: do a direct search
+        double mt = Schedule.AFTER_SIMULATION;
+        for(int x = 0; x < buckets.length; x++)
+            {
+            Bucket bucket = buckets[x];
+            if (bucket == null) continue;
+            double[] times = bucket.times;
+            for(int y = 0; y < bucket.numObjs; y++)
+                if (times[y] < mt) mt = times[y];
+            }
+        cursor = virtualIndex(mt);
+        return scanBucket(buckets[(int)(cursor & mask)], cursor);
+        }
+
+    /** Returns the time of the current min element.  Returns Schedule.AFTER_SIMULATION if there is no such element. */
+    public double getMinTime()
+        {
+        if (!locate()) return Schedule.AFTER_SIMULATION;
+        return minTime;
+        }
+
+    /** Returns the ordering of the current min element.  Returns 0 if there is no such element. */
+    public int getMinOrdering()
+        {
+        if (!locate()) return 0;
+        return minOrdering;
+        }
+
+    /** Returns a new Schedule.Key holding the current minimum time and ordering.  Returns null if there is no such element. */
+    public Comparable getMinKey()
+        {
+        if (!locate()) return null;
+        return new Schedule.Key(minTime, minOrdering);
+        }
+
+    /** Returns the current min element (the earliest inserted, if several share the minimum key).  Returns null if there is no such element.  Does not extract the element. */
+    public Object getMin()
+        {
+        if (!locate()) return null;
+        Bucket bucket = buckets[(int)(cursor & mask)];
+        for(int x = 0; x < bucket.numObjs; x++)
+            if (bucket.times[x] == minTime && bucket.orderings[x] == minOrdering)
+                return bucket.objs[x];
+        return null;  // can't happen
+        }
+
+    /** Removes all key-equal minimum elements and adds them to a Bag, in reverse insertion order, which is then is returned.
+        You may provide a Bag -- putInHere -- to be filled in. */
+    public Bag extractMin(Bag putInHere)
+        {
+        if (!locate())
+            {
+            if (putInHere == null) return new Bag(0);
+            else return putInHere;
+            }
+        if (putInHere == null) putInHere = new Bag();
+
+        double mt = minTime;
+        int mo = minOrdering;
+        long vb = cursor;
+        Bucket bucket = buckets[(int)(vb & mask)];
+        double[] times = bucket.times;
+        int[] orderings = bucket.orderings;
+        Object[] objs = bucket.objs;
+        int len = bucket.numObjs;
+
+        int start = putInHere.numObjs;
+        putInHere.resize(start + len);
+        Object[] out = putInHere.objs;
+        int n = start;
+
+        // Pull out the minimum events, compact the rest, and find the next minimum all in one pass
+        boolean found = false;
+        double nt = 0;
+        int no = 0;
+        int k = 0;
+        for(int x = 0; x < len; x++)
+            {
+            double t = times[x];
+            int o = orderings[x];
+            if (t == mt && o == mo)
+                {
+                out[n++] = objs[x];
+                }
+            else
+                {
+                if (virtualIndex(t) == vb && (!found || lessThan(t, o, nt, no)))
+                    {
+                    found = true;
+                    nt = t;
+                    no = o;
+                    }
+                times[k] = t;
+                orderings[k] = o;
+                objs[k] = objs[x];
+                k++;
+                }
+            }
+        for(int x = k; x < len; x++)
+            objs[x] = null;  // let GC
+        bucket.numObjs = k;
+        numElem -= (n - start);
+        putInHere.numObjs = n;
+
+        // reverse what we added
+        for(int x = start, y = n - 1; x < y; x++, y--)
+            {
+            Object temp = out[x];
+            out[x] = out[y];
+            out[y] = temp;
+            }
+
+        minValid = found;
+        if (found) { minTime = nt; minOrdering = no; }
+        return putInHere;
+        }
+
+    /** Removes the first minimum element (the earliest inserted, if several share the minimum key) and returns it.  Will return null if the queue is empty */
+    public Object extractMin()
+        {
+        if (!locate()) return null;
+        Bucket bucket = buckets[(int)(cursor & mask)];
+        double[] times = bucket.times;
+        int[] orderings = bucket.orderings;
+        Object[] objs = bucket.objs;
+        int len = bucket.numObjs;
+        for(int x = 0; x < len; x++)
+            {
+            if (times[x] == minTime && orderings[x] == minOrdering)
+                {
+                Object result = objs[x];
+                System.arraycopy(times, x + 1, times, x, len - x - 1);
+                System.arraycopy(orderings, x + 1, orderings, x, len - x - 1);
+                System.arraycopy(objs, x + 1, objs, x, len - x - 1);
+                objs[len - 1] = null;
+                bucket.numObjs--;
+                numElem--;
+                minValid = false;
+                return result;
+                }
+            }
+        return null;  // can't happen
+        }
+
+    public Comparable[] getKeys()
+        {
+        Comparable[] k = new Comparable[numElem];
+        int n = 0;
+        for(int x = 0; x < buckets.length; x++)
+            {
+            Bucket bucket = buckets[x];
+            if (bucket == null) continue;
+            for(int y = 0; y < bucket.numObjs; y++)
+                k[n++] = new Schedule.Key(bucket.times[y], bucket.orderings[y]);
+            }
+        return k;
+        }
+
+    public Object[] getObjects()
+        {
+        Object[] o = new Object[numElem];
+        int n = 0;
+        for(int x = 0; x < buckets.length; x++)
+            {
+            Bucket bucket = buckets[x];
+            if (bucket == null) continue;
+            System.arraycopy(bucket.objs, 0, o, n, bucket.numObjs);
+            n += bucket.numObjs;
+            }
+        return o;
+        }
+
+    public int size()
+        {
+        return numElem;
+        }
+
+    public boolean isEmpty()
+        {
+        return (numElem==0);
+        }
+
+    /** Empties the queue, retaining the capacity of its buckets. */
+    public void clear()
+        {
+        for(int x = 0; x < buckets.length; x++)
+            if (buckets[x] != null) buckets[x].clear();
+        numElem = 0;
+        minValid = false;
+        }
+
+    /**
+       Produces a new CalendarQueue, of the same bucket width, which is the union of this queue with the other.
+       The original queues are not modified.  The new queue is returned.
+    */
+    public Heap merge(Heap other)
+        {
+        CalendarQueue queue = new CalendarQueue(width);
+        Comparable[] keys = getKeys();
+        Object[] objects = getObjects();
+        for(int x = 0; x < keys.length; x++)
+            queue.add(objects[x], keys[x]);
+        keys = other.getKeys();
+        objects = other.getObjects();
+        for(int x = 0; x < keys.length; x++)
+            queue.add(objects[x], keys[x]);
+        return queue;
+        }
+    }
@@ -0,0 +1,807 @@
+/*
+  Copyright 2006 by Sean Luke and George Mason University
+  Licensed under the Academic Free License version 3.0
+  See the file "LICENSE" for more information
+*/
+
+package sim.engine;
+import ec.util.*;
+import sim.util.*;
+import java.io.*;
+import java.util.*;
+import java.util.zip.*;
+import java.util.concurrent.*;
+
+/**
+   Writes and reads checkpoints in MASON's chunked checkpoint format.  This is an alternative to the GZIP
+   format used by SimState.writeToCheckpoint(...) which is several times faster to write, and which supports
+   <i>delta checkpoints</i>.
+
+   <p>The SimState is serialized just as it always is.  But rather than being fed through GZIP, the
+   serialized stream is cut into chunks of roughly 64K each, and each chunk is compressed on its own at the compression
+   level of your choosing: COMPRESSION_FAST (the default), COMPRESSION_SMALL (about as small as GZIP),
+   or COMPRESSION_NONE.  COMPRESSION_FAST uses Deflate's fastest setting, and doesn't bother compressing
+   stretches of the stream, such as large arrays of doubles, which hardly compress at all.  Chunk boundaries
+   are chosen by the content of the stream rather than by position, so if a model changes in just a few places,
+   most of its chunks come out exactly as they did last time.
+
+   <p>A Checkpoint object remembers the last full checkpoint it wrote (the <i>base</i>).  A delta checkpoint
+   stores only those chunks which aren't found in the base, plus references to the ones which are.  It is
+   thus much smaller if large parts of your model (a big static landscape grid, for example) don't change
+   from checkpoint to checkpoint.  A delta checkpoint records the file name of its base, and must be kept in the same
+   directory as it.  Deltas are always relative to a full checkpoint, never to another delta, so you can throw away
+   any delta you like, but not its base.
+
+   <p>To write a series of checkpoints, some full and some deltas, make a Checkpoint and call write(...) each time.
+   To read any checkpoint, full or delta, in this format or in the GZIP format, just call SimState.readFromCheckpoint(...)
+   as usual.  SimState.doLoop(...) uses this class if you pass it -checkpointformat or -deltacheckpoint.
+
+   <p>Normally write(...) serializes, compresses, and writes the checkpoint before it returns, then syncs it to disk.
+   If you call setAsynchronous(...), write(...) still serializes the model, so the checkpoint is a consistent
+   snapshot taken between steps, but everything else is done on a background thread while the simulation
+   continues.  The memory this takes is bounded: if the background thread falls too far behind, write(...) waits for it.
+   Call flush() or close() to wait for all pending checkpoints to be written.
+
+   <p>Chunks are matched by a 64-bit hash plus a CRC32 and length, so the chance of mistaking one chunk for
+   another is negligible.
+*/
+
+public class Checkpoint
+    {
+    /** Chunks are stored uncompressed. */
+    public static final int COMPRESSION_NONE = 0;
+    /** Chunks are compressed with Deflate at its fastest setting. */
+    public static final int COMPRESSION_FAST = 1;
+    /** Chunks are compressed with Deflate at its default setting, as GZIP does. */
+    public static final int COMPRESSION_SMALL = 2;
+
+    static final long MAGIC = 0x4D41534F4E434B50L;  // "MASONCKP"
+    static final int VERSION = 1;
+    static final int FULL = 0;
+    static final int DELTA = 1;
+
+    // record markers which take the place of a chunk length
+    static final int END = -1;
+    static final int REFERENCE = -2;
+
+    static final int MIN_CHUNK = 1 << 14;
+    static final int MAX_CHUNK = 1 << 18;
+    // A chunk ends where the top 16 bits of the rolling hash are all zero, about one byte in 64K.
+    // Because the hash shifts left once per byte, these bits depend on the last 64 bytes only.
+    static final long BOUNDARY_MASK = 0xFFFF000000000000L;
+    static final int WINDOW = 64;
+    static final int SKIP_INCOMPRESSIBLE = 8;
+    static final long[] GEAR = new long[256];
+    static
+        {
+        MersenneTwisterFast random = new MersenneTwisterFast(0x4D41534FL);
+        for(int i = 0; i < GEAR.length; i++)
+            GEAR[i] = random.nextLong();
+        }
+
+    int compression;
+    int fullEvery;
+
+    // The number of checkpoints begun so far.  This is only touched by the thread calling write(...)
+    long count = 0;
+    // The number of the last full checkpoint, or -1 if there is none, or if it failed.  Guarded by synchronized(this),
+    // since the background thread changes it when a full checkpoint fails, or when it writes a delta as a full checkpoint.
+    long lastFull = -1;
+
+    // The base: the last full checkpoint we wrote.  These are only touched by whichever thread is encoding chunks.
+    File base = null;
+    long baseID;
+    HashMap baseChunks;  // maps the hash of each chunk in the base (a Long) to the chunk's index (an Integer)
+    IntBag baseCRCs;
+    IntBag baseLengths;
+
+    // Asynchronous writing
+    static final int PERMIT_SIZE = 1024;  // the pending-memory semaphore counts kilobytes
+    static final Object FINISH = "FINISH";
+    static final Object ABORT = "ABORT";
+    static final Object STOP = "STOP";
+    Thread writer = null;
+    LinkedBlockingQueue queue;
+    Semaphore pendingMemory;
+    int pendingCheckpoints = 0;   // guarded by synchronized(this)
+    IOException failure = null;   // guarded by synchronized(this)
+
+    /** Creates a Checkpoint which writes only full checkpoints, using COMPRESSION_FAST. */
+    public Checkpoint()
+        {
+        this(COMPRESSION_FAST, 1);
+        }
+
+    /** Creates a Checkpoint with the given compression, whose write(...) method will write a full checkpoint
+        every <i>fullEvery</i> checkpoints, and deltas against it in-between.  If fullEvery is 1, all checkpoints are full. */
+    public Checkpoint(int compression, int fullEvery)
+        {
+        if (compression != COMPRESSION_NONE && compression != COMPRESSION_FAST && compression != COMPRESSION_SMALL)
+            throw new IllegalArgumentException("Compression must be COMPRESSION_NONE, COMPRESSION_FAST, or COMPRESSION_SMALL, not " + compression);
+        if (fullEvery < 1)
+            throw new IllegalArgumentException("fullEvery must be at least 1, not " + fullEvery);
+        this.compression = compression;
+        this.fullEvery = fullEvery;
+        }
+
+    public int getCompression() { return compression; }
+    public int getFullEvery() { return fullEvery; }
+
+    /** Makes checkpoints asynchronous.  The SimState is still serialized in write(...), between steps, so the checkpoint
+        is a consistent snapshot of the model.  But the serialized chunks are handed off to a background thread,
+        which hashes, compresses, writes, and syncs them to disk while the simulation carries on stepping.
+        At most about <i>maxPendingBytes</i> of serialized chunks are held in memory waiting for the background
+        thread: if it falls this far behind, write(...) waits for it to catch up.  This is often only a small fraction of the
+        model, since the serialized stream is usually much faster to produce than to compress and write.  Passing 0
+        waits for any pending checkpoints, then makes checkpoints synchronous again. */
+    public void setAsynchronous(long maxPendingBytes) throws IOException
+        {
+        if (maxPendingBytes < 0)
+            throw new IllegalArgumentException("maxPendingBytes must be >= 0, not " + maxPendingBytes);
+        close();
+        if (maxPendingBytes == 0) return;
+
+        long permits = Math.max(maxPendingBytes, 2L * MAX_CHUNK) / PERMIT_SIZE;
+        synchronized(this)
+            {
+            pendingMemory = new Semaphore((int) Math.min(permits, Integer.MAX_VALUE));
+            queue = new LinkedBlockingQueue();
+            writer = new Thread(new Runnable()
+                {
+                public void run() { encodeQueue(); }
+                });
+            writer.setName("MASON Checkpoint Writer");
+            writer.setDaemon(true);
+            writer.start();
+            }
+        }
+
+    /** Returns true if checkpoints are being written on a background thread. */
+    public boolean isAsynchronous() { return writer != null; }
+
+    /** Waits until all pending checkpoints have been written.  If any of them failed since the last time this method or
+        write(...) was called, throws the IOException raised. */
+    public void flush() throws IOException
+        {
+        synchronized(this)
+            {
+            while(pendingCheckpoints > 0)
+                {
+                try { wait(); }
+                catch (InterruptedException e) { throw new InterruptedIOException("Interrupted while waiting for checkpoints to be written"); }
+                }
+            }
+        checkFailure();
+        }
+
+    /** Waits until all pending checkpoints have been written, then shuts down the background thread, if any, making
+        checkpoints synchronous again.  Throws an IOException if any pending checkpoint failed. */
+    public void close() throws IOException
+        {
+        Thread w;
+        synchronized(this)
+            {
+            w = writer;
+            if (w == null) { checkFailure(); return; }
+            queue.add(STOP);
+            writer = null;
+            }
+        try { w.join(); }
+        catch (InterruptedException e) { throw new InterruptedIOException("Interrupted while waiting for checkpoints to be written"); }
+        checkFailure();
+        }
+
+    synchronized void checkFailure() throws IOException
+        {
+        IOException e = failure;
+        failure = null;
+        if (e != null) throw e;
+        }
+
+    /** Returns true if the next call to write(...) will write a full checkpoint rather than a delta.  This is the case
+        every <i>fullEvery</i> checkpoints, and also if the last full checkpoint failed. */
+    public synchronized boolean isNextFull()
+        {
+        return (lastFull < 0 || count - lastFull >= fullEvery);
+        }
+
+    /** Writes the next checkpoint in the series to the given file: either a full checkpoint or a delta against
+        the last full checkpoint, as described in the constructor.  Returns true if the checkpoint was full. */
+    public boolean write(SimState state, File file) throws IOException
+        {
+        boolean full = isNextFull();
+        if (full) writeFull(state, file);
+        else writeDelta(state, file);
+        return full;
+        }
+
+    /** Writes a full checkpoint to the given file, which becomes the base for future deltas. */
+    public void writeFull(SimState state, File file) throws IOException
+        {
+        write(state, file, false);
+        }
+
+    /** Writes a delta checkpoint to the given file, against the last full checkpoint written.  If there
+        is no such checkpoint yet, or it failed, writes a full checkpoint instead.
+
+        <p>If checkpoints are asynchronous, a full checkpoint may fail on the background thread after deltas against
+        it have already been handed over.  Those deltas are written against the full checkpoint before it if there
+        was one, and otherwise the first of them is written as a full checkpoint, and becomes the base.  So a file you
+        named as a delta may hold a full checkpoint: it is read just the same, since the file itself says which it is. */
+    public void writeDelta(SimState state, File file) throws IOException
+        {
+        boolean hasBase;
+        synchronized(this) { hasBase = (lastFull >= 0); }
+        write(state, file, hasBase);
+        }
+
+    void write(SimState state, File file, boolean delta) throws IOException
+        {
+        checkFailure();
+        long number = count;
+        boolean asynchronous;
+        synchronized(this)
+            {
+            asynchronous = (writer != null);
+            if (asynchronous)
+                {
+                pendingCheckpoints++;
+                queue.add(new Object[] { file, Boolean.valueOf(delta), Long.valueOf(number) });
+                // count it as written now, so that the deltas which follow are against it; if it fails, the background thread resets this
+                if (!delta) lastFull = number;
+                }
+            }
+        ChunkCutter cutter = new ChunkCutter(asynchronous ? null : new ChunkEncoder(file, delta, number));
+
+        boolean done = false;
+        state.preCheckpoint();
+        try
+            {
+            ObjectOutputStream s = new ObjectOutputStream(cutter);
+            s.writeObject(state);
+            s.flush();
+            cutter.finish();
+            done = true;
+            }
+        finally
+            {
+            state.postCheckpoint();
+            if (asynchronous) queue.add(done ? FINISH : ABORT);
+            else if (!done) cutter.encoder.abort();
+            }
+        if (!asynchronous) cutter.encoder.finish();
+        count++;
+        }
+
+    // The background thread's loop: each checkpoint arrives as {file, delta}, then its chunks as byte arrays, then FINISH or ABORT.
+    void encodeQueue()
+        {
+        ChunkEncoder encoder = null;
+        while(true)
+            {
+            Object task;
+            try { task = queue.take(); }
+            catch (InterruptedException e) { continue; }
+            if (task == STOP) return;
+
+            try
+                {
+                if (task instanceof byte[])
+                    {
+                    byte[] chunk = (byte[]) task;
+                    try { if (encoder != null) encoder.encode(chunk, chunk.length); }
+                    finally { pendingMemory.release(permits(chunk.length)); }
+                    }
+                else if (task == FINISH || task == ABORT)
+                    {
+                    ChunkEncoder e = encoder;
+                    encoder = null;
+                    if (e != null)
+                        {
+                        if (task == FINISH) e.finish();
+                        else e.abort();
+                        }
+                    }
+                else
+                    {
+                    Object[] start = (Object[]) task;
+                    encoder = new ChunkEncoder((File) start[0], ((Boolean) start[1]).booleanValue(), ((Long) start[2]).longValue());
+                    }
+                }
+            catch (Throwable e)
+                {
+                // give up on this checkpoint; its remaining chunks will be dropped.  Anything at all is caught here, since
+                // if this thread died, write(...), flush(), and close() would wait for it forever.
+                if (encoder != null) encoder.abort();
+                encoder = null;
+                IOException f = (e instanceof IOException ? (IOException) e : new IOException("Checkpoint could not be written", e));
+                synchronized(this) { if (failure == null) failure = f; }
+                }
+            finally
+                {
+                if (task == FINISH || task == ABORT)
+                    synchronized(this)
+                        {
+                        pendingCheckpoints--;
+                        notifyAll();
+                        }
+                }
+            }
+        }
+
+    static int permits(int length)
+        {
+        return (length + PERMIT_SIZE - 1) / PERMIT_SIZE;
+        }
+
+    /** Returns true if the stream, which must support mark(), starts with a checkpoint in this format.  Doesn't consume anything. */
+    static boolean isChunked(InputStream stream) throws IOException
+        {
+        stream.mark(8);
+        try
+            {
+            long magic = 0;
+            for(int i = 0; i < 8; i++)
+                {
+                int b = stream.read();
+                if (b < 0) return false;
+                magic = (magic << 8) | b;
+                }
+            return magic == MAGIC;
+            }
+        finally
+            {
+            stream.reset();
+            }
+        }
+
+    /** Returns true if the file holds a checkpoint in this format. */
+    static boolean isChunked(File file) throws IOException
+        {
+        InputStream stream = new BufferedInputStream(new FileInputStream(file), 8);
+        try { return isChunked(stream); }
+        finally { stream.close(); }
+        }
+
+    /** Reads a checkpoint, full or delta, from the given file, and returns the SimState.  Calls awakeFromCheckpoint(). */
+    public static SimState read(File file) throws IOException, ClassNotFoundException
+        {
+        DataInputStream in = new DataInputStream(new BufferedInputStream(new FileInputStream(file), 1 << 16));
+        RandomAccessFile baseFile = null;
+        try
+            {
+            int type = readHeader(in, file);
+            long[] baseOffsets = null;
+            if (type == DELTA)
+                {
+                long baseID = in.readLong();
+                File b = new File(file.getAbsoluteFile().getParentFile(), in.readUTF());
+                if (!b.exists())
+                    throw new FileNotFoundException("Base checkpoint " + b + " of the delta checkpoint " + file + " cannot be found");
+                baseFile = new RandomAccessFile(b, "r");
+                baseOffsets = indexBase(baseFile, baseID, b);
+                }
+            return read(new ChunkReader(in, baseFile, baseOffsets));
+            }
+        finally
+            {
+            in.close();
+            if (baseFile != null) baseFile.close();
+            }
+        }
+
+    /** Reads a full checkpoint from the given stream and returns the SimState.  Calls awakeFromCheckpoint().
+        Delta checkpoints can only be read from files.  Does not close the stream. */
+    public static SimState read(InputStream stream) throws IOException, ClassNotFoundException
+        {
+        DataInputStream in = new DataInputStream(stream);
+        if (readHeader(in, "stream") != FULL)
+            throw new IOException("Delta checkpoints must be read from a File, so that their base can be found");
+        return read(new ChunkReader(in, null, null));
+        }
+
+    static SimState read(ChunkReader chunks) throws IOException, ClassNotFoundException
+        {
+        try
+            {
+            ObjectInputStream s = new ObjectInputStream(chunks);
+            SimState state = (SimState) (s.readObject());
+            state.awakeFromCheckpoint();
+            return state;
+            }
+        finally
+            {
+            chunks.end();
+            }
+        }
+
+    // reads the common part of the header, returning the type
+    static int readHeader(DataInput in, Object source) throws IOException
+        {
+        if (in.readLong() != MAGIC)
+            throw new IOException("Not a chunked MASON checkpoint: " + source);
+        int version = in.readInt();
+        if (version != VERSION)
+            throw new IOException("Unknown checkpoint version " + version + " in " + source);
+        int type = in.readByte();
+        in.readByte();  // compression, which readers don't need to know
+        in.readLong();  // id
+        if (type != FULL && type != DELTA)
+            throw new IOException("Unknown checkpoint type " + type + " in " + source);
+        return type;
+        }
+
+    // Finds the file offset of every chunk in a full checkpoint, checking that it's the one expected.
+    static long[] indexBase(RandomAccessFile base, long baseID, File file) throws IOException
+        {
+        if (readHeader(base, file) != FULL)
+            throw new IOException("Base checkpoint " + file + " is not a full checkpoint");
+        base.seek(base.getFilePointer() - 8);
+        if (base.readLong() != baseID)
+            throw new IOException("Base checkpoint " + file + " has been replaced by a different checkpoint");
+
+        long[] offsets = new long[16];
+        int count = 0;
+        byte[] header = new byte[8];
+        while(true)
+            {
+            long offset = base.getFilePointer();
+            base.readFully(header, 0, 4);
+            int raw = decodeInt(header, 0);
+            if (raw == END) break;
+            base.readFully(header, 4, 4);
+            int stored = decodeInt(header, 4);
+            if (count == offsets.length)
+                offsets = Arrays.copyOf(offsets, count * 2);
+            offsets[count++] = offset;
+            base.seek(offset + 8 + (stored == 0 ? raw : stored));
+            }
+        return Arrays.copyOf(offsets, count);
+        }
+
+    static int decodeInt(byte[] b, int pos)
+        {
+        return ((b[pos] & 0xFF) << 24) | ((b[pos + 1] & 0xFF) << 16) | ((b[pos + 2] & 0xFF) << 8) | (b[pos + 3] & 0xFF);
+        }
+
+    // FNV-1a, 64 bits
+    static long hash(byte[] b, int len)
+        {
+        long h = 0xcbf29ce484222325L;
+        for(int i = 0; i < len; i++)
+            h = (h ^ (b[i] & 0xFF)) * 0x100000001b3L;
+        return h;
+        }
+
+
+    /** Cuts the serialized stream into chunks, and either encodes each one directly or, if asynchronous,
+        hands a copy of it to the background thread. */
+    class ChunkCutter extends OutputStream
+        {
+        ChunkEncoder encoder;  // null if asynchronous
+        byte[] chunk = new byte[MAX_CHUNK];
+        int len = 0;
+        long gear = 0;
+
+        ChunkCutter(ChunkEncoder encoder)
+            {
+            this.encoder = encoder;
+            }
+
+        public void write(int b) throws IOException
+            {
+            write(new byte[] { (byte) b }, 0, 1);
+            }
+
+        public void write(byte[] b, int off, int n) throws IOException
+            {
+            final long[] gearTable = GEAR;
+            final byte[] chunk = this.chunk;
+            while(n > 0)
+                {
+                int start = len;
+                int end = Math.min(len + n, MAX_CHUNK);
+                System.arraycopy(b, off, chunk, start, end - start);
+
+                // the hash only depends on the last WINDOW bytes, so there's no need to compute it any earlier than this
+                int i = Math.max(start, MIN_CHUNK - WINDOW);
+                long g = gear;
+                int boundary = -1;
+                for( ; i < end; i++)
+                    {
+                    g = (g << 1) + gearTable[chunk[i] & 0xFF];
+                    if ((g & BOUNDARY_MASK) == 0 && i >= MIN_CHUNK - 1)
+                        { boundary = i + 1; break; }
+                    }
+                gear = g;
+                if (boundary >= 0) end = boundary;
+
+                off += end - start;
+                n -= end - start;
+                len = end;
+                if (boundary >= 0 || len == MAX_CHUNK)
+                    emit();
+                }
+            }
+
+        // emits the final partial chunk
+        void finish() throws IOException
+            {
+            if (len > 0) emit();
+            }
+
+        void emit() throws IOException
+            {
+            final int length = len;
+            len = 0;
+            gear = 0;
+            if (encoder != null)
+                {
+                encoder.encode(chunk, length);
+                return;
+                }
+
+            // back-pressure: wait until the background thread has room for us
+            try { pendingMemory.acquire(permits(length)); }
+            catch (InterruptedException e) { throw new InterruptedIOException("Interrupted while waiting to checkpoint"); }
+            queue.add(Arrays.copyOf(chunk, length));
+            }
+        }
+
+
+    /** Writes chunks out to a checkpoint file as records: a literal chunk is written as its length, its stored
+        (compressed) length or 0 if uncompressed, and its stored bytes.  A chunk found in the base is written
+        as REFERENCE followed by its index in the base.  When a full checkpoint is finished, it becomes the base. */
+    class ChunkEncoder
+        {
+        File file;
+        FileOutputStream f;
+        DataOutputStream out;
+        boolean delta;
+        long number;  // which checkpoint this is, counting from 0
+        long id = new Random().nextLong();
+
+        byte[] compressed = new byte[MAX_CHUNK];
+        Deflater deflater = (compression == COMPRESSION_NONE ? null :
+            new Deflater(compression == COMPRESSION_FAST ? Deflater.BEST_SPEED : Deflater.DEFAULT_COMPRESSION));
+        CRC32 crc = new CRC32();
+        int skip = 0;  // how many more chunks to store without trying to compress them
+
+        // the chunks written, if this is a full checkpoint
+        HashMap hashes = new HashMap();
+        IntBag crcs = new IntBag();
+        IntBag lengths = new IntBag();
+
+        ChunkEncoder(File file, boolean delta, long number) throws IOException
+            {
+            // If the full checkpoint we were to be a delta of failed, we're against the previous base.  If there is none,
+            // we're a full checkpoint ourselves, and the next base: see writeDelta(...).
+            if (base == null) delta = false;
+            this.file = file;
+            this.delta = delta;
+            this.number = number;
+            try
+                {
+                f = new FileOutputStream(file);
+                out = new DataOutputStream(new BufferedOutputStream(f, 1 << 16));
+                out.writeLong(MAGIC);
+                out.writeInt(VERSION);
+                out.writeByte(delta ? DELTA : FULL);
+                out.writeByte(compression);
+                out.writeLong(id);
+                if (delta)
+                    {
+                    out.writeLong(baseID);
+                    out.writeUTF(base.getName());
+                    }
+                }
+            catch (Throwable e)
+                {
+                abort();
+                throw e;
+                }
+            }
+
+        void encode(byte[] chunk, int length) throws IOException
+            {
+            Long hash = Long.valueOf(hash(chunk, length));
+            crc.reset();
+            crc.update(chunk, 0, length);
+            int c = (int) crc.getValue();
+
+            if (delta)
+                {
+                Integer index = (Integer) baseChunks.get(hash);
+                if (index != null)
+                    {
+                    int i = index.intValue();
+                    if (baseCRCs.objs[i] == c && baseLengths.objs[i] == length)
+                        {
+                        out.writeInt(REFERENCE);
+                        out.writeInt(i);
+                        return;
+                        }
+                    }
+                }
+            else
+                {
+                if (!hashes.containsKey(hash))
+                    hashes.put(hash, Integer.valueOf(crcs.numObjs));
+                crcs.add(c);
+                lengths.add(length);
+                }
+
+            int stored = 0;
+            if (skip > 0) skip--;
+            else if (deflater != null)
+                {
+                deflater.reset();
+                deflater.setInput(chunk, 0, length);
+                deflater.finish();
+                while(!deflater.finished() && stored < compressed.length)
+                    stored += deflater.deflate(compressed, stored, compressed.length - stored);
+                if (!deflater.finished() || stored >= length)  // it didn't compress, so store it as is
+                    stored = 0;
+                // Serialized arrays of doubles and the like hardly compress at all, but are expensive to try.
+                // So if we're going for speed and a chunk saves less than 1/8, store the next several as they are.
+                if (compression == COMPRESSION_FAST && (stored == 0 || stored > length - length / 8))
+                    skip = SKIP_INCOMPRESSIBLE;
+                }
+            out.writeInt(length);
+            out.writeInt(stored);
+            if (stored == 0) out.write(chunk, 0, length);
+            else out.write(compressed, 0, stored);
+            }
+
+        // Ends the file, syncs it to disk, and if it's a full checkpoint, makes it the base
+        void finish() throws IOException
+            {
+            try
+                {
+                out.writeInt(END);
+                out.flush();
+                f.getFD().sync();
+                f.close();
+                }
+            catch (IOException e)
+                {
+                abort();
+                throw e;
+                }
+            if (deflater != null) deflater.end();
+            if (!delta)
+                {
+                base = file;
+                baseID = id;
+                baseChunks = hashes;
+                baseCRCs = crcs;
+                baseLengths = lengths;
+                synchronized(Checkpoint.this) { lastFull = Math.max(lastFull, number); }
+                }
+            }
+
+        // Closes and deletes the partial file.  If it was a full checkpoint, or it overwrote the base, the next checkpoint must be full.
+        void abort()
+            {
+            boolean lostBase = false;
+            if (f != null)  // else we never opened, let alone truncated, the file
+                {
+                try { f.close(); } catch (IOException e) { }
+                file.delete();
+                lostBase = file.equals(base);
+                if (lostBase) base = null;
+                }
+            if (deflater != null) deflater.end();
+            synchronized(Checkpoint.this)
+                {
+                if (lostBase || (!delta && lastFull == number))
+                    lastFull = -1;
+                }
+            }
+        }
+
+
+    /** Reassembles the serialized stream from the records written by ChunkEncoder, fetching referenced chunks from the base. */
+    static class ChunkReader extends InputStream
+        {
+        DataInputStream in;
+        RandomAccessFile base;
+        long[] baseOffsets;
+
+        byte[] chunk = new byte[MAX_CHUNK];
+        int pos = 0;
+        int len = 0;
+        boolean done = false;
+        byte[] stored = new byte[MAX_CHUNK];
+        byte[] header = new byte[8];
+        Inflater inflater = new Inflater();
+
+        ChunkReader(DataInputStream in, RandomAccessFile base, long[] baseOffsets)
+            {
+            this.in = in;
+            this.base = base;
+            this.baseOffsets = baseOffsets;
+            }
+
+        // loads the next chunk, returning false if there are no more
+        boolean fill() throws IOException
+            {
+            if (done) return false;
+            int raw = in.readInt();
+            if (raw == END)
+                {
+                done = true;
+                return false;
+                }
+            else if (raw == REFERENCE)
+                {
+                int index = in.readInt();
+                if (base == null || index < 0 || index >= baseOffsets.length)
+                    throw new IOException("Corrupt checkpoint: reference to nonexistent chunk " + index);
+                base.seek(baseOffsets[index]);
+                base.readFully(header);
+                load(base, decodeInt(header, 0), decodeInt(header, 4));
+                }
+            else load(in, raw, in.readInt());
+            pos = 0;
+            return true;
+            }
+
+        void load(DataInput input, int raw, int storedLength) throws IOException
+            {
+            if (raw <= 0 || raw > MAX_CHUNK || storedLength < 0 || storedLength >= raw)
+                throw new IOException("Corrupt checkpoint: chunk of length " + raw + " stored in " + storedLength);
+            if (storedLength == 0)
+                input.readFully(chunk, 0, raw);
+            else
+                {
+                input.readFully(stored, 0, storedLength);
+                inflater.reset();
+                inflater.setInput(stored, 0, storedLength);
+                int n = 0;
+                try
+                    {
+                    while(n < raw && !inflater.finished())
+                        {
+                        int r = inflater.inflate(chunk, n, raw - n);
+                        if (r == 0 && (inflater.needsInput() || inflater.needsDictionary())) break;
+                        n += r;
+                        }
+                    }
+                catch (DataFormatException e)
+                    {
+                    throw new IOException("Corrupt checkpoint: " + e.getMessage());
+                    }
+                if (n != raw)
+                    throw new IOException("Corrupt checkpoint: chunk inflated to " + n + " bytes rather than " + raw);
+                }
+            len = raw;
+            }
+
+        public int read() throws IOException
+            {
+            if (pos == len && !fill()) return -1;
+            return chunk[pos++] & 0xFF;
+            }
+
+        public int read(byte[] b, int off, int n) throws IOException
+            {
+            if (n == 0) return 0;
+            if (pos == len && !fill()) return -1;
+            int count = Math.min(n, len - pos);
+            System.arraycopy(chunk, pos, b, off, count);
+            pos += count;
+            return count;
+            }
+
+        public int available()
+            {
+            return len - pos;
+            }
+
+        void end()
+            {
+            inflater.end();
+            }
+        }
+    }
@@ -18,11 +18,14 @@ import sim.util.*;
     <p>For example, keep in mind that the random number generator is unsynchronized.
     If you access the random number generator from within a ParallelSequence, or
     indeed from multiple threads you've spawned in other situations, you need
-    to remember to lock on the random number generator itself.
-    
+    to remember to lock on the random number generator itself.  Locking serializes your threads,
+    so it's often better to give each of the Steppables in the ParallelSequence a generator of its own
+    from state.randomStreams(), for example state.randomStreams().substream(i) for the i'th Steppable.
+
     <p>In the same vein, if you use a RandomSequence within a ParallelSequence, you need
     to let the RandomSequence know this so that it will lock on the random number generator
-    properly.  This is done by setting the <b>shouldSynchronize</b> flag in the RandomSequence.
+    properly.  This is done by setting the <b>shouldSynchronize</b> flag in the RandomSequence,
+    or better, by constructing the RandomSequence with a generator of its own.
     
     <p>ParallelSequences are lightweight: they reuse the same threads
     if stepped repeatedly.  This means that you must never attach a ParallelSequence
@@ -50,6 +53,15 @@ import sim.util.*;
     at the end of the run to call cleanup() on it.  It's not a bad idea for a ParallelSequence which
     is one-shot rather than repeating.
     
+    <p><b>The Shared Pool</b>
+    If you construct your ParallelSequence with <b>ParallelSequence.SHARED</b> as its number of threads, it
+    won't build threads of its own at all.  Instead it steps its Steppables on the JVM-wide shared work-stealing
+    pool (ForkJoinPool.commonPool()), so any number of ParallelSequences, in any number of simulations running in the same
+    JVM, share a single set of threads sized to the number of CPUs.  The Steppables are split up adaptively: a range of
+    Steppables is repeatedly halved, and one half handed off, only so long as other threads appear to be idle.  Thus
+    uneven Steppables don't leave CPUs sitting around, and even ones aren't broken into needlessly small pieces.  There are no threads to leak,
+    so you need not call cleanup() on such a ParallelSequence, nor bother with setDestroysThreads(...).
+    
     <p>Be sure to read the class documentation on sim.engine.Sequence</b>
 */
 
@@ -65,6 +77,8 @@ public class ParallelSequence extends Sequence
     /** Indicates that MASON should determine how many threads to use based on the number of CPUs. */ 
     public static final int CPUS = -1;
     public static final int STEPPABLES = -2;
+    /** Indicates that MASON should step the Steppables on the shared work-stealing pool rather than on threads of its own. */
+    public static final int SHARED = -3;
     static int availableProcessors = Runtime.getRuntime().availableProcessors();
         
     public boolean getDestroysThreads() { return destroysThreads; }
@@ -124,7 +138,7 @@ public class ParallelSequence extends Sequence
 
     /** Creates an immutable ParallelSequence with the specified number of threads, or if threads==ParallelSequence.CPUS, then the number of threads is determined
         at runtime based on the number of CPUs or cores on the system, or if threads == ParallelSequence.STEPPABLES, then the number of threads
-        is the size of the steps array passed in. */
+        is the size of the steps array passed in, or if threads == ParallelSequence.SHARED, then the shared work-stealing pool is used. */
     public ParallelSequence(Steppable[] steps, int threads)
         {
         super(steps);
@@ -139,7 +153,8 @@ public class ParallelSequence extends Sequence
 
     /** Creates an immutable ParallelSequence with the specified number of threads, or if threads==ParallelSequence.CPUS, then the number of threads is determined
         at runtime based on the number of CPUs or cores on the system, or if threads == ParallelSequence.STEPPABLES, then the number of threads
-        is the size of the collection passed in (and may change as the collection grows or shrinks). */
+        is the size of the collection passed in (and may change as the collection grows or shrinks), or if threads == ParallelSequence.SHARED,
+        then the shared work-stealing pool is used. */
     public ParallelSequence(Collection steps, int threads)
         {
         super(steps);
@@ -171,6 +186,21 @@ public class ParallelSequence extends Sequence
             loadSteps();
             }
 
+        if (numThreads == SHARED)
+            {
+            try
+                {
+                if (size > 0)
+                    ForkJoinPool.commonPool().invoke(new Split(state, 0, size));
+                }
+            finally
+                {
+                // don't need to synchronize to turn operating off
+                operating = false;
+                }
+            return;
+            }
+
         if (threads == null)  // rebuild threads
             threads = new ThreadPool();
 
@@ -346,6 +376,40 @@ public class ParallelSequence extends Sequence
             }
         }
 
+    // steps a range of the Steppables in the shared pool, handing off halves of the range while other threads look idle
+    class Split extends AdaptiveSplit
+        {
+        SimState state;
+        
+        public Split(SimState state, int start, int end)
+            {
+            super(start, end);
+            this.state = state;
+            }
+            
+        protected AdaptiveSplit split(int start, int end)
+            {
+            return new Split(state, start, end);
+            }
+            
+        protected void process(int start, int end)
+            {
+            Steppable[] steps = ParallelSequence.this.steps;
+            for(int s = start; s < end; s++)
+                {
+                Steppable step = steps[s];
+                assert sim.util.LocationLog.set(step);
+                step.step(state);
+                assert sim.util.LocationLog.clear();
+                }
+            }
+
+        // explicitly state a UID in order to be 'cross-platform' serializable 
+        // because we ARE an inner class and compilers come up with all sorts
+        // of different UIDs for inner classes and their parents.
+        private static final long serialVersionUID = 1;
+        }
+
     // a worker is a semaphore and also implements a runnable
     class Worker implements Runnable
         {
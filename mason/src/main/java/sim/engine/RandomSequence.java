@@ -6,6 +6,7 @@
 
 package sim.engine;
 import java.util.*;
+import ec.util.*;
 
 /**
    RandomSequence is a Sequence which executes its Steppable objects in random order each time.
@@ -16,7 +17,9 @@ import java.util.*;
    it will lock on the random number generator
    properly.  This is done by setting the <b>shouldSynchronize</b> flag in the RandomSequence.
    Likewise, whenever in other threads you access the generator in a multithreaded context, you
-   should have them synchronize on the generator first.
+   should have them synchronize on the generator first.  Alternatively you can construct the RandomSequence
+   with a random number generator of its own, such as one from state.randomStreams(), which it will
+   use instead without any locking.
    
    <p>Be sure to read the class documentation on sim.engine.Sequence</b>
 */
@@ -26,6 +29,7 @@ public class RandomSequence extends Sequence
     private static final long serialVersionUID = 1;
 
     final boolean shouldSynchronize;
+    final MersenneTwisterFast random;  // if null, we use state.random
     
     /** Creates an immutable RandomSequence.  Does not synchronize before using the random number generator */
     public RandomSequence(Steppable[] steps)
@@ -38,6 +42,16 @@ public class RandomSequence extends Sequence
         {
         super(steps);
         this.shouldSynchronize = shouldSynchronize;
+        this.random = null;
+        }
+    
+    /** Creates an immutable RandomSequence which shuffles with the given random number generator rather than
+        the SimState's.  If no one else uses the generator, there is no need to synchronize on it. */
+    public RandomSequence(Steppable[] steps, MersenneTwisterFast random)
+        {
+        super(steps);
+        this.shouldSynchronize = false;
+        this.random = random;
         }
     
     /** Creates an immutable RandomSequence.  Does not synchronize before using the random number generator */
@@ -51,6 +65,16 @@ public class RandomSequence extends Sequence
         {
         super(steps);
         this.shouldSynchronize = shouldSynchronize;
+        this.random = null;
+        }
+    
+    /** Creates an immutable RandomSequence which shuffles with the given random number generator rather than
+        the SimState's.  If no one else uses the generator, there is no need to synchronize on it. */
+    public RandomSequence(Collection steps, MersenneTwisterFast random)
+        {
+        super(steps);
+        this.shouldSynchronize = false;
+        this.random = random;
         }
     
     int nextInt(SimState state, int n) 
@@ -67,6 +91,7 @@ public class RandomSequence extends Sequence
         loadSteps();
 
         final boolean shouldSynchronize = this.shouldSynchronize;
+        final MersenneTwisterFast random = this.random;
         int size = this.size;
         Steppable[] steps = this.steps;
 
@@ -75,7 +100,8 @@ public class RandomSequence extends Sequence
         Steppable temp;
         for(int x=size-1; x>=1 ; x--)
             {
-            int i = (shouldSynchronize ? nextInt(state,x+1) : state.random.nextInt(x+1));
+            int i = (random != null ? random.nextInt(x+1) : 
+                shouldSynchronize ? nextInt(state,x+1) : state.random.nextInt(x+1));
             temp = steps[i];
             steps[i] = steps[x];
             steps[x] = temp;
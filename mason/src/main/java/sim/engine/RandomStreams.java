@@ -0,0 +1,89 @@
+/*
+  Copyright 2019 by Sean Luke and George Mason University
+  Licensed under the Academic Free License version 3.0
+  See the file "LICENSE" for more information
+*/
+
+package sim.engine;
+import ec.util.*;
+import java.util.*;
+
+/**
+   RandomStreams hands out independent random number generators, all derived from a single seed, so that threads,
+   partitions, or agents can each draw random numbers from a generator of their own rather than sharing (and locking on)
+   the SimState's generator, or inventing seeds of their own which would make runs irreproducible.  Every generator is an
+   ordinary MersenneTwisterFast, so it may be handed to the sim.util.distribution classes, or to anything else which takes
+   one, and drawn from without contention.  Usually you'd get a RandomStreams for your simulation's seed from
+   SimState.randomStreams().
+
+   <p>There are two kinds of streams:
+
+   <ul>
+   <li><b>Substreams</b> are numbered 0, 1, 2, ... .  Substream <i>i</i> is a generator seeded with the seed
+   and then jumped ahead (see MersenneTwisterFast.jump()) <i>i</i>+1 times, so each substream, and the SimState's own
+   generator, may produce 2^128 numbers before running into the next.  They are guaranteed not to overlap, but each
+   jump takes a few milliseconds the first time a substream is requested, so they're meant for a modest number of threads
+   or partitions of a field.
+
+   <li><b>Keyed streams</b> are identified by any long, such as an agent's ID.  A keyed stream is a generator seeded with
+   both the seed and the key through MersenneTwisterFast's array seeding, which mixes them nonlinearly into the whole state.
+   This costs about as much as constructing a generator, so you can afford one per agent, but unlike substreams they are
+   only independent in the sense that differently-seeded Mersenne Twisters are.
+   </ul>
+
+   <p>Each call returns a brand-new generator at the start of its stream, so the same index or key always gives the same
+   numbers for a given seed.  Hold onto the generator rather than asking for it again each time you need a number.
+   RandomStreams is threadsafe.
+*/
+
+public class RandomStreams implements java.io.Serializable
+    {
+    private static final long serialVersionUID = 1;
+
+    final long seed;
+
+    // Substreams computed so far, used as prototypes for cloning.  Only accessed while synchronized.
+    transient ArrayList<MersenneTwisterFast> substreams;
+
+    /** Creates RandomStreams derived from the given seed. */
+    public RandomStreams(long seed)
+        {
+        this.seed = seed;
+        }
+
+    /** Returns the seed from which the streams are derived. */
+    public long getSeed() { return seed; }
+
+    /** Returns a new generator at the start of the given substream, which must be >= 0. */
+    public synchronized MersenneTwisterFast substream(int index)
+        {
+        if (index < 0)
+            throw new IllegalArgumentException("Substream index must be >= 0: " + index);
+        if (substreams == null)
+            substreams = new ArrayList<MersenneTwisterFast>();
+        while(substreams.size() <= index)
+            {
+            MersenneTwisterFast random = (substreams.isEmpty() ?
+                new MersenneTwisterFast(seed) :
+                (MersenneTwisterFast)(substreams.get(substreams.size() - 1).clone()));
+            random.jump();
+            substreams.add(random);
+            }
+        return (MersenneTwisterFast)(substreams.get(index).clone());
+        }
+
+    /** Returns new generators at the start of substreams 0 through n-1. */
+    public MersenneTwisterFast[] substreams(int n)
+        {
+        MersenneTwisterFast[] randoms = new MersenneTwisterFast[n];
+        for(int i = n - 1; i >= 0; i--)  // the last one first, so they're all computed in one go
+            randoms[i] = substream(i);
+        return randoms;
+        }
+
+    /** Returns a new generator at the start of the stream with the given key. */
+    public MersenneTwisterFast keyedStream(long key)
+        {
+        return new MersenneTwisterFast(new int[] { (int) seed, (int)(seed >>> 32), (int) key, (int)(key >>> 32) });
+        }
+    }
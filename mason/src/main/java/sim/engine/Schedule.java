@@ -6,6 +6,7 @@
 
 package sim.engine;
 import java.io.Serializable;
+import java.util.concurrent.*;
 
 import sim.util.*;
 import ec.util.*;
@@ -80,14 +81,33 @@ import ec.util.*;
    (like AsynchronousSteppable or ParallelSequence), they can turn around and submit step-requests to the Schedule even while it's still
    in its step() method.
    
+   <p>If many threads reschedule Steppables during a step (for example, the Steppables in a ParallelSequence), they will all
+   contend for the lock.  You can avoid this by calling setConcurrentScheduling(true).  Then while step() is stepping Steppables,
+   scheduling requests are checked without the lock and dropped into one of several staging buffers, which are added to the queue
+   when the Steppables are done.  Since nothing scheduled during a step can be stepped during the same step, this is invisible
+   to your simulation.  The getTime(), getSteps(), and isSealed() methods never lock.
+   
    <p>One downside to this flexibility is that it's very inefficient to check, at each step of a Steppable, whether the Schedule
    has been reset or not.  Thus now if you call reset() or [better] SimState.kill(), the Schedule will continue to step Steppables
    until it has exhausted ones scheduled for the current timestep.  Only at that point will it cease.
    
-   <p><b>Heaps and Calendar Queues</b>.  Schedule uses a plain-old binary heap for its queueing mechanism.  This is reasonably efficient,
+   <p><b>Parallel Orderings</b>.  Steppables scheduled for the same time and ordering are unordered with respect to one another.
+   If you call setParallelThreads(N) with N > 1, the Schedule takes advantage of this and steps the Steppables of each
+   ordering in parallel on N threads, waiting for all of them to finish before moving on to the next ordering.  The same warnings
+   apply as for ParallelSequence: your Steppables must be able to run concurrently without race conditions.  In particular,
+   the SimState's random number generator is unsynchronized, so Steppables stepped in parallel should draw their random numbers
+   from Schedule.getRandom(state) instead.  In a parallel ordering this returns a generator private to the chunk of Steppables
+   being stepped; otherwise it returns state.random.  The chunk generators are seeded from state.random and Steppables are assigned
+   to chunks deterministically, so a run remains reproducible for a given seed and number of threads.  To keep the queue
+   deterministic as well, Steppables scheduled by a chunk are held back and added to the queue, chunk by chunk, once the ordering
+   has completed.  This is invisible to the Steppables, since everything for the current time has already been taken out of the queue.
+   
+   <p><b>Heaps and Calendar Queues</b>.  By default Schedule uses a plain-old binary heap for its queueing mechanism.  This is reasonably efficient,
    but it could be made more efficient with a Calendar Queue designed for the purposes of your simulation.  We settled on a Heap because
-   we do not know what the expected scheduling pattern will be for any given simulation, and so had to go for the most general case.  If you'd
-   care to customize your queue, you can do so by overriding the createHeap() method in a custom Schedule.  We imagine this would be rare.
+   we do not know what the expected scheduling pattern will be for any given simulation, and so had to go for the most general case.  However
+   the very common case of many agents scheduled at integer timesteps with a handful of orderings is better served by a CalendarQueue,
+   which you can turn on by calling setCalendarQueueBucketWidth(1.0) (typically in your SimState's constructor).  If you'd
+   care to customize your queue further, you can do so by overriding the createHeap() method in a custom Schedule.  We imagine this would be rare.
 */
     
 
@@ -112,22 +132,58 @@ public class Schedule implements java.io.Serializable
     /** The Schedule's queue. */
     protected Heap queue = createHeap();
     
+    /** The bucket width of the CalendarQueue used by the Schedule, or 0 if the Schedule uses a binary Heap (the default). */
+    double calendarQueueBucketWidth;  // no initializer: createHeap() is called before it would run
+    
     /** Returns a Heap to be used by the Schedule.  By default, returns a
-        binary heap.  Override this to provide your own
-        subclass of Heap tuned for your particular problem. */
-    protected Heap createHeap() { return new Heap(); }
+        binary heap, or a CalendarQueue if setCalendarQueueBucketWidth(...) has been set to a positive value.  
+        Override this to provide your own subclass of Heap tuned for your particular problem. */
+    protected Heap createHeap() 
+        { 
+        if (calendarQueueBucketWidth > 0) return new CalendarQueue(calendarQueueBucketWidth);
+        return new Heap(); 
+        }
+    
+    /** Sets the Schedule to use a CalendarQueue with the given bucket width (if width > 0) 
+        or a binary Heap (if width == 0, the default) as its queue.  A width of 1.0 is appropriate for simulations whose agents
+        are scheduled at integer timesteps.  Any events presently in the queue are moved to the new queue.  The choice
+        persists across calls to reset() and clear().  You may not call this method from within the step() method. */
+    public void setCalendarQueueBucketWidth(double width)
+        {
+        if (!(width >= 0) || width == Double.POSITIVE_INFINITY)
+            throw new IllegalArgumentException("Calendar queue bucket width must be >= 0 and finite: " + width);
+        if (inStep)
+            throw new RuntimeException("May not change the Schedule's queue while inside a step method.");
+        synchronized(lock)
+            {
+            calendarQueueBucketWidth = width;
+            Heap old = queue;
+            queue = createHeap();
+            while(!old.isEmpty())
+                {
+                Comparable key = old.getMinKey();
+                queue.add(old.extractMin(), key);
+                }
+            }
+        }
+
+    /** Returns the bucket width of the CalendarQueue used by the Schedule, or 0 if it uses a binary Heap (the default). */
+    public double getCalendarQueueBucketWidth() { synchronized(lock) { return calendarQueueBucketWidth; } }
     
     /** The current time, as returned by getTime().  
-        If you modify this in a subclass, be sure to synchronize on Schedule.lock first. */
-    protected double time;
+        If you modify this in a subclass, be sure to synchronize on Schedule.lock first.  It is
+        volatile so that it may be read without locking. */
+    protected volatile double time;
     
     /** The current steps, as returned by getSteps().  
-        If you modify this in a subclass, be sure to synchronize on Schedule.lock first. */
-    protected long steps;
+        If you modify this in a subclass, be sure to synchronize on Schedule.lock first.  It is
+        volatile so that it may be read without locking. */
+    protected volatile long steps;
         
     /** Whether the schedule is sealed, as returned by isSealed().  
-        If you modify this in a subclass, be sure to synchronize on Schedule.lock first. */
-    protected boolean sealed = false;
+        If you modify this in a subclass, be sure to synchronize on Schedule.lock first.  It is
+        volatile so that it may be read without locking. */
+    protected volatile boolean sealed = false;
                 
     /** The schedule lock.  Many methods synchronize on this lock before modifying internal variables. */
     protected Object lock = new boolean[1];  // an array is a unique, serializable object
@@ -157,6 +213,112 @@ public class Schedule implements java.io.Serializable
             }
         }
         
+    /** How many chunks each thread's share of a parallel ordering is broken into, so that uneven Steppables balance out. */
+    static final int CHUNKS_PER_THREAD = 4;
+    
+    // The number of threads used to step each ordering, or 0 or 1 if orderings are stepped sequentially (the default)
+    int parallelThreads = 0;
+    
+    // Random number generators, one per chunk, used in parallel orderings.  Built lazily from state.random.
+    MersenneTwisterFast[] parallelRandoms = null;
+    
+    // The pool which steps parallel orderings.  Threads can't be serialized, so we rebuild it lazily.
+    transient ForkJoinPool pool = null;
+    
+    // The chunk being stepped by the current thread, if any
+    static ThreadLocal currentChunk = new ThreadLocal();
+    
+    // The chunks of the ordering presently being stepped in parallel, or null.  Only modified inside the lock.
+    Chunk[] parallelChunks = null;
+    
+    /** Sets the number of threads used to step the Steppables of each (time, ordering) in parallel.
+        Values of 0 or 1 (the default) step everything sequentially in the Schedule's thread.  
+        You may not call this method from within the step() method. */
+    public void setParallelThreads(int threads)
+        {
+        if (threads < 0)
+            throw new IllegalArgumentException("Number of parallel threads must be >= 0: " + threads);
+        if (inStep)
+            throw new RuntimeException("May not change the number of parallel threads while inside a step method.");
+        synchronized(lock)
+            {
+            if (threads != parallelThreads)
+                {
+                if (pool != null) pool.shutdown();
+                pool = null;
+                parallelRandoms = null;
+                }
+            parallelThreads = threads;
+            }
+        }
+        
+    /** Returns the number of threads used to step the Steppables of each (time, ordering) in parallel,
+        or 0 or 1 if they are stepped sequentially (the default). */
+    public int getParallelThreads() { synchronized(lock) { return parallelThreads; } }
+    
+    // Records where step() spends its time, or null (the default) if we're not profiling.  Only modified inside the lock.
+    transient ScheduleProfiler profiler = null;
+    
+    /** Attaches a ScheduleProfiler, which will record each step() from now on, or detaches the current one if null.
+        The profiler persists across calls to reset() and clear(), but is not saved in checkpoints.  */
+    public void setProfiler(ScheduleProfiler profiler)
+        {
+        synchronized(lock)
+            {
+            this.profiler = profiler;
+            }
+        }
+    
+    /** Returns the attached ScheduleProfiler, or null if there is none. */
+    public ScheduleProfiler getProfiler() { synchronized(lock) { return profiler; } }
+    
+    /** Returns the random number generator which a Steppable should use when being stepped.
+        If the Steppable is being stepped in a parallel ordering (see setParallelThreads(...)),
+        this is a generator private to the chunk of Steppables presently being stepped by the calling thread.  Otherwise
+        it is simply state.random. */
+    public static MersenneTwisterFast getRandom(SimState state)
+        {
+        Chunk chunk = (Chunk)(currentChunk.get());
+        if (chunk == null) return state.random;
+        return chunk.random;
+        }
+        
+    // Whether scheduling during step() goes through the staging buffers (see setConcurrentScheduling)
+    boolean concurrentScheduling = false;
+    
+    // True while step() is stepping Steppables with concurrent scheduling turned on.  While this is true, the time cannot change.
+    volatile boolean staging = false;
+    
+    // The staging buffers, one of which is picked by the scheduling thread's id.  Rebuilt lazily.
+    transient Stripe[] stripes = null;
+    
+    /** A staging buffer of times, orderings, and events scheduled while stepping.  Synchronize on the Stripe to use it. */
+    static class Stripe
+        {
+        DoubleBag times = new DoubleBag();
+        IntBag orderings = new IntBag();
+        Bag events = new Bag();
+        }
+        
+    /** Sets whether Steppables may schedule events concurrently, without contending for the Schedule's lock.  
+        If true, events scheduled while step() is stepping Steppables are added to one of several staging buffers
+        (picked by thread) rather than directly to the queue, and the buffers are added to the queue when step() is done.  
+        This is useful when many Steppables in a ParallelSequence or a parallel ordering reschedule themselves.  
+        The time, steps, and sealed values are always readable without locking.  Note that subclasses which override 
+        _scheduleOnce(...) will not see events which are staged.  You may not call this method from within the step() method. */
+    public void setConcurrentScheduling(boolean val)
+        {
+        if (inStep)
+            throw new RuntimeException("May not change concurrent scheduling while inside a step method.");
+        synchronized(lock)
+            {
+            concurrentScheduling = val;
+            }
+        }
+    
+    /** Returns whether Steppables may schedule events concurrently, without contending for the Schedule's lock. */
+    public boolean getConcurrentScheduling() { synchronized(lock) { return concurrentScheduling; } }
+    
     /** Creates a Schedule. */
     public Schedule()
         {
@@ -170,12 +332,12 @@ public class Schedule implements java.io.Serializable
     public double time() { return getTime(); }
 
     /** Returns the current timestep */
-    public double getTime() { synchronized(lock) { return time; } }
+    public double getTime() { return time; }  // volatile, no need to lock
     
     /** Returns whether or not the schedule is sealed (nothing more can be scheduled, even 
         if the schedule isn't at AFTER_SIMULATION yet).   Calling reset() will unseal
         a Schedule, and calling seal() will seal it.  */
-    public boolean isSealed() { synchronized(lock) { return sealed; } }
+    public boolean isSealed() { return sealed; }  // volatile, no need to lock
         
     /** Returns the current time in string format. If the time is BEFORE_SIMULATION, then beforeSimulationString is
         returned.  If the time is AFTER_SIMULATION, then afterSimulationString is returned.  Otherwise a numerical
@@ -198,7 +360,7 @@ public class Schedule implements java.io.Serializable
         }
 
     /** Returns the number of steps the Schedule has pulsed so far. */
-    public long getSteps() { synchronized(lock) { return steps; } }
+    public long getSteps() { return steps; }  // volatile, no need to lock
 
     // pushes the time to AFTER_SIMULATION and attempts to kill all
     // remaining scheduled items
@@ -208,10 +370,68 @@ public class Schedule implements java.io.Serializable
         synchronized(lock)
             {
             time = AFTER_SIMULATION;
-            queue = createHeap();  // let 'em GC  -- must be inside the lock so scheduleOnce doesn't try to add more
+            queue.clear();  // let 'em GC, but keep the capacity -- must be inside the lock so scheduleOnce doesn't try to add more
+            clearPending();
             }
         }
 
+    // Throws away events held back by the chunks of a parallel ordering or in the staging buffers.  Must be called inside the lock.
+    void clearPending()
+        {
+        if (parallelChunks != null)
+            for(int i = 0; i < parallelChunks.length; i++)
+                synchronized(parallelChunks[i])
+                    {
+                    parallelChunks[i].pendingTimes.clear();
+                    parallelChunks[i].pendingOrderings.clear();
+                    parallelChunks[i].pendingEvents.clear();
+                    }
+        if (stripes != null)
+            for(int i = 0; i < stripes.length; i++)
+                synchronized(stripes[i])
+                    {
+                    stripes[i].times.clear();
+                    stripes[i].orderings.clear();
+                    stripes[i].events.clear();
+                    }
+        }
+    
+    // Adds all the events in the staging buffers to the queue, and turns off staging
+    void flushStaged()
+        {
+        staging = false;
+        synchronized(lock)
+            {
+            for(int i = 0; i < stripes.length; i++)
+                {
+                Stripe stripe = stripes[i];
+                synchronized(stripe)
+                    {
+                    DoubleBag times = stripe.times;
+                    IntBag orderings = stripe.orderings;
+                    Bag events = stripe.events;
+                    for(int k = 0; k < times.numObjs; k++)
+                        enqueue(times.objs[k], orderings.objs[k], (Steppable)(events.objs[k]));
+                    times.clear();
+                    orderings.clear();
+                    events.clear();
+                    }
+                }
+            }
+        }
+    
+    // Returns true if there's anything in the staging buffers
+    boolean hasStaged()
+        {
+        if (stripes != null)
+            for(int i = 0; i < stripes.length; i++)
+                synchronized(stripes[i])
+                    {
+                    if (stripes[i].times.numObjs > 0) return true;
+                    }
+        return false;
+        }
+
     /** Empties out the schedule but does not reset the time or steps.  If you're
         looking for a way to kill your simulation from a Steppable, use SimState.kill() instead.  Note that
         any agents presently at THIS TIME STEP will STILL be stepped -- including possibly reinserting themselves
@@ -220,7 +440,8 @@ public class Schedule implements java.io.Serializable
         {
         synchronized(lock)
             {
-            queue = createHeap();  // let 'em GC  -- must be inside the lock so scheduleOnce doesn't try to add more
+            queue.clear();  // let 'em GC, but keep the capacity -- must be inside the lock so scheduleOnce doesn't try to add more
+            clearPending();
             }
         }
 
@@ -243,8 +464,10 @@ public class Schedule implements java.io.Serializable
             {
             time = BEFORE_SIMULATION;
             steps = 0;
-            queue = createHeap();  // let 'em GC  -- must be inside the lock so scheduleOnce doesn't try to add more
+            queue.clear();  // let 'em GC, but keep the capacity -- must be inside the lock so scheduleOnce doesn't try to add more
+            clearPending();
             sealed = false;
+            parallelRandoms = null;  // reseed from the new random number generator
             }
         }
     
@@ -253,7 +476,7 @@ public class Schedule implements java.io.Serializable
         {
         synchronized(lock)
             {
-            return queue.isEmpty();
+            return queue.isEmpty() && !hasStaged();
             }
         }
     
@@ -282,8 +505,8 @@ public class Schedule implements java.io.Serializable
         You shouldn't all this manually.  */
     void clearBeforeAndAfter()
         {
-        beforeSteps = new Bag();
-        afterSteps = new Bag();
+        beforeSteps.clear();
+        afterSteps.clear();
         }
         
     /** Adds a steppable to be called every iteration of the Schedule immediately before any other Steppables
@@ -309,6 +532,8 @@ public class Schedule implements java.io.Serializable
     
     Bag currentSteps = new Bag();
     Bag substeps = new Bag();
+    IntBag orderingEnds = new IntBag();  // where each ordering ends in currentSteps, when stepping in parallel or profiling
+    IntBag orderings = new IntBag();  // the ordering of each of the above, when profiling
     boolean inStep = false;  // prevents reentrancy
     /** Steps the schedule, gathering and ordering all the items to step on the next time step (skipping
         blank time steps), and then stepping all of them in the decided order.  
@@ -325,17 +550,30 @@ public class Schedule implements java.io.Serializable
         final MersenneTwisterFast random = state.random; // locals are faster
         
         int topSubstep = 0;  // we set this as a hack to avoid having to clear all the substeps each time until the very end
+        boolean parallel = false;
+        boolean concurrent = false;
+        ScheduleProfiler profiler = null;
 
         // grab the events as quickly as possible
         synchronized(lock)
             {
+            Heap queue = this.queue;  // locals are faster
             if (time == AFTER_SIMULATION || queue.isEmpty())
                 { time = AFTER_SIMULATION; inStep = false; return false; }  // bump the time for the queue.isEmpty() bit
             
+            // a CalendarQueue hands out its minimum time and ordering directly, rather than building a Key for them
+            CalendarQueue calendar = (queue instanceof CalendarQueue ? (CalendarQueue)queue : null);
+
             // now change the time
-            time = ((Key)(queue.getMinKey())).time;  // key shouldn't be able to be null; time should always be one bigger
+            time = (calendar != null ? calendar.getMinTime() : ((Key)(queue.getMinKey())).time);  // key shouldn't be able to be null; time should always be one bigger
 
             final boolean shuffling = this.shuffling; // locals are faster.  This one needs to be synchronized inside lock
+            parallel = (parallelThreads > 1);
+            concurrent = concurrentScheduling;
+            profiler = this.profiler;
+            if (profiler != null) profiler.startStep();
+            orderingEnds.numObjs = 0;
+            orderings.numObjs = 0;
 
             // grab all of the steppables in the right order.  To do this, we employ two Bags:
             // 1. Each iteration of the while-loop, we grab all the steppables of the next ordering, put into the substeps Bag
@@ -346,6 +584,7 @@ public class Schedule implements java.io.Serializable
             while(true)
                 {
                 // Suck out the contents of the next ordering
+                if (profiler != null) orderings.add(calendar != null ? calendar.getMinOrdering() : ((Key)(queue.getMinKey())).ordering);
                 queue.extractMin(substeps);  // come out in reverse order
 
                 // shuffle
@@ -359,10 +598,18 @@ public class Schedule implements java.io.Serializable
                 if (topSubstep < substeps.numObjs) topSubstep = substeps.numObjs;  // remember index of largest substep since we're violating clear()
                 currentSteps.addAll(substeps);
                 substeps.numObjs = 0;  // temporarily clear
+                if (parallel || profiler != null) orderingEnds.add(currentSteps.numObjs);
                 
                 // check next key and break if we don't need to go on
-                Key currentKey = (Key)(queue.getMinKey());
-                if (currentKey == null || currentKey.time != time) break;  // looks like no more substeps at this timestamp
+                if (calendar != null)
+                    {
+                    if (calendar.getMinTime() != time) break;  // AFTER_SIMULATION if empty, which time can't be
+                    }
+                else
+                    {
+                    Key currentKey = (Key)(queue.getMinKey());
+                    if (currentKey == null || currentKey.time != time) break;  // looks like no more substeps at this timestamp
+                    }
                 }
             }
             
@@ -380,9 +627,31 @@ public class Schedule implements java.io.Serializable
             ((Steppable)(beforeSteps.get(x))).step(state);
             }
                 
+        if (concurrent)
+            {
+            if (stripes == null)
+                {
+                int n = 1;  // a power of two, about twice the number of CPUs
+                while(n < 64 && n < 2 * Runtime.getRuntime().availableProcessors()) n <<= 1;
+                Stripe[] s = new Stripe[n];
+                for(int i = 0; i < n; i++)
+                    s[i] = new Stripe();
+                stripes = s;
+                }
+            staging = true;
+            }
+
         try
             {
-            for(int x=0;x<len;x++)  // if we're not being killed...
+            if (parallel)
+                {
+                stepInParallel(state, objs, profiler);
+                }
+            else if (profiler != null)
+                {
+                profiler.step(state, objs, orderingEnds.objs, orderings.objs, orderingEnds.numObjs);
+                }
+            else for(int x=0;x<len;x++)  // if we're not being killed...
                 {
                 assert sim.util.LocationLog.set(((Steppable)(objs[x])));
                 ((Steppable)(objs[x])).step(state);
@@ -395,6 +664,8 @@ public class Schedule implements java.io.Serializable
             {
             // reuse currentSteps -- all objects should have been released to gc already, no need to call clear()
             currentSteps.numObjs = 0;
+            
+            if (concurrent) flushStaged();
                 
             synchronized(lock) { steps++; }
             inStep = false;
@@ -405,10 +676,143 @@ public class Schedule implements java.io.Serializable
             {
             ((Steppable)(afterSteps.get(x))).step(state);
             }
+        
+        if (profiler != null) 
+            {
+            int size;
+            synchronized(lock) { size = queue.size(); }
+            profiler.endStep(steps, time, size);
+            }
                 
         return true;
         }
         
+    // Steps each ordering in currentSteps in parallel, one ordering after another.  Each ordering is broken into
+    // contiguous chunks (the Steppables have already been shuffled), and chunk i always uses parallelRandoms[i], so
+    // the result doesn't depend on which thread happens to run which chunk.
+    void stepInParallel(final SimState state, final Object[] objs, final ScheduleProfiler profiler)
+        {
+        int threads = parallelThreads;
+        if (pool == null) 
+            pool = new ForkJoinPool(threads);
+        if (parallelRandoms == null)
+            {
+            parallelRandoms = new MersenneTwisterFast[threads * CHUNKS_PER_THREAD];
+            for(int i = 0; i < parallelRandoms.length; i++)
+                parallelRandoms[i] = new MersenneTwisterFast(state.random.nextLong());
+            }
+        
+        int[] ends = orderingEnds.objs;
+        int numOrderings = orderingEnds.numObjs;
+        int start = 0;
+        for(int i = 0; i < numOrderings; i++)
+            {
+            int end = ends[i];
+            int size = end - start;
+            long orderingStart = (profiler == null ? 0 : System.nanoTime());
+            int n = Math.min(size, parallelRandoms.length);
+            int jump = size / n;
+            int extra = size % n;       // shared out one apiece to the early chunks, as in ParallelSequence
+            
+            Chunk[] chunks = new Chunk[n];
+            int current = start;
+            for(int j = 0; j < n; j++)
+                {
+                int next = current + jump + (j < extra ? 1 : 0);
+                chunks[j] = new Chunk(this, state, objs, current, next, parallelRandoms[j], profiler);
+                current = next;
+                }
+
+            synchronized(lock) { parallelChunks = chunks; }
+            if (n == 1) chunks[0].quietlyInvoke();  // no need to bother the pool
+            else
+                {
+                for(int j = 0; j < n; j++)
+                    pool.execute(chunks[j]);
+                // wait for everyone before checking for errors, so nobody is still stepping when we leave
+                for(int j = 0; j < n; j++)
+                    chunks[j].quietlyJoin();
+                }
+
+            // add held-back events to the queue in chunk order
+            synchronized(lock)
+                {
+                parallelChunks = null;
+                for(int j = 0; j < n; j++)
+                    {
+                    DoubleBag times = chunks[j].pendingTimes;
+                    IntBag orderings = chunks[j].pendingOrderings;
+                    Bag events = chunks[j].pendingEvents;
+                    for(int k = 0; k < times.numObjs; k++)
+                        enqueue(times.objs[k], orderings.objs[k], (Steppable)(events.objs[k]));
+                    }
+                }
+
+            // allocations are spread over the pool's threads, so we don't record them for the ordering as a whole
+            if (profiler != null) profiler.recordOrdering(orderings.objs[i], size, System.nanoTime() - orderingStart, 0);
+
+            for(int j = 0; j < n; j++)
+                if (chunks[j].isCompletedAbnormally())
+                    {
+                    Throwable e = chunks[j].getException();
+                    if (e instanceof RuntimeException) throw (RuntimeException) e;
+                    if (e instanceof Error) throw (Error) e;
+                    throw new RuntimeException(e);
+                    }
+            start = end;
+            }
+        }
+    
+    /** A contiguous run of Steppables in a parallel ordering, stepped with its own random number generator. 
+        Events it schedules are held in pendingTimes, pendingOrderings, and pendingEvents until the ordering is done. */
+    static class Chunk extends RecursiveAction
+        {
+        private static final long serialVersionUID = 1;
+        
+        Schedule schedule;
+        DoubleBag pendingTimes = new DoubleBag();
+        IntBag pendingOrderings = new IntBag();
+        Bag pendingEvents = new Bag();
+        SimState state;
+        Object[] objs;
+        int start;
+        int end;
+        MersenneTwisterFast random;
+        ScheduleProfiler profiler;
+        
+        Chunk(Schedule schedule, SimState state, Object[] objs, int start, int end, MersenneTwisterFast random, ScheduleProfiler profiler)
+            {
+            this.schedule = schedule;
+            this.state = state;
+            this.objs = objs;
+            this.start = start;
+            this.end = end;
+            this.random = random;
+            this.profiler = profiler;
+            }
+        
+        protected void compute()
+            {
+            Object[] objs = this.objs;
+            currentChunk.set(this);
+            try
+                {
+                if (profiler != null) profiler.step(state, objs, start, end);
+                else for(int x = start; x < end; x++)
+                    {
+                    assert sim.util.LocationLog.set(((Steppable)(objs[x])));
+                    ((Steppable)(objs[x])).step(state);
+                    assert sim.util.LocationLog.clear();
+                    objs[x] = null;  // let gc even if being killed
+                    }
+                }
+            finally
+                {
+                currentChunk.remove();
+                }
+            }
+        }
+        
     /** Schedules the event to occur at getTime() + 1.0, 0 ordering. If this is a valid time
         and event, schedules the event and returns TRUE.
         This method at present returns FALSE if the schedule cannot
@@ -419,9 +823,10 @@ public class Schedule implements java.io.Serializable
     // synchronized so getting the time can be atomic with the subsidiary scheduleOnce function call
     public boolean scheduleOnce(final Steppable event)
         {
+        if (staging) return stageOnce(time + 1.0, 0, event);  // time can't change while we're staging, no need to lock
         synchronized(lock)
             {
-            return _scheduleOnce(new Key(/*must lock for:*/time +1.0,0),event);
+            return _scheduleOnce(/*must lock for:*/time + 1.0, 0, event);
             }
         }
     
@@ -437,9 +842,10 @@ public class Schedule implements java.io.Serializable
     // synchronized so getting the time can be atomic with the subsidiary scheduleOnce function call
     public boolean scheduleOnceIn(final double delta, final Steppable event)
         {
+        if (staging) return stageOnce(time + delta, 0, event);  // time can't change while we're staging, no need to lock
         synchronized(lock)
             {
-            return _scheduleOnce(new Key(/*must lock for:*/ time + delta, 0), event);
+            return _scheduleOnce(/*must lock for:*/ time + delta, 0, event);
             }
         }
         
@@ -453,9 +859,10 @@ public class Schedule implements java.io.Serializable
     // synchronized so getting the time can be atomic with the subsidiary scheduleOnce function call
     public boolean scheduleOnce(final Steppable event, final int ordering)
         {
+        if (staging) return stageOnce(time + 1.0, ordering, event);  // time can't change while we're staging, no need to lock
         synchronized(lock)
             {
-            return _scheduleOnce(new Key(/*must lock for:*/time +1.0,ordering),event);
+            return _scheduleOnce(/*must lock for:*/time + 1.0, ordering, event);
             }
         }
 
@@ -470,9 +877,10 @@ public class Schedule implements java.io.Serializable
     // synchronized so getting the time can be atomic with the subsidiary scheduleOnce function call
     public boolean scheduleOnceIn(final double delta, final Steppable event, final int ordering)
         {
+        if (staging) return stageOnce(time + delta, ordering, event);  // time can't change while we're staging, no need to lock
         synchronized(lock)
             {
-            return _scheduleOnce(new Key(/*must lock for:*/ time + delta, ordering), event);
+            return _scheduleOnce(/*must lock for:*/ time + delta, ordering, event);
             }
         }
 
@@ -487,9 +895,10 @@ public class Schedule implements java.io.Serializable
     
     public boolean scheduleOnce(double time, final Steppable event)
         {
+        if (staging) return stageOnce(time, 0, event);
         synchronized(lock)
             {
-            return _scheduleOnce(new Key(time,0),event);
+            return _scheduleOnce(time, 0, event);
             }
         }
         
@@ -504,9 +913,10 @@ public class Schedule implements java.io.Serializable
     */
     public boolean scheduleOnce(double time, final int ordering, final Steppable event)
         {
+        if (staging) return stageOnce(time, ordering, event);
         synchronized(lock)
             {
-            return _scheduleOnce(new Key(time,ordering),event);
+            return _scheduleOnce(time, ordering, event);
             }
         }
     
@@ -517,6 +927,7 @@ public class Schedule implements java.io.Serializable
         throws an IllegalArgumentException if the event is being scheduled for an invalid time, or is null. */
     boolean scheduleOnce(Key key, final Steppable event)
         {
+        if (staging) return stageOnce(key, event);
         synchronized(lock)
             {
             return _scheduleOnce(key, event);
@@ -530,22 +941,68 @@ public class Schedule implements java.io.Serializable
         event is being scheduled for AFTER_SIMULATION.  The method 
         throws an IllegalArgumentException if the event is being scheduled for an invalid time, or is null. */
     protected boolean _scheduleOnce(Key key, Steppable event)
+        {
+        if (!checkKey(key, event)) return false;
+        if (!holdBack(key.time, key.ordering, event)) enqueue(key, event);
+        return true;
+        }
+    
+    /** Schedules an item at the given time and ordering, as _scheduleOnce(Key, Steppable) does, but without building a Key 
+        unless the queue needs one (a CalendarQueue doesn't).  The public scheduleOnce(...) and scheduleOnceIn(...) methods 
+        call this method, so subclasses which wish to see every event so scheduled should override it as well.
+        You must synchronize on this.lock before calling this method. */
+    protected boolean _scheduleOnce(double time, int ordering, Steppable event)
+        {
+        time = checkTime(time, event);
+        if (time == AFTER_SIMULATION) return false;
+        if (!holdBack(time, ordering, event)) enqueue(time, ordering, event);
+        return true;
+        }
+    
+    // If we're stepping a chunk of a parallel ordering of this Schedule, adds the event to the chunk's pending events
+    // to be added to the queue when the ordering is done, and returns TRUE.  Else returns FALSE.  Must be called inside the lock.
+    boolean holdBack(double time, int ordering, Steppable event)
+        {
+        if (parallelChunks == null) return false;
+        Chunk chunk = (Chunk)(currentChunk.get());
+        if (chunk == null || chunk.schedule != this) return false;
+        chunk.pendingTimes.add(time);
+        chunk.pendingOrderings.add(ordering);
+        chunk.pendingEvents.add(event);
+        return true;
+        }
+    
+    /** Bumps the key's time to the next possible time if it is scheduled for the current time, then checks it.
+        Returns FALSE if the schedule cannot schedule any more events (it's sealed or the time is AFTER_SIMULATION), or if the
+        event is being scheduled for AFTER_SIMULATION, and TRUE if the event may be scheduled.  
+        Throws an IllegalArgumentException if the event is being scheduled for an invalid time, or is null. */
+    boolean checkKey(Key key, Steppable event)
+        {
+        double t = checkTime(key.time, event);
+        if (t == AFTER_SIMULATION) return false;
+        key.time = t;
+        return true;
+        }
+        
+    /** Bumps the given time to the next possible time if it is the current time, then checks it.
+        Returns AFTER_SIMULATION if the schedule cannot schedule any more events (it's sealed or the time is AFTER_SIMULATION), or if the
+        event is being scheduled for AFTER_SIMULATION, and otherwise the time at which the event may be scheduled.  
+        Throws an IllegalArgumentException if the event is being scheduled for an invalid time, or is null. */
+    double checkTime(double t, Steppable event)
         {
         // locals are a teeny bit faster
         double time = this.time;
-        double t = key.time;
 
         // check to see if we're scheduling for the same exact time -- even if of different orderings, that doesn't matter
         if (t == time && t != AFTER_SIMULATION)
             // bump up time to the next possible item, unless we're at infinity already (AFTER_SIMULATION)
             {
-            key.time = Math.nextUp(key.time);  //Double.longBitsToDouble(Double.doubleToRawLongBits(t)+1L);
-            t = key.time; 
+            t = Math.nextUp(t);  //Double.longBitsToDouble(Double.doubleToRawLongBits(t)+1L);
             }
 
         if (sealed || t >= AFTER_SIMULATION)             // situations where no further events can be added
             {
-            return false;
+            return AFTER_SIMULATION;
             }
         else if (t < EPOCH)
             throw new IllegalArgumentException("For the Steppable...\n\n"+event+
@@ -558,10 +1015,74 @@ public class Schedule implements java.io.Serializable
                 "\n\n...the time provided ("+t+") is less than the current time (" + time + ")");
         else if (event == null)
             throw new IllegalArgumentException("The provided Steppable is null");
+        return t;
+        }
+
+    /** Schedules an item without taking the lock, by adding it to a staging buffer.  This may only be called while
+        staging is turned on, during which time the time can't change.  If staging turns off before we get to the
+        buffer, we instead schedule in the usual, locked, way. */
+    boolean stageOnce(Key key, Steppable event)
+        {
+        if (!checkKey(key, event)) return false;
+        return stage(key.time, key.ordering, event);
+        }
         
-        queue.add(event, key);
+    /** Schedules an item at the given time and ordering without taking the lock, as stageOnce(Key, Steppable) does. */
+    boolean stageOnce(double time, int ordering, Steppable event)
+        {
+        time = checkTime(time, event);
+        if (time == AFTER_SIMULATION) return false;
+        return stage(time, ordering, event);
+        }
+
+    // Adds an already checked item to a staging buffer, or to our chunk's pending events if we're stepping one.
+    boolean stage(double time, int ordering, Steppable event)
+        {
+        Chunk chunk = (Chunk)(currentChunk.get());
+        if (chunk != null && chunk.schedule == this)  // hold it back until the ordering is done
+            {
+            synchronized(chunk)
+                {
+                chunk.pendingTimes.add(time);
+                chunk.pendingOrderings.add(ordering);
+                chunk.pendingEvents.add(event);
+                }
+            return true;
+            }
+
+        Stripe stripe = stripes[(int)(Thread.currentThread().getId()) & (stripes.length - 1)];
+        synchronized(stripe)
+            {
+            if (staging)  // flushStaged() turns off staging before it empties the stripes
+                {
+                stripe.times.add(time);
+                stripe.orderings.add(ordering);
+                stripe.events.add(event);
+                return true;
+                }
+            }
+        synchronized(lock)
+            {
+            return _scheduleOnce(time, ordering, event);
+            }
+        }
         
-        return true;
+    // Adds the event to the queue.  Must be called inside the lock.
+    void enqueue(Key key, Steppable event)
+        {
+        Heap queue = this.queue;  // locals are faster
+        if (queue instanceof CalendarQueue)
+            ((CalendarQueue)queue).add(event, key.time, key.ordering);  // doesn't hold onto the key
+        else queue.add(event, key);
+        }
+
+    // Adds the event to the queue, building a Key for it only if the queue isn't a CalendarQueue.  Must be called inside the lock.
+    void enqueue(double time, int ordering, Steppable event)
+        {
+        Heap queue = this.queue;  // locals are faster
+        if (queue instanceof CalendarQueue)
+            ((CalendarQueue)queue).add(event, time, ordering);
+        else queue.add(event, new Key(time, ordering));
         }
 
 
@@ -582,6 +1103,7 @@ public class Schedule implements java.io.Serializable
     // synchronized so getting the time can be atomic with the subsidiary scheduleRepeating function call
     public IterativeRepeat scheduleRepeating(final Steppable event)
         {
+        if (staging) return scheduleRepeating(time + 1.0, 0, event, 1.0);  // time can't change while we're staging, no need to lock
         synchronized(lock)
             {
             return scheduleRepeating(/*must lock for:*/time +1.0,0,event,1.0);
@@ -611,6 +1133,7 @@ public class Schedule implements java.io.Serializable
     // synchronized so getting the time can be atomic with the subsidiary scheduleRepeating function call
     public IterativeRepeat scheduleRepeating(final Steppable event, final double interval)
         {
+        if (staging) return scheduleRepeating(time + interval, 0, event, interval);  // time can't change while we're staging, no need to lock
         synchronized(lock)
             {
             return scheduleRepeating(/*must lock for:*/time +interval,0,event,interval);
@@ -640,6 +1163,7 @@ public class Schedule implements java.io.Serializable
     // synchronized so getting the time can be atomic with the subsidiary scheduleRepeating function call
     public IterativeRepeat scheduleRepeating(final Steppable event, final int ordering, final double interval)
         {
+        if (staging) return scheduleRepeating(time + interval, ordering, event, interval);  // time can't change while we're staging, no need to lock
         synchronized(lock)
             {
             return scheduleRepeating(/*must lock for:*/time +interval,ordering,event,interval);
@@ -737,6 +1261,7 @@ public class Schedule implements java.io.Serializable
         if (interval <= 0) throw new IllegalArgumentException("The steppable " +  event + " was scheduled repeating with an impossible interval ("+interval+")");
         IterativeRepeat r = new IterativeRepeat(event, time, interval, ordering);
 
+        if (staging) return (stageOnce(r.getKey(), r) ? r : null);
         synchronized(lock)
             {
             if (_scheduleOnce(r.getKey(),r)) return r;
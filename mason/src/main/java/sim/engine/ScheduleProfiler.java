@@ -0,0 +1,530 @@
+/*
+  Copyright 2019 by Sean Luke and George Mason University
+  Licensed under the Academic Free License version 3.0
+  See the file "LICENSE" for more information
+*/
+
+package sim.engine;
+import java.lang.management.*;
+import java.util.*;
+import java.util.concurrent.*;
+import javax.management.*;
+
+/**
+   ScheduleProfiler records where a Schedule spends its time.  Attach one with Schedule.setProfiler(...), and
+   each Schedule.step() thereafter records, for each class of Steppable and for each ordering, how many times it
+   was stepped, the cumulative nanoseconds it took, and (if the JVM supports it) the bytes it allocated.  The
+   profiler also samples the size of the Schedule's queue after every step.  When no profiler is attached, the
+   Schedule only pays for a null check per step.
+
+   <p>Steppables wrapped in IterativeRepeats (as scheduleRepeating(...) does), Repeats, and TentativeSteps are
+   counted under the class of the Steppable they wrap.  Time and allocation spent in Steppables added with
+   Schedule.addBefore(...) and addAfter(...), and in gathering and shuffling the Steppables to step, is included
+   in the total time of each step but not in any class or ordering.  When the Schedule steps orderings in parallel,
+   class times are summed over all the threads, so they may add up to more than the ordering times,
+   and allocations by the pool's threads count toward classes but not toward orderings or the total.
+
+   <p>You can get the profile at any time with snapshot(), which returns a Snapshot whose toString() is a
+   readable report.  The profiler is also a standard MBean: call register(...) to publish it to the platform
+   MBeanServer, where JConsole or VisualVM can watch it while the simulation runs.  Its class and ordering
+   arrays come from one snapshot, which its refresh() operation replaces.  Values read while the
+   Schedule is stepping may be slightly out of date.  doLoop(...) attaches a profiler and prints its report at
+   the end of each job when given the -profile flag.
+*/
+
+public class ScheduleProfiler implements ScheduleProfilerMBean
+    {
+    /** The maximum number of queue size samples which are kept.  When it is exceeded, every other sample
+        is thrown away, and from then on samples are taken half as often. */
+    public static final int MAX_SAMPLES = 1024;
+
+    static final ThreadMXBean THREADS = ManagementFactory.getThreadMXBean();
+
+    /** Cumulative statistics for one class of Steppable or one ordering.  Each is only written by one thread. */
+    static class Record
+        {
+        long count;
+        long nanos;
+        long bytes;
+        }
+
+    /** Per-thread statistics by class of Steppable, so threads stepping in parallel don't contend. */
+    static class Recorder
+        {
+        ConcurrentHashMap<Class, Record> classes = new ConcurrentHashMap<Class, Record>();
+        Class lastClass;
+        Record lastRecord;
+
+        Record get(Class c)
+            {
+            if (c == lastClass) return lastRecord;
+            Record record = classes.get(c);
+            if (record == null)
+                {
+                record = new Record();
+                classes.put(c, record);
+                }
+            lastClass = c;
+            lastRecord = record;
+            return record;
+            }
+        }
+
+    final boolean allocations;
+    final ThreadLocal<Recorder> recorders = new ThreadLocal<Recorder>();
+    final ArrayList<Recorder> allRecorders = new ArrayList<Recorder>();
+    final HashMap<Integer, Record> orderings = new HashMap<Integer, Record>();
+    long steps;
+    long nanos;
+    long bytes;
+    long stepStart;
+    long stepBytes;
+
+    // queue size samples
+    long[] sampleSteps = new long[MAX_SAMPLES];
+    double[] sampleTimes = new double[MAX_SAMPLES];
+    int[] sampleSizes = new int[MAX_SAMPLES];
+    int numSamples;
+    long sampleInterval = 1;
+
+    ObjectName objectName;
+
+    /** Creates a profiler which records allocations if the JVM is able to. */
+    public ScheduleProfiler()
+        {
+        this(true);
+        }
+
+    /** Creates a profiler which records allocations only if asked to and the JVM is able to.  Recording
+        allocations roughly doubles the cost of profiling each Steppable. */
+    public ScheduleProfiler(boolean allocations)
+        {
+        this.allocations = allocations && isAllocationSupported();
+        }
+
+    static boolean isAllocationSupported()
+        {
+        try
+            {
+            if (!(THREADS instanceof com.sun.management.ThreadMXBean)) return false;
+            com.sun.management.ThreadMXBean threads = (com.sun.management.ThreadMXBean) THREADS;
+            if (!threads.isThreadAllocatedMemorySupported()) return false;
+            if (!threads.isThreadAllocatedMemoryEnabled()) threads.setThreadAllocatedMemoryEnabled(true);
+            return true;
+            }
+        catch (Throwable e)  // NoClassDefFoundError on non-HotSpot VMs, SecurityException, UnsupportedOperationException, etc.
+            {
+            return false;
+            }
+        }
+
+    /** Returns true if the profiler is recording allocations. */
+    public boolean isRecordingAllocations() { return allocations; }
+
+    long allocated()
+        {
+        if (!allocations) return 0;
+        return ((com.sun.management.ThreadMXBean) THREADS).getThreadAllocatedBytes(Thread.currentThread().getId());
+        }
+
+    Recorder recorder()
+        {
+        Recorder recorder = recorders.get();
+        if (recorder == null)
+            {
+            recorder = new Recorder();
+            recorders.set(recorder);
+            synchronized(allRecorders) { allRecorders.add(recorder); }
+            }
+        return recorder;
+        }
+
+    // Returns the class of the Steppable doing the actual work, looking inside the Schedule's wrappers
+    static Class classOf(Object obj)
+        {
+        while(true)
+            {
+            Steppable inner = null;
+            if (obj instanceof IterativeRepeat) inner = ((IterativeRepeat) obj).step;
+            else if (obj instanceof Repeat) inner = ((Repeat) obj).step;
+            else if (obj instanceof TentativeStep) inner = ((TentativeStep) obj).step;
+            if (inner == null) return obj.getClass();
+            obj = inner;
+            }
+        }
+
+    /** Called by the Schedule at the beginning of each step. */
+    void startStep()
+        {
+        stepBytes = allocated();
+        stepStart = System.nanoTime();
+        }
+
+    /** Called by the Schedule at the end of each step, with its queue size afterwards. */
+    void endStep(long steps, double time, int queueSize)
+        {
+        long end = System.nanoTime();
+        long endBytes = allocated();
+        synchronized(this)
+            {
+            this.steps++;
+            nanos += end - stepStart;
+            bytes += endBytes - stepBytes;
+            if (steps % sampleInterval == 0)
+                {
+                if (numSamples == MAX_SAMPLES)  // thin out the samples
+                    {
+                    int j = 0;
+                    for(int i = 0; i < numSamples; i++)
+                        if (sampleSteps[i] % (sampleInterval * 2) == 0)
+                            {
+                            sampleSteps[j] = sampleSteps[i];
+                            sampleTimes[j] = sampleTimes[i];
+                            sampleSizes[j] = sampleSizes[i];
+                            j++;
+                            }
+                    numSamples = j;
+                    sampleInterval *= 2;
+                    }
+                if (steps % sampleInterval == 0 && numSamples < MAX_SAMPLES)
+                    {
+                    sampleSteps[numSamples] = steps;
+                    sampleTimes[numSamples] = time;
+                    sampleSizes[numSamples] = queueSize;
+                    numSamples++;
+                    }
+                }
+            }
+        }
+
+    /** Adds the time and allocation of an entire ordering.  */
+    void recordOrdering(int ordering, int count, long nanos, long bytes)
+        {
+        synchronized(this)
+            {
+            Integer key = Integer.valueOf(ordering);
+            Record record = orderings.get(key);
+            if (record == null)
+                {
+                record = new Record();
+                orderings.put(key, record);
+                }
+            record.count += count;
+            record.nanos += nanos;
+            record.bytes += bytes;
+            }
+        }
+
+    /** Steps objs[from] ... objs[to - 1], recording each one under its class, and nulls them out as the Schedule does. */
+    void step(SimState state, Object[] objs, int from, int to)
+        {
+        Recorder recorder = recorder();
+        long before = allocated();
+        long start = System.nanoTime();
+        for(int x = from; x < to; x++)
+            {
+            Steppable step = (Steppable)(objs[x]);
+            Record record = recorder.get(classOf(step));
+            assert sim.util.LocationLog.set(step);
+            step.step(state);
+            assert sim.util.LocationLog.clear();
+            objs[x] = null;  // let gc even if being killed
+
+            long after = allocated();
+            long end = System.nanoTime();
+            record.count++;
+            record.nanos += end - start;
+            record.bytes += after - before;
+            // the bookkeeping above is charged to the next Steppable, but it's small
+            before = after;
+            start = end;
+            }
+        }
+
+    /** Steps each ordering in turn, as delimited by ends, recording each ordering and each Steppable. */
+    void step(SimState state, Object[] objs, int[] ends, int[] orderings, int numOrderings)
+        {
+        int from = 0;
+        for(int i = 0; i < numOrderings; i++)
+            {
+            long before = allocated();
+            long start = System.nanoTime();
+            step(state, objs, from, ends[i]);
+            recordOrdering(orderings[i], ends[i] - from, System.nanoTime() - start, allocated() - before);
+            from = ends[i];
+            }
+        }
+
+    /** Clears all the statistics gathered so far. */
+    public void reset()
+        {
+        synchronized(allRecorders)
+            {
+            for(int i = 0; i < allRecorders.size(); i++)
+                {
+                Recorder recorder = allRecorders.get(i);
+                recorder.classes.clear();
+                recorder.lastClass = null;  // racy if the Schedule is presently stepping, but only the current step is affected
+                recorder.lastRecord = null;
+                }
+            }
+        synchronized(this)
+            {
+            orderings.clear();
+            steps = 0;
+            nanos = 0;
+            bytes = 0;
+            numSamples = 0;
+            sampleInterval = 1;
+            published = null;
+            }
+        }
+
+    /** Returns a copy of the statistics gathered so far. */
+    public Snapshot snapshot()
+        {
+        HashMap<Class, Record> classes = new HashMap<Class, Record>();
+        synchronized(allRecorders)
+            {
+            for(int i = 0; i < allRecorders.size(); i++)
+                {
+                Iterator<Map.Entry<Class, Record>> iterator = allRecorders.get(i).classes.entrySet().iterator();
+                while(iterator.hasNext())
+                    {
+                    Map.Entry<Class, Record> entry = iterator.next();
+                    Record total = classes.get(entry.getKey());
+                    if (total == null)
+                        {
+                        total = new Record();
+                        classes.put(entry.getKey(), total);
+                        }
+                    Record record = entry.getValue();
+                    total.count += record.count;
+                    total.nanos += record.nanos;
+                    total.bytes += record.bytes;
+                    }
+                }
+            }
+
+        Entry[] classEntries = new Entry[classes.size()];
+        int i = 0;
+        Iterator<Map.Entry<Class, Record>> iterator = classes.entrySet().iterator();
+        while(iterator.hasNext())
+            {
+            Map.Entry<Class, Record> entry = iterator.next();
+            Record record = entry.getValue();
+            classEntries[i++] = new Entry(entry.getKey().getName(), record.count, record.nanos, (allocations ? record.bytes : -1));
+            }
+        Arrays.sort(classEntries);
+
+        synchronized(this)
+            {
+            Entry[] orderingEntries = new Entry[orderings.size()];
+            i = 0;
+            Iterator<Map.Entry<Integer, Record>> orderingIterator = orderings.entrySet().iterator();
+            while(orderingIterator.hasNext())
+                {
+                Map.Entry<Integer, Record> entry = orderingIterator.next();
+                Record record = entry.getValue();
+                orderingEntries[i++] = new Entry(entry.getKey().toString(), record.count, record.nanos, (allocations ? record.bytes : -1));
+                }
+            Arrays.sort(orderingEntries);
+
+            return new Snapshot(steps, nanos, (allocations ? bytes : -1), classEntries, orderingEntries,
+                Arrays.copyOf(sampleSteps, numSamples), Arrays.copyOf(sampleTimes, numSamples), Arrays.copyOf(sampleSizes, numSamples));
+            }
+        }
+
+    /** Registers the profiler with the platform MBeanServer under the name sim.engine:type=ScheduleProfiler,name=<i>name</i>,
+        replacing any profiler already registered under that name.  Returns the ObjectName. */
+    public synchronized ObjectName register(String name)
+        {
+        unregister();
+        try
+            {
+            MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+            ObjectName objectName = new ObjectName("sim.engine:type=ScheduleProfiler,name=" + ObjectName.quote(name));
+            if (server.isRegistered(objectName)) server.unregisterMBean(objectName);
+            server.registerMBean(this, objectName);
+            this.objectName = objectName;
+            return objectName;
+            }
+        catch (JMException e)
+            {
+            throw new RuntimeException("Could not register the ScheduleProfiler " + name, e);
+            }
+        }
+
+    /** Unregisters the profiler from the platform MBeanServer, if it was registered. */
+    public synchronized void unregister()
+        {
+        if (objectName == null) return;
+        try
+            {
+            ManagementFactory.getPlatformMBeanServer().unregisterMBean(objectName);
+            }
+        catch (JMException e) { }  // someone else already unregistered it
+        objectName = null;
+        }
+
+    // ScheduleProfilerMBean
+
+    // The snapshot which the class and ordering attributes are all read from, so they stay parallel however
+    // many separate JMX reads they take.  Guarded by synchronized(this).
+    Snapshot published = null;
+
+    /** Takes a new snapshot for the class and ordering attributes to report.  Until this is called, they keep
+        reporting the snapshot taken when one of them was first read, or when reset() was last called. */
+    public void refresh()
+        {
+        Snapshot snapshot = snapshot();
+        synchronized(this) { published = snapshot; }
+        }
+
+    Snapshot published()
+        {
+        synchronized(this) { if (published != null) return published; }
+        refresh();
+        synchronized(this) { return published; }
+        }
+
+    public long getSteps() { synchronized(this) { return steps; } }
+    public long getNanos() { synchronized(this) { return nanos; } }
+    public long getBytes() { synchronized(this) { return allocations ? bytes : -1; } }
+    public int getQueueSize() { synchronized(this) { return numSamples == 0 ? 0 : sampleSizes[numSamples - 1]; } }
+    public String[] getClassNames() { return names(published().classes); }
+    public long[] getClassCounts() { return counts(published().classes); }
+    public long[] getClassNanos() { return nanos(published().classes); }
+    public long[] getClassBytes() { return bytes(published().classes); }
+    public String[] getOrderings() { return names(published().orderings); }
+    public long[] getOrderingCounts() { return counts(published().orderings); }
+    public long[] getOrderingNanos() { return nanos(published().orderings); }
+    public long[] getOrderingBytes() { return bytes(published().orderings); }
+    public String getReport() { return snapshot().toString(); }
+
+    static String[] names(Entry[] entries)
+        {
+        String[] s = new String[entries.length];
+        for(int i = 0; i < s.length; i++) s[i] = entries[i].name;
+        return s;
+        }
+
+    static long[] counts(Entry[] entries)
+        {
+        long[] l = new long[entries.length];
+        for(int i = 0; i < l.length; i++) l[i] = entries[i].count;
+        return l;
+        }
+
+    static long[] nanos(Entry[] entries)
+        {
+        long[] l = new long[entries.length];
+        for(int i = 0; i < l.length; i++) l[i] = entries[i].nanos;
+        return l;
+        }
+
+    static long[] bytes(Entry[] entries)
+        {
+        long[] l = new long[entries.length];
+        for(int i = 0; i < l.length; i++) l[i] = entries[i].bytes;
+        return l;
+        }
+
+    /** The statistics of one class of Steppable, or of one ordering.  Entries sort by decreasing time. */
+    public static class Entry implements Comparable, java.io.Serializable
+        {
+        private static final long serialVersionUID = 1;
+
+        /** The fully-qualified class name, or the ordering as a String. */
+        public final String name;
+        /** How many Steppables were stepped. */
+        public final long count;
+        /** The total nanoseconds spent stepping them. */
+        public final long nanos;
+        /** The total bytes they allocated, or -1 if allocations weren't recorded. */
+        public final long bytes;
+
+        Entry(String name, long count, long nanos, long bytes)
+            {
+            this.name = name;
+            this.count = count;
+            this.nanos = nanos;
+            this.bytes = bytes;
+            }
+
+        public int compareTo(Object other)
+            {
+            Entry e = (Entry) other;
+            if (nanos != e.nanos) return (nanos > e.nanos ? -1 : 1);
+            return name.compareTo(e.name);
+            }
+        }
+
+    /** A copy of a profiler's statistics at some moment. */
+    public static class Snapshot implements java.io.Serializable
+        {
+        private static final long serialVersionUID = 1;
+
+        /** The number of Schedule steps profiled. */
+        public final long steps;
+        /** The total nanoseconds spent in those steps. */
+        public final long nanos;
+        /** The total bytes allocated during those steps, or -1 if allocations weren't recorded. */
+        public final long bytes;
+        /** Statistics for each class of Steppable, in order of decreasing time. */
+        public final Entry[] classes;
+        /** Statistics for each ordering, in order of decreasing time. */
+        public final Entry[] orderings;
+        /** The step count after which each queue size sample was taken. */
+        public final long[] queueSteps;
+        /** The simulation time at which each queue size sample was taken. */
+        public final double[] queueTimes;
+        /** The number of events in the Schedule's queue at each sample. */
+        public final int[] queueSizes;
+
+        Snapshot(long steps, long nanos, long bytes, Entry[] classes, Entry[] orderings, long[] queueSteps, double[] queueTimes, int[] queueSizes)
+            {
+            this.steps = steps;
+            this.nanos = nanos;
+            this.bytes = bytes;
+            this.classes = classes;
+            this.orderings = orderings;
+            this.queueSteps = queueSteps;
+            this.queueTimes = queueTimes;
+            this.queueSizes = queueSizes;
+            }
+
+        public String toString()
+            {
+            StringBuilder b = new StringBuilder();
+            b.append("Steps: " + steps + "  Time: " + millis(nanos) + " ms" + (bytes >= 0 ? "  Allocated: " + bytes + " bytes" : ""));
+            if (queueSizes.length > 0)
+                {
+                int max = 0;
+                for(int i = 0; i < queueSizes.length; i++) max = Math.max(max, queueSizes[i]);
+                b.append("  Queue: " + queueSizes[queueSizes.length - 1] + " (max " + max + ")");
+                }
+            b.append("\n");
+            append(b, "Class", classes);
+            append(b, "Ordering", orderings);
+            return b.toString();
+            }
+
+        void append(StringBuilder b, String title, Entry[] entries)
+            {
+            b.append(String.format("%-50s %12s %12s %8s %16s %12s%n", title, "Count", "Time (ms)", "Time %", "Bytes", "ns each"));
+            for(int i = 0; i < entries.length; i++)
+                {
+                Entry e = entries[i];
+                b.append(String.format("%-50s %12d %12s %7.2f%% %16s %12d%n", e.name, e.count, millis(e.nanos),
+                        (nanos == 0 ? 0.0 : 100.0 * e.nanos / nanos), (e.bytes >= 0 ? "" + e.bytes : "-"),
+                        (e.count == 0 ? 0 : e.nanos / e.count)));
+                }
+            }
+
+        static String millis(long nanos)
+            {
+            return String.format("%.3f", nanos / 1000000.0);
+            }
+        }
+    }
@@ -0,0 +1,43 @@
+/*
+  Copyright 2019 by Sean Luke and George Mason University
+  Licensed under the Academic Free License version 3.0
+  See the file "LICENSE" for more information
+*/
+
+package sim.engine;
+
+/**
+   The management interface of ScheduleProfiler, as seen through JMX.  The class and ordering arrays
+   are parallel to one another and in order of decreasing time.  They all come from the same snapshot of the
+   statistics, which stays put between reads, so that they remain parallel: call refresh() to take a new one.
+   The totals, the queue size, and the report are always current.
+*/
+
+public interface ScheduleProfilerMBean
+    {
+    /** Returns the number of Schedule steps profiled. */
+    public long getSteps();
+    /** Returns the total nanoseconds spent in those steps. */
+    public long getNanos();
+    /** Returns the total bytes allocated in those steps, or -1 if allocations aren't recorded. */
+    public long getBytes();
+    /** Returns the number of events in the Schedule's queue at the last sample. */
+    public int getQueueSize();
+    
+    public String[] getClassNames();
+    public long[] getClassCounts();
+    public long[] getClassNanos();
+    public long[] getClassBytes();
+    
+    public String[] getOrderings();
+    public long[] getOrderingCounts();
+    public long[] getOrderingNanos();
+    public long[] getOrderingBytes();
+    
+    /** Takes a new snapshot for the class and ordering arrays to report. */
+    public void refresh();
+    /** Returns a readable report of all the statistics. */
+    public String getReport();
+    /** Clears all the statistics gathered so far. */
+    public void reset();
+    }
@@ -83,12 +83,45 @@ public class SimState implements java.io.Serializable
         this(0, random, new Schedule());  // 0 is a bogus value.  In fact, MT can't have 0 as its seed value.
         }
 
+    /** Reseeds the random number generator in place (or creates one if there is none), and records the new seed.
+        The generator is the same object as before, so anything holding onto it will see the new stream. */
     public void setSeed(long seed)
         {
         seed = (int) seed;  // force to 32 bits since that's what MTF will be using anyway
-        random = new MersenneTwisterFast(seed);
+        if (random == null) random = new MersenneTwisterFast(seed);
+        else random.setSeed(seed);
         this.seed = seed;
         }
+    
+    /** Returns true if this SimState may be reused for another run, rather than thrown away and constructed
+        anew.  If so, doLoop(...) will run each repeated job on the same instance, simply calling setSeed(...) and then
+        start() again after the previous run's finish().  ParameterSweep has always reused its instances this way.
+        
+        <p>The default returns false.  Override it to return true only if your start() method completely reinitializes
+        your model.  To avoid reallocating everything each run, start() should clear your fields and collections
+        in place -- with schedule.reset() (which start() does for you), reset() on IntGrid2D, DoubleGrid2D, ObjectGrid2D,
+        SparseField (including SparseGrid2D and Continuous2D), and Network, and clear() on your Bags and Maps -- rather
+        than building new ones.  All of these keep their capacity, so short runs are dominated by simulation rather
+        than by allocation and garbage collection. */
+    public boolean reusable()
+        {
+        return false;
+        }
+
+    // Built lazily, and rebuilt whenever the seed changes
+    transient RandomStreams streams = null;
+
+    /** Returns RandomStreams derived from the seed, which hand out independent, reproducible random number generators
+        to threads, partitions, or agents which would otherwise have to share (and lock on) the random number generator.
+        Note that if the SimState was constructed with a random number generator of your own, and never given a seed
+        with setSeed(...), its seed is 0 and the streams are derived from that. */
+    public RandomStreams randomStreams()
+        {
+        RandomStreams s = streams;
+        if (s == null || s.seed != seed)  // no need to lock: racing threads build identical RandomStreams
+            streams = s = new RandomStreams(seed);
+        return s;
+        }
                 
     /** Primes the generator.  Mersenne Twister seeds its first 624 numbers using a basic
         linear congruential generator; thereafter it uses the MersenneTwister algorithm to
@@ -282,10 +315,14 @@ public class SimState implements java.io.Serializable
             }
         }
     
-    /** Creates a SimState from checkpoint.  If an exception is raised, it is printed and null is returned. */
+    /** Creates a SimState from checkpoint.  The checkpoint may be in the GZIP format written by writeToCheckpoint(...),
+        or it may be a full or delta checkpoint written by sim.engine.Checkpoint.
+        If an exception is raised, it is printed and null is returned. */
     public static SimState readFromCheckpoint(File file)
         {
         try {
+            if (Checkpoint.isChunked(file))
+                return Checkpoint.read(file);
             FileInputStream f = new FileInputStream(file);
             SimState state = readFromCheckpoint(f);
             f.close();
@@ -298,14 +335,17 @@ public class SimState implements java.io.Serializable
         Throws an IOException if the stream becomes invalid (prematurely closes etc.).  Throws a ClassNotFoundException
         if a serialized object is not found in the CLASSPATH and thus cannot be created.  Throws an OptionalDataException
         if the stream is corrupted.  Throws a ClassCastException if the top-level object is not actually a SimState.
-        Does not close or flush the stream. */
+        Does not close or flush the stream.  The stream may also hold a full checkpoint written by sim.engine.Checkpoint,
+        though not a delta checkpoint, which must be read from a File. */
     public static SimState readFromCheckpoint(InputStream stream)
         throws IOException, ClassNotFoundException, OptionalDataException, ClassCastException
         {
+        BufferedInputStream b = new BufferedInputStream(stream);
+        if (Checkpoint.isChunked(b))
+            return Checkpoint.read(b);
         ObjectInputStream s = 
             new ObjectInputStream(
-                new GZIPInputStream (
-                    new BufferedInputStream(stream)));
+                new GZIPInputStream (b));
         SimState state = (SimState) (s.readObject());
         state.awakeFromCheckpoint();
         return state;
@@ -390,11 +430,15 @@ public class SimState implements java.io.Serializable
                 "Format:           java " + generator.simulationClass().getName() + " \\\n" +
                 "                       [-help] [-repeat R] [-parallel P] [-seed S] \\\n" +
                 "                       [-until U] [-for F] [-time T] [-docheckpoint D] \\\n" +
-                "                       [-checkpointname N] [-checkpoint C] [-quiet] \n\n" +
+                "                       [-checkpointname N] [-checkpointformat F] \\\n" +
+                "                       [-deltacheckpoint K] [-checkpointbuffer M] \\\n" +
+                "                       [-checkpoint C] [-profile] [-quiet] \n\n" +
                 "-help             Shows this message and exits.\n\n" +
                 "-repeat R         Long value > 0: Runs R jobs.  Unless overridden by a\n" +
                 "                  checkpoint recovery (see -checkpoint), the random seed for\n" +
                 "                  each job is the provided -seed plus the job# (starting at 0).\n" +
+                "                  If the model's reusable() method returns true, each batch\n" +
+                "                  runs its jobs on the same model rather than a new one.\n" +
                 "                  Default: runs once only: job number is 0.\n\n" +
                 "-parallel P       Long value > 0: Runs P separate batches of jobs in parallel,\n" +
                 "                  each one containing R jobs (as specified by -repeat).  Each\n" +
@@ -430,6 +474,26 @@ public class SimState implements java.io.Serializable
                 "                  Default: " + 
                 generator.simulationClass().getName().substring(generator.simulationClass().getName().lastIndexOf(".") + 1) + 
                 "\n\n" + 
+                "-checkpointformat F String: the format of checkpoints (see -docheckpoint):\n" +
+                "                  gzip    serialized and compressed with GZIP\n" +
+                "                  fast    chunked, and compressed with fast Deflate\n" +
+                "                  small   chunked, and compressed as much as GZIP\n" +
+                "                  none    chunked, and uncompressed\n" +
+                "                  Default: gzip, or fast if -deltacheckpoint is given.\n\n" +
+                "-deltacheckpoint K Integer value > 0: every Kth checkpoint is full, and the\n" +
+                "                  ones in-between store only the parts of the model which\n" +
+                "                  differ from the last full one.  Delta checkpoint files are\n" +
+                "                  named    <steps>.<job#>.NAME.delta.checkpoint\n" +
+                "                  and need the full checkpoint before them to be loaded.\n" +
+                "                  Requires a chunked -checkpointformat.\n" +
+                "                  Default: all checkpoints are full.\n\n" +
+                "-checkpointbuffer M Integer value > 0: write checkpoints asynchronously.  The\n" +
+                "                  model is serialized between steps, then compressed and\n" +
+                "                  written on a background thread while the simulation runs.\n" +
+                "                  At most M megabytes of it are held in memory awaiting the\n" +
+                "                  background thread; beyond that, the simulation waits.\n" +
+                "                  Requires a chunked -checkpointformat.\n" +
+                "                  Default: checkpoints are written before continuing.\n\n" +
                 "-checkpoint C     String: loads the simulation from file C, recovering the job\n" +
                 "                  number and the seed.  If the checkpointed simulation was begun\n" +
                 "                  on the command line but was passed through the GUI for a while\n" +
@@ -441,6 +505,11 @@ public class SimState implements java.io.Serializable
                 "                  from the recovered job and seed.\n" +
                 "                  Default: starts a new simulation rather than loading one, at\n" +
                 "                  job 0 and with the seed given in -seed.\n\n" + 
+                "-profile          Profiles the Schedule of each job, printing at the end of\n" +
+                "                  the job the steps, time, and allocation taken by each class\n" +
+                "                  of Steppable and by each ordering.  While the job runs, the\n" +
+                "                  profile may be watched over JMX as a ScheduleProfiler MBean.\n" +
+                "                  Default: does not profile.\n\n" +
                 "-quiet            Does not print messages except for errors and warnings.\n" + 
                 "                  This option implies -time 0.\n" +
                 "                  Default: prints all messages.\n"
@@ -449,6 +518,7 @@ public class SimState implements java.io.Serializable
             }
 
         final boolean quiet = keyExists("-quiet", args);
+        final boolean profile = keyExists("-profile", args);
 
         java.text.NumberFormat n = java.text.NumberFormat.getInstance();
         n.setMinimumFractionDigits(0);
@@ -526,6 +596,50 @@ public class SimState implements java.io.Serializable
                 throw new RuntimeException("Invalid checkpoint modulo: " + cmod_s + ", must be a positive integer");
                 }
         final long cmod = _cmod;
+
+        int _deltas = 1;
+        String deltas_s = argumentForKey("-deltacheckpoint", args);
+        if (deltas_s != null)
+            try
+                {
+                _deltas = Integer.parseInt(deltas_s);
+                if (_deltas <= 0) throw new Exception();
+                }
+            catch (Exception e)
+                {
+                throw new RuntimeException("Invalid delta checkpoint value: " + deltas_s + ", must be a positive integer");
+                }
+        final int deltas = _deltas;
+
+        long _buffer = 0;
+        String buffer_s = argumentForKey("-checkpointbuffer", args);
+        if (buffer_s != null)
+            try
+                {
+                _buffer = Long.parseLong(buffer_s);
+                if (_buffer <= 0) throw new Exception();
+                }
+            catch (Exception e)
+                {
+                throw new RuntimeException("Invalid checkpoint buffer value: " + buffer_s + ", must be a positive integer");
+                }
+        final long buffer = _buffer * 1024L * 1024L;
+
+        int _format = (deltas_s == null && buffer_s == null ? -1 : Checkpoint.COMPRESSION_FAST);   // -1 is GZIP
+        String format_s = argumentForKey("-checkpointformat", args);
+        if (format_s != null)
+            {
+            if (format_s.equalsIgnoreCase("gzip")) _format = -1;
+            else if (format_s.equalsIgnoreCase("fast")) _format = Checkpoint.COMPRESSION_FAST;
+            else if (format_s.equalsIgnoreCase("small")) _format = Checkpoint.COMPRESSION_SMALL;
+            else if (format_s.equalsIgnoreCase("none")) _format = Checkpoint.COMPRESSION_NONE;
+            else throw new RuntimeException("Invalid checkpoint format: " + format_s + ", must be gzip, fast, small, or none");
+            }
+        if (_format == -1 && deltas_s != null)
+            throw new RuntimeException("Delta checkpoints cannot be written in the gzip checkpoint format");
+        if (_format == -1 && buffer_s != null)
+            throw new RuntimeException("Asynchronous checkpoints cannot be written in the gzip checkpoint format");
+        final int format = _format;
         
         long _repeat = 1;
         String repeat_s = argumentForKey("-repeat", args);
@@ -583,9 +697,14 @@ public class SimState implements java.io.Serializable
                     long time = time_init - 1;
                     long job = thread * repeat;
                     long seed = seed_init + job;  // initially anyway
+                    SimState reusable = null;  // the previous job's SimState, if it may be reused
                     for(long rep = 0 ; rep < repeat; rep++)
                         {
                         SimState state = null;
+                        Checkpoint checkpoint = (format == -1 ? null : new Checkpoint(format, deltas));
+                        if (checkpoint != null && buffer > 0)
+                            try { checkpoint.setAsynchronous(buffer); }
+                            catch (IOException e) { e.printStackTrace(); }
                 
                         // start from checkpoint?  Note this will only happen if there is only ONE thread, so it's okay to change the job number here
                         if (rep == 0 && checkpointFile!=null)  // only job 0 loads from checkpoint
@@ -612,13 +731,31 @@ public class SimState implements java.io.Serializable
                         // ...or should we start fresh?
                         if (state==null)  // no checkpoint file requested
                             {
-                            state = generator.newInstance(seed,args);
+                            if (reusable != null)
+                                {
+                                state = reusable;
+                                state.setSeed(seed);
+                                }
+                            else state = generator.newInstance(seed,args);
                             state.job = job;
                             state.seed = seed;
                             if (!quiet) printlnSynchronized("Job: " + state.job() + " Seed: " + state.seed());
                             state.start();
                             }
                         
+                        ScheduleProfiler profiler = null;
+                        if (profile)
+                            {
+                            profiler = state.schedule.getProfiler();
+                            if (profiler == null)
+                                {
+                                profiler = new ScheduleProfiler();
+                                state.schedule.setProfiler(profiler);
+                                }
+                            else profiler.reset();  // left over from the last job
+                            profiler.register("MASON " + thread);
+                            }
+                        
                         NumberFormat rateFormat = NumberFormat.getInstance();
                         rateFormat.setMaximumFractionDigits(5);
                         rateFormat.setMinimumIntegerDigits(1);
@@ -660,13 +797,38 @@ public class SimState implements java.io.Serializable
                                 String id = checkpointName;
                                 if (id == null)
                                     id = state.getClass().getName().substring(state.getClass().getName().lastIndexOf(".") + 1);
-                                String s = "" + steps + "." + state.job() +  "." + id  + ".checkpoint";
-                                if (!quiet) printlnSynchronized("Job " + job + ": " + "Checkpointing to file: " + s);
-                                state.writeToCheckpoint(new File(s));
+                                if (checkpoint == null)
+                                    {
+                                    String s = "" + steps + "." + state.job() +  "." + id  + ".checkpoint";
+                                    if (!quiet) printlnSynchronized("Job " + job + ": " + "Checkpointing to file: " + s);
+                                    state.writeToCheckpoint(new File(s));
+                                    }
+                                else
+                                    {
+                                    // decide once, so the file is named for what we ask for.  A delta may still come out full: see Checkpoint.writeDelta(...)
+                                    boolean full = checkpoint.isNextFull();
+                                    String s = "" + steps + "." + state.job() +  "." + id  + (full ? "" : ".delta") + ".checkpoint";
+                                    if (!quiet) printlnSynchronized("Job " + job + ": " + "Checkpointing to file: " + s);
+                                    try
+                                        {
+                                        if (full) checkpoint.writeFull(state, new File(s));
+                                        else checkpoint.writeDelta(state, new File(s));
+                                        }
+                                    catch (IOException e) { e.printStackTrace(); }
+                                    }
                                 }
                             }
                                 
                         state.finish();
+                        reusable = (state.reusable() ? state : null);
+                        if (profiler != null)
+                            {
+                            profiler.unregister();
+                            printlnSynchronized("Job " + job + ": " + "Profile\n" + profiler.snapshot());
+                            }
+                        if (checkpoint != null)
+                            try { checkpoint.close(); }   // wait for any asynchronous checkpoints
+                            catch (IOException e) { e.printStackTrace(); }
                         
                         if (retval) 
                             {
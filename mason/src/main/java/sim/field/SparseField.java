@@ -110,10 +110,10 @@ public abstract class SparseField implements java.io.Serializable
 
     /** LocationAndIndex objects (locations and indexes into the allObjects array) hashed by Object.  Ideally you would
         store only immutable or hash-by-pointer objects, el se they'll get lost in the HashMap. */
-    public Map locationAndIndexHash = buildMap(ANY_SIZE);
+    public Map locationAndIndexHash = buildObjectKeyedMap(ANY_SIZE);
 
     /** Bags of objects hashed by location.  Do not rely on these bags always being the same objects. */
-    public Map objectHash = buildMap(ANY_SIZE);
+    public Map objectHash = buildLocationKeyedMap(ANY_SIZE);
 
     /** All the objects in the sparse field.  For fast scans.  Do not rely on this bag always being the same object. */
     public Bag allObjects = new Bag();
@@ -128,6 +128,12 @@ public abstract class SparseField implements java.io.Serializable
         if (size <= ANY_SIZE) return new HashMap();
         else return new HashMap(size);
         }
+    /** Creates the map used for locationAndIndexHash, and other maps keyed by the objects stored in the field.  
+        By default, calls buildMap(size).  Subclasses may override this to return a map keyed by identity, such as IdentityHashMap. */
+    public Map buildObjectKeyedMap(int size) { return buildMap(size); }
+    /** Creates the map used for objectHash, keyed by location.  By default, calls buildMap(size).
+        Subclasses may override this to return a map specialized for their location type, such as Int2DMap. */
+    public Map buildLocationKeyedMap(int size) { return buildMap(size); }
 
     protected SparseField() { }
         
@@ -260,13 +266,23 @@ public abstract class SparseField implements java.io.Serializable
         just make a brand new Sparse Field and let the garbage collector do its magic. */
     public Bag clear()
         {
-        locationAndIndexHash = buildMap(ANY_SIZE);
-        objectHash = buildMap(ANY_SIZE);
+        locationAndIndexHash = buildObjectKeyedMap(ANY_SIZE);
+        objectHash = buildLocationKeyedMap(ANY_SIZE);
         Bag retval = allObjects;
         allObjects = new Bag();
         return retval;
         }
     
+    /** Deletes everything in place, keeping the capacity of the underlying hash tables and allObjects Bag, so that the
+        field may be refilled without reallocating them.  Unlike clear(), nothing is returned, and allObjects remains
+        the same Bag. */
+    public void reset()
+        {
+        locationAndIndexHash.clear();
+        objectHash.clear();
+        allObjects.clear();
+        }
+    
     /** Removes an object if it exists.  Returns its location, or null if the object didn't exist. */
     public Object remove(final Object obj)
         {
@@ -82,6 +82,12 @@ import java.util.*;
    Otherwise, width and height are not used.  If your space is bounded, you should set the width and height to
    those bounds.  If it's unbounded, then you should set the width and height to the bounds you would like
    displayed on-screen.
+   
+   <p><b>Primitive Maps.</b>  If you construct the Continuous2D with <tt>primitiveMaps</tt> set to true, then objects are mapped to
+   their locations with IdentityHashMaps, and discretized cells to their Bags with an Int2DMap, which packs each cell into a long
+   and never calls hashCode() or equals() on it.  This is considerably faster and produces less garbage when huge numbers of objects
+   move every step, but objects are then distinguished by identity (==) rather than by equals().  This is almost always what you want for agents.
+   Regardless of this setting, moving an object within the same discretized cell does not touch the cell maps at all.
 */
 
 public /*strictfp*/ class Continuous2D extends SparseField implements SparseField2D
@@ -89,7 +95,7 @@ public /*strictfp*/ class Continuous2D extends SparseField implements SparseFiel
     private static final long serialVersionUID = 1;
 
     /** Where we store the Double2D values hashed by object */
-    public Map doubleLocationHash = buildMap(ANY_SIZE);
+    public Map doubleLocationHash = buildObjectKeyedMap(ANY_SIZE);
     
     public double width;
     public double height;
@@ -97,12 +103,29 @@ public /*strictfp*/ class Continuous2D extends SparseField implements SparseFiel
     /** Do not change this unless you have completely cleared the Continuous2D, or things will be lost in the hash. */
     public double discretization;
         
+    /** Whether we use identity and Int2D-specialized maps rather than HashMaps. */
+    protected boolean primitiveMaps;
+        
     /** Provide expected bounds on the SparseContinuous2D */
     public Continuous2D(final double discretization, double width, double height)
+        {
+        this(discretization, width, height, false);
+        }
+
+    /** Provide expected bounds on the SparseContinuous2D.  If primitiveMaps is true, objects and cells
+        are stored in IdentityHashMaps and an Int2DMap rather than in HashMaps. */
+    public Continuous2D(final double discretization, double width, double height, boolean primitiveMaps)
         {
         this.discretization = discretization;
         this.width = width;
         this.height = height;
+        this.primitiveMaps = primitiveMaps;
+        if (primitiveMaps)  // rebuild the empty maps made before we set the flag
+            {
+            locationAndIndexHash = buildObjectKeyedMap(ANY_SIZE);
+            objectHash = buildLocationKeyedMap(ANY_SIZE);
+            doubleLocationHash = buildObjectKeyedMap(ANY_SIZE);
+            }
         }
 
     public Continuous2D(Continuous2D other)
@@ -111,6 +134,32 @@ public /*strictfp*/ class Continuous2D extends SparseField implements SparseFiel
         discretization = other.discretization;
         width = other.width;
         height = other.height;
+        primitiveMaps = other.primitiveMaps;
+        if (primitiveMaps)
+            {
+            locationAndIndexHash = buildObjectKeyedMap(ANY_SIZE);
+            locationAndIndexHash.putAll(other.locationAndIndexHash);
+            objectHash = buildLocationKeyedMap(ANY_SIZE);
+            objectHash.putAll(other.objectHash);
+            }
+        doubleLocationHash = buildObjectKeyedMap(ANY_SIZE);
+        doubleLocationHash.putAll(other.doubleLocationHash);
+        }
+
+    /** Returns true if the field stores its objects and cells in IdentityHashMaps and an Int2DMap rather than in HashMaps. */
+    public boolean getUsesPrimitiveMaps() { return primitiveMaps; }
+    
+    public Map buildObjectKeyedMap(int size)
+        {
+        if (!primitiveMaps) return super.buildObjectKeyedMap(size);
+        if (size <= ANY_SIZE) return new IdentityHashMap();
+        else return new IdentityHashMap(size);
+        }
+        
+    public Map buildLocationKeyedMap(int size)
+        {
+        if (!primitiveMaps) return super.buildLocationKeyedMap(size);
+        return new Int2DMap(size);
         }
 
     public final Double2D getObjectLocation(Object obj)
@@ -142,6 +191,21 @@ public /*strictfp*/ class Continuous2D extends SparseField implements SparseFiel
     
     public final boolean setObjectLocation(Object obj, final Double2D location)
         {
+        if (obj == null || location == null) return false;
+        
+        // If the object is staying in the same cell, we needn't discretize into a new Int2D nor touch the cell maps
+        LocationAndIndex lai = (LocationAndIndex)(locationAndIndexHash.get(obj));
+        if (lai != null)
+            {
+            Int2D cell = (Int2D)(lai.getLocation());
+            if (cell.x == (int) Math.floor(location.x / discretization) &&
+                cell.y == (int) Math.floor(location.y / discretization))
+                {
+                doubleLocationHash.put(obj,location);
+                return true;
+                }
+            }
+            
         boolean result = super.setObjectLocation(obj, discretize(location));
         if (result) doubleLocationHash.put(obj,location);
         return result;
@@ -156,9 +220,15 @@ public /*strictfp*/ class Continuous2D extends SparseField implements SparseFiel
         
     public final Bag clear()
         {
-        doubleLocationHash = buildMap(ANY_SIZE);
+        doubleLocationHash = buildObjectKeyedMap(ANY_SIZE);
         return super.clear();
         }
+
+    public void reset()
+        {
+        doubleLocationHash.clear();
+        super.reset();
+        }
         
     public final Object remove(final Object obj)
         {
@@ -569,6 +639,141 @@ public /*strictfp*/ class Continuous2D extends SparseField implements SparseFiel
         return result;
         }
 
+
+    /** Receives the objects found by visitNeighborsExactlyWithinDistance(...). */
+    public interface NeighborVisitor
+        {
+        /** Called once for each object found.  x and y are the object's location, and distanceSq is its squared
+            distance from the query position (toroidal if the query was toroidal).  Return false to stop the search early. */
+        public boolean visit(Object object, double x, double y, double distanceSq);
+        }
+
+    /** Calls the visitor on EXACTLY those objects within a circle of radius 'distance' around the position (x, y).
+        If 'inclusive' is true, then objects exactly 'distance' away are visited as well.  If 'toroidal' is true, then
+        distance is measured assuming the environment is toroidal, and (x, y) is wrapped to within the boundaries first.
+        Assumes point objects.  Returns the number of objects visited.
+
+        <p>Unlike getNeighborsExactlyWithinDistance(Double2D, ...), this method builds no Bags, Double2Ds, or cell keys:
+        cells are looked up in place and toroidal wrapping is done arithmetically.  If the field uses primitive maps, it allocates
+        nothing at all; otherwise it allocates a single MutableInt2D per call.  The visitor must not add objects to, move objects in,
+        or remove objects from this field while the search is going on.
+    */
+    public int visitNeighborsExactlyWithinDistance(final double x, final double y, final double distance, final boolean toroidal,
+        final boolean inclusive, final NeighborVisitor visitor)
+        {
+        return scanNeighborsExactlyWithinDistance(x, y, distance, toroidal, inclusive, null, visitor);
+        }
+
+    /** Clears the Bag 'result', places in it EXACTLY those objects within a circle of radius 'distance' around the position (x, y),
+        and returns it.  If 'result' is null, a new Bag is created instead.  If 'inclusive' is true, then objects exactly 'distance' away
+        are included as well.  If 'toroidal' is true, then distance is measured assuming the environment is toroidal, and (x, y) is wrapped to
+        within the boundaries first.  Assumes point objects.
+
+        <p>This does the same search as visitNeighborsExactlyWithinDistance(...).  If you hand in the same Bag each time, it produces no garbage
+        once the Bag has grown large enough.
+    */
+    public Bag getNeighborsExactlyWithinDistance(final double x, final double y, final double distance, final boolean toroidal,
+        final boolean inclusive, Bag result)
+        {
+        if (result == null) result = new Bag();
+        else result.clear();
+        scanNeighborsExactlyWithinDistance(x, y, distance, toroidal, inclusive, result, null);
+        return result;
+        }
+
+    // The search underlying visitNeighborsExactlyWithinDistance and the (x, y) version of getNeighborsExactlyWithinDistance.
+    // Found objects are added to result if it is non-null, and handed to visitor if it is non-null.
+    int scanNeighborsExactlyWithinDistance(double x, double y, final double distance, final boolean toroidal,
+        final boolean inclusive, final Bag result, final NeighborVisitor visitor)
+        {
+        final double discretization = this.discretization;
+        final double distsq = distance * distance;
+        final Int2DMap cells = (objectHash instanceof Int2DMap ? (Int2DMap) objectHash : null);
+        final MutableInt2D speedyMutableInt2D = (cells == null ? new MutableInt2D() : null);
+        int count = 0;
+
+        int minX, maxX, minY, maxY;
+        int iWidth = 0, iHeight = 0;
+        if (toroidal)
+            {
+            x = tx(x);
+            y = ty(y);
+            iWidth = (int)(StrictMath.ceil(width / discretization));
+            iHeight = (int)(StrictMath.ceil(height / discretization));
+
+            // The cells to search are those of the wrapped interval [x - distance, x + distance].  If that interval
+            // wraps around and its ends land in the same or crossed cells, it covers every cell.
+            minX = cell(tx(x - distance), discretization, iWidth);
+            maxX = cell(tx(x + distance), discretization, iWidth);
+            if (distance * 2 >= width || ((x - distance < 0 || x + distance >= width) && minX <= maxX))
+                { minX = 0; maxX = iWidth - 1; }
+            minY = cell(ty(y - distance), discretization, iHeight);
+            maxY = cell(ty(y + distance), discretization, iHeight);
+            if (distance * 2 >= height || ((y - distance < 0 || y + distance >= height) && minY <= maxY))
+                { minY = 0; maxY = iHeight - 1; }
+            }
+        else
+            {
+            minX = (int) StrictMath.floor((x - distance) / discretization);
+            maxX = (int) StrictMath.floor((x + distance) / discretization);
+            minY = (int) StrictMath.floor((y - distance) / discretization);
+            maxY = (int) StrictMath.floor((y + distance) / discretization);
+            }
+
+        // for toroidal fields these loops wrap around from the last cell to cell 0 as necessary
+        int cx = minX;
+        while(true)
+            {
+            int cy = minY;
+            while(true)
+                {
+                Bag temp;
+                if (cells != null) temp = (Bag)(cells.get(cx, cy));
+                else
+                    {
+                    speedyMutableInt2D.x = cx;
+                    speedyMutableInt2D.y = cy;
+                    temp = (Bag)(objectHash.get(speedyMutableInt2D));
+                    }
+
+                if (temp != null)
+                    {
+                    final Object[] objs = temp.objs;
+                    final int numObjs = temp.numObjs;
+                    for(int i = 0; i < numObjs; i++)
+                        {
+                        final Object obj = objs[i];
+                        final Double2D loc = (Double2D)(doubleLocationHash.get(obj));
+                        final double dx = (toroidal ? tdx(loc.x, x) : loc.x - x);
+                        final double dy = (toroidal ? tdy(loc.y, y) : loc.y - y);
+                        final double d = dx * dx + dy * dy;
+                        if (d > distsq || (!inclusive && d >= distsq)) continue;
+                        count++;
+                        if (result != null) result.add(obj);
+                        if (visitor != null && !visitor.visit(obj, loc.x, loc.y, d)) return count;
+                        }
+                    }
+
+                if (cy == maxY) break;
+                cy++;
+                if (toroidal && cy == iHeight) cy = 0;
+                }
+
+            if (cx == maxX) break;
+            cx++;
+            if (toroidal && cx == iWidth) cx = 0;
+            }
+        return count;
+        }
+
+    // the discretized cell of a position already wrapped to [0, extent).  Rounding in tx(...) and ty(...) can
+    // produce exactly the extent, which belongs in the last cell.
+    static int cell(final double position, final double discretization, final int numCells)
+        {
+        int c = (int) StrictMath.floor(position / discretization);
+        return (c >= numCells ? numCells - 1 : c);
+        }
+
     /** Returns a bag containing AT LEAST those objects within the bounding box surrounding the
         specified distance of the specified position.  The bag could include other objects than this.
         In this case we include the object if
@@ -138,6 +138,12 @@ public /*strictfp*/ class Continuous3D extends SparseField implements SparseFiel
         doubleLocationHash = buildMap(ANY_SIZE);
         return super.clear();
         }
+
+    public void reset()
+        {
+        doubleLocationHash.clear();
+        super.reset();
+        }
         
     public final Object remove(final Object obj)
         {
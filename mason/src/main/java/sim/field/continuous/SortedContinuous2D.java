@@ -0,0 +1,388 @@
+/*
+  Copyright 2006 by Sean Luke and George Mason University
+  Licensed under the Academic Free License version 3.0
+  See the file "LICENSE" for more information
+*/
+
+package sim.field.continuous;
+import sim.field.*;
+import sim.util.*;
+import java.util.*;
+
+/**
+   A storage facility for very large numbers of point objects located in a continuous 2D environment.  Like
+   Continuous2D, SortedContinuous2D discretizes the space into square cells for neighborhood lookup, but rather than
+   hashing each cell to a Bag of objects, it keeps the x and y coordinates of its objects in plain double arrays.
+   Once per step you call sort(), which counting-sorts a copy of the coordinates (and the objects) by cell, row by row.
+   A neighborhood query then walks, for each row of cells it covers, a single contiguous stretch of these arrays.  With
+   hundreds of thousands or millions of agents this is far kinder to the cache than chasing hash buckets, Bags, and Double2Ds.
+
+   <p><b>The sorted snapshot.</b>  Neighborhood queries do not see the field as it is now: they see it as it was at the
+   most recent call to sort().  Objects added since then are not found, objects removed since then are still found, and
+   moved objects are found (and reported) at their old positions.  This is exactly what synchronous models such as flockers
+   want: schedule a Steppable which calls sort() at the start or end of each step, and every agent then looks at the same
+   picture of the world.  getObjectLocation(...) and the other accessors, on the other hand, always reflect the current positions.
+
+   <p><b>Indices.</b>  Each object has an index from 0 to size()-1, which you can use with getX(...), getY(...) and
+   setLocation(...) to avoid looking the object up.  Removing an object moves the last object into its index, so indices
+   are only valid until the next removal.
+
+   <p><b>Bounds.</b>  Objects may lie outside the width and height of the field: those beyond its edges are sorted into its
+   edge cells, and non-toroidal queries will still find them.  Toroidal queries, however, assume that all objects lie within the
+   field, as they would if you always set their locations with tx(...) and ty(...).  Objects are distinguished by identity (==).
+
+   <p>SortedContinuous2D implements SparseField2D, and may be drawn with a ContinuousPortrayal2D.
+*/
+
+public class SortedContinuous2D implements SparseField2D, java.io.Serializable
+    {
+    private static final long serialVersionUID = 1;
+
+    public double width;
+    public double height;
+    public double discretization;
+
+    // the number of cells in each dimension
+    int cellsWide;
+    int cellsHigh;
+
+    // the current locations, by index
+    Bag allObjects = new Bag();
+    double[] xs = new double[16];
+    double[] ys = new double[16];
+    IdentityHashMap indices = new IdentityHashMap();
+
+    // the snapshot made by sort()
+    int numSorted;
+    Object[] sortedObjects = new Object[0];
+    double[] sortedXs = new double[0];
+    double[] sortedYs = new double[0];
+    int[] cellStarts;  // sorted objects in cell c lie from cellStarts[c] to just before cellStarts[c+1]
+    int[] cellOf = new int[0];
+    int[] cellFill;
+
+    /** Provide expected bounds on the SortedContinuous2D.  Cells are discretization wide and high. */
+    public SortedContinuous2D(double discretization, double width, double height)
+        {
+        if (!(discretization > 0))
+            throw new IllegalArgumentException("Discretization must be > 0: " + discretization);
+        if (!(width > 0) || !(height > 0))
+            throw new IllegalArgumentException("Width and height must be > 0: " + width + ", " + height);
+        this.discretization = discretization;
+        this.width = width;
+        this.height = height;
+        cellsWide = (int)(StrictMath.ceil(width / discretization));
+        cellsHigh = (int)(StrictMath.ceil(height / discretization));
+        if ((long)cellsWide * (long)cellsHigh >= Integer.MAX_VALUE)
+            throw new IllegalArgumentException("Discretization " + discretization + " is too small for a field " + width + " by " + height);
+        cellStarts = new int[cellsWide * cellsHigh + 1];
+        cellFill = new int[cellsWide * cellsHigh];
+        }
+
+    /** Get the width */
+    public double getWidth() { return width; }
+
+    /** Get the height */
+    public double getHeight() { return height; }
+
+    public final Double2D getDimensions() { return new Double2D(width, height); }
+
+    /** Returns the number of objects in the field. */
+    public int size() { return allObjects.numObjs; }
+
+    /** Returns all the objects in the field, in index order.  You should NOT MODIFY THIS BAG. */
+    public Bag getAllObjects() { return allObjects; }
+
+    /** Returns the index of the given object, or -1 if it is not in the field. */
+    public int getIndex(Object obj)
+        {
+        Integer index = (Integer)(indices.get(obj));
+        return (index == null ? -1 : index.intValue());
+        }
+
+    /** Returns the object at the given index. */
+    public Object getObject(int index) { return allObjects.objs[index]; }
+
+    /** Returns the current x coordinate of the object at the given index. */
+    public double getX(int index) { return xs[index]; }
+
+    /** Returns the current y coordinate of the object at the given index. */
+    public double getY(int index) { return ys[index]; }
+
+    /** Moves the object at the given index.  The move is not seen by neighborhood queries until the next sort(). */
+    public void setLocation(int index, double x, double y)
+        {
+        if (index < 0 || index >= allObjects.numObjs)
+            throw new IndexOutOfBoundsException("" + index);
+        xs[index] = x;
+        ys[index] = y;
+        }
+
+    /** Returns the current location of the object, or null if it is not in the field. */
+    public Double2D getObjectLocation(Object obj)
+        {
+        int index = getIndex(obj);
+        if (index < 0) return null;
+        return new Double2D(xs[index], ys[index]);
+        }
+
+    public final Double2D getObjectLocationAsDouble2D(Object obj)
+        {
+        return getObjectLocation(obj);
+        }
+
+    /** Adds the object at the given location, or moves it there if it is already in the field.  Returns false if the
+        object is null.  The change is not seen by neighborhood queries until the next sort(). */
+    public boolean setObjectLocation(Object obj, double x, double y)
+        {
+        if (obj == null) return false;
+        int index = getIndex(obj);
+        if (index < 0)
+            {
+            index = allObjects.numObjs;
+            if (index == xs.length)
+                {
+                xs = grow(xs);
+                ys = grow(ys);
+                }
+            allObjects.add(obj);
+            indices.put(obj, Integer.valueOf(index));
+            }
+        xs[index] = x;
+        ys[index] = y;
+        return true;
+        }
+
+    /** Adds the object at the given location, or moves it there if it is already in the field.  Returns false if the
+        object or location is null.  The change is not seen by neighborhood queries until the next sort(). */
+    public boolean setObjectLocation(Object obj, Double2D location)
+        {
+        if (location == null) return false;
+        return setObjectLocation(obj, location.x, location.y);
+        }
+
+    static double[] grow(double[] array)
+        {
+        double[] newArray = new double[array.length * 2 + 1];
+        System.arraycopy(array, 0, newArray, 0, array.length);
+        return newArray;
+        }
+
+    /** Removes the object, returning true if it was in the field.  The last object is moved into its index.  The removal
+        is not seen by neighborhood queries until the next sort(). */
+    public boolean remove(Object obj)
+        {
+        Integer index = (Integer)(indices.remove(obj));
+        if (index == null) return false;
+        int i = index.intValue();
+        int last = allObjects.numObjs - 1;
+        allObjects.remove(i);  // moves the last object into i
+        if (i != last)
+            {
+            xs[i] = xs[last];
+            ys[i] = ys[last];
+            indices.put(allObjects.objs[i], index);
+            }
+        return true;
+        }
+
+    /** Removes all the objects, and empties the sorted snapshot as well. */
+    public void clear()
+        {
+        allObjects.clear();
+        indices.clear();
+        Arrays.fill(sortedObjects, 0, numSorted, null);
+        numSorted = 0;
+        Arrays.fill(cellStarts, 0);
+        }
+
+    /** Toroidal x */
+    public final double tx(double x)
+        {
+        final double width = this.width;
+        if (x >= 0 && x < width) return x;  // do clearest case first
+        x = x % width;
+        if (x < 0) x = x + width;
+        return x;
+        }
+
+    /** Toroidal y */
+    public final double ty(double y)
+        {
+        final double height = this.height;
+        if (y >= 0 && y < height) return y;  // do clearest case first
+        y = y % height;
+        if (y < 0) y = y + height;
+        return y;
+        }
+
+    // the cell column or row for a coordinate.  Coordinates off the field go into the edge cells.
+    static int cell(final double position, final double discretization, final int numCells)
+        {
+        final double c = position / discretization;
+        if (c >= numCells) return numCells - 1;
+        if (c > 0) return (int) c;
+        return 0;  // negative, or NaN
+        }
+
+    /** Takes a new snapshot of the field for neighborhood queries, sorting the objects and their current locations by cell.
+        Objects within a cell stay in index order, so the sort is deterministic.  Call this once per step. */
+    public void sort()
+        {
+        final int n = allObjects.numObjs;
+        final Object[] objs = allObjects.objs;
+        final double[] xs = this.xs;
+        final double[] ys = this.ys;
+        final double discretization = this.discretization;
+        final int cellsWide = this.cellsWide;
+        final int cellsHigh = this.cellsHigh;
+        final int numCells = cellsWide * cellsHigh;
+
+        if (sortedXs.length < n)
+            {
+            sortedObjects = new Object[n];
+            sortedXs = new double[n];
+            sortedYs = new double[n];
+            cellOf = new int[n];
+            }
+        else Arrays.fill(sortedObjects, n, numSorted, null);  // let go of objects no longer in the field
+        final Object[] sortedObjects = this.sortedObjects;
+        final double[] sortedXs = this.sortedXs;
+        final double[] sortedYs = this.sortedYs;
+        final int[] cellOf = this.cellOf;
+        final int[] cellStarts = this.cellStarts;
+        final int[] cellFill = this.cellFill;
+
+        // count
+        Arrays.fill(cellStarts, 0);
+        for(int i = 0; i < n; i++)
+            {
+            int c = cell(ys[i], discretization, cellsHigh) * cellsWide + cell(xs[i], discretization, cellsWide);
+            cellOf[i] = c;
+            cellStarts[c + 1]++;
+            }
+
+        // accumulate
+        for(int c = 0; c < numCells; c++)
+            {
+            cellStarts[c + 1] += cellStarts[c];
+            cellFill[c] = cellStarts[c];
+            }
+
+        // distribute
+        for(int i = 0; i < n; i++)
+            {
+            int j = cellFill[cellOf[i]]++;
+            sortedObjects[j] = objs[i];
+            sortedXs[j] = xs[i];
+            sortedYs[j] = ys[i];
+            }
+        numSorted = n;
+        }
+
+    /** Calls the visitor on EXACTLY those objects within a circle of radius 'distance' around the position (x, y), as of the most
+        recent sort().  If 'inclusive' is true, then objects exactly 'distance' away are visited as well.  If 'toroidal' is true, then
+        distance is measured assuming the environment is toroidal, and (x, y) is wrapped to within the boundaries first.  The x and y
+        handed to the visitor are the object's coordinates as of the sort.  Returns the number of objects visited.  Allocates nothing.
+    */
+    public int visitNeighborsExactlyWithinDistance(final double x, final double y, final double distance, final boolean toroidal,
+        final boolean inclusive, final Continuous2D.NeighborVisitor visitor)
+        {
+        return scanNeighborsExactlyWithinDistance(x, y, distance, toroidal, inclusive, null, visitor);
+        }
+
+    /** Clears the Bag 'result', places in it EXACTLY those objects within a circle of radius 'distance' around the position (x, y)
+        as of the most recent sort(), and returns it.  If 'result' is null, a new Bag is created instead.  If 'inclusive' is true, then
+        objects exactly 'distance' away are included as well.  If 'toroidal' is true, then distance is measured assuming the environment
+        is toroidal, and (x, y) is wrapped to within the boundaries first.
+    */
+    public Bag getNeighborsExactlyWithinDistance(final double x, final double y, final double distance, final boolean toroidal,
+        final boolean inclusive, Bag result)
+        {
+        if (result == null) result = new Bag();
+        else result.clear();
+        scanNeighborsExactlyWithinDistance(x, y, distance, toroidal, inclusive, result, null);
+        return result;
+        }
+
+    /** Returns a new Bag holding EXACTLY those objects within a circle of radius 'distance' around the position, or equal to that
+        distance, as of the most recent sort(). */
+    public Bag getNeighborsExactlyWithinDistance(final Double2D position, final double distance, final boolean toroidal)
+        {
+        return getNeighborsExactlyWithinDistance(position.x, position.y, distance, toroidal, true, null);
+        }
+
+    int scanNeighborsExactlyWithinDistance(double x, double y, final double distance, final boolean toroidal,
+        final boolean inclusive, final Bag result, final Continuous2D.NeighborVisitor visitor)
+        {
+        final double discretization = this.discretization;
+        final double width = this.width;
+        final double height = this.height;
+        final int cellsWide = this.cellsWide;
+        final int cellsHigh = this.cellsHigh;
+        final Object[] sortedObjects = this.sortedObjects;
+        final double[] sortedXs = this.sortedXs;
+        final double[] sortedYs = this.sortedYs;
+        final int[] cellStarts = this.cellStarts;
+        final double distsq = distance * distance;
+        int count = 0;
+
+        int minX, maxX, minY, maxY;
+        if (toroidal)
+            {
+            x = tx(x);
+            y = ty(y);
+            // see Continuous2D.scanNeighborsExactlyWithinDistance
+            minX = cell(tx(x - distance), discretization, cellsWide);
+            maxX = cell(tx(x + distance), discretization, cellsWide);
+            if (distance * 2 >= width || ((x - distance < 0 || x + distance >= width) && minX <= maxX))
+                { minX = 0; maxX = cellsWide - 1; }
+            minY = cell(ty(y - distance), discretization, cellsHigh);
+            maxY = cell(ty(y + distance), discretization, cellsHigh);
+            if (distance * 2 >= height || ((y - distance < 0 || y + distance >= height) && minY <= maxY))
+                { minY = 0; maxY = cellsHigh - 1; }
+            }
+        else
+            {
+            minX = cell(x - distance, discretization, cellsWide);
+            maxX = cell(x + distance, discretization, cellsWide);
+            minY = cell(y - distance, discretization, cellsHigh);
+            maxY = cell(y + distance, discretization, cellsHigh);
+            }
+
+        int cy = minY;
+        while(true)
+            {
+            final int row = cy * cellsWide;
+            // A row of cells is one contiguous stretch of the sorted arrays -- or two, if it wraps around
+            final int segments = (minX <= maxX ? 1 : 2);
+            for(int s = 0; s < segments; s++)
+                {
+                final int start = (s == 0 ? cellStarts[row + minX] : cellStarts[row]);
+                final int end = (s == 0 && segments == 2 ? cellStarts[row + cellsWide] : cellStarts[row + maxX + 1]);
+                for(int i = start; i < end; i++)
+                    {
+                    double dx = sortedXs[i] - x;
+                    double dy = sortedYs[i] - y;
+                    if (toroidal)
+                        {
+                        if (dx * 2 > width) dx -= width;
+                        else if (dx * 2 < -width) dx += width;
+                        if (dy * 2 > height) dy -= height;
+                        else if (dy * 2 < -height) dy += height;
+                        }
+                    final double d = dx * dx + dy * dy;
+                    if (d > distsq || (!inclusive && d >= distsq)) continue;
+                    count++;
+                    if (result != null) result.add(sortedObjects[i]);
+                    if (visitor != null && !visitor.visit(sortedObjects[i], sortedXs[i], sortedYs[i], d)) return count;
+                    }
+                }
+
+            if (cy == maxY) break;
+            cy++;
+            if (toroidal && cy == cellsHigh) cy = 0;
+            }
+        return count;
+        }
+    }
@@ -42,7 +42,19 @@ public abstract class AbstractGrid2D implements Grid2D
     public final int getHeight() { return height; }
     
     public void reshape(int width, int height) { this.width = width; this.height = height; }
-    
+
+    // whether bulk operations may run in parallel
+    boolean parallel = false;
+
+    /** Sets whether bulk operations on the whole grid (such as setTo, add, multiply, max, mean, apply, and reduce in DoubleGrid2D
+        and IntGrid2D) are divided into stripes of columns and run in parallel on the common ForkJoinPool.  Small grids are
+        never divided.  The stripes depend only on the size of the grid, so the results are the same from run to run and machine
+        to machine, though sums (such as mean) may differ in their last bits from the non-parallel result.  By default this is false. */
+    public void setParallel(boolean val) { parallel = val; }
+
+    /** Returns whether bulk operations on the whole grid may run in parallel. */
+    public boolean isParallel() { return parallel; }
+
     public Map buildMap(Map other) { return new HashMap(other); }
     public Map buildMap(int size) 
         {
@@ -41,6 +41,16 @@ public abstract class AbstractGrid3D implements Grid3D
     public final int getHeight() { return height; }
     
     public final int getLength() { return length; }
+
+    // whether bulk operations may run in parallel
+    boolean parallel = false;
+
+    /** Sets whether convolve(...) and diffuse(...) in DoubleGrid3D are divided into slabs along the x dimension and run
+        in parallel on the common ForkJoinPool.  Small grids are never divided.  By default this is false. */
+    public void setParallel(boolean val) { parallel = val; }
+
+    /** Returns whether bulk operations on the whole grid may run in parallel. */
+    public boolean isParallel() { return parallel; }
     
     public Map buildMap(Map other) { return new HashMap(other); }
     public Map buildMap(int size) 
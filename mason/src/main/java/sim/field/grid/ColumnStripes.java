@@ -0,0 +1,76 @@
+/*
+  Copyright 2006 by Sean Luke and George Mason University
+  Licensed under the Academic Free License version 3.0
+  See the file "LICENSE" for more information
+*/
+
+package sim.field.grid;
+import java.util.concurrent.*;
+import sim.util.*;
+
+/**
+   Runs a bulk operation over the columns (the x values) of a grid.  The operation is either run directly
+   over all the columns at once, or divided into stripes of adjacent columns which are run in parallel on
+   the common ForkJoinPool.  The number of stripes depends only on the size of the grid, never on the number
+   of threads, so a reduction which combines one partial result per stripe, in stripe order, comes out the same
+   on any machine.
+*/
+
+abstract class ColumnStripes
+    {
+    /** Stripes smaller than this many cells aren't worth the overhead of farming out. */
+    static final int MIN_CELLS_PER_STRIPE = 1 << 15;
+    static final int MAX_STRIPES = 256;
+
+    /** Processes the columns from fromX (inclusive) to toX (exclusive), which make up the given stripe. */
+    abstract void columns(int stripe, int fromX, int toX);
+
+    /** Returns the number of stripes a width x height grid is divided into, which is 1 if not parallel. */
+    static int count(boolean parallel, int width, int height)
+        {
+        if (!parallel) return 1;
+        long stripes = ((long) width * (long) height) / MIN_CELLS_PER_STRIPE;
+        if (stripes > width) stripes = width;
+        if (stripes > MAX_STRIPES) stripes = MAX_STRIPES;
+        return (stripes < 1 ? 1 : (int) stripes);
+        }
+
+    /** Runs over all the columns of a width x height grid, in parallel if requested and the grid is large enough. */
+    void run(boolean parallel, int width, int height)
+        {
+        run(count(parallel, width, height), width);
+        }
+
+    /** Runs over all the columns, divided into the given number of stripes, as computed by count(...). */
+    void run(int stripes, int width)
+        {
+        if (stripes <= 1) columns(0, 0, width);
+        else ForkJoinPool.commonPool().invoke(new Split(stripes, width, 0, stripes));
+        }
+
+    class Split extends AdaptiveSplit
+        {
+        private static final long serialVersionUID = 1;
+
+        int stripes;
+        int width;
+
+        Split(int stripes, int width, int start, int end)
+            {
+            super(start, end);
+            this.stripes = stripes;
+            this.width = width;
+            }
+
+        protected AdaptiveSplit split(int start, int end)
+            {
+            return new Split(stripes, width, start, end);
+            }
+
+        protected void process(int start, int end)
+            {
+            for(int s = start; s < end; s++)
+                columns(s, (int)(((long) s * width) / stripes), (int)(((long)(s + 1) * width) / stripes));
+            }
+        }
+    }
@@ -6,6 +6,7 @@
 
 package sim.field.grid;
 import sim.util.*;
+import java.util.function.*;
 /** 
     A wrapper for 2D arrays of doubles.
 
@@ -15,6 +16,10 @@ import sim.util.*;
     or hexagonal grids.
     
     <p>The width and height of the object are provided to avoid having to say field[x].length, etc.  
+
+    <p><b>Bulk Operations.</b>  Operations on the whole grid, such as setTo, add, multiply, max, and mean, as well as the general
+    apply, zip, and reduce methods, work column by column in plain loops which HotSpot can unroll and often vectorize.  If you
+    call setParallel(true), large grids are also divided into stripes of columns which are processed in parallel.
 */
 
 public /*strictfp*/ class DoubleGrid2D extends AbstractGrid2D
@@ -82,19 +87,33 @@ public /*strictfp*/ class DoubleGrid2D extends AbstractGrid2D
                     set(x, y,  thisMuch);
                     }
             }
-        else {
-            double[] fieldx = null;
-            final int width = this.width;
+        else
+            {
+            final double[][] field = this.field;
             final int height = this.height;
-            for (int x = 0; x < width; x++) {
-                fieldx = field[x];
-                for (int y = 0; y < height; y++)
-                    fieldx[y] = thisMuch;
-                }
+            new ColumnStripes()
+                {
+                void columns(int stripe, int fromX, int toX)
+                    {
+                    for(int x = fromX; x < toX; x++)
+                        {
+                        final double[] fieldx = field[x];
+                        for(int y = 0; y < height; y++)
+                            fieldx[y] = thisMuch;
+                        }
+                    }
+                }.run(parallel, width, height);
             }
         return this;
         }
 
+    /** Sets all the locations in the grid to 0 in place, keeping the grid's arrays, so that it may be reused for
+        another run without reallocating them.  This is the same as setTo(0). */
+    public void reset()
+        {
+        setTo(0);
+        }
+
     /** Sets the grid to a copy of the provided array, which must be rectangular. */
     public DoubleGrid2D setTo(double[][] field)
         {
@@ -156,8 +175,17 @@ public /*strictfp*/ class DoubleGrid2D extends AbstractGrid2D
             }
         else
             {
-            for(int x =0 ; x < width; x++)
-                System.arraycopy(values.field[x],0,field[x],0,height);
+            final double[][] field = this.field;
+            final double[][] otherField = values.field;
+            final int height = this.height;
+            new ColumnStripes()
+                {
+                void columns(int stripe, int fromX, int toX)
+                    {
+                    for(int x = fromX; x < toX; x++)
+                        System.arraycopy(otherField[x],0,field[x],0,height);
+                    }
+                }.run(parallel, width, height);
             }
         return this;
         }
@@ -211,15 +239,27 @@ public /*strictfp*/ class DoubleGrid2D extends AbstractGrid2D
                         max = g;
                     }
             }
-        else {
-            final int width = this.width;
+        else
+            {
+            final double[][] field = this.field;
             final int height = this.height;
-            double[] fieldx = null;
-            for (int x = 0; x < width; x++) {
-                fieldx = field[x];
-                for (int y = 0; y < height; y++)
-                    if (max < fieldx[y]) max = fieldx[y];
-                }
+            final double[] maxes = new double[ColumnStripes.count(parallel, width, height)];
+            new ColumnStripes()
+                {
+                void columns(int stripe, int fromX, int toX)
+                    {
+                    double m = Double.NEGATIVE_INFINITY;
+                    for(int x = fromX; x < toX; x++)
+                        {
+                        final double[] fieldx = field[x];
+                        for(int y = 0; y < height; y++)
+                            if (m < fieldx[y]) m = fieldx[y];
+                        }
+                    maxes[stripe] = m;
+                    }
+                }.run(maxes.length, width);
+            for(int i = 0; i < maxes.length; i++)
+                if (max < maxes[i]) max = maxes[i];
             }
         return max;
         }
@@ -241,15 +281,27 @@ public /*strictfp*/ class DoubleGrid2D extends AbstractGrid2D
                         min = g;
                     }
             }
-        else {
-            final int width = this.width;
+        else
+            {
+            final double[][] field = this.field;
             final int height = this.height;
-            double[] fieldx = null;
-            for (int x = 0; x < width; x++) {
-                fieldx = field[x];
-                for (int y = 0; y < height; y++)
-                    if (min > fieldx[y]) min = fieldx[y];
-                }
+            final double[] mins = new double[ColumnStripes.count(parallel, width, height)];
+            new ColumnStripes()
+                {
+                void columns(int stripe, int fromX, int toX)
+                    {
+                    double m = Double.POSITIVE_INFINITY;
+                    for(int x = fromX; x < toX; x++)
+                        {
+                        final double[] fieldx = field[x];
+                        for(int y = 0; y < height; y++)
+                            if (m > fieldx[y]) m = fieldx[y];
+                        }
+                    mins[stripe] = m;
+                    }
+                }.run(mins.length, width);
+            for(int i = 0; i < mins.length; i++)
+                if (min > mins[i]) min = mins[i];
             }
         return min;
         }
@@ -271,17 +323,28 @@ public /*strictfp*/ class DoubleGrid2D extends AbstractGrid2D
                     count++;
                     }
             }
-        else {
-            double[] fieldx = null;
-            final int width = this.width;
+        else
+            {
+            final double[][] field = this.field;
             final int height = this.height;
-            for (int x = 0; x < width; x++) {
-                fieldx = field[x];
-                for (int y = 0; y < height; y++) {
-                    mean += fieldx[y];
-                    count++;
+            final double[] sums = new double[ColumnStripes.count(parallel, width, height)];
+            new ColumnStripes()
+                {
+                void columns(int stripe, int fromX, int toX)
+                    {
+                    double sum = 0;
+                    for(int x = fromX; x < toX; x++)
+                        {
+                        final double[] fieldx = field[x];
+                        for(int y = 0; y < height; y++)
+                            sum += fieldx[y];
+                        }
+                    sums[stripe] = sum;
                     }
-                }
+                }.run(sums.length, width);
+            for(int i = 0; i < sums.length; i++)
+                mean += sums[i];
+            count = (long) width * height;
             }
         return (count == 0 ? 0 : mean / count);
         }
@@ -303,16 +366,22 @@ public /*strictfp*/ class DoubleGrid2D extends AbstractGrid2D
                         set(x,y,toNoMoreThanThisMuch);
                     }
             }
-        else {
-            double[] fieldx = null;
-            final int width = this.width;
+        else
+            {
+            final double[][] field = this.field;
             final int height = this.height;
-            for (int x = 0; x < width; x++) {
-                fieldx = field[x];
-                for (int y = 0; y < height; y++)
-                    if (fieldx[y] > toNoMoreThanThisMuch)
-                        fieldx[y] = toNoMoreThanThisMuch;
-                }
+            new ColumnStripes()
+                {
+                void columns(int stripe, int fromX, int toX)
+                    {
+                    for(int x = fromX; x < toX; x++)
+                        {
+                        final double[] fieldx = field[x];
+                        for(int y = 0; y < height; y++)
+                            if (fieldx[y] > toNoMoreThanThisMuch) fieldx[y] = toNoMoreThanThisMuch;
+                        }
+                    }
+                }.run(parallel, width, height);
             }
         return this;
         }
@@ -334,16 +403,22 @@ public /*strictfp*/ class DoubleGrid2D extends AbstractGrid2D
                         set(x,y,toNoLowerThanThisMuch);
                     }
             }
-        else {
-            double[] fieldx = null;
-            final int width = this.width;
+        else
+            {
+            final double[][] field = this.field;
             final int height = this.height;
-            for (int x = 0; x < width; x++) {
-                fieldx = field[x];
-                for (int y = 0; y < height; y++)
-                    if (fieldx[y] < toNoLowerThanThisMuch)
-                        fieldx[y] = toNoLowerThanThisMuch;
-                }
+            new ColumnStripes()
+                {
+                void columns(int stripe, int fromX, int toX)
+                    {
+                    for(int x = fromX; x < toX; x++)
+                        {
+                        final double[] fieldx = field[x];
+                        for(int y = 0; y < height; y++)
+                            if (fieldx[y] < toNoLowerThanThisMuch) fieldx[y] = toNoLowerThanThisMuch;
+                        }
+                    }
+                }.run(parallel, width, height);
             }
         return this;
         }
@@ -364,16 +439,23 @@ public /*strictfp*/ class DoubleGrid2D extends AbstractGrid2D
                     set(x, y, get(x, y) + withThisMuch);
                     }
             }
-        else {
-            final int width = this.width;
-            final int height = this.height;
+        else
+            {
             if (withThisMuch == 0.0) return this;
-            double[] fieldx = null;
-            for (int x = 0; x < width; x++) {
-                fieldx = field[x];
-                for (int y = 0; y < height; y++)
-                    fieldx[y] += withThisMuch;
-                }
+            final double[][] field = this.field;
+            final int height = this.height;
+            new ColumnStripes()
+                {
+                void columns(int stripe, int fromX, int toX)
+                    {
+                    for(int x = fromX; x < toX; x++)
+                        {
+                        final double[] fieldx = field[x];
+                        for(int y = 0; y < height; y++)
+                            fieldx[y] += withThisMuch;
+                        }
+                    }
+                }.run(parallel, width, height);
             }
         return this;
         }
@@ -395,18 +477,24 @@ public /*strictfp*/ class DoubleGrid2D extends AbstractGrid2D
                     set(x, y, get(x, y) + withThis.get(x, y));
                     }
             }
-        else {
+        else
+            {
+            final double[][] field = this.field;
             final int[][] otherField = withThis.field;
-            double[] fieldx = null;
-            int[] ofieldx = null;
-            final int width = this.width;
             final int height = this.height;
-            for (int x = 0; x < width; x++) {
-                fieldx = field[x];
-                ofieldx = otherField[x];
-                for (int y = 0; y < height; y++)
-                    fieldx[y] += ofieldx[y];
-                }
+            new ColumnStripes()
+                {
+                void columns(int stripe, int fromX, int toX)
+                    {
+                    for(int x = fromX; x < toX; x++)
+                        {
+                        final double[] fieldx = field[x];
+                        final int[] ofieldx = otherField[x];
+                        for(int y = 0; y < height; y++)
+                            fieldx[y] += ofieldx[y];
+                        }
+                    }
+                }.run(parallel, width, height);
             }
         return this;
         }
@@ -428,18 +516,24 @@ public /*strictfp*/ class DoubleGrid2D extends AbstractGrid2D
                     set(x, y, get(x, y) + withThis.get(x, y));
                     }
             }
-        else {
+        else
+            {
+            final double[][] field = this.field;
             final double[][] otherField = withThis.field;
-            double[] fieldx = null;
-            double[] ofieldx = null;
-            final int width = this.width;
             final int height = this.height;
-            for (int x = 0; x < width; x++) {
-                fieldx = field[x];
-                ofieldx = otherField[x];
-                for (int y = 0; y < height; y++)
-                    fieldx[y] += ofieldx[y];
-                }
+            new ColumnStripes()
+                {
+                void columns(int stripe, int fromX, int toX)
+                    {
+                    for(int x = fromX; x < toX; x++)
+                        {
+                        final double[] fieldx = field[x];
+                        final double[] ofieldx = otherField[x];
+                        for(int y = 0; y < height; y++)
+                            fieldx[y] += ofieldx[y];
+                        }
+                    }
+                }.run(parallel, width, height);
             }
         return this;
         }
@@ -461,18 +555,24 @@ public /*strictfp*/ class DoubleGrid2D extends AbstractGrid2D
                     set(x, y, get(x, y) * byThisMuch);
                     }
             }
-        else {
-            double[] fieldx = null;
-            final int width = this.width;
+        else
+            {
+            final double[][] field = this.field;
             final int height = this.height;
-            for (int x = 0; x < width; x++) {
-                fieldx = field[x];
-                for (int y = 0; y < height; y++)
-                    fieldx[y] *= byThisMuch;
-                }
+            new ColumnStripes()
+                {
+                void columns(int stripe, int fromX, int toX)
+                    {
+                    for(int x = fromX; x < toX; x++)
+                        {
+                        final double[] fieldx = field[x];
+                        for(int y = 0; y < height; y++)
+                            fieldx[y] *= byThisMuch;
+                        }
+                    }
+                }.run(parallel, width, height);
             }
         return this;
-
         }
     
     /** Sets the value at each location in the grid to that value multiplied by to the value at the equivalent location in the provided grid.
@@ -493,18 +593,24 @@ public /*strictfp*/ class DoubleGrid2D extends AbstractGrid2D
                     set(x, y, get(x, y) * withThis.get(x, y));
                     }
             }
-        else {
+        else
+            {
+            final double[][] field = this.field;
             final int[][] otherField = withThis.field;
-            double[] fieldx = null;
-            int[] ofieldx = null;
-            final int width = this.width;
             final int height = this.height;
-            for (int x = 0; x < width; x++) {
-                fieldx = field[x];
-                ofieldx = otherField[x];
-                for (int y = 0; y < height; y++)
-                    fieldx[y] *= ofieldx[y];
-                }
+            new ColumnStripes()
+                {
+                void columns(int stripe, int fromX, int toX)
+                    {
+                    for(int x = fromX; x < toX; x++)
+                        {
+                        final double[] fieldx = field[x];
+                        final int[] ofieldx = otherField[x];
+                        for(int y = 0; y < height; y++)
+                            fieldx[y] *= ofieldx[y];
+                        }
+                    }
+                }.run(parallel, width, height);
             }
         return this;
         }
@@ -526,18 +632,24 @@ public /*strictfp*/ class DoubleGrid2D extends AbstractGrid2D
                     set(x, y, get(x, y) * withThis.get(x, y));
                     }
             }
-        else {
+        else
+            {
+            final double[][] field = this.field;
             final double[][] otherField = withThis.field;
-            double[] fieldx = null;
-            double[] ofieldx = null;
-            final int width = this.width;
             final int height = this.height;
-            for (int x = 0; x < width; x++) {
-                fieldx = field[x];
-                ofieldx = otherField[x];
-                for (int y = 0; y < height; y++)
-                    fieldx[y] *= ofieldx[y];
-                }
+            new ColumnStripes()
+                {
+                void columns(int stripe, int fromX, int toX)
+                    {
+                    for(int x = fromX; x < toX; x++)
+                        {
+                        final double[] fieldx = field[x];
+                        final double[] ofieldx = otherField[x];
+                        for(int y = 0; y < height; y++)
+                            fieldx[y] *= ofieldx[y];
+                        }
+                    }
+                }.run(parallel, width, height);
             }
         return this;
         }
@@ -557,15 +669,22 @@ public /*strictfp*/ class DoubleGrid2D extends AbstractGrid2D
                 for(int y = 0; y < h; y++)
                     set(x, y, Math.floor(get(x, y)));
             }
-        else {
-            double[] fieldx = null;
-            final int width = this.width;
+        else
+            {
+            final double[][] field = this.field;
             final int height = this.height;
-            for (int x = 0; x < width; x++) {
-                fieldx = field[x];
-                for (int y = 0; y < height; y++)
-                    fieldx[y] = /*Strict*/Math.floor(fieldx[y]);
-                }
+            new ColumnStripes()
+                {
+                void columns(int stripe, int fromX, int toX)
+                    {
+                    for(int x = fromX; x < toX; x++)
+                        {
+                        final double[] fieldx = field[x];
+                        for(int y = 0; y < height; y++)
+                            fieldx[y] = /*Strict*/Math.floor(fieldx[y]);
+                        }
+                    }
+                }.run(parallel, width, height);
             }
         return this;
         }
@@ -585,15 +704,22 @@ public /*strictfp*/ class DoubleGrid2D extends AbstractGrid2D
 
                     set(x, y, Math.ceil(get(x, y)));
             }
-        else {
-            double[] fieldx = null;
-            final int width = this.width;
+        else
+            {
+            final double[][] field = this.field;
             final int height = this.height;
-            for (int x = 0; x < width; x++) {
-                fieldx = field[x];
-                for (int y = 0; y < height; y++)
-                    fieldx[y] = /*Strict*/Math.ceil(fieldx[y]);
-                }
+            new ColumnStripes()
+                {
+                void columns(int stripe, int fromX, int toX)
+                    {
+                    for(int x = fromX; x < toX; x++)
+                        {
+                        final double[] fieldx = field[x];
+                        for(int y = 0; y < height; y++)
+                            fieldx[y] = /*Strict*/Math.ceil(fieldx[y]);
+                        }
+                    }
+                }.run(parallel, width, height);
             }
         return this;
         }
@@ -611,20 +737,22 @@ public /*strictfp*/ class DoubleGrid2D extends AbstractGrid2D
                 for(int y = 0; y < h; y++)
                     set(x, y, ((int) get(x, y)));
             }
-        else {
-            double[] fieldx = null;
-            final int width = this.width;
+        else
+            {
+            final double[][] field = this.field;
             final int height = this.height;
-            for (int x = 0; x < width; x++) {
-                fieldx = field[x];
-                for (int y = 0; y < height; y++)
-                    fieldx[y] = (int) fieldx[y];
-                //if (fieldx[y] > 0.0)
-                //    fieldx[y] = /*Strict*/Math.floor(fieldx[y]);
-                //else
-                //    fieldx[y] = /*Strict*/Math.ceil(fieldx[y]);
-
-                }
+            new ColumnStripes()
+                {
+                void columns(int stripe, int fromX, int toX)
+                    {
+                    for(int x = fromX; x < toX; x++)
+                        {
+                        final double[] fieldx = field[x];
+                        for(int y = 0; y < height; y++)
+                            fieldx[y] = (int) fieldx[y];
+                        }
+                    }
+                }.run(parallel, width, height);
             }
         return this;
         }
@@ -645,15 +773,22 @@ public /*strictfp*/ class DoubleGrid2D extends AbstractGrid2D
                 for(int y = 0; y < h; y++)
                     set(x, y, Math.rint(get(x, y)));
             }
-        else {
-            double[] fieldx = null;
-            final int width = this.width;
+        else
+            {
+            final double[][] field = this.field;
             final int height = this.height;
-            for (int x = 0; x < width; x++) {
-                fieldx = field[x];
-                for (int y = 0; y < height; y++)
-                    fieldx[y] = /*Strict*/Math.rint(fieldx[y]);
-                }
+            new ColumnStripes()
+                {
+                void columns(int stripe, int fromX, int toX)
+                    {
+                    for(int x = fromX; x < toX; x++)
+                        {
+                        final double[] fieldx = field[x];
+                        for(int y = 0; y < height; y++)
+                            fieldx[y] = /*Strict*/Math.rint(fieldx[y]);
+                        }
+                    }
+                }.run(parallel, width, height);
             }
         return this;
         }
@@ -679,18 +814,295 @@ public /*strictfp*/ class DoubleGrid2D extends AbstractGrid2D
                         set(x, y, to);
                     }
             }
-        else {
-            final int width = this.width;
+        else
+            {
+            final double[][] field = this.field;
             final int height = this.height;
-            double[] fieldx = null;
-            for (int x = 0; x < width; x++) {
-                fieldx = field[x];
-                for (int y = 0; y < height; y++) {
-                    if (fieldx[y] == from)
-                        fieldx[y] = to;
+            new ColumnStripes()
+                {
+                void columns(int stripe, int fromX, int toX)
+                    {
+                    for(int x = fromX; x < toX; x++)
+                        {
+                        final double[] fieldx = field[x];
+                        for(int y = 0; y < height; y++)
+                            if (fieldx[y] == from) fieldx[y] = to;
+                        }
+                    }
+                }.run(parallel, width, height);
+            }
+        }
+
+    /** Sets each value in the grid to the function applied to that value.  If the grid is parallel,
+        the function may be called from several threads at once.  Returns the modified grid. 
+    */
+    public final DoubleGrid2D apply(final DoubleUnaryOperator function)
+        {
+        if (isDistributed())
+            {
+            int w = getWidth();
+            int h = getHeight();
+
+            for(int x = 0; x < w; x++)
+                for(int y = 0; y < h; y++)
+                    set(x, y, function.applyAsDouble(get(x, y)));
+            }
+        else
+            {
+            final double[][] field = this.field;
+            final int height = this.height;
+            new ColumnStripes()
+                {
+                void columns(int stripe, int fromX, int toX)
+                    {
+                    for(int x = fromX; x < toX; x++)
+                        {
+                        final double[] fieldx = field[x];
+                        for(int y = 0; y < height; y++)
+                            fieldx[y] = function.applyAsDouble(fieldx[y]);
+                        }
+                    }
+                }.run(parallel, width, height);
+            }
+        return this;
+        }
+
+    /** Sets the value at each location in the grid to the function applied to that value and the value at the
+        equivalent location in the provided grid, in that order.  If the grid is parallel, the function may be called
+        from several threads at once.  Returns the modified grid. 
+    */
+    public final DoubleGrid2D zip(final DoubleGrid2D withThis, final DoubleBinaryOperator function)
+        {
+        checkBounds(withThis);
+        if (isDistributed())
+            {
+            int w = getWidth();
+            int h = getHeight();
+
+            for(int x = 0; x < w; x++)
+                for(int y = 0; y < h; y++)
+                    set(x, y, function.applyAsDouble(get(x, y), withThis.get(x, y)));
+            }
+        else
+            {
+            final double[][] field = this.field;
+            final double[][] otherField = withThis.field;
+            final int height = this.height;
+            new ColumnStripes()
+                {
+                void columns(int stripe, int fromX, int toX)
+                    {
+                    for(int x = fromX; x < toX; x++)
+                        {
+                        final double[] fieldx = field[x];
+                        final double[] ofieldx = otherField[x];
+                        for(int y = 0; y < height; y++)
+                            fieldx[y] = function.applyAsDouble(fieldx[y], ofieldx[y]);
+                        }
+                    }
+                }.run(parallel, width, height);
+            }
+        return this;
+        }
+
+    /** Combines all the values in the grid with the function, starting with the identity value, and returns the result.
+        For example, reduce(0, Double::sum) sums the grid.  If the grid is parallel, each stripe of columns is reduced
+        separately starting with the identity, and the results are then combined in order, so the function should be associative
+        and the identity should be its identity.  The function may be called from several threads at once. 
+    */
+    public final double reduce(final double identity, final DoubleBinaryOperator function)
+        {
+        double result = identity;
+        if (isDistributed())
+            {
+            int w = getWidth();
+            int h = getHeight();
+
+            for(int x = 0; x < w; x++)
+                for(int y = 0; y < h; y++)
+                    result = function.applyAsDouble(result, get(x, y));
+            }
+        else
+            {
+            final double[][] field = this.field;
+            final int height = this.height;
+            final double[] results = new double[ColumnStripes.count(parallel, width, height)];
+            new ColumnStripes()
+                {
+                void columns(int stripe, int fromX, int toX)
+                    {
+                    double r = identity;
+                    for(int x = fromX; x < toX; x++)
+                        {
+                        final double[] fieldx = field[x];
+                        for(int y = 0; y < height; y++)
+                            r = function.applyAsDouble(r, fieldx[y]);
+                        }
+                    results[stripe] = r;
                     }
+                }.run(results.length, width);
+            if (results.length == 1) result = results[0];
+            else for(int i = 0; i < results.length; i++)
+                result = function.applyAsDouble(result, results[i]);
+            }
+        return result;
+        }
+
+    // the second buffer for convolve(...), swapped with the field after each convolution
+    transient double[][] convolutionBuffer;
+
+    /** Replaces each value in the grid with the weighted sum of the values around it, multiplied by <i>scale</i>.  The kernel
+        is a rectangular array, indexed [x][y], with odd dimensions and centered on the cell in question: kernel[i][j] is the weight
+        of the cell offset by (i - kernel.length/2, j - kernel[0].length/2).  Cells which lie beyond the edges of the grid are handled
+        according to the mode.  In Grid2D.TOROIDAL mode, they wrap around.  In Grid2D.UNBOUNDED mode, they are treated as zero, so
+        (for example) heat leaks out of the grid.  In Grid2D.BOUNDED mode, they are ignored and the weights of the remaining cells
+        are scaled up to make up for them, so an average stays an average at the edges.  If the kernel's weights add up to zero,
+        as in edge-detection or Laplacian kernels, there is no total to preserve, so the edges are left unscaled, as in UNBOUNDED mode.
+    
+        <p>The new values are computed into a second array, which is then swapped with the field: so if you're holding onto
+        the field array, you'll need to fetch it again.  Cells at least half a kernel away from the edges are computed
+        without any bounds checks or wraparound.  If the grid is parallel, columns are processed in parallel.  Returns the modified grid.
+    */
+    public final DoubleGrid2D convolve(final double[][] kernel, final double scale, final int mode)
+        {
+        final int kw = kernel.length;
+        final int kh = (kw == 0 ? 0 : kernel[0].length);
+        if ((kw & 1) == 0 || (kh & 1) == 0)
+            throw new IllegalArgumentException("Kernel must have odd dimensions, not " + kw + " x " + kh);
+        for(int i = 0; i < kw; i++)
+            if (kernel[i].length != kh)
+                throw new IllegalArgumentException("Kernel must be rectangular");
+        if (mode != TOROIDAL && mode != BOUNDED && mode != UNBOUNDED)
+            throw new IllegalArgumentException("Mode must be either Grid2D.BOUNDED, Grid2D.UNBOUNDED, or Grid2D.TOROIDAL");
+
+        // fold the scale into the kernel
+        final double[][] k = new double[kw][kh];
+        double total = 0;
+        for(int i = 0; i < kw; i++)
+            for(int j = 0; j < kh; j++)
+                {
+                k[i][j] = kernel[i][j] * scale;
+                total += k[i][j];
                 }
+        final double kernelTotal = total;
+        final int rx = kw / 2;
+        final int ry = kh / 2;
+        final int width = this.width;
+        final int height = this.height;
+
+        if (isDistributed())
+            {
+            double[][] vals = new double[width][height];
+            for(int x = 0; x < width; x++)
+                for(int y = 0; y < height; y++)
+                    {
+                    double sum = 0;
+                    double weights = 0;
+                    for(int i = 0; i < kw; i++)
+                        for(int j = 0; j < kh; j++)
+                            {
+                            int xx = x + i - rx;
+                            int yy = y + j - ry;
+                            if (mode == TOROIDAL) { xx = tx(xx); yy = ty(yy); }
+                            else if (xx < 0 || xx >= width || yy < 0 || yy >= height) continue;
+                            sum += k[i][j] * get(xx, yy);
+                            weights += k[i][j];
+                            }
+                    vals[x][y] = (mode == BOUNDED && kernelTotal != 0 && weights != kernelTotal ? (weights == 0 ? 0 : sum * kernelTotal / weights) : sum);
+                    }
+            for(int x = 0; x < width; x++)
+                for(int y = 0; y < height; y++)
+                    set(x, y, vals[x][y]);
+            return this;
             }
+
+        if (convolutionBuffer == null || convolutionBuffer.length != width || (width > 0 && convolutionBuffer[0].length != height))
+            convolutionBuffer = new double[width][height];
+        final double[][] field = this.field;
+        final double[][] buffer = convolutionBuffer;
+
+        new ColumnStripes()
+            {
+            void columns(int stripe, int fromX, int toX)
+                {
+                for(int x = fromX; x < toX; x++)
+                    {
+                    final double[] put = buffer[x];
+                    int interiorStart = height;   // the interior of the column, if any, is [interiorStart, interiorEnd)
+                    int interiorEnd = height;
+                    if (x >= rx && x < width - rx && height > 2 * ry)
+                        {
+                        interiorStart = ry;
+                        interiorEnd = height - ry;
+                        for(int y = interiorStart; y < interiorEnd; y++)
+                            put[y] = 0;
+                        // accumulate one kernel weight at a time down the column
+                        for(int i = 0; i < kw; i++)
+                            {
+                            final double[] col = field[x + i - rx];
+                            final double[] ki = k[i];
+                            for(int j = 0; j < kh; j++)
+                                {
+                                final double w = ki[j];
+                                if (w == 0) continue;
+                                final int offset = j - ry;
+                                for(int y = interiorStart; y < interiorEnd; y++)
+                                    put[y] += w * col[y + offset];
+                                }
+                            }
+                        }
+                        
+                    // the cells near the edges
+                    for(int y = 0; y < height; y++)
+                        {
+                        if (y == interiorStart) { y = interiorEnd - 1; continue; }
+                        double sum = 0;
+                        double weights = 0;
+                        for(int i = 0; i < kw; i++)
+                            {
+                            int xx = x + i - rx;
+                            if (xx < 0 || xx >= width)
+                                {
+                                if (mode != TOROIDAL) continue;
+                                xx = tx(xx);
+                                }
+                            final double[] col = field[xx];
+                            final double[] ki = k[i];
+                            for(int j = 0; j < kh; j++)
+                                {
+                                int yy = y + j - ry;
+                                if (yy < 0 || yy >= height)
+                                    {
+                                    if (mode != TOROIDAL) continue;
+                                    yy = ty(yy);
+                                    }
+                                sum += ki[j] * col[yy];
+                                weights += ki[j];
+                                }
+                            }
+                        put[y] = (mode == BOUNDED && kernelTotal != 0 && weights != kernelTotal ? (weights == 0 ? 0 : sum * kernelTotal / weights) : sum);
+                        }
+                    }
+                }
+            }.run(parallel, width, height);
+
+        convolutionBuffer = this.field;
+        this.field = buffer;
+        return this;
+        }
+
+    /** Evaporates and diffuses the grid in the manner of HeatBugs: each value <i>v</i> is replaced with
+        <i>evaporationRate * (v + diffusionRate * (average - v))</i>, where <i>average</i> is the mean of the 3x3 block of cells
+        centered on <i>v</i>.  Cells beyond the edges are handled according to the mode, as in convolve(...).  Returns the modified grid. 
+    */
+    public final DoubleGrid2D diffuse(final double evaporationRate, final double diffusionRate, final int mode)
+        {
+        double[][] kernel = new double[3][3];
+        for(int i = 0; i < 3; i++)
+            for(int j = 0; j < 3; j++)
+                kernel[i][j] = diffusionRate / 9.0;
+        kernel[1][1] += 1.0 - diffusionRate;
+        return convolve(kernel, evaporationRate, mode);
         }
 
 
@@ -899,6 +899,181 @@ public /*strictfp*/ class DoubleGrid3D extends AbstractGrid3D
             }
 
         }
+
+    // the second buffer for convolve(...), swapped with the field after each convolution
+    transient double[][][] convolutionBuffer;
+
+    /** Replaces each value in the grid with the weighted sum of the values around it, multiplied by <i>scale</i>.  The kernel
+        is a rectangular array, indexed [x][y][z], with odd dimensions and centered on the cell in question.  Cells which lie beyond
+        the edges of the grid are handled according to the mode.  In Grid3D.TOROIDAL mode, they wrap around.  In Grid3D.UNBOUNDED
+        mode, they are treated as zero.  In Grid3D.BOUNDED mode, they are ignored and the weights of the remaining cells are scaled
+        up to make up for them, unless the kernel's weights add up to zero.  See DoubleGrid2D.convolve(...) for more information.
+
+        <p>The new values are computed into a second array, which is then swapped with the field: so if you're holding onto
+        the field array, you'll need to fetch it again.  If the grid is parallel, slabs of the x dimension are processed in parallel.
+        Returns the modified grid.
+    */
+    public final DoubleGrid3D convolve(final double[][][] kernel, final double scale, final int mode)
+        {
+        final int kw = kernel.length;
+        final int kh = (kw == 0 ? 0 : kernel[0].length);
+        final int kl = (kh == 0 ? 0 : kernel[0][0].length);
+        if ((kw & 1) == 0 || (kh & 1) == 0 || (kl & 1) == 0)
+            throw new IllegalArgumentException("Kernel must have odd dimensions, not " + kw + " x " + kh + " x " + kl);
+        for(int i = 0; i < kw; i++)
+            {
+            if (kernel[i].length != kh)
+                throw new IllegalArgumentException("Kernel must be rectangular");
+            for(int j = 0; j < kh; j++)
+                if (kernel[i][j].length != kl)
+                    throw new IllegalArgumentException("Kernel must be rectangular");
+            }
+        if (mode != TOROIDAL && mode != BOUNDED && mode != UNBOUNDED)
+            throw new IllegalArgumentException("Mode must be either Grid3D.BOUNDED, Grid3D.UNBOUNDED, or Grid3D.TOROIDAL");
+
+        // fold the scale into the kernel
+        final double[][][] k = new double[kw][kh][kl];
+        double total = 0;
+        for(int i = 0; i < kw; i++)
+            for(int j = 0; j < kh; j++)
+                for(int l = 0; l < kl; l++)
+                    {
+                    k[i][j][l] = kernel[i][j][l] * scale;
+                    total += k[i][j][l];
+                    }
+        final double kernelTotal = total;
+        final int rx = kw / 2;
+        final int ry = kh / 2;
+        final int rz = kl / 2;
+        final int width = this.width;
+        final int height = this.height;
+        final int length = this.length;
+
+        if (isDistributed())
+            {
+            double[][][] vals = new double[width][height][length];
+            for(int x = 0; x < width; x++)
+                for(int y = 0; y < height; y++)
+                    for(int z = 0; z < length; z++)
+                        vals[x][y][z] = convolveCell(k, kernelTotal, mode, x, y, z, null);
+            for(int x = 0; x < width; x++)
+                for(int y = 0; y < height; y++)
+                    for(int z = 0; z < length; z++)
+                        set(x, y, z, vals[x][y][z]);
+            return this;
+            }
+
+        if (convolutionBuffer == null || convolutionBuffer.length != width || 
+            (width > 0 && (convolutionBuffer[0].length != height || (height > 0 && convolutionBuffer[0][0].length != length))))
+            convolutionBuffer = new double[width][height][length];
+        final double[][][] field = this.field;
+        final double[][][] buffer = convolutionBuffer;
+
+        new ColumnStripes()
+            {
+            void columns(int stripe, int fromX, int toX)
+                {
+                for(int x = fromX; x < toX; x++)
+                    for(int y = 0; y < height; y++)
+                        {
+                        final double[] put = buffer[x][y];
+                        int interiorStart = length;   // the interior of the row, if any, is [interiorStart, interiorEnd)
+                        int interiorEnd = length;
+                        if (x >= rx && x < width - rx && y >= ry && y < height - ry && length > 2 * rz)
+                            {
+                            interiorStart = rz;
+                            interiorEnd = length - rz;
+                            for(int z = interiorStart; z < interiorEnd; z++)
+                                put[z] = 0;
+                            // accumulate one kernel weight at a time along the row
+                            for(int i = 0; i < kw; i++)
+                                for(int j = 0; j < kh; j++)
+                                    {
+                                    final double[] row = field[x + i - rx][y + j - ry];
+                                    final double[] kij = k[i][j];
+                                    for(int l = 0; l < kl; l++)
+                                        {
+                                        final double w = kij[l];
+                                        if (w == 0) continue;
+                                        final int offset = l - rz;
+                                        for(int z = interiorStart; z < interiorEnd; z++)
+                                            put[z] += w * row[z + offset];
+                                        }
+                                    }
+                            }
+
+                        // the cells near the edges
+                        for(int z = 0; z < length; z++)
+                            {
+                            if (z == interiorStart) { z = interiorEnd - 1; continue; }
+                            put[z] = convolveCell(k, kernelTotal, mode, x, y, z, field);
+                            }
+                        }
+                }
+            }.run(ColumnStripes.count(parallel, width, height * length), width);
+
+        convolutionBuffer = this.field;
+        this.field = buffer;
+        return this;
+        }
+
+    // computes the convolution at a single cell, handling the edges.  If field is null, we use get(...) instead.
+    double convolveCell(double[][][] k, double kernelTotal, int mode, int x, int y, int z, double[][][] field)
+        {
+        final int kw = k.length;
+        final int kh = k[0].length;
+        final int kl = k[0][0].length;
+        final int width = this.width;
+        final int height = this.height;
+        final int length = this.length;
+        double sum = 0;
+        double weights = 0;
+        for(int i = 0; i < kw; i++)
+            {
+            int xx = x + i - kw / 2;
+            if (xx < 0 || xx >= width)
+                {
+                if (mode != TOROIDAL) continue;
+                xx = tx(xx);
+                }
+            for(int j = 0; j < kh; j++)
+                {
+                int yy = y + j - kh / 2;
+                if (yy < 0 || yy >= height)
+                    {
+                    if (mode != TOROIDAL) continue;
+                    yy = ty(yy);
+                    }
+                for(int l = 0; l < kl; l++)
+                    {
+                    int zz = z + l - kl / 2;
+                    if (zz < 0 || zz >= length)
+                        {
+                        if (mode != TOROIDAL) continue;
+                        zz = tz(zz);
+                        }
+                    sum += k[i][j][l] * (field == null ? get(xx, yy, zz) : field[xx][yy][zz]);
+                    weights += k[i][j][l];
+                    }
+                }
+            }
+        return (mode == BOUNDED && kernelTotal != 0 && weights != kernelTotal ? (weights == 0 ? 0 : sum * kernelTotal / weights) : sum);
+        }
+
+    /** Evaporates and diffuses the grid in the manner of HeatBugs: each value <i>v</i> is replaced with
+        <i>evaporationRate * (v + diffusionRate * (average - v))</i>, where <i>average</i> is the mean of the 3x3x3 block of cells
+        centered on <i>v</i>.  Cells beyond the edges are handled according to the mode, as in convolve(...).  Returns the modified grid. 
+    */
+    public final DoubleGrid3D diffuse(final double evaporationRate, final double diffusionRate, final int mode)
+        {
+        double[][][] kernel = new double[3][3][3];
+        for(int i = 0; i < 3; i++)
+            for(int j = 0; j < 3; j++)
+                for(int l = 0; l < 3; l++)
+                    kernel[i][j][l] = diffusionRate / 27.0;
+        kernel[1][1][1] += 1.0 - diffusionRate;
+        return convolve(kernel, evaporationRate, mode);
+        }
     
     
     /**
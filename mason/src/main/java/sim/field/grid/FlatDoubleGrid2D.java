@@ -0,0 +1,598 @@
+/*
+  Copyright 2006 by Sean Luke and George Mason University
+  Licensed under the Academic Free License version 3.0
+  See the file "LICENSE" for more information
+*/
+
+package sim.field.grid;
+import sim.util.*;
+import java.util.function.*;
+
+/**
+    A wrapper for a 2D grid of doubles stored in a single one-dimensional array.
+
+    <p>FlatDoubleGrid2D is a drop-in alternative to DoubleGrid2D.  Rather than a double[x][y] array, whose
+    columns are separate objects scattered about the heap, it stores its values in a single double[] array,
+    column by column: the value at (x,y) lives at field[x * height + y], which you can compute with index(x, y).
+    This is the same order in which DoubleGrid2D.toArray() flattens its grid.  Accessing a cell costs one
+    array lookup rather than two, neighboring columns are adjacent in memory, and the whole grid can be handed
+    as-is to anything which wants a flat array: for example, java.nio.DoubleBuffer.wrap(grid.getField()).
+
+    <p>You are encouraged to access the array directly.  The object implements all of the Grid2D interface,
+    and its neighborhood methods return the same results, in the same order, as those of DoubleGrid2D.
+    Like DoubleGrid2D, bulk operations may be run in parallel by calling setParallel(true).
+*/
+
+public /*strictfp*/ class FlatDoubleGrid2D extends AbstractGrid2D
+    {
+    private static final long serialVersionUID = 1;
+
+    public double[] field;
+
+    /** Returns the backing array, in which the value at (x,y) is stored at index(x, y). */
+    public double[] getField() { return field; }
+
+    public FlatDoubleGrid2D (int width, int height)
+        {
+        this.width = width;
+        this.height = height;
+        field = new double[width * height];
+        }
+
+    public FlatDoubleGrid2D (int width, int height, double initialValue)
+        {
+        this(width,height);
+        setTo(initialValue);
+        }
+
+    public FlatDoubleGrid2D (FlatDoubleGrid2D values)
+        {
+        setTo(values);
+        }
+
+    public FlatDoubleGrid2D (DoubleGrid2D values)
+        {
+        setTo(values);
+        }
+
+    public void reshape(int width, int height)
+        {
+        super.reshape(width, height);
+        field = new double[width * height];
+        }
+
+    /** Returns the position of location (x,y) in the backing array. */
+    public final int index(final int x, final int y)
+        {
+        return x * height + y;
+        }
+
+    /** Sets location (x,y) to val */
+    public final void set(final int x, final int y, final double val)
+        {
+        field[x * height + y] = val;
+        }
+
+    /** Returns the element at location (x,y) */
+    public final double get(final int x, final int y)
+        {
+        return field[x * height + y];
+        }
+
+    /** Sets all the locations in the grid the provided element */
+    public final FlatDoubleGrid2D setTo(final double thisMuch)
+        {
+        final double[] field = this.field;
+        final int height = this.height;
+        new ColumnStripes()
+            {
+            void columns(int stripe, int fromX, int toX)
+                {
+                java.util.Arrays.fill(field, fromX * height, toX * height, thisMuch);
+                }
+            }.run(parallel, width, height);
+        return this;
+        }
+
+    /** Changes the dimensions of the grid to be the same as the one provided, then
+        sets all the locations in the grid to the elements at the equivalent locations in the
+        provided grid. */
+    public final FlatDoubleGrid2D setTo(final FlatDoubleGrid2D values)
+        {
+        if (width != values.width || height != values.height || field == null)
+            {
+            width = values.width;
+            height = values.height;
+            field = (double[]) values.field.clone();
+            }
+        else System.arraycopy(values.field, 0, field, 0, field.length);
+        return this;
+        }
+
+    /** Changes the dimensions of the grid to be the same as the one provided, then
+        sets all the locations in the grid to the elements at the equivalent locations in the
+        provided grid. */
+    public final FlatDoubleGrid2D setTo(final DoubleGrid2D values)
+        {
+        if (width != values.width || height != values.height || field == null)
+            reshape(values.width, values.height);
+        final double[] field = this.field;
+        final double[][] ofield = values.field;
+        final int height = this.height;
+        for(int x = 0; x < width; x++)
+            System.arraycopy(ofield[x], 0, field, x * height, height);
+        return this;
+        }
+
+    /** Returns a new DoubleGrid2D holding the same values as this grid. */
+    public final DoubleGrid2D toDoubleGrid2D()
+        {
+        DoubleGrid2D grid = new DoubleGrid2D(width, height);
+        final double[] field = this.field;
+        final double[][] ofield = grid.field;
+        final int height = this.height;
+        for(int x = 0; x < width; x++)
+            System.arraycopy(field, x * height, ofield[x], 0, height);
+        return grid;
+        }
+
+    /** Returns a copy of the backing array, which is in the same order as DoubleGrid2D.toArray(). */
+    public final double[] toArray()
+        {
+        return (double[]) field.clone();
+        }
+
+    /** Returns the maximum value stored in the grid */
+    public final double max()
+        {
+        final double[] field = this.field;
+        final int height = this.height;
+        final double[] maxes = new double[ColumnStripes.count(parallel, width, height)];
+        new ColumnStripes()
+            {
+            void columns(int stripe, int fromX, int toX)
+                {
+                double max = Double.NEGATIVE_INFINITY;
+                final int end = toX * height;
+                for(int i = fromX * height; i < end; i++)
+                    if (max < field[i])
+                        max = field[i];
+                maxes[stripe] = max;
+                }
+            }.run(maxes.length, width);
+        double max = Double.NEGATIVE_INFINITY;
+        for(int i = 0; i < maxes.length; i++)
+            if (max < maxes[i])
+                max = maxes[i];
+        return max;
+        }
+
+    /** Returns the minimum value stored in the grid */
+    public final double min()
+        {
+        final double[] field = this.field;
+        final int height = this.height;
+        final double[] mins = new double[ColumnStripes.count(parallel, width, height)];
+        new ColumnStripes()
+            {
+            void columns(int stripe, int fromX, int toX)
+                {
+                double min = Double.POSITIVE_INFINITY;
+                final int end = toX * height;
+                for(int i = fromX * height; i < end; i++)
+                    if (min > field[i])
+                        min = field[i];
+                mins[stripe] = min;
+                }
+            }.run(mins.length, width);
+        double min = Double.POSITIVE_INFINITY;
+        for(int i = 0; i < mins.length; i++)
+            if (min > mins[i])
+                min = mins[i];
+        return min;
+        }
+
+    /** Returns the mean value stored in the grid */
+    public final double mean()
+        {
+        final double[] field = this.field;
+        final int height = this.height;
+        final double[] sums = new double[ColumnStripes.count(parallel, width, height)];
+        new ColumnStripes()
+            {
+            void columns(int stripe, int fromX, int toX)
+                {
+                double sum = 0;
+                final int end = toX * height;
+                for(int i = fromX * height; i < end; i++)
+                    sum += field[i];
+                sums[stripe] = sum;
+                }
+            }.run(sums.length, width);
+        double mean = 0;
+        for(int i = 0; i < sums.length; i++)
+            mean += sums[i];
+        return (field.length == 0 ? 0 : mean / field.length);
+        }
+
+    /** Thresholds the grid so that values greater to <i>toNoMoreThanThisMuch</i> are changed to <i>toNoMoreThanThisMuch</i>.
+        Returns the modified grid.
+    */
+    public final FlatDoubleGrid2D upperBound(final double toNoMoreThanThisMuch)
+        {
+        final double[] field = this.field;
+        final int height = this.height;
+        new ColumnStripes()
+            {
+            void columns(int stripe, int fromX, int toX)
+                {
+                final int end = toX * height;
+                for(int i = fromX * height; i < end; i++)
+                    if (field[i] > toNoMoreThanThisMuch)
+                        field[i] = toNoMoreThanThisMuch;
+                }
+            }.run(parallel, width, height);
+        return this;
+        }
+
+    /** Thresholds the grid so that values smaller than <i>toNoLowerThanThisMuch</i> are changed to <i>toNoLowerThanThisMuch</i>
+        Returns the modified grid.
+    */
+    public final FlatDoubleGrid2D lowerBound(final double toNoLowerThanThisMuch)
+        {
+        final double[] field = this.field;
+        final int height = this.height;
+        new ColumnStripes()
+            {
+            void columns(int stripe, int fromX, int toX)
+                {
+                final int end = toX * height;
+                for(int i = fromX * height; i < end; i++)
+                    if (field[i] < toNoLowerThanThisMuch)
+                        field[i] = toNoLowerThanThisMuch;
+                }
+            }.run(parallel, width, height);
+        return this;
+        }
+
+    /** Sets each value in the grid to that value added to <i>withThisMuch</i>
+        Returns the modified grid.
+    */
+    public final FlatDoubleGrid2D add(final double withThisMuch)
+        {
+        if (withThisMuch==0.0) return this;
+        final double[] field = this.field;
+        final int height = this.height;
+        new ColumnStripes()
+            {
+            void columns(int stripe, int fromX, int toX)
+                {
+                final int end = toX * height;
+                for(int i = fromX * height; i < end; i++)
+                    field[i] += withThisMuch;
+                }
+            }.run(parallel, width, height);
+        return this;
+        }
+
+    /** Sets the value at each location in the grid to that value added to the value at the equivalent location in the provided grid.
+        Returns the modified grid.
+    */
+    public final FlatDoubleGrid2D add(final FlatDoubleGrid2D withThis)
+        {
+        checkBounds(withThis);
+        final double[] field = this.field;
+        final double[] ofield = withThis.field;
+        final int height = this.height;
+        new ColumnStripes()
+            {
+            void columns(int stripe, int fromX, int toX)
+                {
+                final int end = toX * height;
+                for(int i = fromX * height; i < end; i++)
+                    field[i] += ofield[i];
+                }
+            }.run(parallel, width, height);
+        return this;
+        }
+
+    /** Sets each value in the grid to that value multiplied <i>byThisMuch</i>
+        Returns the modified grid.
+    */
+    public final FlatDoubleGrid2D multiply(final double byThisMuch)
+        {
+        if (byThisMuch==1.0) return this;
+        final double[] field = this.field;
+        final int height = this.height;
+        new ColumnStripes()
+            {
+            void columns(int stripe, int fromX, int toX)
+                {
+                final int end = toX * height;
+                for(int i = fromX * height; i < end; i++)
+                    field[i] *= byThisMuch;
+                }
+            }.run(parallel, width, height);
+        return this;
+        }
+
+    /** Sets the value at each location in the grid to that value multiplied by to the value at the equivalent location in the provided grid.
+        Returns the modified grid.
+    */
+    public final FlatDoubleGrid2D multiply(final FlatDoubleGrid2D withThis)
+        {
+        checkBounds(withThis);
+        final double[] field = this.field;
+        final double[] ofield = withThis.field;
+        final int height = this.height;
+        new ColumnStripes()
+            {
+            void columns(int stripe, int fromX, int toX)
+                {
+                final int end = toX * height;
+                for(int i = fromX * height; i < end; i++)
+                    field[i] *= ofield[i];
+                }
+            }.run(parallel, width, height);
+        return this;
+        }
+
+    /**
+     * Replace instances of one value to another.
+     * @param fromThis any element that matches this value will be replaced
+     * @param toThis with this value
+     */
+    public final void replaceAll(final double fromThis, final double toThis)
+        {
+        final double[] field = this.field;
+        final int height = this.height;
+        new ColumnStripes()
+            {
+            void columns(int stripe, int fromX, int toX)
+                {
+                final int end = toX * height;
+                for(int i = fromX * height; i < end; i++)
+                    if (field[i] == fromThis)
+                        field[i] = toThis;
+                }
+            }.run(parallel, width, height);
+        }
+
+    /** Sets each value in the grid to the function applied to that value.  If the grid is parallel,
+        the function may be called from several threads at once.  Returns the modified grid.
+    */
+    public final FlatDoubleGrid2D apply(final DoubleUnaryOperator function)
+        {
+        final double[] field = this.field;
+        final int height = this.height;
+        new ColumnStripes()
+            {
+            void columns(int stripe, int fromX, int toX)
+                {
+                final int end = toX * height;
+                for(int i = fromX * height; i < end; i++)
+                    field[i] = function.applyAsDouble(field[i]);
+                }
+            }.run(parallel, width, height);
+        return this;
+        }
+
+    /** Sets the value at each location in the grid to the function applied to that value and the value at the
+        equivalent location in the provided grid, in that order.  If the grid is parallel, the function may be called
+        from several threads at once.  Returns the modified grid.
+    */
+    public final FlatDoubleGrid2D zip(final FlatDoubleGrid2D withThis, final DoubleBinaryOperator function)
+        {
+        checkBounds(withThis);
+        final double[] field = this.field;
+        final double[] ofield = withThis.field;
+        final int height = this.height;
+        new ColumnStripes()
+            {
+            void columns(int stripe, int fromX, int toX)
+                {
+                final int end = toX * height;
+                for(int i = fromX * height; i < end; i++)
+                    field[i] = function.applyAsDouble(field[i], ofield[i]);
+                }
+            }.run(parallel, width, height);
+        return this;
+        }
+
+    /** Combines all the values in the grid with the function, starting with the identity value, and returns the result.
+        This works just like DoubleGrid2D.reduce(...).
+    */
+    public final double reduce(final double identity, final DoubleBinaryOperator function)
+        {
+        final double[] field = this.field;
+        final int height = this.height;
+        final double[] results = new double[ColumnStripes.count(parallel, width, height)];
+        new ColumnStripes()
+            {
+            void columns(int stripe, int fromX, int toX)
+                {
+                double r = identity;
+                final int end = toX * height;
+                for(int i = fromX * height; i < end; i++)
+                    r = function.applyAsDouble(r, field[i]);
+                results[stripe] = r;
+                }
+            }.run(results.length, width);
+        if (results.length == 1) return results[0];
+        double result = identity;
+        for(int i = 0; i < results.length; i++)
+            result = function.applyAsDouble(result, results[i]);
+        return result;
+        }
+
+
+    /**
+     * Gets all neighbors of a location that satisfy max( abs(x-X) , abs(y-Y) ) <= dist, This region forms a
+     * square 2*dist+1 cells across, centered at (X,Y).  If dist==1, this
+     * is equivalent to the so-called "Moore Neighborhood" (the eight neighbors surrounding (X,Y)), plus (X,Y) itself.
+     * Places each x and y value of these locations in the provided IntBags xPos and yPos, clearing the bags first,
+     * and the values at those locations into the result DoubleBag, also clearing it first.  Returns the result DoubleBag.
+     * null may be passed in for the various bags, though it is more efficient to pass in a 'scratch bag' for
+     * each one.  See DoubleGrid2D.getMooreNeighbors(...) for a description of the modes.
+     *
+     * <p>In bounded mode, and in toroidal mode when the neighborhood doesn't wrap all the way around the grid,
+     * the locations and values are gathered in a single pass straight down the backing array.
+     */
+    public DoubleBag getMooreNeighbors( final int x, final int y, final int dist, int mode, boolean includeOrigin, DoubleBag result, IntBag xPos, IntBag yPos )
+        {
+        if( xPos == null )
+            xPos = new IntBag();
+        if( yPos == null )
+            yPos = new IntBag();
+        if (result == null)
+            result = new DoubleBag();
+
+        final int width = this.width;
+        final int height = this.height;
+        if (dist < 0 || x < 0 || x >= width || y < 0 || y >= height ||
+            !(mode == BOUNDED || (mode == TOROIDAL && dist * 2 < width && dist * 2 < height)))
+            {
+            getMooreLocations( x, y, dist, mode, includeOrigin, xPos, yPos );
+            return getObjectsAtLocations(xPos,yPos,result);
+            }
+
+        // compute the neighborhood bounds just as getMooreLocations does
+        final int xmin = (mode == TOROIDAL || x - dist >= 0 ? x - dist : 0);
+        final int xmax = (mode == TOROIDAL || x + dist <= width - 1 ? x + dist : width - 1);
+        final int ymin = (mode == TOROIDAL || y - dist >= 0 ? y - dist : 0);
+        final int ymax = (mode == TOROIDAL || y + dist <= height - 1 ? y + dist : height - 1);
+        final int size = (xmax - xmin + 1) * (ymax - ymin + 1);
+
+        xPos.clear();
+        yPos.clear();
+        result.clear();
+        xPos.resize(size);
+        yPos.resize(size);
+        result.resize(size);
+        final int[] xs = xPos.objs;
+        final int[] ys = yPos.objs;
+        final double[] vals = result.objs;
+        final double[] field = this.field;
+
+        int n = 0;
+        for(int x0 = xmin; x0 <= xmax; x0++)
+            {
+            final int x_0 = (x0 < 0 ? x0 + width : (x0 >= width ? x0 - width : x0));
+            final int column = x_0 * height;
+            for(int y0 = ymin; y0 <= ymax; y0++)
+                {
+                final int y_0 = (y0 < 0 ? y0 + height : (y0 >= height ? y0 - height : y0));
+                xs[n] = x_0;
+                ys[n] = y_0;
+                vals[n] = field[column + y_0];
+                n++;
+                }
+            }
+        xPos.numObjs = n;
+        yPos.numObjs = n;
+        result.numObjs = n;
+
+        if (!includeOrigin)
+            {
+            // the origin is at a known spot; remove it the same way removeOrigin does
+            int origin = (x - xmin) * (ymax - ymin + 1) + (y - ymin);
+            xPos.remove(origin);
+            yPos.remove(origin);
+            result.remove(origin);
+            }
+        return result;
+        }
+
+    /**
+     * Gets all neighbors of a location that satisfy abs(x-X) + abs(y-Y) <= dist.  This region forms a diamond
+     * 2*dist+1 cells from point to opposite point inclusive, centered at (X,Y).  If dist==1 this is
+     * equivalent to the so-called "Von-Neumann Neighborhood" (the four neighbors above, below, left, and right of (X,Y)),
+     * plus (X,Y) itself.  Places the locations in xPos and yPos and their values in the result DoubleBag, just
+     * as getMooreNeighbors(...) does, and returns the result DoubleBag.
+     */
+    public DoubleBag getVonNeumannNeighbors( final int x, final int y, final int dist, int mode, boolean includeOrigin, DoubleBag result, IntBag xPos, IntBag yPos )
+        {
+        if( xPos == null )
+            xPos = new IntBag();
+        if( yPos == null )
+            yPos = new IntBag();
+
+        getVonNeumannLocations( x, y, dist, mode, includeOrigin, xPos, yPos );
+        return getObjectsAtLocations(xPos,yPos,result);
+        }
+
+    /**
+     * Gets all neighbors located within the hexagon centered at (X,Y) and 2*dist+1 cells from point to opposite point
+     * inclusive.  Places the locations in xPos and yPos and their values in the result DoubleBag, just
+     * as getMooreNeighbors(...) does, and returns the result DoubleBag.
+     */
+    public DoubleBag getHexagonalNeighbors( final int x, final int y, final int dist, int mode, boolean includeOrigin, DoubleBag result, IntBag xPos, IntBag yPos )
+        {
+        if( xPos == null )
+            xPos = new IntBag();
+        if( yPos == null )
+            yPos = new IntBag();
+
+        getHexagonalLocations( x, y, dist, mode, includeOrigin, xPos, yPos );
+        return getObjectsAtLocations(xPos,yPos,result);
+        }
+
+    public DoubleBag getRadialNeighbors( final int x, final int y, final double dist, int mode, boolean includeOrigin, DoubleBag result, IntBag xPos, IntBag yPos )
+        {
+        return getRadialNeighbors(x, y, dist, mode, includeOrigin, Grid2D.ANY, true, result, xPos, yPos);
+        }
+
+    public DoubleBag getRadialNeighbors( final int x, final int y, final double dist, int mode, boolean includeOrigin,  int measurementRule, boolean closed,  DoubleBag result, IntBag xPos, IntBag yPos )
+        {
+        if( xPos == null )
+            xPos = new IntBag();
+        if( yPos == null )
+            yPos = new IntBag();
+
+        getRadialLocations( x, y, dist, mode, includeOrigin, measurementRule, closed, xPos, yPos );
+        return getObjectsAtLocations(xPos,yPos,result);
+        }
+
+    /* For each <xPos,yPos> location, puts the value there into the result DoubleBag.  Returns the result DoubleBag.
+       If the provided result DoubleBag is null, one will be created and returned. */
+    DoubleBag getObjectsAtLocations(final IntBag xPos, final IntBag yPos, DoubleBag result)
+        {
+        if (result==null) result = new DoubleBag();
+        else result.clear();
+
+        final int n = xPos.numObjs;
+        final int[] xs = xPos.objs;
+        final int[] ys = yPos.objs;
+        final double[] field = this.field;
+        final int height = this.height;
+        result.resize(n);
+        final double[] vals = result.objs;
+        for( int i = 0 ; i < n ; i++ )
+            vals[i] = field[xs[i] * height + ys[i]];
+        result.numObjs = n;
+        return result;
+        }
+
+    /** Returns the values in the Moore neighborhood of (x,y), as described in getMooreNeighbors(...). */
+    public DoubleBag getMooreNeighbors( int x, int y, int dist, int mode, boolean includeOrigin )
+        {
+        return getMooreNeighbors(x, y, dist, mode, includeOrigin, null, null, null);
+        }
+
+    /** Returns the values in the Von Neumann neighborhood of (x,y), as described in getVonNeumannNeighbors(...). */
+    public DoubleBag getVonNeumannNeighbors( int x, int y, int dist, int mode, boolean includeOrigin )
+        {
+        return getVonNeumannNeighbors(x, y, dist, mode, includeOrigin, null, null, null);
+        }
+
+    /** Returns the values in the hexagonal neighborhood of (x,y), as described in getHexagonalNeighbors(...). */
+    public DoubleBag getHexagonalNeighbors( int x, int y, int dist, int mode, boolean includeOrigin )
+        {
+        return getHexagonalNeighbors(x, y, dist, mode, includeOrigin, null, null, null);
+        }
+
+    public DoubleBag getRadialNeighbors( final int x, final int y, final double dist, int mode, boolean includeOrigin)
+        {
+        return getRadialNeighbors(x, y, dist, mode, includeOrigin, null, null, null);
+        }
+    }
@@ -0,0 +1,598 @@
+/*
+  Copyright 2006 by Sean Luke and George Mason University
+  Licensed under the Academic Free License version 3.0
+  See the file "LICENSE" for more information
+*/
+
+package sim.field.grid;
+import sim.util.*;
+import java.util.function.*;
+
+/**
+    A wrapper for a 2D grid of ints stored in a single one-dimensional array.
+
+    <p>FlatIntGrid2D is a drop-in alternative to IntGrid2D.  Rather than an int[x][y] array, whose
+    columns are separate objects scattered about the heap, it stores its values in a single int[] array,
+    column by column: the value at (x,y) lives at field[x * height + y], which you can compute with index(x, y).
+    This is the same order in which IntGrid2D.toArray() flattens its grid.  Accessing a cell costs one
+    array lookup rather than two, neighboring columns are adjacent in memory, and the whole grid can be handed
+    as-is to anything which wants a flat array: for example, java.nio.IntBuffer.wrap(grid.getField()).
+
+    <p>You are encouraged to access the array directly.  The object implements all of the Grid2D interface,
+    and its neighborhood methods return the same results, in the same order, as those of IntGrid2D.
+    Like IntGrid2D, bulk operations may be run in parallel by calling setParallel(true).
+*/
+
+public /*strictfp*/ class FlatIntGrid2D extends AbstractGrid2D
+    {
+    private static final long serialVersionUID = 1;
+
+    public int[] field;
+
+    /** Returns the backing array, in which the value at (x,y) is stored at index(x, y). */
+    public int[] getField() { return field; }
+
+    public FlatIntGrid2D (int width, int height)
+        {
+        this.width = width;
+        this.height = height;
+        field = new int[width * height];
+        }
+
+    public FlatIntGrid2D (int width, int height, int initialValue)
+        {
+        this(width,height);
+        setTo(initialValue);
+        }
+
+    public FlatIntGrid2D (FlatIntGrid2D values)
+        {
+        setTo(values);
+        }
+
+    public FlatIntGrid2D (IntGrid2D values)
+        {
+        setTo(values);
+        }
+
+    public void reshape(int width, int height)
+        {
+        super.reshape(width, height);
+        field = new int[width * height];
+        }
+
+    /** Returns the position of location (x,y) in the backing array. */
+    public final int index(final int x, final int y)
+        {
+        return x * height + y;
+        }
+
+    /** Sets location (x,y) to val */
+    public final void set(final int x, final int y, final int val)
+        {
+        field[x * height + y] = val;
+        }
+
+    /** Returns the element at location (x,y) */
+    public final int get(final int x, final int y)
+        {
+        return field[x * height + y];
+        }
+
+    /** Sets all the locations in the grid the provided element */
+    public final FlatIntGrid2D setTo(final int thisMuch)
+        {
+        final int[] field = this.field;
+        final int height = this.height;
+        new ColumnStripes()
+            {
+            void columns(int stripe, int fromX, int toX)
+                {
+                java.util.Arrays.fill(field, fromX * height, toX * height, thisMuch);
+                }
+            }.run(parallel, width, height);
+        return this;
+        }
+
+    /** Changes the dimensions of the grid to be the same as the one provided, then
+        sets all the locations in the grid to the elements at the equivalent locations in the
+        provided grid. */
+    public final FlatIntGrid2D setTo(final FlatIntGrid2D values)
+        {
+        if (width != values.width || height != values.height || field == null)
+            {
+            width = values.width;
+            height = values.height;
+            field = (int[]) values.field.clone();
+            }
+        else System.arraycopy(values.field, 0, field, 0, field.length);
+        return this;
+        }
+
+    /** Changes the dimensions of the grid to be the same as the one provided, then
+        sets all the locations in the grid to the elements at the equivalent locations in the
+        provided grid. */
+    public final FlatIntGrid2D setTo(final IntGrid2D values)
+        {
+        if (width != values.width || height != values.height || field == null)
+            reshape(values.width, values.height);
+        final int[] field = this.field;
+        final int[][] ofield = values.field;
+        final int height = this.height;
+        for(int x = 0; x < width; x++)
+            System.arraycopy(ofield[x], 0, field, x * height, height);
+        return this;
+        }
+
+    /** Returns a new IntGrid2D holding the same values as this grid. */
+    public final IntGrid2D toIntGrid2D()
+        {
+        IntGrid2D grid = new IntGrid2D(width, height);
+        final int[] field = this.field;
+        final int[][] ofield = grid.field;
+        final int height = this.height;
+        for(int x = 0; x < width; x++)
+            System.arraycopy(field, x * height, ofield[x], 0, height);
+        return grid;
+        }
+
+    /** Returns a copy of the backing array, which is in the same order as IntGrid2D.toArray(). */
+    public final int[] toArray()
+        {
+        return (int[]) field.clone();
+        }
+
+    /** Returns the maximum value stored in the grid */
+    public final int max()
+        {
+        final int[] field = this.field;
+        final int height = this.height;
+        final int[] maxes = new int[ColumnStripes.count(parallel, width, height)];
+        new ColumnStripes()
+            {
+            void columns(int stripe, int fromX, int toX)
+                {
+                int max = Integer.MIN_VALUE;
+                final int end = toX * height;
+                for(int i = fromX * height; i < end; i++)
+                    if (max < field[i])
+                        max = field[i];
+                maxes[stripe] = max;
+                }
+            }.run(maxes.length, width);
+        int max = Integer.MIN_VALUE;
+        for(int i = 0; i < maxes.length; i++)
+            if (max < maxes[i])
+                max = maxes[i];
+        return max;
+        }
+
+    /** Returns the minimum value stored in the grid */
+    public final int min()
+        {
+        final int[] field = this.field;
+        final int height = this.height;
+        final int[] mins = new int[ColumnStripes.count(parallel, width, height)];
+        new ColumnStripes()
+            {
+            void columns(int stripe, int fromX, int toX)
+                {
+                int min = Integer.MAX_VALUE;
+                final int end = toX * height;
+                for(int i = fromX * height; i < end; i++)
+                    if (min > field[i])
+                        min = field[i];
+                mins[stripe] = min;
+                }
+            }.run(mins.length, width);
+        int min = Integer.MAX_VALUE;
+        for(int i = 0; i < mins.length; i++)
+            if (min > mins[i])
+                min = mins[i];
+        return min;
+        }
+
+    /** Returns the mean value stored in the grid */
+    public final double mean()
+        {
+        final int[] field = this.field;
+        final int height = this.height;
+        final long[] sums = new long[ColumnStripes.count(parallel, width, height)];
+        new ColumnStripes()
+            {
+            void columns(int stripe, int fromX, int toX)
+                {
+                long sum = 0;
+                final int end = toX * height;
+                for(int i = fromX * height; i < end; i++)
+                    sum += field[i];
+                sums[stripe] = sum;
+                }
+            }.run(sums.length, width);
+        long sum = 0;
+        for(int i = 0; i < sums.length; i++)
+            sum += sums[i];
+        return (field.length == 0 ? 0 : sum / (double) field.length);
+        }
+
+    /** Thresholds the grid so that values greater to <i>toNoMoreThanThisMuch</i> are changed to <i>toNoMoreThanThisMuch</i>.
+        Returns the modified grid.
+    */
+    public final FlatIntGrid2D upperBound(final int toNoMoreThanThisMuch)
+        {
+        final int[] field = this.field;
+        final int height = this.height;
+        new ColumnStripes()
+            {
+            void columns(int stripe, int fromX, int toX)
+                {
+                final int end = toX * height;
+                for(int i = fromX * height; i < end; i++)
+                    if (field[i] > toNoMoreThanThisMuch)
+                        field[i] = toNoMoreThanThisMuch;
+                }
+            }.run(parallel, width, height);
+        return this;
+        }
+
+    /** Thresholds the grid so that values smaller than <i>toNoLowerThanThisMuch</i> are changed to <i>toNoLowerThanThisMuch</i>
+        Returns the modified grid.
+    */
+    public final FlatIntGrid2D lowerBound(final int toNoLowerThanThisMuch)
+        {
+        final int[] field = this.field;
+        final int height = this.height;
+        new ColumnStripes()
+            {
+            void columns(int stripe, int fromX, int toX)
+                {
+                final int end = toX * height;
+                for(int i = fromX * height; i < end; i++)
+                    if (field[i] < toNoLowerThanThisMuch)
+                        field[i] = toNoLowerThanThisMuch;
+                }
+            }.run(parallel, width, height);
+        return this;
+        }
+
+    /** Sets each value in the grid to that value added to <i>withThisMuch</i>
+        Returns the modified grid.
+    */
+    public final FlatIntGrid2D add(final int withThisMuch)
+        {
+        if (withThisMuch==0) return this;
+        final int[] field = this.field;
+        final int height = this.height;
+        new ColumnStripes()
+            {
+            void columns(int stripe, int fromX, int toX)
+                {
+                final int end = toX * height;
+                for(int i = fromX * height; i < end; i++)
+                    field[i] += withThisMuch;
+                }
+            }.run(parallel, width, height);
+        return this;
+        }
+
+    /** Sets the value at each location in the grid to that value added to the value at the equivalent location in the provided grid.
+        Returns the modified grid.
+    */
+    public final FlatIntGrid2D add(final FlatIntGrid2D withThis)
+        {
+        checkBounds(withThis);
+        final int[] field = this.field;
+        final int[] ofield = withThis.field;
+        final int height = this.height;
+        new ColumnStripes()
+            {
+            void columns(int stripe, int fromX, int toX)
+                {
+                final int end = toX * height;
+                for(int i = fromX * height; i < end; i++)
+                    field[i] += ofield[i];
+                }
+            }.run(parallel, width, height);
+        return this;
+        }
+
+    /** Sets each value in the grid to that value multiplied <i>byThisMuch</i>
+        Returns the modified grid.
+    */
+    public final FlatIntGrid2D multiply(final int byThisMuch)
+        {
+        if (byThisMuch==1) return this;
+        final int[] field = this.field;
+        final int height = this.height;
+        new ColumnStripes()
+            {
+            void columns(int stripe, int fromX, int toX)
+                {
+                final int end = toX * height;
+                for(int i = fromX * height; i < end; i++)
+                    field[i] *= byThisMuch;
+                }
+            }.run(parallel, width, height);
+        return this;
+        }
+
+    /** Sets the value at each location in the grid to that value multiplied by to the value at the equivalent location in the provided grid.
+        Returns the modified grid.
+    */
+    public final FlatIntGrid2D multiply(final FlatIntGrid2D withThis)
+        {
+        checkBounds(withThis);
+        final int[] field = this.field;
+        final int[] ofield = withThis.field;
+        final int height = this.height;
+        new ColumnStripes()
+            {
+            void columns(int stripe, int fromX, int toX)
+                {
+                final int end = toX * height;
+                for(int i = fromX * height; i < end; i++)
+                    field[i] *= ofield[i];
+                }
+            }.run(parallel, width, height);
+        return this;
+        }
+
+    /**
+     * Replace instances of one value to another.
+     * @param fromThis any element that matches this value will be replaced
+     * @param toThis with this value
+     */
+    public final void replaceAll(final int fromThis, final int toThis)
+        {
+        final int[] field = this.field;
+        final int height = this.height;
+        new ColumnStripes()
+            {
+            void columns(int stripe, int fromX, int toX)
+                {
+                final int end = toX * height;
+                for(int i = fromX * height; i < end; i++)
+                    if (field[i] == fromThis)
+                        field[i] = toThis;
+                }
+            }.run(parallel, width, height);
+        }
+
+    /** Sets each value in the grid to the function applied to that value.  If the grid is parallel,
+        the function may be called from several threads at once.  Returns the modified grid.
+    */
+    public final FlatIntGrid2D apply(final IntUnaryOperator function)
+        {
+        final int[] field = this.field;
+        final int height = this.height;
+        new ColumnStripes()
+            {
+            void columns(int stripe, int fromX, int toX)
+                {
+                final int end = toX * height;
+                for(int i = fromX * height; i < end; i++)
+                    field[i] = function.applyAsInt(field[i]);
+                }
+            }.run(parallel, width, height);
+        return this;
+        }
+
+    /** Sets the value at each location in the grid to the function applied to that value and the value at the
+        equivalent location in the provided grid, in that order.  If the grid is parallel, the function may be called
+        from several threads at once.  Returns the modified grid.
+    */
+    public final FlatIntGrid2D zip(final FlatIntGrid2D withThis, final IntBinaryOperator function)
+        {
+        checkBounds(withThis);
+        final int[] field = this.field;
+        final int[] ofield = withThis.field;
+        final int height = this.height;
+        new ColumnStripes()
+            {
+            void columns(int stripe, int fromX, int toX)
+                {
+                final int end = toX * height;
+                for(int i = fromX * height; i < end; i++)
+                    field[i] = function.applyAsInt(field[i], ofield[i]);
+                }
+            }.run(parallel, width, height);
+        return this;
+        }
+
+    /** Combines all the values in the grid with the function, starting with the identity value, and returns the result.
+        This works just like IntGrid2D.reduce(...).
+    */
+    public final int reduce(final int identity, final IntBinaryOperator function)
+        {
+        final int[] field = this.field;
+        final int height = this.height;
+        final int[] results = new int[ColumnStripes.count(parallel, width, height)];
+        new ColumnStripes()
+            {
+            void columns(int stripe, int fromX, int toX)
+                {
+                int r = identity;
+                final int end = toX * height;
+                for(int i = fromX * height; i < end; i++)
+                    r = function.applyAsInt(r, field[i]);
+                results[stripe] = r;
+                }
+            }.run(results.length, width);
+        if (results.length == 1) return results[0];
+        int result = identity;
+        for(int i = 0; i < results.length; i++)
+            result = function.applyAsInt(result, results[i]);
+        return result;
+        }
+
+
+    /**
+     * Gets all neighbors of a location that satisfy max( abs(x-X) , abs(y-Y) ) <= dist, This region forms a
+     * square 2*dist+1 cells across, centered at (X,Y).  If dist==1, this
+     * is equivalent to the so-called "Moore Neighborhood" (the eight neighbors surrounding (X,Y)), plus (X,Y) itself.
+     * Places each x and y value of these locations in the provided IntBags xPos and yPos, clearing the bags first,
+     * and the values at those locations into the result IntBag, also clearing it first.  Returns the result IntBag.
+     * null may be passed in for the various bags, though it is more efficient to pass in a 'scratch bag' for
+     * each one.  See IntGrid2D.getMooreNeighbors(...) for a description of the modes.
+     *
+     * <p>In bounded mode, and in toroidal mode when the neighborhood doesn't wrap all the way around the grid,
+     * the locations and values are gathered in a single pass straight down the backing array.
+     */
+    public IntBag getMooreNeighbors( final int x, final int y, final int dist, int mode, boolean includeOrigin, IntBag result, IntBag xPos, IntBag yPos )
+        {
+        if( xPos == null )
+            xPos = new IntBag();
+        if( yPos == null )
+            yPos = new IntBag();
+        if (result == null)
+            result = new IntBag();
+
+        final int width = this.width;
+        final int height = this.height;
+        if (dist < 0 || x < 0 || x >= width || y < 0 || y >= height ||
+            !(mode == BOUNDED || (mode == TOROIDAL && dist * 2 < width && dist * 2 < height)))
+            {
+            getMooreLocations( x, y, dist, mode, includeOrigin, xPos, yPos );
+            return getObjectsAtLocations(xPos,yPos,result);
+            }
+
+        // compute the neighborhood bounds just as getMooreLocations does
+        final int xmin = (mode == TOROIDAL || x - dist >= 0 ? x - dist : 0);
+        final int xmax = (mode == TOROIDAL || x + dist <= width - 1 ? x + dist : width - 1);
+        final int ymin = (mode == TOROIDAL || y - dist >= 0 ? y - dist : 0);
+        final int ymax = (mode == TOROIDAL || y + dist <= height - 1 ? y + dist : height - 1);
+        final int size = (xmax - xmin + 1) * (ymax - ymin + 1);
+
+        xPos.clear();
+        yPos.clear();
+        result.clear();
+        xPos.resize(size);
+        yPos.resize(size);
+        result.resize(size);
+        final int[] xs = xPos.objs;
+        final int[] ys = yPos.objs;
+        final int[] vals = result.objs;
+        final int[] field = this.field;
+
+        int n = 0;
+        for(int x0 = xmin; x0 <= xmax; x0++)
+            {
+            final int x_0 = (x0 < 0 ? x0 + width : (x0 >= width ? x0 - width : x0));
+            final int column = x_0 * height;
+            for(int y0 = ymin; y0 <= ymax; y0++)
+                {
+                final int y_0 = (y0 < 0 ? y0 + height : (y0 >= height ? y0 - height : y0));
+                xs[n] = x_0;
+                ys[n] = y_0;
+                vals[n] = field[column + y_0];
+                n++;
+                }
+            }
+        xPos.numObjs = n;
+        yPos.numObjs = n;
+        result.numObjs = n;
+
+        if (!includeOrigin)
+            {
+            // the origin is at a known spot; remove it the same way removeOrigin does
+            int origin = (x - xmin) * (ymax - ymin + 1) + (y - ymin);
+            xPos.remove(origin);
+            yPos.remove(origin);
+            result.remove(origin);
+            }
+        return result;
+        }
+
+    /**
+     * Gets all neighbors of a location that satisfy abs(x-X) + abs(y-Y) <= dist.  This region forms a diamond
+     * 2*dist+1 cells from point to opposite point inclusive, centered at (X,Y).  If dist==1 this is
+     * equivalent to the so-called "Von-Neumann Neighborhood" (the four neighbors above, below, left, and right of (X,Y)),
+     * plus (X,Y) itself.  Places the locations in xPos and yPos and their values in the result IntBag, just
+     * as getMooreNeighbors(...) does, and returns the result IntBag.
+     */
+    public IntBag getVonNeumannNeighbors( final int x, final int y, final int dist, int mode, boolean includeOrigin, IntBag result, IntBag xPos, IntBag yPos )
+        {
+        if( xPos == null )
+            xPos = new IntBag();
+        if( yPos == null )
+            yPos = new IntBag();
+
+        getVonNeumannLocations( x, y, dist, mode, includeOrigin, xPos, yPos );
+        return getObjectsAtLocations(xPos,yPos,result);
+        }
+
+    /**
+     * Gets all neighbors located within the hexagon centered at (X,Y) and 2*dist+1 cells from point to opposite point
+     * inclusive.  Places the locations in xPos and yPos and their values in the result IntBag, just
+     * as getMooreNeighbors(...) does, and returns the result IntBag.
+     */
+    public IntBag getHexagonalNeighbors( final int x, final int y, final int dist, int mode, boolean includeOrigin, IntBag result, IntBag xPos, IntBag yPos )
+        {
+        if( xPos == null )
+            xPos = new IntBag();
+        if( yPos == null )
+            yPos = new IntBag();
+
+        getHexagonalLocations( x, y, dist, mode, includeOrigin, xPos, yPos );
+        return getObjectsAtLocations(xPos,yPos,result);
+        }
+
+    public IntBag getRadialNeighbors( final int x, final int y, final int dist, int mode, boolean includeOrigin, IntBag result, IntBag xPos, IntBag yPos )
+        {
+        return getRadialNeighbors(x, y, dist, mode, includeOrigin, Grid2D.ANY, true, result, xPos, yPos);
+        }
+
+    public IntBag getRadialNeighbors( final int x, final int y, final int dist, int mode, boolean includeOrigin,  int measurementRule, boolean closed,  IntBag result, IntBag xPos, IntBag yPos )
+        {
+        if( xPos == null )
+            xPos = new IntBag();
+        if( yPos == null )
+            yPos = new IntBag();
+
+        getRadialLocations( x, y, dist, mode, includeOrigin, measurementRule, closed, xPos, yPos );
+        return getObjectsAtLocations(xPos,yPos,result);
+        }
+
+    /* For each <xPos,yPos> location, puts the value there into the result IntBag.  Returns the result IntBag.
+       If the provided result IntBag is null, one will be created and returned. */
+    IntBag getObjectsAtLocations(final IntBag xPos, final IntBag yPos, IntBag result)
+        {
+        if (result==null) result = new IntBag();
+        else result.clear();
+
+        final int n = xPos.numObjs;
+        final int[] xs = xPos.objs;
+        final int[] ys = yPos.objs;
+        final int[] field = this.field;
+        final int height = this.height;
+        result.resize(n);
+        final int[] vals = result.objs;
+        for( int i = 0 ; i < n ; i++ )
+            vals[i] = field[xs[i] * height + ys[i]];
+        result.numObjs = n;
+        return result;
+        }
+
+    /** Returns the values in the Moore neighborhood of (x,y), as described in getMooreNeighbors(...). */
+    public IntBag getMooreNeighbors( int x, int y, int dist, int mode, boolean includeOrigin )
+        {
+        return getMooreNeighbors(x, y, dist, mode, includeOrigin, null, null, null);
+        }
+
+    /** Returns the values in the Von Neumann neighborhood of (x,y), as described in getVonNeumannNeighbors(...). */
+    public IntBag getVonNeumannNeighbors( int x, int y, int dist, int mode, boolean includeOrigin )
+        {
+        return getVonNeumannNeighbors(x, y, dist, mode, includeOrigin, null, null, null);
+        }
+
+    /** Returns the values in the hexagonal neighborhood of (x,y), as described in getHexagonalNeighbors(...). */
+    public IntBag getHexagonalNeighbors( int x, int y, int dist, int mode, boolean includeOrigin )
+        {
+        return getHexagonalNeighbors(x, y, dist, mode, includeOrigin, null, null, null);
+        }
+
+    public IntBag getRadialNeighbors( final int x, final int y, final int dist, int mode, boolean includeOrigin)
+        {
+        return getRadialNeighbors(x, y, dist, mode, includeOrigin, null, null, null);
+        }
+    }
@@ -0,0 +1,390 @@
+/*
+  Copyright 2006 by Sean Luke and George Mason University
+  Licensed under the Academic Free License version 3.0
+  See the file "LICENSE" for more information
+*/
+
+package sim.field.grid;
+import sim.util.*;
+
+/**
+   A wrapper for a 2D grid of Objects stored in a single one-dimensional array.
+
+   <p>FlatObjectGrid2D is a drop-in alternative to ObjectGrid2D.  Rather than an Object[x][y] array, it stores
+   its values in a single Object[] array, column by column: the value at (x,y) lives at field[x * height + y],
+   which you can compute with index(x, y).  This is the same order in which ObjectGrid2D.toArray() flattens its grid.
+   Accessing a cell costs one array lookup rather than two.
+
+   <p>You are encouraged to access the array directly.  The object implements all of the Grid2D interface,
+   and its neighborhood methods return the same results, in the same order, as those of ObjectGrid2D.
+*/
+
+public class FlatObjectGrid2D extends AbstractGrid2D
+    {
+    private static final long serialVersionUID = 1;
+
+    public Object[] field;
+
+    /** Returns the backing array, in which the value at (x,y) is stored at index(x, y). */
+    public Object[] getField() { return field; }
+
+    public FlatObjectGrid2D (int width, int height)
+        {
+        this.width = width;
+        this.height = height;
+        field = new Object[width * height];
+        }
+
+    public FlatObjectGrid2D (int width, int height, Object initialValue)
+        {
+        this(width,height);
+        setTo(initialValue);
+        }
+
+    public FlatObjectGrid2D (FlatObjectGrid2D values)
+        {
+        setTo(values);
+        }
+
+    public FlatObjectGrid2D (ObjectGrid2D values)
+        {
+        setTo(values);
+        }
+
+    public void reshape(int width, int height)
+        {
+        super.reshape(width, height);
+        field = new Object[width * height];
+        }
+
+    /** Returns the position of location (x,y) in the backing array. */
+    public final int index(final int x, final int y)
+        {
+        return x * height + y;
+        }
+
+    /** Sets location (x,y) to val */
+    public final void set(final int x, final int y, final Object val)
+        {
+        field[x * height + y] = val;
+        }
+
+    /** Returns the element at location (x,y) */
+    public final Object get(final int x, final int y)
+        {
+        return field[x * height + y];
+        }
+
+    /** Sets all the locations in the grid the provided element.  <b>WARNING:
+        this may conflict with setTo(FlatObjectGrid2D) and setTo(ObjectGrid2D) -- make sure you have casted properly.  */
+    public final FlatObjectGrid2D setTo(Object thisObj)
+        {
+        java.util.Arrays.fill(field, thisObj);
+        return this;
+        }
+
+    /** Changes the dimensions of the grid to be the same as the one provided, then
+        sets all the locations in the grid to the elements at the equivalent locations in the
+        provided grid. */
+    public final FlatObjectGrid2D setTo(final FlatObjectGrid2D values)
+        {
+        if (width != values.width || height != values.height)
+            {
+            width = values.width;
+            height = values.height;
+            field = (Object[]) values.field.clone();
+            }
+        else System.arraycopy(values.field, 0, field, 0, field.length);
+        return this;
+        }
+
+    /** Changes the dimensions of the grid to be the same as the one provided, then
+        sets all the locations in the grid to the elements at the equivalent locations in the
+        provided grid. */
+    public final FlatObjectGrid2D setTo(final ObjectGrid2D values)
+        {
+        if (width != values.width || height != values.height || field == null)
+            reshape(values.width, values.height);
+        final Object[] field = this.field;
+        final Object[][] ofield = values.field;
+        final int height = this.height;
+        for(int x = 0; x < width; x++)
+            System.arraycopy(ofield[x], 0, field, x * height, height);
+        return this;
+        }
+
+    /** Returns a new ObjectGrid2D holding the same values as this grid. */
+    public final ObjectGrid2D toObjectGrid2D()
+        {
+        ObjectGrid2D grid = new ObjectGrid2D(width, height);
+        final Object[] field = this.field;
+        final Object[][] ofield = grid.field;
+        final int height = this.height;
+        for(int x = 0; x < width; x++)
+            System.arraycopy(field, x * height, ofield[x], 0, height);
+        return grid;
+        }
+
+    /** Returns a copy of the backing array, including duplicates and null values, which is in the same order as ObjectGrid2D.toArray(). */
+    public final Object[] toArray()
+        {
+        return (Object[]) field.clone();
+        }
+
+    /** Returns in a Bag all stored objects (including duplicates but not null values).
+        You are free to modify the Bag. */
+    public final Bag elements()
+        {
+        Bag bag = new Bag();
+        final Object[] field = this.field;
+        for(int i = 0; i < field.length; i++)
+            if (field[i] != null)
+                bag.add(field[i]);
+        return bag;
+        }
+
+    /** Sets all the locations in the grid to null, and returns in a Bag all previously stored objects
+        (including duplicates but not null values).  You are free to modify the Bag. */
+    public final Bag clear()
+        {
+        Bag bag = elements();
+        java.util.Arrays.fill(field, null);
+        return bag;
+        }
+
+    /**
+     * Replace instances of one value to another.  Equality is measured using equals(...).
+     * null is considered equal to null.  This is equivalent to calling replaceAll(from, to, false)
+     * @param from any element that matches this value will be replaced
+     * @param to with this value
+     */
+    public final void replaceAll(Object from, Object to)
+        {
+        replaceAll(from, to, false);
+        }
+
+    /**
+     * Replace instances of one value to another.  Equality is measured
+     * as follows.  (1) if onlyIfSameObject is true, then objects must be "== from"
+     * to one another to be considered equal.  (2) if onlyIfSameObject is false,
+     * then objects in the field must be "equals(from)".  In either case, null
+     * is considered equal to null.
+     * @param from any element that matches this value will be replaced
+     * @param to with this value
+     */
+    public final void replaceAll(Object from, Object to, boolean onlyIfSameObject)
+        {
+        final Object[] field = this.field;
+        for(int i = 0; i < field.length; i++)
+            {
+            Object obj = field[i];
+            if ((obj == null && from == null) ||
+                (onlyIfSameObject && obj == from) ||
+                (!onlyIfSameObject && obj != null && obj.equals(from)))
+                field[i] = to;
+            }
+        }
+
+
+    /**
+     * Gets all neighbors of a location that satisfy max( abs(x-X) , abs(y-Y) ) <= dist, This region forms a
+     * square 2*dist+1 cells across, centered at (X,Y).  If dist==1, this
+     * is equivalent to the so-called "Moore Neighborhood" (the eight neighbors surrounding (X,Y)), plus (X,Y) itself.
+     * Places each x and y value of these locations in the provided IntBags xPos and yPos, clearing the bags first.
+     *
+     * <p>Then places into the result Bag any Objects which fall on one of these <x,y> locations, clearning it first.
+     * <b>Note that the order and size of the result Bag may not correspond to the X and Y bags.</b>  If you want
+     * all three bags to correspond (x, y, object) then use getMooreNeighborsAndLocations(...).
+     * Returns the result Bag.  null may be passed in for the various bags, though it is more efficient to pass
+     * in a 'scratch bag' for each one.  See ObjectGrid2D.getMooreNeighbors(...) for a description of the modes.
+     */
+    public Bag getMooreNeighbors( final int x, final int y, final int dist, int mode, boolean includeOrigin, Bag result, IntBag xPos, IntBag yPos )
+        {
+        if( xPos == null )
+            xPos = new IntBag();
+        if( yPos == null )
+            yPos = new IntBag();
+
+        getMooreLocations( x, y, dist, mode, includeOrigin, xPos, yPos );
+        return getObjectsAtLocations(xPos,yPos,result);
+        }
+
+    /**
+     * Gets all neighbors of a location that satisfy max( abs(x-X) , abs(y-Y) ) <= dist.  For each Object which falls
+     * within this distance, adds the X position, Y position, and Object into the xPos, yPos, and result Bag, clearing
+     * them first.  Returns the result Bag.
+     */
+    public Bag getMooreNeighborsAndLocations(final int x, final int y, final int dist, int mode, boolean includeOrigin, Bag result, IntBag xPos, IntBag yPos)
+        {
+        if( xPos == null )
+            xPos = new IntBag();
+        if( yPos == null )
+            yPos = new IntBag();
+
+        getMooreLocations( x, y, dist, mode, includeOrigin, xPos, yPos );
+        return reduceObjectsAtLocations( xPos,  yPos,  result);
+        }
+
+    /**
+     * Gets all neighbors of a location that satisfy abs(x-X) + abs(y-Y) <= dist.  This region forms a diamond
+     * 2*dist+1 cells from point to opposite point inclusive, centered at (X,Y).  If dist==1 this is
+     * equivalent to the so-called "Von-Neumann Neighborhood" (the four neighbors above, below, left, and right of (X,Y)),
+     * plus (X,Y) itself.  Places the locations in xPos and yPos and any Objects there in the result Bag, just
+     * as getMooreNeighbors(...) does, and returns the result Bag.
+     */
+    public Bag getVonNeumannNeighbors( final int x, final int y, final int dist, int mode, boolean includeOrigin, Bag result, IntBag xPos, IntBag yPos )
+        {
+        if( xPos == null )
+            xPos = new IntBag();
+        if( yPos == null )
+            yPos = new IntBag();
+
+        getVonNeumannLocations( x, y, dist, mode, includeOrigin, xPos, yPos );
+        return getObjectsAtLocations(xPos,yPos,result);
+        }
+
+    /**
+     * Gets all neighbors of a location that satisfy abs(x-X) + abs(y-Y) <= dist, adding the X position, Y position,
+     * and Object into the xPos, yPos, and result Bag, just as getMooreNeighborsAndLocations(...) does.  Returns the result Bag.
+     */
+    public Bag getVonNeumannNeighborsAndLocations(final int x, final int y, final int dist, int mode, boolean includeOrigin, Bag result, IntBag xPos, IntBag yPos)
+        {
+        if( xPos == null )
+            xPos = new IntBag();
+        if( yPos == null )
+            yPos = new IntBag();
+
+        getVonNeumannLocations( x, y, dist, mode, includeOrigin, xPos, yPos );
+        return reduceObjectsAtLocations( xPos,  yPos,  result);
+        }
+
+    /**
+     * Gets all neighbors located within the hexagon centered at (X,Y) and 2*dist+1 cells from point to opposite point
+     * inclusive.  Places the locations in xPos and yPos and any Objects there in the result Bag, just
+     * as getMooreNeighbors(...) does, and returns the result Bag.
+     */
+    public Bag getHexagonalNeighbors( final int x, final int y, final int dist, int mode, boolean includeOrigin, Bag result, IntBag xPos, IntBag yPos )
+        {
+        if( xPos == null )
+            xPos = new IntBag();
+        if( yPos == null )
+            yPos = new IntBag();
+
+        getHexagonalLocations( x, y, dist, mode, includeOrigin, xPos, yPos );
+        return getObjectsAtLocations(xPos,yPos,result);
+        }
+
+    /**
+     * Gets all neighbors located within the hexagon centered at (X,Y), adding the X position, Y position,
+     * and Object into the xPos, yPos, and result Bag, just as getMooreNeighborsAndLocations(...) does.  Returns the result Bag.
+     */
+    public Bag getHexagonalNeighborsAndLocations(final int x, final int y, final int dist, int mode, boolean includeOrigin, Bag result, IntBag xPos, IntBag yPos)
+        {
+        if( xPos == null )
+            xPos = new IntBag();
+        if( yPos == null )
+            yPos = new IntBag();
+
+        getHexagonalLocations( x, y, dist, mode, includeOrigin, xPos, yPos );
+        return reduceObjectsAtLocations( xPos,  yPos,  result);
+        }
+
+    public Bag getRadialNeighbors( final int x, final int y, final double dist, int mode, boolean includeOrigin,  Bag result, IntBag xPos, IntBag yPos )
+        {
+        return getRadialNeighbors(x, y, dist, mode, includeOrigin, Grid2D.ANY, true, result, xPos, yPos);
+        }
+
+    public Bag getRadialNeighborsAndLocations( final int x, final int y, final double dist, int mode, boolean includeOrigin, Bag result, IntBag xPos, IntBag yPos )
+        {
+        return getRadialNeighborsAndLocations(x, y, dist, mode, includeOrigin, Grid2D.ANY, true, result, xPos, yPos);
+        }
+
+    public Bag getRadialNeighbors( final int x, final int y, final double dist, int mode, boolean includeOrigin,  int measurementRule, boolean closed,  Bag result, IntBag xPos, IntBag yPos )
+        {
+        if( xPos == null )
+            xPos = new IntBag();
+        if( yPos == null )
+            yPos = new IntBag();
+
+        getRadialLocations( x, y, dist, mode, includeOrigin, measurementRule, closed, xPos, yPos );
+        return getObjectsAtLocations(xPos,yPos,result);
+        }
+
+    public Bag getRadialNeighborsAndLocations( final int x, final int y, final double dist, int mode, boolean includeOrigin,  int measurementRule, boolean closed,  Bag result, IntBag xPos, IntBag yPos )
+        {
+        if( xPos == null )
+            xPos = new IntBag();
+        if( yPos == null )
+            yPos = new IntBag();
+
+        getRadialLocations( x, y, dist, mode, includeOrigin, measurementRule, closed, xPos, yPos );
+        return reduceObjectsAtLocations( xPos,  yPos,  result);
+        }
+
+    // For each <xPos, yPos> location, puts all such objects into the result bag.  Modifies
+    // the xPos and yPos bags so that each position corresponds to the equivalent result in
+    // in the result bag.  Returns the result bag.
+    Bag reduceObjectsAtLocations(final IntBag xPos, final IntBag yPos, Bag result)
+        {
+        if (result==null) result = new Bag();
+        else result.clear();
+
+        final Object[] field = this.field;
+        final int height = this.height;
+        for( int i = 0 ; i < xPos.numObjs ; i++ )
+            {
+            Object val = field[xPos.objs[i] * height + yPos.objs[i]];
+            if (val != null) result.add( val );
+            else
+                {
+                xPos.remove(i);
+                yPos.remove(i);
+                i--;  // back up and try the object now in the new slot
+                }
+            }
+        return result;
+        }
+
+    /* For each <xPos,yPos> location, puts all such objects into the result bag.  Returns the result bag.
+       If the provided result bag is null, one will be created and returned. */
+    Bag getObjectsAtLocations(final IntBag xPos, final IntBag yPos, Bag result)
+        {
+        if (result==null) result = new Bag();
+        else result.clear();
+
+        final int n = xPos.numObjs;
+        final int[] xs = xPos.objs;
+        final int[] ys = yPos.objs;
+        final Object[] field = this.field;
+        final int height = this.height;
+        for( int i = 0 ; i < n ; i++ )
+            {
+            Object val = field[xs[i] * height + ys[i]];
+            if (val != null) result.add( val );
+            }
+        return result;
+        }
+
+    /** Returns any Objects in the Moore neighborhood of (x,y), as described in getMooreNeighbors(...). */
+    public Bag getMooreNeighbors( int x, int y, int dist, int mode, boolean includeOrigin )
+        {
+        return getMooreNeighbors(x, y, dist, mode, includeOrigin, null, null, null);
+        }
+
+    /** Returns any Objects in the Von Neumann neighborhood of (x,y), as described in getVonNeumannNeighbors(...). */
+    public Bag getVonNeumannNeighbors( int x, int y, int dist, int mode, boolean includeOrigin )
+        {
+        return getVonNeumannNeighbors(x, y, dist, mode, includeOrigin, null, null, null);
+        }
+
+    /** Returns any Objects in the hexagonal neighborhood of (x,y), as described in getHexagonalNeighbors(...). */
+    public Bag getHexagonalNeighbors( int x, int y, int dist, int mode, boolean includeOrigin )
+        {
+        return getHexagonalNeighbors(x, y, dist, mode, includeOrigin, null, null, null);
+        }
+
+    public Bag getRadialNeighbors( final int x, final int y, final double dist, int mode, boolean includeOrigin)
+        {
+        return getRadialNeighbors(x, y, dist, mode, includeOrigin, null, null, null);
+        }
+    }
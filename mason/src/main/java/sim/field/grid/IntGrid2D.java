@@ -6,6 +6,7 @@
 
 package sim.field.grid;
 import sim.util.*;
+import java.util.function.*;
 
 /**
    A wrapper for 2D arrays of ints.
@@ -16,6 +17,10 @@ import sim.util.*;
    or hexagonal grids.
     
    <p>The width and height of the object are provided to avoid having to say field[x].length, etc.  
+
+   <p><b>Bulk Operations.</b>  Operations on the whole grid, such as setTo, add, multiply, max, and mean, as well as the general
+   apply, zip, and reduce methods, work column by column in plain loops which HotSpot can unroll and often vectorize.  If you
+   call setParallel(true), large grids are also divided into stripes of columns which are processed in parallel.
 */
 
 public /*strictfp*/ class IntGrid2D extends AbstractGrid2D
@@ -81,23 +86,35 @@ public /*strictfp*/ class IntGrid2D extends AbstractGrid2D
                     }
             }
         else
-            {        
-            int[] fieldx = null;
-            final int width = getWidth();
-            final int height = getHeight();
-            for(int x=0;x<width;x++)
+            {
+            final int[][] field = this.field;
+            final int height = this.height;
+            new ColumnStripes()
                 {
-                fieldx = field[x];
-                for(int y=0;y<height;y++)
+                void columns(int stripe, int fromX, int toX)
                     {
-                    assert sim.util.LocationLog.it(this, new Int2D(x,y));
-                    fieldx[y]=thisMuch;
+                    for(int x = fromX; x < toX; x++)
+                        {
+                        final int[] fieldx = field[x];
+                        for(int y = 0; y < height; y++)
+                            {
+                            assert sim.util.LocationLog.it(IntGrid2D.this, new Int2D(x,y));
+                            fieldx[y] = thisMuch;
+                            }
+                        }
                     }
-                }
+                }.run(parallel, width, height);
             }
         return this;
         }
 
+    /** Sets all the locations in the grid to 0 in place, keeping the grid's arrays, so that it may be reused for
+        another run without reallocating them.  This is the same as setTo(0). */
+    public void reset()
+        {
+        setTo(0);
+        }
+
     /** Sets the grid to a copy of the provided array, which must be rectangular. */
     public IntGrid2D setTo(int[][] field)
         {
@@ -164,12 +181,17 @@ public /*strictfp*/ class IntGrid2D extends AbstractGrid2D
             }
         else
             {
-            int width = getWidth();
-            int height = getHeight();
-            for(int x =0 ; x < width; x++)
+            final int[][] field = this.field;
+            final int[][] otherField = values.field;
+            final int height = this.height;
+            new ColumnStripes()
                 {
-                System.arraycopy(values.field[x],0,field[x],0,height);
-                }
+                void columns(int stripe, int fromX, int toX)
+                    {
+                    for(int x = fromX; x < toX; x++)
+                        System.arraycopy(otherField[x],0,field[x],0,height);
+                    }
+                }.run(parallel, width, height);
             }
 
         return this;
@@ -229,20 +251,30 @@ public /*strictfp*/ class IntGrid2D extends AbstractGrid2D
                         max = g;
                     }
             }
-        else    // more efficient
-            {        
-            int[] fieldx = null;
-            final int width = getWidth();
-            final int height = getHeight();
-            for(int x=0;x<width;x++)
+        else
+            {
+            final int[][] field = this.field;
+            final int height = this.height;
+            final int[] maxes = new int[ColumnStripes.count(parallel, width, height)];
+            new ColumnStripes()
                 {
-                fieldx = field[x];
-                for(int y=0;y<height;y++)
+                void columns(int stripe, int fromX, int toX)
                     {
-                    assert sim.util.LocationLog.it(this, new Int2D(x,y));
-                    if (max < fieldx[y]) max = fieldx[y];
+                    int m = Integer.MIN_VALUE;
+                    for(int x = fromX; x < toX; x++)
+                        {
+                        final int[] fieldx = field[x];
+                        for(int y = 0; y < height; y++)
+                            {
+                            assert sim.util.LocationLog.it(IntGrid2D.this, new Int2D(x,y));
+                            if (m < fieldx[y]) m = fieldx[y];
+                            }
+                        }
+                    maxes[stripe] = m;
                     }
-                }
+                }.run(maxes.length, width);
+            for(int i = 0; i < maxes.length; i++)
+                if (max < maxes[i]) max = maxes[i];
             }
         return max;
         }
@@ -265,20 +297,30 @@ public /*strictfp*/ class IntGrid2D extends AbstractGrid2D
                         min = g;
                     }
             }
-        else    // more efficient
-            {        
-            int[] fieldx = null;
-            final int width = getWidth();
-            final int height = getHeight();
-            for(int x=0;x<width;x++)
+        else
+            {
+            final int[][] field = this.field;
+            final int height = this.height;
+            final int[] mins = new int[ColumnStripes.count(parallel, width, height)];
+            new ColumnStripes()
                 {
-                fieldx = field[x];
-                for(int y=0;y<height;y++)
+                void columns(int stripe, int fromX, int toX)
                     {
-                    assert sim.util.LocationLog.it(this, new Int2D(x,y));
-                    if (min > fieldx[y]) min = fieldx[y];
-                    }                
-                }
+                    int m = Integer.MAX_VALUE;
+                    for(int x = fromX; x < toX; x++)
+                        {
+                        final int[] fieldx = field[x];
+                        for(int y = 0; y < height; y++)
+                            {
+                            assert sim.util.LocationLog.it(IntGrid2D.this, new Int2D(x,y));
+                            if (m > fieldx[y]) m = fieldx[y];
+                            }
+                        }
+                    mins[stripe] = m;
+                    }
+                }.run(mins.length, width);
+            for(int i = 0; i < mins.length; i++)
+                if (min > mins[i]) min = mins[i];
             }
         return min;
         }
@@ -301,21 +343,31 @@ public /*strictfp*/ class IntGrid2D extends AbstractGrid2D
                     count++;
                     }
             }
-        else    // more efficient
-            {        
-            int[] fieldx = null;
-            final int width = getWidth();
-            final int height = getHeight();
-            for(int x=0;x<width;x++)
+        else
+            {
+            final int[][] field = this.field;
+            final int height = this.height;
+            final double[] sums = new double[ColumnStripes.count(parallel, width, height)];
+            new ColumnStripes()
                 {
-                fieldx = field[x];
-                for(int y=0;y<height;y++)
+                void columns(int stripe, int fromX, int toX)
                     {
-                    assert sim.util.LocationLog.it(this, new Int2D(x,y));
-                    mean += fieldx[y]; 
-                    count++; 
+                    double sum = 0;
+                    for(int x = fromX; x < toX; x++)
+                        {
+                        final int[] fieldx = field[x];
+                        for(int y = 0; y < height; y++)
+                            {
+                            assert sim.util.LocationLog.it(IntGrid2D.this, new Int2D(x,y));
+                            sum += fieldx[y];
+                            }
+                        }
+                    sums[stripe] = sum;
                     }
-                }
+                }.run(sums.length, width);
+            for(int i = 0; i < sums.length; i++)
+                mean += sums[i];
+            count = (long) width * height;
             }
         return (count == 0 ? 0 : mean / count);
         }
@@ -337,21 +389,25 @@ public /*strictfp*/ class IntGrid2D extends AbstractGrid2D
                         set(x,y,toNoMoreThanThisMuch);
                     }
             }
-        else    // more efficient
-            {        
-            int[] fieldx = null;
-            final int width = getWidth();
-            final int height = getHeight();
-            for(int x=0;x<width;x++)
+        else
+            {
+            final int[][] field = this.field;
+            final int height = this.height;
+            new ColumnStripes()
                 {
-                fieldx = field[x];
-                for(int y=0;y<height;y++)
+                void columns(int stripe, int fromX, int toX)
                     {
-                    assert sim.util.LocationLog.it(this, new Int2D(x,y));
-                    if (fieldx[y] > toNoMoreThanThisMuch)
-                        fieldx[y] = toNoMoreThanThisMuch;
+                    for(int x = fromX; x < toX; x++)
+                        {
+                        final int[] fieldx = field[x];
+                        for(int y = 0; y < height; y++)
+                            {
+                            assert sim.util.LocationLog.it(IntGrid2D.this, new Int2D(x,y));
+                            if (fieldx[y] > toNoMoreThanThisMuch) fieldx[y] = toNoMoreThanThisMuch;
+                            }
+                        }
                     }
-                }
+                }.run(parallel, width, height);
             }
         return this;
         }
@@ -374,21 +430,25 @@ public /*strictfp*/ class IntGrid2D extends AbstractGrid2D
                         set(x,y,toNoLowerThanThisMuch);
                     }
             }
-        else    // more efficient
-            {        
-            int[] fieldx = null;
-            final int width = getWidth();
-            final int height = getHeight();
-            for(int x=0;x<width;x++)
+        else
+            {
+            final int[][] field = this.field;
+            final int height = this.height;
+            new ColumnStripes()
                 {
-                fieldx = field[x];
-                for(int y=0;y<height;y++)
+                void columns(int stripe, int fromX, int toX)
                     {
-                    assert sim.util.LocationLog.it(this, new Int2D(x,y));
-                    if (fieldx[y] < toNoLowerThanThisMuch)
-                        fieldx[y] = toNoLowerThanThisMuch;
+                    for(int x = fromX; x < toX; x++)
+                        {
+                        final int[] fieldx = field[x];
+                        for(int y = 0; y < height; y++)
+                            {
+                            assert sim.util.LocationLog.it(IntGrid2D.this, new Int2D(x,y));
+                            if (fieldx[y] < toNoLowerThanThisMuch) fieldx[y] = toNoLowerThanThisMuch;
+                            }
+                        }
                     }
-                }
+                }.run(parallel, width, height);
             }
         return this;
         }
@@ -412,20 +472,25 @@ public /*strictfp*/ class IntGrid2D extends AbstractGrid2D
                     set(x, y, get(x, y) + withThisMuch);
                     }
             }
-        else    // more efficient
-            {        
-            int[] fieldx = null;
-            final int width = getWidth();
-            final int height = getHeight();
-            for(int x=0;x<width;x++)
+        else
+            {
+            final int[][] field = this.field;
+            final int height = this.height;
+            new ColumnStripes()
                 {
-                fieldx = field[x];
-                for(int y=0;y<height;y++)
+                void columns(int stripe, int fromX, int toX)
                     {
-                    assert sim.util.LocationLog.it(this, new Int2D(x,y));
-                    fieldx[y]+=withThisMuch;
+                    for(int x = fromX; x < toX; x++)
+                        {
+                        final int[] fieldx = field[x];
+                        for(int y = 0; y < height; y++)
+                            {
+                            assert sim.util.LocationLog.it(IntGrid2D.this, new Int2D(x,y));
+                            fieldx[y] += withThisMuch;
+                            }
+                        }
                     }
-                }
+                }.run(parallel, width, height);
             }
         return this;
         }
@@ -449,23 +514,27 @@ public /*strictfp*/ class IntGrid2D extends AbstractGrid2D
                     set(x, y, get(x, y) + withThis.get(x, y));
                     }
             }
-        else    // more efficient
-            {        
-            int[][]ofield = withThis.field;
-            int[] ofieldx = null;
-            int[] fieldx = null;
-            final int width = getWidth();
-            final int height = getHeight();
-            for(int x=0;x<width;x++)
+        else
+            {
+            final int[][] field = this.field;
+            final int[][] otherField = withThis.field;
+            final int height = this.height;
+            new ColumnStripes()
                 {
-                fieldx = field[x];
-                ofieldx = ofield[x];
-                for(int y=0;y<height;y++)
+                void columns(int stripe, int fromX, int toX)
                     {
-                    assert sim.util.LocationLog.it(this, new Int2D(x,y));
-                    fieldx[y]+=ofieldx[y];
+                    for(int x = fromX; x < toX; x++)
+                        {
+                        final int[] fieldx = field[x];
+                        final int[] ofieldx = otherField[x];
+                        for(int y = 0; y < height; y++)
+                            {
+                            assert sim.util.LocationLog.it(IntGrid2D.this, new Int2D(x,y));
+                            fieldx[y] += ofieldx[y];
+                            }
+                        }
                     }
-                }
+                }.run(parallel, width, height);
             }
         return this;
         }
@@ -489,20 +558,25 @@ public /*strictfp*/ class IntGrid2D extends AbstractGrid2D
                     set(x, y, get(x, y) * byThisMuch);
                     }
             }
-        else    // more efficient
-            {        
-            int[] fieldx = null;
-            final int width = getWidth();
-            final int height = getHeight();
-            for(int x=0;x<width;x++)
+        else
+            {
+            final int[][] field = this.field;
+            final int height = this.height;
+            new ColumnStripes()
                 {
-                fieldx = field[x];
-                for(int y=0;y<height;y++)
+                void columns(int stripe, int fromX, int toX)
                     {
-                    assert sim.util.LocationLog.it(this, new Int2D(x,y));
-                    fieldx[y]*=byThisMuch;
+                    for(int x = fromX; x < toX; x++)
+                        {
+                        final int[] fieldx = field[x];
+                        for(int y = 0; y < height; y++)
+                            {
+                            assert sim.util.LocationLog.it(IntGrid2D.this, new Int2D(x,y));
+                            fieldx[y] *= byThisMuch;
+                            }
+                        }
                     }
-                }
+                }.run(parallel, width, height);
             }
         return this;
         }
@@ -526,23 +600,27 @@ public /*strictfp*/ class IntGrid2D extends AbstractGrid2D
                     set(x, y, get(x, y) * withThis.get(x, y));
                     }
             }
-        else    // more efficient
-            {        
-            int[][]ofield = withThis.field;
-            int[] ofieldx = null;
-            int[] fieldx = null;
-            final int width = getWidth();
-            final int height = getHeight();
-            for(int x=0;x<width;x++)
+        else
+            {
+            final int[][] field = this.field;
+            final int[][] otherField = withThis.field;
+            final int height = this.height;
+            new ColumnStripes()
                 {
-                fieldx = field[x];
-                ofieldx = ofield[x];
-                for(int y=0;y<height;y++)
+                void columns(int stripe, int fromX, int toX)
                     {
-                    assert sim.util.LocationLog.it(this, new Int2D(x,y));
-                    fieldx[y]*=ofieldx[y];
+                    for(int x = fromX; x < toX; x++)
+                        {
+                        final int[] fieldx = field[x];
+                        final int[] ofieldx = otherField[x];
+                        for(int y = 0; y < height; y++)
+                            {
+                            assert sim.util.LocationLog.it(IntGrid2D.this, new Int2D(x,y));
+                            fieldx[y] *= ofieldx[y];
+                            }
+                        }
                     }
-                }
+                }.run(parallel, width, height);
             }
         return this;
         }
@@ -566,21 +644,156 @@ public /*strictfp*/ class IntGrid2D extends AbstractGrid2D
                         set(x, y, to);
                     }
             }
-        else    // more efficient
-            {        
-            final int width = getWidth();
-            final int height = getHeight();
-            int[] fieldx = null;
-            for(int x = 0; x < width; x++)
+        else
+            {
+            final int[][] field = this.field;
+            final int height = this.height;
+            new ColumnStripes()
                 {
-                fieldx = field[x];
-                for(int y = 0;  y < height; y++)
+                void columns(int stripe, int fromX, int toX)
                     {
-                    if (fieldx[y] == from)
-                        fieldx[y] = to;
+                    for(int x = fromX; x < toX; x++)
+                        {
+                        final int[] fieldx = field[x];
+                        for(int y = 0; y < height; y++)
+                            {
+                            assert sim.util.LocationLog.it(IntGrid2D.this, new Int2D(x,y));
+                            if (fieldx[y] == from) fieldx[y] = to;
+                            }
+                        }
+                    }
+                }.run(parallel, width, height);
+            }
+        }
+
+    /** Sets each value in the grid to the function applied to that value.  If the grid is parallel,
+        the function may be called from several threads at once.  Returns the modified grid. 
+    */
+    public final IntGrid2D apply(final IntUnaryOperator function)
+        {
+        if (isDistributed())
+            {
+            int w = getWidth();
+            int h = getHeight();
+            for(int x = 0; x < w; x++)
+                for(int y = 0; y < h; y++)
+                    {
+                    assert sim.util.LocationLog.it(this, new Int2D(x,y));
+                    set(x, y, function.applyAsInt(get(x, y)));
                     }
-                }
             }
+        else
+            {
+            final int[][] field = this.field;
+            final int height = this.height;
+            new ColumnStripes()
+                {
+                void columns(int stripe, int fromX, int toX)
+                    {
+                    for(int x = fromX; x < toX; x++)
+                        {
+                        final int[] fieldx = field[x];
+                        for(int y = 0; y < height; y++)
+                            {
+                            assert sim.util.LocationLog.it(IntGrid2D.this, new Int2D(x,y));
+                            fieldx[y] = function.applyAsInt(fieldx[y]);
+                            }
+                        }
+                    }
+                }.run(parallel, width, height);
+            }
+        return this;
+        }
+
+    /** Sets the value at each location in the grid to the function applied to that value and the value at the
+        equivalent location in the provided grid, in that order.  If the grid is parallel, the function may be called
+        from several threads at once.  Returns the modified grid. 
+    */
+    public final IntGrid2D zip(final IntGrid2D withThis, final IntBinaryOperator function)
+        {
+        checkBounds(withThis);
+        if (isDistributed())
+            {
+            int w = getWidth();
+            int h = getHeight();
+            for(int x = 0; x < w; x++)
+                for(int y = 0; y < h; y++)
+                    {
+                    assert sim.util.LocationLog.it(this, new Int2D(x,y));
+                    set(x, y, function.applyAsInt(get(x, y), withThis.get(x, y)));
+                    }
+            }
+        else
+            {
+            final int[][] field = this.field;
+            final int[][] otherField = withThis.field;
+            final int height = this.height;
+            new ColumnStripes()
+                {
+                void columns(int stripe, int fromX, int toX)
+                    {
+                    for(int x = fromX; x < toX; x++)
+                        {
+                        final int[] fieldx = field[x];
+                        final int[] ofieldx = otherField[x];
+                        for(int y = 0; y < height; y++)
+                            {
+                            assert sim.util.LocationLog.it(IntGrid2D.this, new Int2D(x,y));
+                            fieldx[y] = function.applyAsInt(fieldx[y], ofieldx[y]);
+                            }
+                        }
+                    }
+                }.run(parallel, width, height);
+            }
+        return this;
+        }
+
+    /** Combines all the values in the grid with the function, starting with the identity value, and returns the result.
+        For example, reduce(0, Integer::sum) sums the grid.  If the grid is parallel, each stripe of columns is reduced
+        separately starting with the identity, and the results are then combined in order, so the function should be associative
+        and the identity should be its identity.  The function may be called from several threads at once. 
+    */
+    public final int reduce(final int identity, final IntBinaryOperator function)
+        {
+        int result = identity;
+        if (isDistributed())
+            {
+            int w = getWidth();
+            int h = getHeight();
+            for(int x = 0; x < w; x++)
+                for(int y = 0; y < h; y++)
+                    {
+                    assert sim.util.LocationLog.it(this, new Int2D(x,y));
+                    result = function.applyAsInt(result, get(x, y));
+                    }
+            }
+        else
+            {
+            final int[][] field = this.field;
+            final int height = this.height;
+            final int[] results = new int[ColumnStripes.count(parallel, width, height)];
+            new ColumnStripes()
+                {
+                void columns(int stripe, int fromX, int toX)
+                    {
+                    int r = identity;
+                    for(int x = fromX; x < toX; x++)
+                        {
+                        final int[] fieldx = field[x];
+                        for(int y = 0; y < height; y++)
+                            {
+                            assert sim.util.LocationLog.it(IntGrid2D.this, new Int2D(x,y));
+                            r = function.applyAsInt(r, fieldx[y]);
+                            }
+                        }
+                    results[stripe] = r;
+                    }
+                }.run(results.length, width);
+            if (results.length == 1) result = results[0];
+            else for(int i = 0; i < results.length; i++)
+                result = function.applyAsInt(result, results[i]);
+            }
+        return result;
         }
 
 
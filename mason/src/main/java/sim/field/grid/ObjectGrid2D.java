@@ -234,6 +234,26 @@ public class ObjectGrid2D extends AbstractGrid2D
         return bag;
         }
 
+    /** Sets all the locations in the grid to null in place, keeping the grid's arrays, so that it may be reused for
+        another run without reallocating them.  Unlike clear(), nothing is returned. */
+    public void reset()
+        {
+        if (isDistributed())
+            {
+            int w = getWidth();
+            int h = getHeight();
+            for(int x = 0; x < w; x++)
+                for(int y = 0; y < h; y++)
+                    set(x, y, null);
+            }
+        else
+            {
+            final int width = this.width;
+            for(int x = 0; x < width; x++)
+                java.util.Arrays.fill(field[x], null);
+            }
+        }
+
     /** Changes the dimensions of the grid to be the same as the one provided, then
         sets all the locations in the grid to the elements at the quivalent locations in the
         provided grid. */
@@ -43,6 +43,11 @@ import java.util.*;
    object (in a Bag, which must NOT modify).  The various <b>getNeighbors...Distance(...)</b> methods return all locations defined by certain
    distance bounds, or all the objects stored at those locations.  They are expensive to compute and it may be wiser to compute them by hand
    if there aren't many.
+   
+   <p><b>Primitive Maps.</b>  If you construct the SparseGrid2D with <tt>primitiveMaps</tt> set to true, then objects are mapped to
+   their locations with an IdentityHashMap, and locations to their Bags with an Int2DMap, which packs each location into a long
+   and never calls hashCode() or equals() on it.  This is considerably faster and produces less garbage when huge numbers of objects
+   move every step, but objects are then distinguished by identity (==) rather than by equals().  This is almost always what you want for agents.
 
 */
 
@@ -53,10 +58,26 @@ public class SparseGrid2D extends SparseField implements Grid2D, SparseField2D
     protected int width;
     protected int height;
     
+    /** Whether we use identity and Int2D-specialized maps rather than HashMaps. */
+    protected boolean primitiveMaps;
+    
     public SparseGrid2D(int width, int height)
+        {
+        this(width, height, false);
+        }
+    
+    /** Builds a SparseGrid2D which, if primitiveMaps is true, stores its objects and locations in an IdentityHashMap and an Int2DMap 
+        rather than in HashMaps. */
+    public SparseGrid2D(int width, int height, boolean primitiveMaps)
         {
         this.width = width;
         this.height = height;
+        this.primitiveMaps = primitiveMaps;
+        if (primitiveMaps)  // rebuild the empty maps made by SparseField before we set the flag
+            {
+            locationAndIndexHash = buildObjectKeyedMap(SparseField.ANY_SIZE);
+            objectHash = buildLocationKeyedMap(SparseField.ANY_SIZE);
+            }
         }
     
     public SparseGrid2D(SparseGrid2D values)
@@ -64,6 +85,30 @@ public class SparseGrid2D extends SparseField implements Grid2D, SparseField2D
         super(values);
         width = values.width;
         height = values.height;
+        primitiveMaps = values.primitiveMaps;
+        if (primitiveMaps)
+            {
+            locationAndIndexHash = buildObjectKeyedMap(SparseField.ANY_SIZE);
+            locationAndIndexHash.putAll(values.locationAndIndexHash);
+            objectHash = buildLocationKeyedMap(SparseField.ANY_SIZE);
+            objectHash.putAll(values.objectHash);
+            }
+        }
+    
+    /** Returns true if the grid stores its objects and locations in an IdentityHashMap and an Int2DMap rather than in HashMaps. */
+    public boolean getUsesPrimitiveMaps() { return primitiveMaps; }
+    
+    public Map buildObjectKeyedMap(int size)
+        {
+        if (!primitiveMaps) return super.buildObjectKeyedMap(size);
+        if (size <= SparseField.ANY_SIZE) return new IdentityHashMap();
+        else return new IdentityHashMap(size);
+        }
+        
+    public Map buildLocationKeyedMap(int size)
+        {
+        if (!primitiveMaps) return super.buildLocationKeyedMap(size);
+        return new Int2DMap(size);
         }
     
     public void reshape(int width, int height) { this.width = width; this.height = height; clear(); }
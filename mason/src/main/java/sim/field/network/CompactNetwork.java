@@ -0,0 +1,369 @@
+/*
+  Copyright 2019 by Sean Luke and George Mason University
+  Licensed under the Academic Free License version 3.0
+  See the file "LICENSE" for more information
+*/
+
+package sim.field.network;
+import sim.util.*;
+import java.util.*;
+
+/** A CompactNetwork is a Network which cannot be changed once it has been made, and which stores its edges in
+    primitive arrays rather than as Edge objects in Bags.  It is meant for very large, static networks, such as
+    contact networks loaded from a file, which would otherwise take too much memory or too long to build.
+
+    <p>The nodes are in allNodes as usual, and a node's index is its position there.  Edges are numbered from 0 in
+    the order of the nodes they leave: the edges leaving node i are numbered outStart[i] through outStart[i+1]-1,
+    and edge e goes to node target[e].  The edges entering node i are inEdge[inStart[i]] through inEdge[inStart[i+1]-1],
+    in increasing order.  An edge's info is a double in weights[e], or an object in info[e], or null.  All told this
+    takes 8 bytes per edge (plus 8 for a weight), as opposed to some 60 bytes or more for an ordinary Network.  If the
+    nodes are simply the Integers 0 through n-1, in order, no hash table is needed to find them either.
+
+    <p>Methods which return Edges, such as getEdgesOut(...), make new Edge objects on demand, each a view of an edge in
+    the arrays.  So they cost more than in an ordinary Network, and the same edge gives a different, though equal-looking,
+    Edge each time.  Changing the info of such an Edge doesn't change the network.  For speed, use the arrays, or the
+    primitive methods such as getOutDegree(int), getFrom(int), and getWeight(int), instead.
+
+    <p>All methods which would modify the network throw a RuntimeException.  indexOutInHash is always empty, so
+    code which reaches into it, rather than calling methods, won't work on a CompactNetwork.  To get an ordinary
+    Network you can change, use new Network(compactNetwork).  See also NetworkLoader, which reads CompactNetworks
+    from files.
+*/
+
+public class CompactNetwork extends Network
+    {
+    private static final long serialVersionUID = 1;
+
+    /** The number of edges. */
+    public final int numEdges;
+    /** The edges leaving node i are numbered outStart[i] through outStart[i+1]-1.  Don't modify this array. */
+    public final int[] outStart;
+    /** Edge e goes to node target[e].  Don't modify this array. */
+    public final int[] target;
+    /** The edges entering node i are inEdge[inStart[i]] through inEdge[inStart[i+1]-1].  Don't modify this array. */
+    public final int[] inStart;
+    /** The edges entering each node, in increasing order.  Don't modify this array. */
+    public final int[] inEdge;
+    /** The weight of each edge, or null.  Don't modify this array. */
+    public final double[] weights;
+    /** The info object of each edge, or null.  Don't modify this array. */
+    public final Object[] info;
+
+    // node -> Integer index, or null if the nodes are the Integers 0 ... n-1 in order
+    final Map indices;
+
+    /** Builds a network of the given nodes, with edge i going from nodes[from[i]] to nodes[to[i]], and with null info objects. */
+    public CompactNetwork(final boolean directed, final Object[] nodes, final int[] from, final int[] to)
+        {
+        this(directed, nodes, from, to, null, null);
+        }
+
+    /** Builds a network of the given nodes, with edge i going from nodes[from[i]] to nodes[to[i]] and having the weight
+        weights[i].  weights may be null, in which case the edges have null info objects. */
+    public CompactNetwork(final boolean directed, final Object[] nodes, final int[] from, final int[] to, final double[] weights)
+        {
+        this(directed, nodes, from, to, weights, null);
+        }
+
+    /** Builds a network of the given nodes, with edge i going from nodes[from[i]] to nodes[to[i]] and having the info
+        object info[i].  info may be null, in which case the edges have null info objects. */
+    public CompactNetwork(final boolean directed, final Object[] nodes, final int[] from, final int[] to, final Object[] info)
+        {
+        this(directed, nodes, from, to, null, info);
+        }
+
+    CompactNetwork(final boolean directed, final Object[] nodes, final int[] from, final int[] to, final double[] weights, final Object[] info)
+        {
+        super(directed);
+        final int n = nodes.length;
+        final int m = from.length;
+        if (to.length != m || (weights != null && weights.length != m) || (info != null && info.length != m))
+            throw new RuntimeException("Edge arrays passed to CompactNetwork are not all the same length.");
+        numEdges = m;
+        allNodes = new Bag(nodes);
+
+        boolean identity = true;
+        for(int k = 0; k < n && identity; k++)
+            identity = (nodes[k] instanceof Integer && ((Integer)(nodes[k])).intValue() == k);
+        if (identity) indices = null;
+        else
+            {
+            indices = buildMap(n + n / 3 + 1);  // big enough not to rehash
+            for(int k = 0; k < n; k++)
+                if (indices.put(nodes[k], Integer.valueOf(k)) != null)
+                    throw new RuntimeException("Node " + nodes[k] + " was passed to CompactNetwork twice.");
+            }
+
+        // sort the edges by the node they leave (a counting sort), checking them all before writing anything
+        outStart = new int[n + 1];
+        for(int e = 0; e < m; e++)
+            {
+            if (from[e] < 0 || from[e] >= n)
+                throw new RuntimeException("Edge " + e + " comes from node " + from[e] + ", but there are only " + n + " nodes.");
+            if (to[e] < 0 || to[e] >= n)
+                throw new RuntimeException("Edge " + e + " goes to node " + to[e] + ", but there are only " + n + " nodes.");
+            outStart[from[e] + 1]++;
+            }
+        for(int i = 0; i < n; i++)
+            outStart[i + 1] += outStart[i];
+        target = new int[m];
+        this.weights = (weights == null ? null : new double[m]);
+        this.info = (info == null ? null : new Object[m]);
+        int[] next = Arrays.copyOf(outStart, n);
+        for(int e = 0; e < m; e++)
+            {
+            final int f = next[from[e]]++;
+            target[f] = to[e];
+            if (weights != null) this.weights[f] = weights[e];
+            if (info != null) this.info[f] = info[e];
+            }
+
+        // index them by the node they enter, likewise
+        inStart = new int[n + 1];
+        for(int f = 0; f < m; f++)
+            inStart[target[f] + 1]++;
+        for(int i = 0; i < n; i++)
+            inStart[i + 1] += inStart[i];
+        inEdge = new int[m];
+        next = Arrays.copyOf(inStart, n);
+        for(int f = 0; f < m; f++)
+            inEdge[next[target[f]]++] = f;
+        }
+
+
+    //// Primitive access
+
+
+    /** Returns the number of edges. */
+    public int getNumEdges() { return numEdges; }
+
+    /** Returns the index of the node which the given edge leaves.  This is a binary search. */
+    public int getFrom(final int edge)
+        {
+        // find the last node whose edges start at or before this one
+        int lo = 0;
+        int hi = allNodes.numObjs - 1;
+        while(lo < hi)
+            {
+            final int mid = (lo + hi + 1) >>> 1;
+            if (outStart[mid] <= edge) lo = mid;
+            else hi = mid - 1;
+            }
+        return lo;
+        }
+
+    /** Returns the index of the node which the given edge enters. */
+    public int getTo(final int edge) { return target[edge]; }
+
+    /** Returns the info object of the given edge: its info, or its weight as a Double, or null. */
+    public Object getInfo(final int edge)
+        {
+        if (info != null) return info[edge];
+        if (weights != null) return Double.valueOf(weights[edge]);
+        return null;
+        }
+
+    /** Returns the weight of the given edge, as Edge.getWeight() would. */
+    public double getWeight(final int edge)
+        {
+        if (weights != null) return weights[edge];
+        final Object i = (info == null ? null : info[edge]);
+        if (i instanceof Number) return ((Number)i).doubleValue();
+        else if (i instanceof Valuable) return ((Valuable)i).doubleValue();
+        else return 1.0;
+        }
+
+    /** Returns the size of the node's getEdgesOut(...) Bag, without making it.  In an undirected network this counts
+        every edge the node is at either end of, and self-loops twice. */
+    public int getOutDegree(final int node)
+        {
+        final int degree = outStart[node + 1] - outStart[node];
+        return (directed ? degree : degree + inStart[node + 1] - inStart[node]);
+        }
+
+    /** Returns the size of the node's getEdgesIn(...) Bag, without making it. */
+    public int getInDegree(final int node)
+        {
+        return (directed ? inStart[node + 1] - inStart[node] : getOutDegree(node));
+        }
+
+    /** Returns a new Edge which is a view of the given edge. */
+    public Edge getEdge(final int edge)
+        {
+        return view(edge, getFrom(edge));
+        }
+
+    /* Makes an Edge for edge e, which leaves node from.  As in an ordinary Network, its indexFrom and indexTo are its
+       positions in getEdgesOut(from) and getEdgesIn(to).  In an undirected network, a node's Bag holds the edges it leaves
+       and then those it enters. */
+    Edge view(final int e, final int from)
+        {
+        final int to = target[e];
+        final Edge edge = new Edge(allNodes.objs[from], allNodes.objs[to], getInfo(e));
+        edge.owner = this;
+        edge.indexFrom = e - outStart[from];
+        final int position = Arrays.binarySearch(inEdge, inStart[to], inStart[to + 1], e) - inStart[to];
+        edge.indexTo = (directed ? position : outStart[to + 1] - outStart[to] + position);
+        return edge;
+        }
+
+    int indexOf(final Object node)
+        {
+        if (indices == null)
+            {
+            if (!(node instanceof Integer)) return -1;
+            final int i = ((Integer)node).intValue();
+            return (i >= 0 && i < allNodes.numObjs ? i : -1);
+            }
+        final Integer i = (Integer)(indices.get(node));
+        return (i == null ? -1 : i.intValue());
+        }
+
+
+    //// Network methods
+
+
+    public boolean nodeExists(final Object node)
+        {
+        return indexOf(node) >= 0;
+        }
+
+    public int getNodeIndex(final Object node)
+        {
+        final int i = indexOf(node);
+        if (i < 0)
+            throw new RuntimeException( "Object parameter is not a node in the network." );
+        return i;
+        }
+
+    /** Returns a new Bag of new Edges leaving the node.  In an undirected network these are all the node's edges. */
+    public Bag getEdgesOut(final Object node)
+        {
+        final int i = indexOf(node);
+        if (i < 0) return emptyBag;
+        final Bag bag = new Bag(getOutDegree(i));
+        for(int e = outStart[i]; e < outStart[i + 1]; e++)
+            bag.add(view(e, i));
+        if (!directed)
+            for(int k = inStart[i]; k < inStart[i + 1]; k++)
+                bag.add(view(inEdge[k], getFrom(inEdge[k])));
+        return bag;
+        }
+
+    /** Returns a new Bag of new Edges entering the node.  In an undirected network these are all the node's edges. */
+    public Bag getEdgesIn(final Object node)
+        {
+        if (!directed) return getEdgesOut(node);
+        final int i = indexOf(node);
+        if (i < 0) return emptyBag;
+        final Bag bag = new Bag(getInDegree(i));
+        for(int k = inStart[i]; k < inStart[i + 1]; k++)
+            bag.add(view(inEdge[k], getFrom(inEdge[k])));
+        return bag;
+        }
+
+    public Bag getEdges(final Object node, Bag bag)
+        {
+        if (bag == null) bag = new Bag();
+        else bag.clear();
+        if (directed) bag.addAll(getEdgesIn(node));
+        bag.addAll(getEdgesOut(node));
+        return bag;
+        }
+
+    public Edge[][] getAdjacencyMatrix()
+        {
+        final int n = allNodes.numObjs;
+        final Edge[][] matrix = new Edge[n][n];
+        for(int i = 0; i < n; i++)
+            {
+            for(int e = outStart[i]; e < outStart[i + 1]; e++)
+                matrix[i][target[e]] = view(e, i);
+            if (!directed)
+                for(int k = inStart[i]; k < inStart[i + 1]; k++)
+                    {
+                    final int from = getFrom(inEdge[k]);
+                    matrix[i][from] = view(inEdge[k], from);
+                    }
+            }
+        return matrix;
+        }
+
+    public Edge[][][] getMultigraphAdjacencyMatrix()
+        {
+        final int n = allNodes.numObjs;
+        final Edge[][][] matrix = new Edge[n][n][];
+        final int[] count = new int[n];
+        for(int i = 0; i < n; i++)
+            {
+            final Edge[][] row = matrix[i];
+            // count the edges to each other node, then fill their arrays from the back
+            for(int e = outStart[i]; e < outStart[i + 1]; e++)
+                count[target[e]]++;
+            if (!directed)
+                for(int k = inStart[i]; k < inStart[i + 1]; k++)
+                    count[getFrom(inEdge[k])]++;
+            for(int e = outStart[i]; e < outStart[i + 1]; e++)
+                {
+                final int j = target[e];
+                if (row[j] == null) row[j] = new Edge[count[j]];
+                row[j][--count[j]] = view(e, i);
+                }
+            if (!directed)
+                for(int k = inStart[i]; k < inStart[i + 1]; k++)
+                    {
+                    final int j = getFrom(inEdge[k]);
+                    if (row[j] == null) row[j] = new Edge[count[j]];
+                    row[j][--count[j]] = view(inEdge[k], j);
+                    }
+            for(int j = 0; j < n; j++)
+                if (row[j] == null)
+                    row[j] = emptyEdgeArray;
+            }
+        return matrix;
+        }
+
+    public Network getGraphComplement(final boolean allowSelfLoops)
+        {
+        return new Network(this).getGraphComplement(allowSelfLoops);
+        }
+
+    Network copyTo(final Network clone)
+        {
+        final int n = allNodes.numObjs;
+        final int[] from = new int[numEdges];
+        for(int i = 0; i < n; i++)
+            for(int e = outStart[i]; e < outStart[i + 1]; e++)
+                from[e] = i;
+        Object[] infos = null;
+        if (info != null || weights != null)
+            {
+            infos = new Object[numEdges];
+            for(int e = 0; e < numEdges; e++)
+                infos[e] = getInfo(e);
+            }
+        clone.directed = directed;  // Network(Network) sets this afterwards anyway, but addEdges(...) needs it now
+        clone.addEdges(allNodes.toArray(), from, target, infos);
+        return clone;
+        }
+
+
+    //// Modifications, which aren't allowed
+
+
+    RuntimeException unmodifiable()
+        {
+        return new RuntimeException("A CompactNetwork cannot be modified.");
+        }
+
+    public void reset(final boolean directed) { throw unmodifiable(); }
+    public void reset() { throw unmodifiable(); }
+    public void addNode(final Object node) { throw unmodifiable(); }
+    public void addEdge(final Edge edge) { throw unmodifiable(); }
+    public void addEdges(final Object[] nodes, final int[] from, final int[] to, final Object[] info) { throw unmodifiable(); }
+    public Edge removeEdge(final Edge edge) { throw unmodifiable(); }
+    public void removeAllEdges() { throw unmodifiable(); }
+    public Object removeNode(final Object node) { throw unmodifiable(); }
+    public Bag clear() { throw unmodifiable(); }
+    public void reverseAllEdges() { throw unmodifiable(); }
+    }
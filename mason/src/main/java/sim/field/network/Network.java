@@ -78,6 +78,10 @@ import java.util.*;
     <tr><td><b>getEdges()</b><td><i>Modifiable</i>&nbsp;Bag&nbsp;of&nbsp;all&nbsp;edges<td><i>Modifiable</i>&nbsp;Bag&nbsp;of&nbsp;all&nbsp;edges
     </table>
         
+    <p><b>Listening for Changes.</b>  If you need to know whenever the Network changes, for example to keep
+    statistics about it up to date, register a NetworkListener with addListener(...).  It will be told about every
+    node and edge added or removed, as each happens.  A Network with no listeners pays nothing for this.
+        
     <p><b>Hypergraphs.</b> Network is binary.  In the future we may provide a Hypergraph facility if it's needed, but for now you'll
     need to make "multi-edge nodes" and store them in the field, then hook them to your nodes via Edges.  For example, to store the
     relationship foo(node1, node2, node3), here's one way to do it:
@@ -109,8 +113,18 @@ public class Network implements java.io.Serializable
     /** Resets the network, clearing it of nodes and edges. */
     public void reset(boolean directed)
         {
-        clear();
         this.directed = directed;
+        reset();
+        }
+    
+    /** Clears the network of nodes and edges in place, keeping the capacity of indexOutInHash and allNodes,
+        so that it may be refilled without reallocating them.  Unlike clear(), nothing is returned, and allNodes
+        remains the same Bag. */
+    public void reset()
+        {
+        indexOutInHash.clear();
+        allNodes.clear();
+        fireNetworkChanged();
         }
                         
     /** Hashes Network.IndexOutIn structures by Node.  These structures
@@ -125,6 +139,59 @@ public class Network implements java.io.Serializable
     // returned instead of null for those methods which require a guarantee that the returned Bag should never be touched.
     final Bag emptyBag = new Bag();
 
+    // the NetworkListeners, or null if there are none, so that unwatched Networks needn't loop over an empty Bag
+    Bag listeners = null;
+        
+    /** Adds a listener to be told of every subsequent change to the Network.  Copies of the Network don't
+        inherit its listeners. */
+    public void addListener(NetworkListener listener)
+        {
+        if (listener == null)
+            throw new RuntimeException("Attempted to add a null NetworkListener.");
+        if (listeners == null) listeners = new Bag();
+        listeners.add(listener);
+        }
+        
+    /** Removes a listener, returning false if it wasn't listening. */
+    public boolean removeListener(NetworkListener listener)
+        {
+        if (listeners == null || !listeners.removeNondestructively(listener))
+            return false;
+        if (listeners.numObjs == 0) listeners = null;
+        return true;
+        }
+
+    void fireNodeAdded(Object node)
+        {
+        for(int i = 0; i < listeners.numObjs; i++)
+            ((NetworkListener)(listeners.objs[i])).nodeAdded(this, node);
+        }
+        
+    void fireNodeRemoved(Object node)
+        {
+        for(int i = 0; i < listeners.numObjs; i++)
+            ((NetworkListener)(listeners.objs[i])).nodeRemoved(this, node);
+        }
+        
+    void fireEdgeAdded(Edge edge)
+        {
+        for(int i = 0; i < listeners.numObjs; i++)
+            ((NetworkListener)(listeners.objs[i])).edgeAdded(this, edge);
+        }
+        
+    void fireEdgeRemoved(Edge edge)
+        {
+        for(int i = 0; i < listeners.numObjs; i++)
+            ((NetworkListener)(listeners.objs[i])).edgeRemoved(this, edge);
+        }
+        
+    void fireNetworkChanged()
+        {
+        if (listeners == null) return;
+        for(int i = 0; i < listeners.numObjs; i++)
+            ((NetworkListener)(listeners.objs[i])).networkChanged(this);
+        }
+
     /** Creates and returns an adjacency list.  If you're doing lots of operations (especially network traversals)
         which won't effect the topology of the network, an adjacency list structure might be more efficient for you to access rather than lots of
         calls to getEdgesIn() and getEdgesOut() etc.  Building the list is an O(#edges) operation.
@@ -371,6 +438,7 @@ public class Network implements java.io.Serializable
         allNodes.add( node );
         IndexOutIn ioih = new IndexOutIn( allNodes.numObjs-1, null, null );
         indexOutInHash.put( node, ioih );
+        if (listeners != null) fireNodeAdded( node );
         }
 
     /** Add an edge, storing info as the edge's associated information object. 
@@ -438,6 +506,81 @@ public class Network implements java.io.Serializable
             }
         inNode.in.add( edge );
         edge.indexTo = inNode.in.numObjs-1;
+        if (listeners != null) fireEdgeAdded( edge );
+        }
+
+    /** Adds the given nodes, and then edges among them, all at once.  Edge i goes from nodes[from[i]] to nodes[to[i]],
+        and its info object is info[i], or null if info is null.  Nodes already in the Network are left as they are.
+        For large networks this is much faster than calling addNode(...) and addEdge(...) over and over: each node is hashed
+        just once rather than once per edge, and every Bag is made big enough for its new edges to begin with rather than
+        growing by doubling.  See also NetworkLoader, which reads edges from a file. */
+    public void addEdges( final Object[] nodes, final int[] from, final int[] to, final Object[] info )
+        {
+        final int n = nodes.length;
+        final int m = from.length;
+        if (to.length != m || (info != null && info.length != m))
+            throw new RuntimeException("Edge arrays passed to addEdges(...) are not all the same length.");
+
+        // count the edges each node will gain
+        final int[] outCount = new int[n];
+        final int[] inCount = (directed ? new int[n] : outCount);
+        for(int e = 0; e < m; e++)
+            {
+            outCount[from[e]]++;
+            inCount[to[e]]++;
+            }
+
+        // look up, or add, each node just once
+        if (allNodes.numObjs == 0)
+            indexOutInHash = buildMap(n + n / 3 + 1);  // big enough not to rehash
+        allNodes.resize(allNodes.numObjs + n);
+        final IndexOutIn[] ioi = new IndexOutIn[n];
+        for(int k = 0; k < n; k++)
+            {
+            ioi[k] = (IndexOutIn)(indexOutInHash.get(nodes[k]));
+            if (ioi[k] == null)
+                {
+                allNodes.add( nodes[k] );
+                ioi[k] = new IndexOutIn( allNodes.numObjs-1, null, null );
+                indexOutInHash.put( nodes[k], ioi[k] );
+                if (listeners != null) fireNodeAdded( nodes[k] );
+                }
+            }
+
+        // make room in each Bag
+        for(int k = 0; k < n; k++)
+            {
+            final IndexOutIn node = ioi[k];
+            if (outCount[k] > 0)
+                {
+                if (node.out == null)
+                    {
+                    if (!directed && node.in != null) node.out = node.in;
+                    else node.out = new Bag(outCount[k]);
+                    if (!directed) node.in = node.out;
+                    }
+                node.out.resize(node.out.numObjs + outCount[k]);
+                }
+            if (directed && inCount[k] > 0)
+                {
+                if (node.in == null) node.in = new Bag(inCount[k]);
+                node.in.resize(node.in.numObjs + inCount[k]);
+                }
+            }
+
+        // add the edges straight into the Bags
+        for(int e = 0; e < m; e++)
+            {
+            final Edge edge = new Edge( nodes[from[e]], nodes[to[e]], (info == null ? null : info[e]) );
+            edge.owner = this;
+            final Bag out = ioi[from[e]].out;
+            out.add( edge );
+            edge.indexFrom = out.numObjs-1;
+            final Bag in = ioi[to[e]].in;
+            in.add( edge );
+            edge.indexTo = in.numObjs-1;
+            if (listeners != null) fireEdgeAdded( edge );
+            }
         }
 
     /** Removes the given edge, then changes its from, to, and info values to the provided ones,
@@ -522,6 +665,7 @@ public class Network implements java.io.Serializable
                 else throw new InternalError("This shouldn't ever happen: #2");
                 }
             }
+        if (listeners != null) fireEdgeRemoved( edge );
         // return the edge
         return edge;
         }
@@ -540,6 +684,7 @@ public class Network implements java.io.Serializable
             if (ioi.out != null)
                 ioi.out.clear();
             }
+        fireNetworkChanged();
         }
 
     /** Removes a node, deleting all incoming and outgoing edges from the Field as well.  Returns the node,
@@ -572,6 +717,7 @@ public class Network implements java.io.Serializable
                 
         // finally, delete the ioi
         indexOutInHash.remove(node);
+        if (listeners != null) fireNodeRemoved( node );
 
         // return the node
         return node;
@@ -584,6 +730,7 @@ public class Network implements java.io.Serializable
         indexOutInHash = buildMap(ANY_SIZE);
         Bag retval = allNodes;
         allNodes = new Bag();
+        fireNetworkChanged();
         return retval;
         }
     
@@ -695,6 +842,7 @@ public class Network implements java.io.Serializable
                     e.indexTo = tmpI;
                     }
             }
+        fireNetworkChanged();
         }
     
     
@@ -0,0 +1,32 @@
+/*
+  Copyright 2019 by Sean Luke and George Mason University
+  Licensed under the Academic Free License version 3.0
+  See the file "LICENSE" for more information
+*/
+
+package sim.field.network;
+
+/** Something which is told whenever a Network it has been added to (with Network.addListener(...)) changes.
+    Events are sent after the change has been made.  Adding an edge whose nodes are not yet in the Network
+    first sends nodeAdded(...) for each new node, then edgeAdded(...); removing a node first sends edgeRemoved(...)
+    for each of its edges, then nodeRemoved(...).  Edges passed to edgeRemoved(...) still know their from and to nodes.
+
+    <p>Changes made wholesale -- clear(), reset(...), removeAllEdges(), and reverseAllEdges() -- send just
+    networkChanged(...), after which a listener should look at the Network afresh.
+
+    <p>Listeners are Serializable because they are checkpointed along with the Network.  They are called
+    from whichever thread modified the Network, and should be quick about it. */
+
+public interface NetworkListener extends java.io.Serializable
+    {
+    /** Called after a node has been added. */
+    public void nodeAdded(Network network, Object node);
+    /** Called after a node, and all of its edges, have been removed. */
+    public void nodeRemoved(Network network, Object node);
+    /** Called after an edge has been added. */
+    public void edgeAdded(Network network, Edge edge);
+    /** Called after an edge has been removed. */
+    public void edgeRemoved(Network network, Edge edge);
+    /** Called after the network has been changed wholesale, with no events for the individual nodes and edges. */
+    public void networkChanged(Network network);
+    }
@@ -0,0 +1,311 @@
+/*
+  Copyright 2019 by Sean Luke and George Mason University
+  Licensed under the Academic Free License version 3.0
+  See the file "LICENSE" for more information
+*/
+
+package sim.field.network;
+import sim.util.*;
+import java.io.*;
+import java.util.*;
+
+/**
+   NETWORKLOADER.java
+
+   <p>This class provides utility methods for loading networks from edge list files, either into an existing
+   Network or into a new CompactNetwork.
+
+   <p>An edge list file has one edge per line, written as the from node, then the to node, then optionally a weight,
+   set off with spaces, tabs, or commas.  Lines which are blank, or which start with # or %, are ignored, as are any
+   columns after the third.  This is the format of most of the network datasets you'll find online.
+
+   <p>If every node in the file is a non-negative integer (written plainly, like 12 but not 012 or +12), the nodes are
+   Integers.  They are sorted, so node i in allNodes is the i-th smallest; and if they are exactly 0 through n-1, node i
+   is simply the Integer i.  Otherwise every node is a String, and the nodes are in the order in which they first
+   appear in the file.  If any line has a weight, every edge's info object is its weight as a Double (1.0 for
+   lines without one); otherwise the info objects are null.
+
+   <p>The file is read just once, into primitive arrays, and the network is then built all at once with
+   Network.addEdges(...) or the CompactNetwork constructor.  The stream is not closed.
+*/
+
+public class NetworkLoader
+    {
+    static final int BUFFER_SIZE = 65536;
+
+    /** Reads an edge list from the stream and adds its nodes and edges to the given network, which is returned. */
+    public static Network loadEdgeList(InputStream stream, Network network) throws IOException
+        {
+        EdgeList list = new EdgeList(stream);
+        network.addEdges(list.nodes, list.from, list.to, list.getInfo());
+        return network;
+        }
+
+    /** Reads an edge list from the stream into a new CompactNetwork, which is returned. */
+    public static CompactNetwork loadCompactNetwork(InputStream stream, boolean directed) throws IOException
+        {
+        EdgeList list = new EdgeList(stream);
+        return new CompactNetwork(directed, list.nodes, list.from, list.to, list.weights);
+        }
+
+
+    /* An edge list read from a stream.  While every node seen so far is a plain non-negative integer, the ids are
+       the integers themselves, to be sorted and renumbered at the end.  On the first node which isn't, we switch to
+       Strings, numbered in the order in which they first appeared. */
+    static class EdgeList
+        {
+        Object[] nodes;
+        int[] from;
+        int[] to;
+        double[] weights;  // or null
+
+        final InputStream stream;
+        final byte[] buffer = new byte[BUFFER_SIZE];
+        int pos = 0;
+        int len = 0;
+        int line = 1;
+
+        // the current token is buffer[start ... end-1], or token[0 ... end-1] if it straddled two reads
+        int start;
+        int end;
+        byte[] token = new byte[64];
+        boolean tokenInBuffer;
+        boolean inToken;
+        int c;  // the byte following the current token
+
+        IntBag fromIds = new IntBag();
+        IntBag toIds = new IntBag();
+        DoubleBag weightBag = null;
+        HashMap names = null;   // String -> Integer, once we've switched to Strings
+        Bag nameList = null;
+        int pendingFrom;
+
+        EdgeList(InputStream stream) throws IOException
+            {
+            this.stream = stream;
+            read();
+            finish();
+            }
+
+        Object[] getInfo()
+            {
+            if (weights == null) return null;
+            Object[] info = new Object[weights.length];
+            for(int e = 0; e < info.length; e++)
+                info[e] = Double.valueOf(weights[e]);
+            return info;
+            }
+
+        // returns the next byte, or -1 at the end of the stream
+        int next() throws IOException
+            {
+            if (pos == len)
+                {
+                if (inToken)  // save what we have of the token before the buffer is overwritten
+                    {
+                    int l = pos - start;
+                    if (end + l > token.length) token = Arrays.copyOf(token, Math.max(token.length * 2, end + l));
+                    System.arraycopy(buffer, start, token, end, l);
+                    end += l;
+                    start = 0;
+                    }
+                len = stream.read(buffer, 0, buffer.length);
+                pos = 0;
+                if (len <= 0) { len = 0; return -1; }
+                }
+            return buffer[pos++];
+            }
+
+        // reads the next token on this line, leaving it in buffer[] or token[], and returns false if there's none left
+        boolean nextToken() throws IOException
+            {
+            while(c == ' ' || c == '\t' || c == ',' || c == '\r')
+                c = next();
+            if (c == '\n' || c == -1) return false;
+            start = pos - 1;
+            end = 0;
+            inToken = true;
+            while(c != ' ' && c != '\t' && c != ',' && c != '\r' && c != '\n' && c != -1)
+                c = next();
+            inToken = false;
+            if (end == 0)  // all in the buffer
+                {
+                tokenInBuffer = true;
+                end = (c == -1 ? len : pos - 1) - start;
+                }
+            else    // straddled reads: the rest of the token is at the start of the buffer
+                {
+                tokenInBuffer = false;
+                int l = (c == -1 ? 0 : pos - 1);
+                if (end + l > token.length) token = Arrays.copyOf(token, Math.max(token.length * 2, end + l));
+                System.arraycopy(buffer, 0, token, end, l);
+                end += l;
+                }
+            return true;
+            }
+
+        byte tokenByte(int i) { return (tokenInBuffer ? buffer[start + i] : token[i]); }
+
+        String tokenString()
+            {
+            try
+                {
+                return (tokenInBuffer ? new String(buffer, start, end, "UTF-8") : new String(token, 0, end, "UTF-8"));
+                }
+            catch (UnsupportedEncodingException e) { throw new RuntimeException(e); }  // can't happen
+            }
+
+        // returns the token as an int if it's a plain non-negative integer, else -1
+        int tokenInt()
+            {
+            if (end > 10 || (end > 1 && tokenByte(0) == '0')) return -1;
+            long val = 0;
+            for(int i = 0; i < end; i++)
+                {
+                int d = tokenByte(i) - '0';
+                if (d < 0 || d > 9) return -1;
+                val = val * 10 + d;
+                }
+            return (val > Integer.MAX_VALUE ? -1 : (int)val);
+            }
+
+        // returns the id of the current token, switching to Strings if need be
+        int tokenId(boolean secondOnLine)
+            {
+            if (names == null)
+                {
+                int i = tokenInt();
+                if (i >= 0) return i;
+                switchToStrings(secondOnLine);
+                }
+            return intern(tokenString());
+            }
+
+        int intern(String name)
+            {
+            Integer id = (Integer)(names.get(name));
+            if (id == null)
+                {
+                id = Integer.valueOf(nameList.numObjs);
+                names.put(name, id);
+                nameList.add(name);
+                }
+            return id.intValue();
+            }
+
+        // renumbers the integer ids read so far as Strings, in order of appearance.  If the current token is the
+        // second on its line, the first has been read as an integer but not yet added to fromIds: it's in pendingFrom.
+        void switchToStrings(boolean secondOnLine)
+            {
+            names = new HashMap();
+            nameList = new Bag();
+            for(int e = 0; e < fromIds.numObjs; e++)
+                {
+                fromIds.objs[e] = intern(Integer.toString(fromIds.objs[e]));
+                toIds.objs[e] = intern(Integer.toString(toIds.objs[e]));
+                }
+            if (secondOnLine) pendingFrom = intern(Integer.toString(pendingFrom));
+            }
+
+        void read() throws IOException
+            {
+            c = next();
+            while(c != -1)
+                {
+                while(c == ' ' || c == '\t' || c == ',' || c == '\r')
+                    c = next();
+                if (c == '#' || c == '%')  // comment
+                    {
+                    while(c != '\n' && c != -1) c = next();
+                    }
+                else if (nextToken())
+                    {
+                    pendingFrom = tokenId(false);
+                    if (!nextToken())
+                        throw new IOException("Line " + line + " has a from node but no to node.");
+                    int t = tokenId(true);
+                    fromIds.add(pendingFrom);
+                    toIds.add(t);
+                    if (nextToken())
+                        {
+                        double w;
+                        try { w = Double.parseDouble(tokenString()); }
+                        catch (NumberFormatException e)
+                            { throw new IOException("Line " + line + " has a weight which isn't a number: " + tokenString()); }
+                        if (weightBag == null)
+                            {
+                            weightBag = new DoubleBag(fromIds.objs.length);
+                            for(int e = 0; e < fromIds.numObjs - 1; e++)
+                                weightBag.add(1.0);
+                            }
+                        weightBag.add(w);
+                        }
+                    else if (weightBag != null) weightBag.add(1.0);
+                    while(c != '\n' && c != -1) c = next();  // skip any further columns
+                    }
+                if (c == '\n') { line++; c = next(); }
+                }
+            }
+
+        void finish()
+            {
+            int m = fromIds.numObjs;
+            from = (fromIds.objs.length == m ? fromIds.objs : Arrays.copyOf(fromIds.objs, m));
+            to = (toIds.objs.length == m ? toIds.objs : Arrays.copyOf(toIds.objs, m));
+            fromIds = toIds = null;
+            if (weightBag != null) weights = (weightBag.objs.length == m ? weightBag.objs : Arrays.copyOf(weightBag.objs, m));
+            weightBag = null;
+
+            if (names != null)
+                {
+                nodes = nameList.toArray();
+                return;
+                }
+
+            int max = -1;
+            for(int e = 0; e < m; e++)
+                max = Math.max(max, Math.max(from[e], to[e]));
+
+            if (max <= 4 * m)
+                {
+                // the ids are dense enough to renumber with a table, in order, without sorting
+                int[] index = new int[max + 1];
+                for(int e = 0; e < m; e++)
+                    index[from[e]] = index[to[e]] = 1;
+                int n = 0;
+                for(int id = 0; id <= max; id++)
+                    if (index[id] == 1) index[id] = n++;
+                    else index[id] = -1;
+                nodes = new Object[n];
+                for(int id = 0; id <= max; id++)
+                    if (index[id] >= 0)
+                        nodes[index[id]] = Integer.valueOf(id);
+                if (n != max + 1)   // else the ids are already 0 ... n-1
+                    for(int e = 0; e < m; e++)
+                        {
+                        from[e] = index[from[e]];
+                        to[e] = index[to[e]];
+                        }
+                return;
+                }
+
+            // otherwise sort the distinct ids
+            int[] ids = new int[2 * m];
+            System.arraycopy(from, 0, ids, 0, m);
+            System.arraycopy(to, 0, ids, m, m);
+            Arrays.sort(ids);
+            int n = 0;
+            for(int k = 0; k < ids.length; k++)
+                if (n == 0 || ids[k] != ids[n - 1])
+                    ids[n++] = ids[k];
+            nodes = new Object[n];
+            for(int k = 0; k < n; k++)
+                nodes[k] = Integer.valueOf(ids[k]);
+            for(int e = 0; e < m; e++)
+                {
+                from[e] = Arrays.binarySearch(ids, 0, n, from[e]);
+                to[e] = Arrays.binarySearch(ids, 0, n, to[e]);
+                }
+            }
+        }
+    }
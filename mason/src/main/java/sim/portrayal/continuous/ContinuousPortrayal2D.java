@@ -7,6 +7,7 @@
 package sim.portrayal.continuous;
 import sim.portrayal.*;
 import sim.portrayal.simple.*;
+import sim.field.*;
 import sim.field.continuous.*;
 import sim.util.*;
 import java.awt.*;
@@ -16,7 +17,7 @@ import sim.portrayal.inspector.*;
 import sim.display.*;
 
 /**
-   Portrays Continuous2D fields.  When asked to portray objects, this field computes the buckets
+   Portrays Continuous2D and SortedContinuous2D fields.  When asked to portray objects, this field computes the buckets
    covered by the requested region, then includes an additional boundary of two buckets in each
    direction just in case objects leak over the boundary region.
    
@@ -31,7 +32,7 @@ public class ContinuousPortrayal2D extends FieldPortrayal2D
 
     public void setField(Object field)
         {
-        if (field instanceof Continuous2D) super.setField(field);
+        if (field instanceof Continuous2D || field instanceof SortedContinuous2D) super.setField(field);
         else throw new RuntimeException("Invalid field for ContinuousPortrayal2D: " + field);
         }
 
@@ -41,6 +42,20 @@ public class ContinuousPortrayal2D extends FieldPortrayal2D
         super.setField(field);
         }
 
+    // The portrayal draws both Continuous2D and SortedContinuous2D, which share no superclass beyond SparseField2D
+
+    Bag getAllObjects(Object field)
+        {
+        if (field instanceof SortedContinuous2D) return ((SortedContinuous2D)field).getAllObjects();
+        return ((Continuous2D)field).getAllObjects();
+        }
+
+    double getDiscretization(Object field)
+        {
+        if (field instanceof SortedContinuous2D) return ((SortedContinuous2D)field).discretization;
+        return ((Continuous2D)field).discretization;
+        }
+
         
     public Portrayal getDefaultPortrayal()
         {
@@ -49,7 +64,7 @@ public class ContinuousPortrayal2D extends FieldPortrayal2D
         
     public Point2D.Double getRelativeObjectPosition(Object location, Object otherObjectLocation, DrawInfo2D otherObjectInfo)
         {
-        final Continuous2D field = (Continuous2D)this.field;
+        final SparseField2D field = (SparseField2D)this.field;
         if (field==null) return null;
 
         Double2D loc = (Double2D) location;
@@ -65,11 +80,12 @@ public class ContinuousPortrayal2D extends FieldPortrayal2D
         {
         synchronized(info.gui.state.schedule)
             {
-            final Continuous2D field = (Continuous2D)this.field;
+            final SparseField2D field = (SparseField2D)this.field;
             if (field==null) return null;
                 
-            final double xScale = info.draw.width / field.width;
-            final double yScale = info.draw.height / field.height;
+            final Double2D dimensions = field.getDimensions();
+            final double xScale = info.draw.width / dimensions.x;
+            final double yScale = info.draw.height / dimensions.y;
             return new Double2D(xScale, yScale);
             }
         }
@@ -100,7 +116,10 @@ public class ContinuousPortrayal2D extends FieldPortrayal2D
                     else if (object instanceof Constrained)
                         loc = (Double2D)((Constrained)object).constrainLocation(field, loc);
                     if (loc != null)
-                        ((Continuous2D)field).setObjectLocation(object, loc);
+                        {
+                        if (field instanceof SortedContinuous2D) ((SortedContinuous2D)field).setObjectLocation(object, loc);
+                        else ((Continuous2D)field).setObjectLocation(object, loc);
+                        }
                     }
                 }
             }
@@ -133,9 +152,9 @@ public class ContinuousPortrayal2D extends FieldPortrayal2D
         {
         synchronized(gui.state.schedule)
             {
-            final Continuous2D field = (Continuous2D)this.field;
+            final SparseField2D field = (SparseField2D)this.field;
             if (field==null) return null;
-            return field.getObjectLocation(object);
+            return field.getObjectLocationAsDouble2D(object);
             }
         }
 
@@ -143,11 +162,12 @@ public class ContinuousPortrayal2D extends FieldPortrayal2D
         {
         synchronized(fieldPortrayalInfo.gui.state.schedule)
             {
-            final Continuous2D field = (Continuous2D)this.field;
+            final SparseField2D field = (SparseField2D)this.field;
             if (field==null) return null;
                 
-            final double xScale = fieldPortrayalInfo.draw.width / field.width;
-            final double yScale = fieldPortrayalInfo.draw.height / field.height;
+            final Double2D dimensions = field.getDimensions();
+            final double xScale = fieldPortrayalInfo.draw.width / dimensions.x;
+            final double yScale = fieldPortrayalInfo.draw.height / dimensions.y;
             DrawInfo2D newinfo = new DrawInfo2D(fieldPortrayalInfo.gui, fieldPortrayalInfo.fieldPortrayal, new Rectangle2D.Double(0,0, xScale, yScale), fieldPortrayalInfo.clip, fieldPortrayalInfo);  // we don't do further clipping 
             newinfo.precise = fieldPortrayalInfo.precise;
 
@@ -178,13 +198,16 @@ public class ContinuousPortrayal2D extends FieldPortrayal2D
         
     protected void hitOrDraw(Graphics2D graphics, DrawInfo2D info, Bag putInHere)
         {
-        final Continuous2D field = (Continuous2D)this.field;
+        final SparseField2D field = (SparseField2D)this.field;
         if (field==null) return;
                 
         boolean objectSelected = !selectedWrappers.isEmpty();
 
-        final double xScale = info.draw.width / field.width;
-        final double yScale = info.draw.height / field.height;
+        final Double2D dimensions = field.getDimensions();
+        final double width = dimensions.x;
+        final double height = dimensions.y;
+        final double xScale = info.draw.width / width;
+        final double yScale = info.draw.height / height;
         final double startx = (int)Math.floor((info.clip.x - info.draw.x) / xScale);
         final double starty = (int)Math.floor((info.clip.y - info.draw.y) / yScale);
         int endx = /*startx +*/ (int)Math.floor((info.clip.x - info.draw.x + info.clip.width) / xScale) + /*2*/ 1;  // with rounding, width be as much as 1 off
@@ -197,15 +220,15 @@ public class ContinuousPortrayal2D extends FieldPortrayal2D
         // hit/draw the objects one by one -- perhaps for large numbers of objects it would
         // be smarter to grab the objects out of the buckets that specifically are inside
         // our range...
-        Bag objects = field.getAllObjects();
-        final double discretizationOverlap = field.discretization;
+        Bag objects = getAllObjects(field);
+        final double discretizationOverlap = getDiscretization(field);
         for(int x=0;x<objects.numObjs;x++)
             {
             Object object = (objects.objs[x]);
-            Double2D objectLoc = field.getObjectLocation(object);
+            Double2D objectLoc = field.getObjectLocationAsDouble2D(object);
                         
             if (displayingToroidally)
-                objectLoc = new Double2D(field.tx(objectLoc.x), field.tx(objectLoc.y));
+                objectLoc = new Double2D(tx(objectLoc.x, width), tx(objectLoc.y, height));
                                                 
             for(int i = 0; i < toroidalX.length; i++) 
                 {
@@ -213,8 +236,8 @@ public class ContinuousPortrayal2D extends FieldPortrayal2D
                 if (i == 0)
                     loc = objectLoc;
                 else if (displayingToroidally)  // and i > 0
-                    loc = new Double2D(objectLoc.x + field.width * toroidalX[i],
-                        objectLoc.y + field.height * toroidalY[i]);
+                    loc = new Double2D(objectLoc.x + width * toroidalX[i],
+                        objectLoc.y + height * toroidalY[i]);
                 else
                     break; // no toroidal function
                                 
@@ -259,9 +282,17 @@ public class ContinuousPortrayal2D extends FieldPortrayal2D
         }
 
 
+    // toroidal wrapping, as in Continuous2D.tx(...) and ty(...)
+    static double tx(double x, final double width)
+        {
+        if (x >= 0 && x < width) return x;
+        x = x % width;
+        if (x < 0) x = x + width;
+        return x;
+        }
+
     public LocationWrapper getWrapper(final Object obj, GUIState gui)
         {
-        final Continuous2D field = (Continuous2D)this.field;
         final StableDouble2D w = new StableDouble2D(this, obj, gui);
         return new LocationWrapper( obj, null , this)  // don't care about location
             {
@@ -0,0 +1,83 @@
+/*
+  Copyright 2006 by Sean Luke and George Mason University
+  Licensed under the Academic Free License version 3.0
+  See the file "LICENSE" for more information
+*/
+
+package sim.util;
+import java.util.concurrent.*;
+
+/**
+    A RecursiveAction which processes a range of indices, from start (inclusive) to end (exclusive), on a ForkJoinPool.
+    The range is split up adaptively: it is repeatedly halved, and the upper half handed off to the pool, only so long
+    as other threads appear to be idle.  The rest of the range is then processed directly.  Thus uneven work doesn't
+    leave CPUs sitting around, and even work isn't broken into needlessly small pieces.
+
+    <p>Every handed-off half is joined before compute() returns, even if processing the range (or one of the halves)
+    fails, so no part of the range is still being processed when the caller carries on.  The first failure is then
+    rethrown.
+
+    <p>Used by ParallelSequence to step its Steppables in the shared pool, and by the grids to run bulk
+    operations over stripes of their columns.
+*/
+
+public abstract class AdaptiveSplit extends RecursiveAction
+    {
+    private static final long serialVersionUID = 1;
+
+    /** A thread stops handing off work once it has this many surplus tasks queued. */
+    public static final int MAX_SURPLUS_TASKS = 3;
+
+    protected int start;
+    protected int end;
+    AdaptiveSplit next;  // the next handed-off half to join
+
+    protected AdaptiveSplit(int start, int end)
+        {
+        this.start = start;
+        this.end = end;
+        }
+
+    /** Returns a new AdaptiveSplit, just like this one, over the indices from start (inclusive) to end (exclusive). */
+    protected abstract AdaptiveSplit split(int start, int end);
+
+    /** Processes the indices from start (inclusive) to end (exclusive). */
+    protected abstract void process(int start, int end);
+
+    protected void compute()
+        {
+        int start = this.start;
+        int end = this.end;
+        AdaptiveSplit handedOff = null;
+        while(end - start > 1 && getSurplusQueuedTaskCount() <= MAX_SURPLUS_TASKS)
+            {
+            int mid = (start + end) >>> 1;
+            AdaptiveSplit half = split(mid, end);
+            half.next = handedOff;
+            handedOff = half;
+            half.fork();
+            end = mid;
+            }
+
+        Throwable failure = null;
+        try
+            {
+            process(start, end);
+            }
+        catch (Throwable e) { failure = e; }
+        finally
+            {
+            // if nobody stole our halves, we'll wind up doing them ourselves here.  Wait for all of them even
+            // if something failed, so nobody is still working when we leave
+            for(AdaptiveSplit half = handedOff; half != null; half = half.next)
+                {
+                half.quietlyJoin();
+                if (failure == null && half.isCompletedAbnormally()) failure = half.getException();
+                }
+            }
+
+        if (failure instanceof RuntimeException) throw (RuntimeException) failure;
+        if (failure instanceof Error) throw (Error) failure;
+        if (failure != null) throw new RuntimeException(failure);
+        }
+    }
@@ -548,4 +548,15 @@ public class Bag implements java.util.Collection, java.io.Serializable, Cloneabl
             canRemove = false;
             }
         }
+
+    // Writes out only the objects actually in the Bag, not the empty space beyond them, which
+    // can make a big difference in checkpoints.  The serialized form is the same as the default one.
+    private void writeObject(java.io.ObjectOutputStream p)
+        throws java.io.IOException
+        {
+        java.io.ObjectOutputStream.PutField fields = p.putFields();
+        fields.put("objs", objs.length == numObjs ? objs : java.util.Arrays.copyOf(objs, numObjs));
+        fields.put("numObjs", numObjs);
+        p.writeFields();
+        }
     }
@@ -253,17 +253,31 @@ public class Heap implements java.io.Serializable
     */
     public Heap merge(Heap other) 
         {
-        int n = this.numElem + other.numElem;
+        // other may be a subclass (such as a calendar queue) which doesn't use keys and objects directly
+        Comparable[] otherKeys = other.getKeys();
+        Object[] otherObjects = other.getObjects();
+        int n = this.numElem + otherKeys.length;
         Comparable[] combinedKeys = new Comparable[n];
         Object[] combinedObjects = new Object[n];
         
         System.arraycopy(keys, 0, combinedKeys, 0, this.numElem);
-        System.arraycopy(other.keys, 0, combinedKeys, this.numElem, other.numElem);
+        System.arraycopy(otherKeys, 0, combinedKeys, this.numElem, otherKeys.length);
 
         System.arraycopy(objects, 0, combinedObjects, 0, this.numElem);
-        System.arraycopy(other.objects, 0, combinedObjects, this.numElem, other.numElem);
+        System.arraycopy(otherObjects, 0, combinedObjects, this.numElem, otherObjects.length);
 
         return new Heap(combinedKeys, combinedObjects);
         }
-    
+
+    // Writes out only the elements actually in the heap, not the empty space beyond them.
+    // The serialized form is the same as the default one.
+    private void writeObject(java.io.ObjectOutputStream p)
+        throws java.io.IOException
+        {
+        java.io.ObjectOutputStream.PutField fields = p.putFields();
+        fields.put("keys", keys == null || keys.length == numElem ? keys : java.util.Arrays.copyOf(keys, numElem));
+        fields.put("objects", objects == null || objects.length == numElem ? objects : java.util.Arrays.copyOf(objects, numElem));
+        fields.put("numElem", numElem);
+        p.writeFields();
+        }
     }
@@ -0,0 +1,298 @@
+/*
+  Copyright 2006 by Sean Luke and George Mason University
+  Licensed under the Academic Free License version 3.0
+  See the file "LICENSE" for more information
+*/
+
+package sim.util;
+import java.util.*;
+
+/**
+    An open-addressing Map whose keys are 2D integer coordinates, given as Int2D or MutableInt2D objects.
+    The coordinates of a key are packed into a single long and stored in a primitive array, so looking
+    up, adding, or removing a value never calls hashCode() or equals() on the key, never holds onto the key
+    object, and (once the table has grown to size) never allocates.  You can also look up values
+    directly by their coordinates with get(x, y), which requires no key object at all.
+
+    <p>Int2DMap is used by SparseGrid2D and Continuous2D when they are built with primitive maps.  Collisions are
+    resolved by linear probing, and removal shifts later entries back rather than leaving tombstones.
+
+    <p>Int2DMap does not permit null values, nor keys other than Int2D and MutableInt2D: get() and
+    containsKey() return null or false for such keys, and put() throws an exception.  Iterating
+    over the keys produces new Int2D objects.
+*/
+
+public class Int2DMap extends AbstractMap implements java.io.Serializable
+    {
+    private static final long serialVersionUID = 1;
+
+    static final int MINIMUM_CAPACITY = 16;
+
+    long[] keys;
+    Object[] values;  // null means the slot is empty
+    int numElem;
+    int mask;
+
+    /** Creates an empty map. */
+    public Int2DMap()
+        {
+        this(0);
+        }
+
+    /** Creates an empty map able to hold about the given number of entries before it must grow. */
+    public Int2DMap(int expectedSize)
+        {
+        int capacity = MINIMUM_CAPACITY;
+        while(capacity < expectedSize * 2 && capacity < (1 << 30)) capacity <<= 1;
+        keys = new long[capacity];
+        values = new Object[capacity];
+        mask = capacity - 1;
+        }
+
+    /** Packs the coordinates into a single long. */
+    public static long pack(int x, int y)
+        {
+        return (((long) x) << 32) | (y & 0xFFFFFFFFL);
+        }
+
+    // we need the full long shuffled down into the low bits, since x lives in the high word
+    static int hash(long key)
+        {
+        key ^= (key >>> 33);
+        key *= 0xff51afd7ed558ccdL;
+        key ^= (key >>> 33);
+        key *= 0xc4ceb9fe1a85ec53L;
+        key ^= (key >>> 33);
+        return (int) key;
+        }
+
+    // returns the slot holding the key, or -1
+    int find(long key)
+        {
+        long[] keys = this.keys;
+        Object[] values = this.values;
+        int mask = this.mask;
+        int i = hash(key) & mask;
+        while(values[i] != null)
+            {
+            if (keys[i] == key) return i;
+            i = (i + 1) & mask;
+            }
+        return -1;
+        }
+
+    // returns the packed key for the given object, or throws an exception.
+    static long packKey(Object key)
+        {
+        if (key instanceof Int2D) { Int2D k = (Int2D) key; return pack(k.x, k.y); }
+        if (key instanceof MutableInt2D) { MutableInt2D k = (MutableInt2D) key; return pack(k.x, k.y); }
+        throw new ClassCastException("Int2DMap keys must be Int2D or MutableInt2D, not " + key);
+        }
+
+    static boolean isKey(Object key)
+        {
+        return (key instanceof Int2D || key instanceof MutableInt2D);
+        }
+
+    /** Returns the value stored at the given coordinates, or null. */
+    public Object get(int x, int y)
+        {
+        int i = find(pack(x, y));
+        if (i < 0) return null;
+        return values[i];
+        }
+
+    public Object get(Object key)
+        {
+        if (!isKey(key)) return null;
+        int i = find(packKey(key));
+        if (i < 0) return null;
+        return values[i];
+        }
+
+    public boolean containsKey(Object key)
+        {
+        if (!isKey(key)) return false;
+        return find(packKey(key)) >= 0;
+        }
+
+    public Object put(Object key, Object value)
+        {
+        return put(packKey(key), value);
+        }
+
+    /** Stores the value at the given coordinates, returning the value previously stored there, or null. */
+    public Object put(int x, int y, Object value)
+        {
+        return put(pack(x, y), value);
+        }
+
+    Object put(long key, Object value)
+        {
+        if (value == null)
+            throw new NullPointerException("Int2DMap does not permit null values");
+        long[] keys = this.keys;
+        Object[] values = this.values;
+        int mask = this.mask;
+        int i = hash(key) & mask;
+        while(values[i] != null)
+            {
+            if (keys[i] == key)
+                {
+                Object old = values[i];
+                values[i] = value;
+                return old;
+                }
+            i = (i + 1) & mask;
+            }
+        keys[i] = key;
+        values[i] = value;
+        numElem++;
+        if (numElem * 2 > values.length)  // keep the load factor at or below 1/2
+            rehash(values.length << 1);
+        return null;
+        }
+
+    void rehash(int capacity)
+        {
+        long[] oldKeys = keys;
+        Object[] oldValues = values;
+        keys = new long[capacity];
+        values = new Object[capacity];
+        mask = capacity - 1;
+        for(int j = 0; j < oldValues.length; j++)
+            {
+            if (oldValues[j] == null) continue;
+            int i = hash(oldKeys[j]) & mask;
+            while(values[i] != null)
+                i = (i + 1) & mask;
+            keys[i] = oldKeys[j];
+            values[i] = oldValues[j];
+            }
+        }
+
+    public Object remove(Object key)
+        {
+        if (!isKey(key)) return null;
+        return remove(packKey(key));
+        }
+
+    /** Removes and returns the value stored at the given coordinates, or null. */
+    public Object remove(int x, int y)
+        {
+        return remove(pack(x, y));
+        }
+
+    Object remove(long key)
+        {
+        int i = find(key);
+        if (i < 0) return null;
+        Object old = values[i];
+        removeSlot(i);
+        return old;
+        }
+
+    // Empties slot i, then shifts back any entries further along the probe sequence which could no longer be found
+    void removeSlot(int i)
+        {
+        long[] keys = this.keys;
+        Object[] values = this.values;
+        int mask = this.mask;
+        values[i] = null;
+        numElem--;
+        int j = i;
+        while(true)
+            {
+            j = (j + 1) & mask;
+            if (values[j] == null) return;
+            int home = hash(keys[j]) & mask;
+            // can the entry at j stay where it is?  Only if its home lies cyclically in (i, j]
+            if (i <= j ? (i < home && home <= j) : (i < home || home <= j))
+                continue;
+            keys[i] = keys[j];
+            values[i] = values[j];
+            values[j] = null;
+            i = j;
+            }
+        }
+
+    public int size()
+        {
+        return numElem;
+        }
+
+    public boolean isEmpty()
+        {
+        return numElem == 0;
+        }
+
+    /** Empties the map, retaining its capacity. */
+    public void clear()
+        {
+        Arrays.fill(values, null);
+        numElem = 0;
+        }
+
+    public Collection values()
+        {
+        return new AbstractCollection()
+            {
+            public int size() { return numElem; }
+            public Iterator iterator()
+                {
+                return new SlotIterator()
+                    {
+                    public Object next() { return values[nextSlot()]; }
+                    };
+                }
+            };
+        }
+
+    public Set entrySet()
+        {
+        return new AbstractSet()
+            {
+            public int size() { return numElem; }
+            public Iterator iterator()
+                {
+                return new SlotIterator()
+                    {
+                    public Object next()
+                        {
+                        final int i = nextSlot();
+                        final long key = keys[i];
+                        return new AbstractMap.SimpleEntry(new Int2D((int)(key >> 32), (int) key), values[i])
+                            {
+                            public Object setValue(Object value)
+                                {
+                                if (value == null)
+                                    throw new NullPointerException("Int2DMap does not permit null values");
+                                values[i] = value;
+                                return super.setValue(value);
+                                }
+                            };
+                        }
+                    };
+                }
+            };
+        }
+
+    // Iterates over occupied slots.  Not fail-fast, and remove() is not supported.
+    abstract class SlotIterator implements Iterator
+        {
+        int slot = 0;
+        int remaining = numElem;
+
+        public boolean hasNext() { return remaining > 0; }
+
+        int nextSlot()
+            {
+            if (remaining <= 0) throw new NoSuchElementException();
+            while(values[slot] == null) slot++;
+            remaining--;
+            return slot++;
+            }
+
+        public void remove() { throw new UnsupportedOperationException("Remove not supported in Int2DMap iterators"); }
+        }
+    }
@@ -390,4 +390,15 @@ public class IntBag implements java.io.Serializable, Cloneable, Indexed
         {
         return Integer.TYPE;
         }
+
+    // Writes out only the ints actually in the IntBag, not the empty space beyond them, which
+    // can make a big difference in checkpoints.  The serialized form is the same as the default one.
+    private void writeObject(java.io.ObjectOutputStream p)
+        throws java.io.IOException
+        {
+        java.io.ObjectOutputStream.PutField fields = p.putFields();
+        fields.put("objs", objs.length == numObjs ? objs : java.util.Arrays.copyOf(objs, numObjs));
+        fields.put("numObjs", numObjs);
+        p.writeFields();
+        }
     }
@@ -115,7 +115,49 @@ public abstract class Properties implements java.io.Serializable
 
     /** Returns the value of the property at the given index. */
     public abstract Object getValue(int index);
-    
+
+    /** Returns the value of the property at the given index as a double.  Numbers are converted
+        to doubles, Valuables return their doubleValue(), and booleans are 1 for true and 0 for false.
+        Anything else, including an error or an index out of range, returns NaN.  The default implementation
+        simply converts getValue(...); subclasses may override it to read primitive properties without boxing them. */
+    public double getDouble(int index)
+        {
+        Object obj = getValue(index);
+        if (obj instanceof Number) return ((Number)obj).doubleValue();
+        else if (obj instanceof Valuable) return ((Valuable)obj).doubleValue();
+        else if (obj instanceof Boolean) return ((Boolean)obj).booleanValue() ? 1 : 0;
+        else if (obj instanceof Character) return ((Character)obj).charValue();
+        else return Double.NaN;
+        }
+
+    /** Returns the value of the property at the given index as an int.  Numbers and Valuables are
+        cast to ints, and booleans are 1 for true and 0 for false.
+        Anything else, including an error or an index out of range, returns 0.  The default implementation
+        simply converts getValue(...); subclasses may override it to read primitive properties without boxing them. */
+    public int getInt(int index)
+        {
+        Object obj = getValue(index);
+        if (obj instanceof Number) return ((Number)obj).intValue();
+        else if (obj instanceof Valuable) return (int)((Valuable)obj).doubleValue();
+        else if (obj instanceof Boolean) return ((Boolean)obj).booleanValue() ? 1 : 0;
+        else if (obj instanceof Character) return ((Character)obj).charValue();
+        else return 0;
+        }
+
+    /** Returns the value of the property at the given index as a boolean.  Numbers and Valuables are
+        true if they are nonzero.
+        Anything else, including an error or an index out of range, returns false.  The default implementation
+        simply converts getValue(...); subclasses may override it to read primitive properties without boxing them. */
+    public boolean getBoolean(int index)
+        {
+        Object obj = getValue(index);
+        if (obj instanceof Boolean) return ((Boolean)obj).booleanValue();
+        else if (obj instanceof Number) return ((Number)obj).doubleValue() != 0;
+        else if (obj instanceof Valuable) return ((Valuable)obj).doubleValue() != 0;
+        else if (obj instanceof Character) return ((Character)obj).charValue() != 0;
+        else return false;
+        }
+
     /** Returns the domain of the property at the given index. 
         Domains are defined by methods of the form <tt>public Object dom<i>Property</i>()</tt>
         and should generally take one of three forms:
@@ -0,0 +1,247 @@
+/*
+  Copyright 2006 by Sean Luke and George Mason University
+  Licensed under the Academic Free License version 3.0
+  See the file "LICENSE" for more information
+*/
+
+package sim.util;
+import java.lang.invoke.*;
+import java.lang.reflect.*;
+import java.util.*;
+import java.util.function.*;
+
+/**
+   The getter and setter of a single property, compiled once with LambdaMetafactory into ordinary functional
+   objects, so that SimpleProperties can call them over and over without going through Method.invoke(...),
+   which allocates an argument array and boxes primitives on every call.
+
+   <p>If the getter returns a primitive, then it is also compiled into a ToDoubleFunction, ToLongFunction,
+   ToIntFunction, or Predicate, depending on its type, and getDouble(...), getInt(...), and getBoolean(...)
+   read the value through this without boxing it.  They convert it in the same way as Properties.getDouble(...),
+   getInt(...), and getBoolean(...) do.
+
+   <p>The compiled setter casts its argument to the exact type of the setter's parameter (or its wrapper, if it is
+   primitive), so it cannot perform the widening conversions which Method.invoke(...) does, such as passing an Integer
+   to a setter taking a double.  set(...) only uses it for values of exactly that type, and leaves the rest to reflection.
+
+   <p>Compiling the accessors spins a small class per method, so accessors are cached per class of object and
+   shared among all the SimpleProperties built on that class.  Methods which can't be compiled -- because they or
+   their classes aren't public, or because their classes aren't visible from MASON's ClassLoader -- have null
+   accessors, and SimpleProperties falls back to reflection for them.
+*/
+
+final class PropertyAccessor
+    {
+    static final int OBJECT = 0;
+    static final int DOUBLE = 1;
+    static final int LONG = 2;
+    static final int INT = 3;
+    static final int BOOLEAN = 4;
+
+    static final MethodHandles.Lookup LOOKUP = MethodHandles.lookup();
+
+    static final ClassValue<HashMap<Method, PropertyAccessor>> CACHE = new ClassValue<HashMap<Method, PropertyAccessor>>()
+        {
+        protected HashMap<Method, PropertyAccessor> computeValue(Class<?> type)
+            {
+            return new HashMap<Method, PropertyAccessor>();
+            }
+        };
+
+    /** Returns the accessor for the given getter and (possibly null) setter of objects of the given class. */
+    static PropertyAccessor get(Class type, Method getMethod, Method setMethod)
+        {
+        HashMap<Method, PropertyAccessor> accessors = CACHE.get(type);
+        synchronized(accessors)
+            {
+            PropertyAccessor accessor = accessors.get(getMethod);
+            if (accessor == null)
+                {
+                accessor = new PropertyAccessor(getMethod, setMethod);
+                accessors.put(getMethod, accessor);
+                }
+            return accessor;
+            }
+        }
+
+    /** One of OBJECT, DOUBLE, LONG, INT, or BOOLEAN: which primitive accessor, if any, is available. */
+    final int kind;
+    /** Null if the getter couldn't be compiled. */
+    final Function<Object, Object> getter;
+    /** Null if the setter doesn't exist or couldn't be compiled. */
+    final BiConsumer<Object, Object> setter;
+    /** The type the compiled setter casts its argument to, or null if there is no compiled setter. */
+    final Class setterType;
+    final boolean setterPrimitive;
+    final ToDoubleFunction<Object> doubleGetter;
+    final ToLongFunction<Object> longGetter;
+    final ToIntFunction<Object> intGetter;
+    final Predicate<Object> booleanGetter;
+
+    @SuppressWarnings("unchecked")
+    PropertyAccessor(Method getMethod, Method setMethod)
+        {
+        Function<Object, Object> get = null;
+        BiConsumer<Object, Object> set = null;
+        Class setType = null;
+        ToDoubleFunction<Object> getDouble = null;
+        ToLongFunction<Object> getLong = null;
+        ToIntFunction<Object> getInt = null;
+        Predicate<Object> getBoolean = null;
+        int k = OBJECT;
+
+        if (isCompilable(getMethod))
+            {
+            try
+                {
+                Class owner = getMethod.getDeclaringClass();
+                Class type = getMethod.getReturnType();
+                MethodHandle handle = LOOKUP.unreflect(getMethod);
+                get = (Function<Object, Object>) compile(Function.class, "apply",
+                    MethodType.methodType(Object.class, Object.class), handle,
+                    MethodType.methodType(Object.class, owner));
+
+                if (type == Double.TYPE || type == Float.TYPE)
+                    {
+                    getDouble = (ToDoubleFunction<Object>) compile(ToDoubleFunction.class, "applyAsDouble",
+                        MethodType.methodType(Double.TYPE, Object.class), handle,
+                        MethodType.methodType(Double.TYPE, owner));
+                    k = DOUBLE;
+                    }
+                else if (type == Long.TYPE)
+                    {
+                    getLong = (ToLongFunction<Object>) compile(ToLongFunction.class, "applyAsLong",
+                        MethodType.methodType(Long.TYPE, Object.class), handle,
+                        MethodType.methodType(Long.TYPE, owner));
+                    k = LONG;
+                    }
+                else if (type == Integer.TYPE || type == Short.TYPE || type == Byte.TYPE || type == Character.TYPE)
+                    {
+                    getInt = (ToIntFunction<Object>) compile(ToIntFunction.class, "applyAsInt",
+                        MethodType.methodType(Integer.TYPE, Object.class), handle,
+                        MethodType.methodType(Integer.TYPE, owner));
+                    k = INT;
+                    }
+                else if (type == Boolean.TYPE)
+                    {
+                    getBoolean = (Predicate<Object>) compile(Predicate.class, "test",
+                        MethodType.methodType(Boolean.TYPE, Object.class), handle,
+                        MethodType.methodType(Boolean.TYPE, owner));
+                    k = BOOLEAN;
+                    }
+                }
+            catch (Throwable e)  // LambdaConversionException, IllegalAccessException, etc.
+                {
+                get = null;
+                getDouble = null; getLong = null; getInt = null; getBoolean = null;
+                k = OBJECT;
+                }
+            }
+
+        if (setMethod != null && isCompilable(setMethod))
+            {
+            try
+                {
+                Class type = setMethod.getParameterTypes()[0];
+                setType = MethodType.methodType(type).wrap().returnType();
+                set = (BiConsumer<Object, Object>) compile(BiConsumer.class, "accept",
+                    MethodType.methodType(Void.TYPE, Object.class, Object.class), LOOKUP.unreflect(setMethod),
+                    MethodType.methodType(Void.TYPE, setMethod.getDeclaringClass(), setType));
+                }
+            catch (Throwable e)  // LambdaConversionException, IllegalAccessException, etc.
+                {
+                set = null;
+                setType = null;
+                }
+            }
+
+        kind = k;
+        getter = get;
+        setter = set;
+        setterType = setType;
+        setterPrimitive = (set != null && setMethod.getParameterTypes()[0].isPrimitive());
+        doubleGetter = getDouble;
+        longGetter = getLong;
+        intGetter = getInt;
+        booleanGetter = getBoolean;
+        }
+
+    static Object compile(Class functionalInterface, String name, MethodType erased, MethodHandle implementation, MethodType instantiated) throws Throwable
+        {
+        CallSite site = LambdaMetafactory.metafactory(LOOKUP, name, MethodType.methodType(functionalInterface),
+            erased, implementation, instantiated);
+        return site.getTarget().invoke();
+        }
+
+    /* The compiled class lives in sim.util and in MASON's ClassLoader, so it can only call public methods of
+       public classes which that ClassLoader can see.  Setter arguments are also cast, so they must be visible too. */
+    static boolean isCompilable(Method method)
+        {
+        if (!Modifier.isPublic(method.getModifiers()) || Modifier.isStatic(method.getModifiers())) return false;
+        if (!isVisible(method.getDeclaringClass())) return false;
+        Class[] types = method.getParameterTypes();
+        for(int i = 0; i < types.length; i++)
+            if (!types[i].isPrimitive() && !isVisible(types[i])) return false;
+        return true;
+        }
+
+    static boolean isVisible(Class type)
+        {
+        if (!Modifier.isPublic(type.getModifiers())) return false;
+        try
+            {
+            return Class.forName(type.getName(), false, PropertyAccessor.class.getClassLoader()) == type;
+            }
+        catch (ClassNotFoundException e)
+            {
+            return false;
+            }
+        }
+
+    /** Sets the property of obj to value with the compiled setter and returns true, if the value is of the type the setter
+        casts to (or null, if that type isn't a wrapper of a primitive).  Else returns false without doing anything, and
+        the caller should use Method.invoke(...), which converts values as the compiled setter can't. */
+    boolean set(Object obj, Object value)
+        {
+        if (setter == null) return false;
+        if (value == null ? setterPrimitive : !setterType.isInstance(value)) return false;
+        setter.accept(obj, value);
+        return true;
+        }
+
+    /** Returns the value as a double, as described in Properties.getDouble(...).  kind must not be OBJECT. */
+    double getDouble(Object obj)
+        {
+        switch(kind)
+            {
+            case DOUBLE: return doubleGetter.applyAsDouble(obj);
+            case LONG: return longGetter.applyAsLong(obj);
+            case INT: return intGetter.applyAsInt(obj);
+            default: return booleanGetter.test(obj) ? 1 : 0;
+            }
+        }
+
+    /** Returns the value as an int, as described in Properties.getInt(...).  kind must not be OBJECT. */
+    int getInt(Object obj)
+        {
+        switch(kind)
+            {
+            case DOUBLE: return (int) doubleGetter.applyAsDouble(obj);
+            case LONG: return (int) longGetter.applyAsLong(obj);
+            case INT: return intGetter.applyAsInt(obj);
+            default: return booleanGetter.test(obj) ? 1 : 0;
+            }
+        }
+
+    /** Returns the value as a boolean, as described in Properties.getBoolean(...).  kind must not be OBJECT. */
+    boolean getBoolean(Object obj)
+        {
+        switch(kind)
+            {
+            case DOUBLE: return doubleGetter.applyAsDouble(obj) != 0;
+            case LONG: return longGetter.applyAsLong(obj) != 0;
+            case INT: return intGetter.applyAsInt(obj) != 0;
+            default: return booleanGetter.test(obj);
+            }
+        }
+    }
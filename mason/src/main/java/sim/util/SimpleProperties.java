@@ -121,6 +121,7 @@ public class SimpleProperties extends Properties implements java.io.Serializable
     ArrayList hideMethods; // if not hidden (or explicitly shown), that corresponding spot will be null
     ArrayList nameMethods; // if not hidden (or explicitly shown), that corresponding spot will be null
     Properties auxillary = null;  // if non-null, we use this properties instead
+    transient volatile PropertyAccessor[] accessors;  // built lazily from getMethods and setMethods, null if they've changed
 
     boolean includeSuperclasses;
     boolean includeGetClass;
@@ -296,7 +297,8 @@ public class SimpleProperties extends Properties implements java.io.Serializable
         for(int i = 0; i < index.length; i++)
             a.add(nameMethods.get(index[i].intValue()));
         nameMethods = a;
-    
+        
+        accessors = null;
         return this;
         }
     
@@ -358,6 +360,7 @@ public class SimpleProperties extends Properties implements java.io.Serializable
     
     void generateProperties()
         {
+        accessors = null;
         if (object != null && auxillary == null) 
             {
             getMethods = new ArrayList();
@@ -759,7 +762,9 @@ public class SimpleProperties extends Properties implements java.io.Serializable
         if (index < 0 || index >= numProperties()) return null;
         try
             {
-            return ((Method)(getMethods.get(index))).invoke(object, new Object[0]);
+            PropertyAccessor accessor = getAccessor(index);
+            if (accessor.getter == null) return ((Method)(getMethods.get(index))).invoke(object, new Object[0]);
+            return accessor.getter.apply(object);
             }
         catch (Exception e)
             {
@@ -767,6 +772,63 @@ public class SimpleProperties extends Properties implements java.io.Serializable
             return null;
             }
         }
+
+    /** Returns the current value of the property as a double, as described in Properties.getDouble(...).
+        Primitive properties are read without being boxed. */
+    public double getDouble(int index)
+        {
+        if (auxillary!=null) return auxillary.getDouble(index);
+        if (index < 0 || index >= numProperties()) return Double.NaN;
+        PropertyAccessor accessor = getAccessor(index);
+        if (accessor.kind == PropertyAccessor.OBJECT) return super.getDouble(index);
+        try
+            {
+            return accessor.getDouble(object);
+            }
+        catch (Exception e)
+            {
+            e.printStackTrace();
+            return Double.NaN;
+            }
+        }
+
+    /** Returns the current value of the property as an int, as described in Properties.getInt(...).
+        Primitive properties are read without being boxed. */
+    public int getInt(int index)
+        {
+        if (auxillary!=null) return auxillary.getInt(index);
+        if (index < 0 || index >= numProperties()) return 0;
+        PropertyAccessor accessor = getAccessor(index);
+        if (accessor.kind == PropertyAccessor.OBJECT) return super.getInt(index);
+        try
+            {
+            return accessor.getInt(object);
+            }
+        catch (Exception e)
+            {
+            e.printStackTrace();
+            return 0;
+            }
+        }
+
+    /** Returns the current value of the property as a boolean, as described in Properties.getBoolean(...).
+        Primitive properties are read without being boxed. */
+    public boolean getBoolean(int index)
+        {
+        if (auxillary!=null) return auxillary.getBoolean(index);
+        if (index < 0 || index >= numProperties()) return false;
+        PropertyAccessor accessor = getAccessor(index);
+        if (accessor.kind == PropertyAccessor.OBJECT) return super.getBoolean(index);
+        try
+            {
+            return accessor.getBoolean(object);
+            }
+        catch (Exception e)
+            {
+            e.printStackTrace();
+            return false;
+            }
+        }
     
     protected Object _setValue(int index, Object value)
         {
@@ -775,7 +837,8 @@ public class SimpleProperties extends Properties implements java.io.Serializable
         try
             {
             if (setMethods.get(index) == null) return null;
-            ((Method)(setMethods.get(index))).invoke(object, new Object[] { value });
+            PropertyAccessor accessor = getAccessor(index);
+            if (!accessor.set(object, value)) ((Method)(setMethods.get(index))).invoke(object, new Object[] { value });
             return getValue(index);
             }
         catch (Exception e)
@@ -785,6 +848,21 @@ public class SimpleProperties extends Properties implements java.io.Serializable
             }
         }
 
+    /* Returns the compiled getter and setter of the given property, fetching all of them the first time around.
+       This is idempotent, so if two threads race here they'll just both build the same thing. */
+    PropertyAccessor getAccessor(int index)
+        {
+        PropertyAccessor[] a = accessors;
+        if (a == null)
+            {
+            a = new PropertyAccessor[getMethods.size()];
+            for(int i = 0; i < a.length; i++)
+                a[i] = PropertyAccessor.get(object.getClass(), (Method)(getMethods.get(i)), (Method)(setMethods.get(i)));
+            accessors = a;
+            }
+        return a[index];
+        }
+
     public String getDescription(int index)
         {
         if (auxillary!=null) return auxillary.getDescription(index);
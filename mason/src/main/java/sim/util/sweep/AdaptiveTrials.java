@@ -0,0 +1,116 @@
+/*
+  Copyright 2019 by Sean Luke and George Mason University
+  Licensed under the Academic Free License version 3.0
+  See the file "LICENSE" for more information
+*/
+
+package sim.util.sweep;
+
+import java.util.concurrent.*;
+import sim.util.distribution.Probability;
+
+/**
+   Decides when a combination has been run enough trials.  After each trial finishes, its final values of the
+   dependent variables are added to running statistics for its combination.  Once at least minTrials trials are
+   in, and for every dependent variable the Student-t confidence interval of the mean final value has a half-width
+   no more than precision times the magnitude of the mean, the combination is settled and its remaining trials are skipped.
+
+   <p>Trials of the same combination may be running at the same time on different threads, so a few more trials
+   than strictly necessary may be run, and which ones are depends on timing.  Statistics are kept only for
+   combinations still in progress.
+*/
+
+class AdaptiveTrials
+    {
+    int numTrials;
+    int minTrials;
+    double precision;
+    double[] criticalValues;  // indexed by number of trials
+
+    ConcurrentHashMap<Integer, Statistics> statistics = new ConcurrentHashMap<Integer, Statistics>();
+    
+    static class Statistics
+        {
+        int count;          // trials recorded
+        int accounted;      // trials recorded or skipped
+        double[] mean;
+        double[] squares;   // sum of squared differences from the mean (Welford)
+        boolean settled;
+        
+        Statistics(int numDependents)
+            {
+            mean = new double[numDependents];
+            squares = new double[numDependents];
+            }
+        }
+
+    AdaptiveTrials(int numTrials, int minTrials, double precision, double confidence)
+        {
+        this.numTrials = numTrials;
+        this.minTrials = Math.max(minTrials, 2);
+        this.precision = precision;
+        criticalValues = new double[numTrials + 1];
+        for(int n = 2; n <= numTrials; n++)
+            criticalValues[n] = Probability.studentTInverse(1.0 - confidence, n - 1);
+        }
+
+    Statistics statisticsFor(int combination, int numDependents)
+        {
+        Statistics stats = statistics.get(combination);
+        if (stats == null)
+            {
+            stats = new Statistics(numDependents);
+            Statistics old = statistics.putIfAbsent(combination, stats);
+            if (old != null) stats = old;
+            }
+        return stats;
+        }
+        
+    void done(int combination, Statistics stats)
+        {
+        if (stats.accounted >= numTrials) statistics.remove(combination);
+        }
+
+    /** Returns true if the given combination has been settled, and if so accounts for the given trial as skipped. */
+    boolean skip(int combination)
+        {
+        Statistics stats = statistics.get(combination);
+        if (stats == null) return false;
+        synchronized(stats)
+            {
+            if (!stats.settled) return false;
+            stats.accounted++;
+            done(combination, stats);
+            return true;
+            }
+        }
+
+    /** Adds the final values of the dependent variables of a finished trial of the given combination. */
+    void record(int combination, double[] finals)
+        {
+        Statistics stats = statisticsFor(combination, finals.length);
+        synchronized(stats)
+            {
+            int n = ++stats.count;
+            stats.accounted++;
+            for(int i = 0; i < finals.length; i++)
+                {
+                double delta = finals[i] - stats.mean[i];
+                stats.mean[i] += delta / n;
+                stats.squares[i] += delta * (finals[i] - stats.mean[i]);
+                }
+                
+            if (!stats.settled && n >= minTrials && n <= numTrials)
+                {
+                boolean settled = true;
+                for(int i = 0; i < finals.length && settled; i++)
+                    {
+                    double halfWidth = criticalValues[n] * Math.sqrt(stats.squares[i] / (n - 1) / n);
+                    if (halfWidth > precision * Math.abs(stats.mean[i])) settled = false;
+                    }
+                stats.settled = settled;
+                }
+            done(combination, stats);
+            }
+        }
+    }
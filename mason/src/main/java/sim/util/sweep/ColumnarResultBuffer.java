@@ -0,0 +1,207 @@
+/*
+  Copyright 2019 by Sean Luke and George Mason University
+  Licensed under the Academic Free License version 3.0
+  See the file "LICENSE" for more information
+*/
+
+package sim.util.sweep;
+
+import java.nio.*;
+import java.util.*;
+import java.util.zip.*;
+
+/**
+   Buffers results column by column, and encodes them as a block of a columnar result file (see ColumnarResults).
+   Values are kept as raw long bits, so both longs and doubles go in the same arrays.
+*/
+
+class ColumnarResultBuffer extends ResultBuffer
+    {
+    // Hand off blocks of about this many bytes
+    static final int CAPACITY = 1 << 18;
+
+    int numIndependents;
+    int numDependents;
+    int seriesLength;  // values per dependent variable per run, recorded every mod steps
+    boolean compress;
+
+    int numColumns;
+    int[] widths;
+    long[][] columns;
+    int rows;
+    int rowBytes;
+
+    ColumnarResultBuffer(ParameterSweep sweep)
+        {
+        numIndependents = sweep.indNames.length;
+        numDependents = sweep.depNames.length;
+        seriesLength = sweep.getSeriesLength();
+        compress = sweep.compress;
+        widths = getWidths(sweep);
+        numColumns = widths.length;
+        columns = new long[numColumns][];
+        for(int c = 0; c < numColumns; c++)
+            {
+            columns[c] = new long[16 * widths[c]];
+            rowBytes += 8 * widths[c];
+            }
+        }
+
+    /** Returns the names of the columns of a columnar result file for the given sweep. */
+    static String[] getNames(ParameterSweep sweep)
+        {
+        ArrayList<String> names = new ArrayList<String>();
+        names.add("job");
+        names.add("trial");
+        names.add("rng");
+        for(int i = 0; i < sweep.indNames.length; i++)
+            names.add(sweep.indNames[i]);
+        for(int i = 0; i < sweep.depNames.length; i++)
+            {
+            names.add(sweep.depNames[i] + "-final");
+            names.add(sweep.depNames[i] + "-avg");
+            names.add(sweep.depNames[i] + "-min");
+            names.add(sweep.depNames[i] + "-max");
+            }
+        if (sweep.getSeriesLength() > 0)
+            for(int i = 0; i < sweep.depNames.length; i++)
+                names.add(sweep.depNames[i]);
+        return names.toArray(new String[names.size()]);
+        }
+
+    static byte[] getTypes(ParameterSweep sweep)
+        {
+        byte[] types = new byte[getNames(sweep).length];
+        Arrays.fill(types, ColumnarResults.TYPE_DOUBLE);
+        types[0] = types[1] = types[2] = ColumnarResults.TYPE_LONG;
+        return types;
+        }
+
+    static int[] getWidths(ParameterSweep sweep)
+        {
+        int[] widths = new int[getNames(sweep).length];
+        Arrays.fill(widths, 1);
+        if (sweep.getSeriesLength() > 0)
+            for(int i = 0; i < sweep.depNames.length; i++)
+                widths[widths.length - 1 - i] = sweep.getSeriesLength();
+        return widths;
+        }
+
+    /** Returns the header of a columnar result file for the given sweep. */
+    static byte[] getHeader(ParameterSweep sweep)
+        {
+        return ColumnarResults.encodeHeader(getNames(sweep), getTypes(sweep), getWidths(sweep), sweep.compress);
+        }
+
+    void ensureCapacity()
+        {
+        if (rows * widths[0] < columns[0].length) return;
+        for(int c = 0; c < numColumns; c++)
+            columns[c] = Arrays.copyOf(columns[c], columns[c].length * 2);
+        }
+
+    void add(int job, int trial, long seed, ArrayList<Double> settings,
+        double[] finals, double[] avgs, double[] mins, double[] maxes, double[] series)
+        {
+        ensureCapacity();
+        int c = 0;
+        columns[c++][rows] = job;
+        columns[c++][rows] = trial;
+        columns[c++][rows] = seed;
+        for(int i = 0; i < numIndependents; i++)
+            columns[c++][rows] = Double.doubleToRawLongBits(settings.get(i).doubleValue());
+        for(int i = 0; i < numDependents; i++)
+            {
+            columns[c++][rows] = Double.doubleToRawLongBits(finals[i]);
+            columns[c++][rows] = Double.doubleToRawLongBits(avgs[i]);
+            columns[c++][rows] = Double.doubleToRawLongBits(mins[i]);
+            columns[c++][rows] = Double.doubleToRawLongBits(maxes[i]);
+            }
+        if (seriesLength > 0)
+            for(int i = 0; i < numDependents; i++)
+                {
+                long[] column = columns[c++];
+                for(int j = 0; j < seriesLength; j++)
+                    column[rows * seriesLength + j] = Double.doubleToRawLongBits(series[j * numDependents + i]);
+                }
+        rows++;
+        }
+
+    void addLine(String line)
+        {
+        String[] fields = line.split(", ");
+        int f = 0;
+        ensureCapacity();
+        int c = 0;
+        for(int i = 0; i < 3; i++)
+            columns[c++][rows] = Long.parseLong(fields[f++]);
+        for(int i = 0; i < numIndependents; i++)
+            columns[c++][rows] = Double.doubleToRawLongBits(Double.parseDouble(fields[f++]));
+        for(int i = 0; i < 4 * numDependents; i++)
+            columns[c++][rows] = Double.doubleToRawLongBits(Double.parseDouble(fields[f++]));
+        if (seriesLength > 0)
+            for(int i = 0; i < numDependents; i++)
+                {
+                long[] column = columns[c++];
+                for(int j = 0; j < seriesLength; j++)
+                    column[rows * seriesLength + j] = Double.doubleToRawLongBits(Double.parseDouble(fields[f + j * numDependents + i]));
+                }
+        rows++;
+        }
+
+    boolean isFull() { return rows * rowBytes >= CAPACITY; }
+
+    boolean isEmpty() { return rows == 0; }
+
+    byte[] take()
+        {
+        byte[][] chunks = new byte[numColumns][];
+        int[] lengths = new int[numColumns];
+        int size = ColumnarResults.pad(8 + 4 * numColumns);
+        Deflater deflater = (compress ? new Deflater(Deflater.BEST_SPEED) : null);
+        try
+            {
+            for(int c = 0; c < numColumns; c++)
+                {
+                int count = rows * widths[c];
+                ByteBuffer raw = ByteBuffer.allocate(count * 8).order(ByteOrder.LITTLE_ENDIAN);
+                raw.asLongBuffer().put(columns[c], 0, count);
+                chunks[c] = raw.array();
+                lengths[c] = chunks[c].length;
+                if (compress)
+                    {
+                    deflater.reset();
+                    deflater.setInput(chunks[c]);
+                    deflater.finish();
+                    byte[] out = new byte[chunks[c].length + chunks[c].length / 8 + 64];
+                    int n = 0;
+                    while(!deflater.finished())
+                        {
+                        if (n == out.length) out = Arrays.copyOf(out, out.length * 2);
+                        n += deflater.deflate(out, n, out.length - n);
+                        }
+                    chunks[c] = out;
+                    lengths[c] = n;
+                    }
+                size += ColumnarResults.pad(lengths[c]);
+                }
+            }
+        finally
+            {
+            if (deflater != null) deflater.end();
+            }
+
+        ByteBuffer block = ByteBuffer.allocate(size).order(ByteOrder.LITTLE_ENDIAN);
+        block.putInt(ColumnarResults.BLOCK).putInt(rows);
+        for(int c = 0; c < numColumns; c++)
+            block.putInt(lengths[c]);
+        block.position(ColumnarResults.pad(8 + 4 * numColumns));
+        for(int c = 0; c < numColumns; c++)
+            {
+            block.put(chunks[c], 0, lengths[c]);
+            block.position(ColumnarResults.pad(block.position()));
+            }
+        rows = 0;
+        return block.array();
+        }
+    }
@@ -0,0 +1,346 @@
+/*
+  Copyright 2019 by Sean Luke and George Mason University
+  Licensed under the Academic Free License version 3.0
+  See the file "LICENSE" for more information
+*/
+
+package sim.util.sweep;
+
+import java.io.*;
+import java.nio.*;
+import java.nio.channels.*;
+import java.nio.charset.StandardCharsets;
+import java.util.*;
+import java.util.zip.*;
+
+/**
+   Reads a columnar result file written by a ParameterSweep with <tt>format=columnar</tt>.  The file is
+   memory-mapped, and a single column can be read out without touching the data of any of the others.
+
+   <p>A columnar file has a header giving its schema: the name, type (long or double), and width of each column.
+   Each run of the sweep is a row, and has <i>width</i> values in each column.  Most columns have a width of 1: the
+   job, trial, and rng seed (longs), the setting of each independent variable, and the final, average, minimum, and
+   maximum of each dependent variable (doubles).  If the sweep recorded each dependent variable every <tt>mod</tt> steps,
+   there is also a column per dependent variable whose width is the number of values recorded per run.
+
+   <p>The header is followed by blocks of rows.  Each block stores each of its columns contiguously, so a column
+   is read by hopping from block to block.  Blocks are written as the sweep goes, one at a time and in no particular order of
+   job, so you'll want to look at the job column to see which row is which.  If the file is compressed, each column of each
+   block is compressed separately with Deflate.  All numbers are little-endian, and all sections are padded to 8 bytes.
+
+   <pre>
+   Header:   long MAGIC, int VERSION, int compressed (0 or 1), int number of columns,
+             then for each column: byte type, int width, int name length, UTF-8 name bytes
+   Block:    int BLOCK, int number of rows, int stored length of each column in bytes,
+             then each column's values (or compressed values)
+   </pre>
+
+   <p>A sweep which crashed may leave a partial block at the end of the file; it is ignored.
+*/
+
+public class ColumnarResults
+    {
+    public static final long MAGIC = 0x4D41534F4E434F4CL;  // "MASONCOL"
+    public static final int VERSION = 1;
+    static final int BLOCK = 0x424C4F43;  // "BLOC"
+    public static final byte TYPE_LONG = 0;
+    public static final byte TYPE_DOUBLE = 1;
+
+    // Blocks are mapped in segments of at most this many bytes
+    static final long MAX_SEGMENT = 1L << 30;
+
+    String[] names;
+    byte[] types;
+    int[] widths;
+    boolean compressed;
+    long length;
+    long numRows;
+
+    // Block index
+    int numBlocks;
+    int[] blockRows;
+    long[][] chunkOffsets;  // [block][column], from the start of the file
+    int[][] chunkLengths;  // [block][column]
+    int[] blockSegment;
+    MappedByteBuffer[] segments;
+    long[] segmentStarts;
+
+    /** Opens and indexes the given file.  Only the header and the block headers are read. */
+    public ColumnarResults(File file) throws IOException
+        {
+        FileChannel channel = new FileInputStream(file).getChannel();
+        try
+            {
+            long size = channel.size();
+            long position = readHeader(channel);
+
+            ArrayList<long[]> offsets = new ArrayList<long[]>();
+            ArrayList<int[]> lengths = new ArrayList<int[]>();
+            ArrayList<Integer> rows = new ArrayList<Integer>();
+            ArrayList<Long> starts = new ArrayList<Long>();
+            int numColumns = names.length;
+            ByteBuffer blockHeader = ByteBuffer.allocate(pad(8 + 4 * numColumns)).order(ByteOrder.LITTLE_ENDIAN);
+            while(true)
+                {
+                blockHeader.clear();
+                if (position + blockHeader.capacity() > size) break;
+                readFully(channel, blockHeader, position);
+                blockHeader.flip();
+                if (blockHeader.getInt() != BLOCK) throw new IOException("Corrupt block at " + position + " in " + file);
+                int r = blockHeader.getInt();
+                long[] o = new long[numColumns];
+                int[] l = new int[numColumns];
+                long p = position + blockHeader.capacity();
+                for(int c = 0; c < numColumns; c++)
+                    {
+                    l[c] = blockHeader.getInt();
+                    o[c] = p;
+                    p += pad(l[c]);
+                    }
+                if (p > size) break;  // partial block
+                starts.add(position);
+                offsets.add(o);
+                lengths.add(l);
+                rows.add(r);
+                numRows += r;
+                position = p;
+                }
+            length = position;
+
+            numBlocks = rows.size();
+            blockRows = new int[numBlocks];
+            chunkOffsets = new long[numBlocks][];
+            chunkLengths = new int[numBlocks][];
+            blockSegment = new int[numBlocks];
+            for(int b = 0; b < numBlocks; b++)
+                {
+                blockRows[b] = rows.get(b);
+                chunkOffsets[b] = offsets.get(b);
+                chunkLengths[b] = lengths.get(b);
+                }
+
+            // map the blocks in as few segments as we can
+            ArrayList<MappedByteBuffer> segs = new ArrayList<MappedByteBuffer>();
+            ArrayList<Long> segStarts = new ArrayList<Long>();
+            starts.add(length);  // the end of the last block
+            int b = 0;
+            while(b < numBlocks)
+                {
+                long start = starts.get(b);
+                int last = b;
+                while(last + 1 < numBlocks && starts.get(last + 2) - start <= MAX_SEGMENT)
+                    last++;
+                long end = starts.get(last + 1);
+                MappedByteBuffer segment = channel.map(FileChannel.MapMode.READ_ONLY, start, end - start);
+                segment.order(ByteOrder.LITTLE_ENDIAN);
+                for(int i = b; i <= last; i++) blockSegment[i] = segs.size();
+                segs.add(segment);
+                segStarts.add(start);
+                b = last + 1;
+                }
+            segments = segs.toArray(new MappedByteBuffer[segs.size()]);
+            segmentStarts = new long[segStarts.size()];
+            for(int i = 0; i < segmentStarts.length; i++) segmentStarts[i] = segStarts.get(i);
+            }
+        finally
+            {
+            channel.close();
+            }
+        }
+
+    long readHeader(FileChannel channel) throws IOException
+        {
+        ByteBuffer fixed = ByteBuffer.allocate(20).order(ByteOrder.LITTLE_ENDIAN);
+        readFully(channel, fixed, 0);
+        fixed.flip();
+        if (fixed.getLong() != MAGIC) throw new IOException("Not a columnar result file");
+        int version = fixed.getInt();
+        if (version != VERSION) throw new IOException("Unsupported columnar result file version " + version);
+        compressed = (fixed.getInt() != 0);
+        int numColumns = fixed.getInt();
+
+        long position = 20;
+        names = new String[numColumns];
+        types = new byte[numColumns];
+        widths = new int[numColumns];
+        ByteBuffer column = ByteBuffer.allocate(9).order(ByteOrder.LITTLE_ENDIAN);
+        for(int c = 0; c < numColumns; c++)
+            {
+            column.clear();
+            readFully(channel, column, position);
+            column.flip();
+            types[c] = column.get();
+            widths[c] = column.getInt();
+            ByteBuffer name = ByteBuffer.allocate(column.getInt());
+            readFully(channel, name, position + 9);
+            names[c] = new String(name.array(), StandardCharsets.UTF_8);
+            position += 9 + name.capacity();
+            }
+        return pad(position);
+        }
+
+    static void readFully(FileChannel channel, ByteBuffer buffer, long position) throws IOException
+        {
+        while(buffer.hasRemaining())
+            {
+            int n = channel.read(buffer, position);
+            if (n < 0) throw new EOFException();
+            position += n;
+            }
+        }
+
+    static long pad(long n) { return (n + 7) & ~7L; }
+    static int pad(int n) { return (n + 7) & ~7; }
+
+    /** Encodes a header with the given schema. */
+    static byte[] encodeHeader(String[] names, byte[] types, int[] widths, boolean compressed)
+        {
+        byte[][] encoded = new byte[names.length][];
+        int size = 20;
+        for(int c = 0; c < names.length; c++)
+            {
+            encoded[c] = names[c].getBytes(StandardCharsets.UTF_8);
+            size += 9 + encoded[c].length;
+            }
+        ByteBuffer buffer = ByteBuffer.allocate(pad(size)).order(ByteOrder.LITTLE_ENDIAN);
+        buffer.putLong(MAGIC).putInt(VERSION).putInt(compressed ? 1 : 0).putInt(names.length);
+        for(int c = 0; c < names.length; c++)
+            buffer.put(types[c]).putInt(widths[c]).putInt(encoded[c].length).put(encoded[c]);
+        return buffer.array();
+        }
+
+    /** Returns true if this file has exactly the given schema. */
+    boolean hasSchema(String[] names, byte[] types, int[] widths, boolean compressed)
+        {
+        return this.compressed == compressed && Arrays.equals(this.names, names) &&
+            Arrays.equals(this.types, types) && Arrays.equals(this.widths, widths);
+        }
+
+    /** Returns the length of the file through the end of its last complete block. */
+    public long getLength() { return length; }
+
+    public boolean isCompressed() { return compressed; }
+
+    public int getNumColumns() { return names.length; }
+
+    /** Returns the total number of rows (runs) in the file. */
+    public long getNumRows() { return numRows; }
+
+    public int getNumBlocks() { return numBlocks; }
+
+    public String getName(int column) { return names[column]; }
+
+    /** Returns the index of the column with the given name, or -1 if there is none. */
+    public int getColumn(String name)
+        {
+        for(int c = 0; c < names.length; c++)
+            if (names[c].equals(name)) return c;
+        return -1;
+        }
+
+    /** Returns true if the column holds longs, false if it holds doubles. */
+    public boolean isLong(int column) { return types[column] == TYPE_LONG; }
+
+    /** Returns the number of values each row has in the given column. */
+    public int getWidth(int column) { return widths[column]; }
+
+    /** Returns the raw values of the given column in the given block. */
+    ByteBuffer chunk(int block, int column) throws IOException
+        {
+        ByteBuffer segment = segments[blockSegment[block]].duplicate();
+        segment.order(ByteOrder.LITTLE_ENDIAN);
+        int start = (int)(chunkOffsets[block][column] - segmentStarts[blockSegment[block]]);
+        segment.position(start);
+        segment.limit(start + chunkLengths[block][column]);
+        ByteBuffer chunk = segment.slice().order(ByteOrder.LITTLE_ENDIAN);
+        if (!compressed) return chunk;
+
+        byte[] input = new byte[chunk.remaining()];
+        chunk.get(input);
+        byte[] output = new byte[blockRows[block] * widths[column] * 8];
+        Inflater inflater = new Inflater();
+        try
+            {
+            inflater.setInput(input);
+            int n = 0;
+            while(n < output.length)
+                {
+                int k = inflater.inflate(output, n, output.length - n);
+                if (k == 0 && (inflater.finished() || inflater.needsInput())) break;
+                n += k;
+                }
+            if (n != output.length) throw new IOException("Corrupt compressed column " + names[column] + " in block " + block);
+            }
+        catch (DataFormatException e)
+            {
+            throw new IOException("Corrupt compressed column " + names[column] + " in block " + block, e);
+            }
+        finally
+            {
+            inflater.end();
+            }
+        return ByteBuffer.wrap(output).order(ByteOrder.LITTLE_ENDIAN);
+        }
+
+    long checkColumn(int column, boolean isLong)
+        {
+        if (column < 0 || column >= names.length) throw new IndexOutOfBoundsException("No column " + column);
+        if (isLong(column) != isLong) throw new IllegalArgumentException("Column " + names[column] + " holds " + (isLong(column) ? "longs" : "doubles"));
+        long size = numRows * widths[column];
+        if (size > Integer.MAX_VALUE) throw new IllegalArgumentException("Column " + names[column] + " is too large to fit in an array");
+        return size;
+        }
+
+    /** Returns all the values in the given column of doubles, row by row. */
+    public double[] getDoubles(int column) throws IOException
+        {
+        double[] values = new double[(int)checkColumn(column, false)];
+        int n = 0;
+        for(int b = 0; b < numBlocks; b++)
+            {
+            DoubleBuffer chunk = chunk(b, column).asDoubleBuffer();
+            int count = chunk.remaining();
+            chunk.get(values, n, count);
+            n += count;
+            }
+        return values;
+        }
+
+    /** Returns all the values in the given column of longs, row by row. */
+    public long[] getLongs(int column) throws IOException
+        {
+        long[] values = new long[(int)checkColumn(column, true)];
+        int n = 0;
+        for(int b = 0; b < numBlocks; b++)
+            {
+            LongBuffer chunk = chunk(b, column).asLongBuffer();
+            int count = chunk.remaining();
+            chunk.get(values, n, count);
+            n += count;
+            }
+        return values;
+        }
+
+    public static void main(String[] args) throws IOException
+        {
+        if (args.length < 1)
+            {
+            System.err.println("Format:   java sim.util.sweep.ColumnarResults [file] [column]...");
+            return;
+            }
+        ColumnarResults results = new ColumnarResults(new File(args[0]));
+        if (args.length == 1)
+            {
+            System.out.println(results.getNumRows() + " rows in " + results.getNumBlocks() + " blocks" + (results.isCompressed() ? ", compressed" : ""));
+            for(int c = 0; c < results.getNumColumns(); c++)
+                System.out.println(results.getName(c) + "\t" + (results.isLong(c) ? "long" : "double") + (results.getWidth(c) == 1 ? "" : "[" + results.getWidth(c) + "]"));
+            return;
+            }
+        for(int i = 1; i < args.length; i++)
+            {
+            int column = results.getColumn(args[i]);
+            if (column < 0) { System.err.println("No such column: " + args[i]); continue; }
+            System.out.println(args[i] + ": " + (results.isLong(column) ? Arrays.toString(results.getLongs(column)) : Arrays.toString(results.getDoubles(column))));
+            }
+        }
+    }
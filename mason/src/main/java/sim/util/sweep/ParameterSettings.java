@@ -31,6 +31,15 @@ public class ParameterSettings
     public static final String THREADS_P = "threads";
     public static final String SEED_P = "seed";
     public static final String OUT_P = "out";
+    public static final String RESUME_P = "resume";
+    public static final String PROCESSES_P = "processes";
+    public static final String FORMAT_P = "format";
+    public static final String SAMPLING_P = "sampling";
+    public static final String SAMPLES_P = "samples";
+    public static final String ADAPTIVE_P = "adaptive";
+    public static final String MIN_TRIALS_P = "mintrials";
+    public static final String PRECISION_P = "precision";
+    public static final String CONFIDENCE_P = "confidence";
     
     public Properties p;
     public int index;
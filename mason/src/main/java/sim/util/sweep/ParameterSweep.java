@@ -14,19 +14,83 @@ import sim.util.*;
 import ec.util.*;
 import java.util.zip.GZIPOutputStream;
 
+/**
+   Runs a sweep over combinations of settings of independent variables of a model, recording statistics
+   of the dependent variables for each run.  Each combination is run some number of trials, and each
+   (combination, trial) pair is a "job" with its own job number, which also determines its random number seed.
+
+   <p>Combinations are generated lazily from the job number, so the number of jobs is limited only by the
+   size of an int.  Jobs are run on a work-stealing ForkJoinPool of <tt>threads</tt> threads, each of which
+   reuses a single instance of the model.  Finished results are buffered per thread and handed to a
+   SweepWriter, which writes them out from its own thread.
+
+   <p>The combinations are chosen according to <tt>sampling</tt>:
+   <dl>
+   <dt><tt>grid</tt> (the default)
+   <dd>Every combination of <tt>divisions</tt> evenly spaced values from <tt>min</tt> to <tt>max</tt> of each variable.
+   <dt><tt>lhs</tt>
+   <dd>A Latin hypercube of <tt>samples</tt> combinations: the range of each variable is cut into <tt>samples</tt>
+   equal strata, and each stratum of each variable is used exactly once, at a random point within it.  The hypercube
+   is determined by <tt>seed</tt>.
+   <dt><tt>sobol</tt>
+   <dd>The first <tt>samples</tt> points of a Sobol quasi-random sequence, scaled from <tt>min</tt> to <tt>max</tt>.
+   At most SobolSequence.MAX_DIMENSIONS independent variables are allowed.
+   </dl>
+   <tt>divisions</tt> is only needed for grids, and <tt>samples</tt> only for the others.
+
+   <p>If <tt>adaptive</tt> is true, then <tt>trials</tt> is the maximum number of trials per combination, rather than
+   the exact number.  Once at least <tt>mintrials</tt> trials of a combination have been run (default 3), and the
+   <tt>confidence</tt> (default 0.95) confidence interval of the mean final value of every dependent variable is no wider
+   than plus or minus <tt>precision</tt> (default 0.05) times that mean, the combination's remaining trials are skipped.
+   The output format is unchanged: skipped trials simply don't appear.
+
+   <p>Results are written to <tt>out</tt> in one of two formats, chosen by <tt>format</tt>.  <tt>csv</tt> (the default) writes
+   a line of text per run, gzipped if <tt>compress</tt> is true.  <tt>columnar</tt> writes blocks of binary columns of
+   longs and doubles, each compressed if <tt>compress</tt> is true, which can be read back with ColumnarResults.
+
+   <p>If <tt>resume</tt> is true and the output file (which must not be compressed CSV) already exists, then the jobs it already
+   contains are skipped and the new results are appended to it.  This lets a crashed or stopped sweep pick up
+   where it left off.
+
+   <p>If <tt>processes</tt> is greater than 1, then the sweep is sharded across that many separate JVMs, each
+   running <tt>threads</tt> threads.  This JVM acts as a coordinator: it hands out blocks of job numbers to the
+   processes as they ask for them, and gathers all their results into the one output file.
+*/
+
 public class ParameterSweep 
     {
     public static final String GZIP_POSTFIX = ".gz";
+    public static final String FORMAT_CSV = "csv";
+    public static final String FORMAT_COLUMNAR = "columnar";
+    public static final String SAMPLING_GRID = "grid";
+    public static final String SAMPLING_LATIN_HYPERCUBE = "lhs";
+    public static final String SAMPLING_SOBOL = "sobol";
+    /** The first argument given to main(...) when it is started as one of the processes of a multi-process sweep. */
+    public static final String WORKER_ARGUMENT = "-worker";
     
+    // protocol between the coordinator and its worker processes
+    static final String NEXT = "@next";
+    static final String RESULT = "@result ";
+    static final String DONE = "@done";
+
     // Output stream to dump resuts 
-    PrintWriter printWriter;
+    SweepWriter writer;
+    String filename;
+    boolean compress;
+    boolean resume;
+    String format;
+    String resultPrefix = "";  // prepended to every result line
     
     // Independent Variables
     String indNames[];
     double indMinValues[];
     double indMaxValues[];
     int indIndexes[];   // index into a Properties where the variable is stored
-    int indDivisions[];
+    int indDivisions[];  // only for grids
+    String sampling;
+    int numSamples;  // only for Latin hypercubes and Sobol sequences
+    double[][] latinHypercube;  // [variable][combination]
+    SobolSequence sobol;
     
     // Dependent Variables
     String depNames[];
@@ -36,12 +100,21 @@ public class ParameterSweep
     Class modelClass;
     int numTrials = 1;
     int numThreads = 1;
+    int numProcesses = 1;
     int numSteps;
     int mod;
     long baseSeed = 100;
+    int numCombinations;
     
-    // This is an arraylist of arraylists of doubles, recursively generated, for each combination of values of our independent variables
-    ArrayList<ArrayList<Double>> allIndependentVariableValueCombinations = new ArrayList<ArrayList<Double>>();
+    // Adaptive trials
+    boolean adaptive;
+    int minTrials;
+    double precision;
+    double confidence;
+    AdaptiveTrials adaptiveTrials;  // null if not adaptive
+    
+    // jobs which are already in the output file
+    BitSet completed = new BitSet();
     
     public ParameterSweep(ParameterDatabase db) throws ClassNotFoundException
         {
@@ -55,17 +128,29 @@ public class ParameterSweep
         indNames = ((String)(db.getStringWithDefault(new Parameter(ParameterSettings.INDEPENDENT_P), null, ""))).split("\\s");
         indMinValues = db.getDoublesUnconstrained(new Parameter(ParameterSettings.MIN_P), null, indNames.length);
         indMaxValues = db.getDoublesUnconstrained(new Parameter(ParameterSettings.MAX_P), null, indNames.length);
-        double[] d = db.getDoubles(new Parameter(ParameterSettings.DIVISIONS_P), null, 1, indNames.length);
         if (indNames.length == 0) throw new RuntimeException("must have at least one independent variable");
         if (indMinValues == null) throw new RuntimeException("min is invalid or not the same length as independent");
         if (indMaxValues == null) throw new RuntimeException("max is invalid or not the same length as independent");
-        if (d == null) throw new RuntimeException("divisions is invalid, less than 1, or not the same length as independent");
-        indDivisions = new int[d.length];
-        for(int i = 0; i < d.length; i++)
+        sampling = db.getStringWithDefault(new Parameter(ParameterSettings.SAMPLING_P), null, SAMPLING_GRID).trim();
+        if (sampling.equals(SAMPLING_GRID))
             {
-            indDivisions[i] = (int)d[i];
-            if (indDivisions[i] != d[i]) throw new RuntimeException("division #" + (i + 1) + " is not an integer.");
+            double[] d = db.getDoubles(new Parameter(ParameterSettings.DIVISIONS_P), null, 1, indNames.length);
+            if (d == null) throw new RuntimeException("divisions is invalid, less than 1, or not the same length as independent");
+            indDivisions = new int[d.length];
+            for(int i = 0; i < d.length; i++)
+                {
+                indDivisions[i] = (int)d[i];
+                if (indDivisions[i] != d[i]) throw new RuntimeException("division #" + (i + 1) + " is not an integer.");
+                }
             }
+        else if (sampling.equals(SAMPLING_LATIN_HYPERCUBE) || sampling.equals(SAMPLING_SOBOL))
+            {
+            numSamples = db.getInt(new Parameter(ParameterSettings.SAMPLES_P), null, 1);
+            if (numSamples < 1) throw new RuntimeException("Samples must be at least 1.  You have: " + numSamples);
+            if (sampling.equals(SAMPLING_SOBOL) && indNames.length > SobolSequence.MAX_DIMENSIONS)
+                throw new RuntimeException("Sobol sampling allows at most " + SobolSequence.MAX_DIMENSIONS + " independent variables.");
+            }
+        else throw new RuntimeException("Unknown sampling: " + sampling + ".  Must be " + SAMPLING_GRID + ", " + SAMPLING_LATIN_HYPERCUBE + ", or " + SAMPLING_SOBOL + ".");
         
         // Load dependent vars
         depNames = ((String)(db.getStringWithDefault(new Parameter(ParameterSettings.DEPENDENT_P), null, ""))).split("\\s");
@@ -80,25 +165,46 @@ public class ParameterSweep
         if (numTrials < 1) throw new RuntimeException("Trials must be at least 1.  You have: " + numTrials);
         numThreads = db.getInt(new Parameter(ParameterSettings.THREADS_P), null, 1);
         if (numThreads < 1) throw new RuntimeException("Threads must be at least 1.  You have: " + numThreads);
+        numProcesses = db.getIntWithDefault(new Parameter(ParameterSettings.PROCESSES_P), null, 1);
+        if (numProcesses < 1) throw new RuntimeException("Processes must be at least 1.  You have: " + numProcesses);
         baseSeed = db.getLong(new Parameter(ParameterSettings.SEED_P), null, 1);
         if (baseSeed < 1) throw new RuntimeException("Seed must be at least 1.  You have: " + baseSeed);
 
-        try
+        long combinations = 1;
+        if (indDivisions == null) combinations = numSamples;
+        else for(int i = 0; i < indDivisions.length; i++)
             {
-            String filename = db.getStringWithDefault(new Parameter(ParameterSettings.OUT_P), null, "");
-            if (db.getBoolean(new Parameter(ParameterSettings.COMPRESS_P), null, false))
-                {
-                printWriter = new PrintWriter(new GZIPOutputStream(new FileOutputStream(filename + GZIP_POSTFIX)), true);
-                }
-            else 
-                {   
-                printWriter = new PrintWriter(new FileOutputStream(filename), true);
-                }
+            combinations *= indDivisions[i];
+            if (combinations * numTrials > Integer.MAX_VALUE) break;
             }
-        catch (IOException e)
+        if (combinations * numTrials > Integer.MAX_VALUE) 
+            throw new RuntimeException("A sweep may have at most " + Integer.MAX_VALUE + " jobs (combinations times trials).");
+        numCombinations = (int)combinations;
+        
+        if (sampling.equals(SAMPLING_LATIN_HYPERCUBE))
+            latinHypercube = buildLatinHypercube(new MersenneTwisterFast(baseSeed));
+        else if (sampling.equals(SAMPLING_SOBOL))
+            sobol = new SobolSequence(indNames.length);
+                
+        adaptive = db.getBoolean(new Parameter(ParameterSettings.ADAPTIVE_P), null, false);
+        if (adaptive)
             {
-            throw new RuntimeException("Could not open file.", e);
+            minTrials = db.getIntWithDefault(new Parameter(ParameterSettings.MIN_TRIALS_P), null, 3);
+            if (minTrials < 2) throw new RuntimeException("Minimum trials must be at least 2.  You have: " + minTrials);
+            precision = db.getDoubleWithDefault(new Parameter(ParameterSettings.PRECISION_P), null, 0.05);
+            if (!(precision > 0)) throw new RuntimeException("Precision must be greater than 0.  You have: " + precision);
+            confidence = db.getDoubleWithDefault(new Parameter(ParameterSettings.CONFIDENCE_P), null, 0.95);
+            if (!(confidence > 0 && confidence < 1)) throw new RuntimeException("Confidence must be between 0 and 1.  You have: " + confidence);
+            adaptiveTrials = new AdaptiveTrials(numTrials, minTrials, precision, confidence);
             }
+
+        filename = db.getStringWithDefault(new Parameter(ParameterSettings.OUT_P), null, "");
+        compress = db.getBoolean(new Parameter(ParameterSettings.COMPRESS_P), null, false);
+        resume = db.getBoolean(new Parameter(ParameterSettings.RESUME_P), null, false);
+        format = db.getStringWithDefault(new Parameter(ParameterSettings.FORMAT_P), null, FORMAT_CSV).trim();
+        if (!format.equals(FORMAT_CSV) && !format.equals(FORMAT_COLUMNAR))
+            throw new RuntimeException("Unknown format: " + format + ".  Must be " + FORMAT_CSV + " or " + FORMAT_COLUMNAR + ".");
+        if (resume && compress && format.equals(FORMAT_CSV)) throw new RuntimeException("Compressed CSV sweeps cannot be resumed.");
                 
         SimState simState = newInstance(baseSeed, modelClass);
         sim.util.Properties properties = sim.util.Properties.getProperties(simState);
@@ -107,6 +213,12 @@ public class ParameterSweep
                     
     public static void main(String[] args) throws  IOException, ClassNotFoundException
         {
+        if (args.length > 0 && args[0].equals(WORKER_ARGUMENT))
+            {
+            runWorker(args);
+            return;
+            }
+            
         try
             {
             ParameterSweep sweep = new ParameterSweep(new ParameterDatabase(new File(new File(args[0]).getAbsolutePath()), args));
@@ -119,10 +231,6 @@ public class ParameterSweep
             }
         }  
   
-    Object[] printWriterLock = new Object[0];
-    // the only way we print results: one line at a time 
-    void println(String val) { synchronized(printWriterLock) { printWriter.println(val); } }
-
     Object[] lock = new Object[0];
     public void printSynchronized(String str)
         {
@@ -134,7 +242,7 @@ public class ParameterSweep
     
         
     boolean running;
-    boolean stop;
+    volatile boolean stop;
     Object runningLock = new Object[0];
     Thread outer;
     public void stop()
@@ -160,64 +268,31 @@ public class ParameterSweep
             {
             if (running) return;    // already running
         
-            generateAllIndependentVariableValueCombinations(new ArrayList<Double>());
-                        
-            writeFileHeader(); 
+            openOutput();
             running = true;
             stop = false;
             outer = new Thread(new Runnable()
                 {
                 public void run()
                     {
-                    Thread[] threads = new Thread[numThreads];
-                    for(int i = 0; i < threads.length; i++) 
+                    try
                         {
-                        threads[i] = new Thread(new Runnable()
+                        if (numProcesses > 1)
                             {
-                            public void run()
-                                {
-                                SimState simState = null;
-                                sim.util.Properties properties = null;
-                                ParameterSweepSimulationJob job = null;
-                                while ((job = (ParameterSweepSimulationJob)getNextJob()) != null) 
-                                    {
-                                    if (stop) 
-                                        {
-                                        break;
-                                        }
-
-                                    // initialize simstate and properties
-                                    if (simState == null)
-                                        {
-                                        simState = newInstance(job.jobNumber + baseSeed, modelClass);
-                                        properties = sim.util.Properties.getProperties(simState);
-                                        }
-                                    else
-                                        {
-                                        simState.setSeed(job.jobNumber + baseSeed);
-                                        } 
-
-                                    int combination = job.jobNumber / numTrials;  // which variable combination are we doing this time?
-                                    job.run(simState, properties, allIndependentVariableValueCombinations.get(combination));
-                                    }
-                                }
-                            });
-                        threads[i].start();
-                        }
-                        
-                    for(int i = 0; i<threads.length; i++) 
-                        {
-                        try 
-                            {
-                            threads[i].join();
+                            new SweepCoordinator(ParameterSweep.this).run();
                             }
-                        catch(InterruptedException e)
+                        else
                             {
-                            // doesn't happen
+                            startPool();
+                            try { runJobs(0, getTotalJobs()); }
+                            finally { pool.shutdown(); }
                             }
                         }
-                    synchronized(printWriterLock) { printWriter.close(); }
-                    synchronized(runningLock) { running = false; }
+                    finally
+                        {
+                        writer.close();
+                        synchronized(runningLock) { running = false; }
+                        }
                     }
                 });
             outer.start();
@@ -225,26 +300,57 @@ public class ParameterSweep
         }
     
     
-    // Populate all permutations of settings. Recursive.
-    public void generateAllIndependentVariableValueCombinations(ArrayList<Double> current)
+    /** Returns the settings of the independent variables for the given combination, which
+        ranges from 0 to the number of combinations - 1.  In a grid, the last independent variable
+        changes the fastest from combination to combination. */
+    public ArrayList<Double> getCombination(int combination)
         {
-        if (current.size() == indIndexes.length)
+        Double[] values = new Double[indNames.length];
+        if (latinHypercube != null)
             {
-            allIndependentVariableValueCombinations.add((ArrayList<Double>)current.clone());
-            return;
+            for(int index = 0; index < values.length; index++)
+                values[index] = Double.valueOf(latinHypercube[index][combination]);
+            }
+        else if (sobol != null)
+            {
+            for(int index = 0; index < values.length; index++)
+                values[index] = Double.valueOf(indMinValues[index] + sobol.get(combination, index) * (indMaxValues[index] - indMinValues[index]));
             }
+        else
+            {
+            for(int index = indDivisions.length - 1; index >= 0; index--)
+                {
+                double increment = 0;
+                if (indDivisions[index] != 1)
+                    increment  = (indMaxValues[index]-indMinValues[index]) / (indDivisions[index]-1);
+                values[index] = Double.valueOf(indMinValues[index] + (combination % indDivisions[index]) * increment);
+                combination /= indDivisions[index];
+                }
+            }
+        return new ArrayList<Double>(Arrays.asList(values));
+        }
 
-        int index = current.size();
-        double increment = 0;
-        if (indDivisions[index] != 1)
-            increment  = (indMaxValues[index]-indMinValues[index]) / (indDivisions[index]-1);
-                
-        for(int i = 0; i < indDivisions[index]; i++)
+    /* Each variable's range is cut into numSamples strata, and a random point is picked in each.
+       Then the strata of each variable are shuffled independently, so each combination gets a
+       random stratum of each variable, but no two combinations share one. */
+    double[][] buildLatinHypercube(MersenneTwisterFast random)
+        {
+        double[][] hypercube = new double[indNames.length][numSamples];
+        for(int index = 0; index < hypercube.length; index++)
             {
-            current.add(indMinValues[index] + i * increment);
-            generateAllIndependentVariableValueCombinations(current);
-            current.remove(current.size()-1);
+            double[] values = hypercube[index];
+            double width = (indMaxValues[index] - indMinValues[index]) / numSamples;
+            for(int i = 0; i < numSamples; i++)
+                values[i] = indMinValues[index] + (i + random.nextDouble()) * width;
+            for(int i = numSamples - 1; i > 0; i--)
+                {
+                int j = random.nextInt(i + 1);
+                double temp = values[i];
+                values[i] = values[j];
+                values[j] = temp;
+                }
             }
+        return hypercube;
         }
 
     // Takes the property names, and gets the property indexes
@@ -310,44 +416,358 @@ public class ParameterSweep
             }
         }
 
-    // current job count, don't play with this
-    int jobCount = 0;
-    Object[] nextJobLock = new Object[0];
-    public ParameterSweepSimulationJob getNextJob() 
+
+
+    //// RUNNING JOBS IN THIS PROCESS
+
+    // number of jobs finished, including those already in the output file when resuming
+    java.util.concurrent.atomic.AtomicInteger jobCount = new java.util.concurrent.atomic.AtomicInteger();
+    java.util.concurrent.ForkJoinPool pool;
+    ThreadLocal<Worker> workers;
+    ArrayList<Worker> allWorkers;
+    
+    /** Each thread of the pool runs its jobs on its own model, and buffers its results before handing them off to the writer. */
+    class Worker
         {
-        synchronized(nextJobLock)
+        SimState simState;
+        sim.util.Properties properties;
+        ResultBuffer buffer = newResultBuffer();
+        
+        void run(int jobNumber)
             {
-            if (jobCount < allIndependentVariableValueCombinations.size() * numTrials)              // I think this means we're done?
+            int combination = jobNumber / numTrials;  // which variable combination are we doing this time?
+            int trial = jobNumber % numTrials;  // which trial are we doing this time?
+            if (adaptiveTrials != null && adaptiveTrials.skip(combination))
+                {
+                jobCount.incrementAndGet();
+                return;
+                }
+            ParameterSweepSimulationJob job = new ParameterSweepSimulationJob(getCombination(combination), ParameterSweep.this, jobNumber, trial);
+            printSynchronized("Job " + jobNumber);
+
+            // initialize simstate and properties
+            if (simState == null)
                 {
-                int combination = jobCount / numTrials;  // which variable combination are we doing this time?
-                int trial = jobCount % numTrials;  // which trial are we doing this time?
-                ParameterSweepSimulationJob job = new ParameterSweepSimulationJob(allIndependentVariableValueCombinations.get(combination), this, jobCount, trial);
-                printSynchronized("Job " + jobCount);
-                jobCount++;
-                return job;
+                simState = newInstance(jobNumber + baseSeed, modelClass);
+                properties = sim.util.Properties.getProperties(simState);
                 }
             else
-                return null;
+                {
+                simState.setSeed(jobNumber + baseSeed);
+                } 
+
+            if (job.run(simState, properties, job.settings, buffer))
+                {
+                jobCount.incrementAndGet();
+                if (adaptiveTrials != null)
+                    adaptiveTrials.record(combination, job.curs);
+                }
+            if (buffer.isFull()) flush();
+            }
+            
+        void flush()
+            {
+            if (!buffer.isEmpty()) writer.write(buffer.take());
             }
         }
     
-    public int getTotalJobs()
+    /** Runs jobs from (inclusive) to (exclusive), splitting them up among the threads of the pool. */
+    class JobRange extends java.util.concurrent.RecursiveAction
         {
-        synchronized(nextJobLock)
+        private static final long serialVersionUID = 1;
+
+        int from;
+        int to;
+        
+        JobRange(int from, int to)
             {
-            return allIndependentVariableValueCombinations.size() * numTrials;
+            this.from = from;
+            this.to = to;
+            }
+            
+        protected void compute()
+            {
+            if (to - from > 1)
+                {
+                int mid = (from + to) >>> 1;
+                invokeAll(new JobRange(from, mid), new JobRange(mid, to));
+                }
+            else if (to > from && !stop && !completed.get(from))
+                {
+                workers.get().run(from);
+                }
             }
         }
         
-    public int getJobCount()
+    void startPool()
+        {
+        pool = new java.util.concurrent.ForkJoinPool(numThreads);
+        allWorkers = new ArrayList<Worker>();
+        workers = new ThreadLocal<Worker>()
+            {
+            protected Worker initialValue()
+                {
+                Worker worker = new Worker();
+                synchronized(allWorkers) { allWorkers.add(worker); }
+                return worker;
+                }
+            };
+        }
+    
+    /** Runs jobs from (inclusive) to (exclusive) on the pool, then hands all the buffered results to the writer. */
+    void runJobs(int from, int to)
+        {
+        pool.invoke(new JobRange(from, to));
+        synchronized(allWorkers)
+            {
+            for(int i = 0; i < allWorkers.size(); i++)
+                allWorkers.get(i).flush();
+            }
+        }
+    
+    
+    
+    //// RUNNING AS A WORKER PROCESS
+    
+    /** Builds the arguments for main(...) to start a worker process for this sweep. */
+    String[] getWorkerArguments()
+        {
+        StringBuilder ind = new StringBuilder();
+        StringBuilder min = new StringBuilder();
+        StringBuilder max = new StringBuilder();
+        StringBuilder div = new StringBuilder();
+        StringBuilder dep = new StringBuilder();
+        for(int i = 0; i < indNames.length; i++)
+            {
+            ind.append(indNames[i] + " ");
+            min.append(indMinValues[i] + " ");
+            max.append(indMaxValues[i] + " ");
+            if (indDivisions != null) div.append(indDivisions[i] + " ");
+            }
+        for(int i = 0; i < depNames.length; i++)
+            dep.append(depNames[i] + " ");
+            
+        return new String[]
+            {
+            WORKER_ARGUMENT,
+            ParameterSettings.MODEL_P + "=" + modelClass.getName(),
+            ParameterSettings.INDEPENDENT_P + "=" + ind.toString().trim(),
+            ParameterSettings.MIN_P + "=" + min.toString().trim(),
+            ParameterSettings.MAX_P + "=" + max.toString().trim(),
+            ParameterSettings.DIVISIONS_P + "=" + div.toString().trim(),
+            ParameterSettings.DEPENDENT_P + "=" + dep.toString().trim(),
+            ParameterSettings.STEPS_P + "=" + numSteps,
+            ParameterSettings.MOD_P + "=" + mod,
+            ParameterSettings.TRIALS_P + "=" + numTrials,
+            ParameterSettings.THREADS_P + "=" + numThreads,
+            ParameterSettings.SEED_P + "=" + baseSeed,
+            ParameterSettings.SAMPLING_P + "=" + sampling,
+            ParameterSettings.SAMPLES_P + "=" + numSamples,
+            ParameterSettings.ADAPTIVE_P + "=" + adaptive,
+            ParameterSettings.MIN_TRIALS_P + "=" + minTrials,
+            ParameterSettings.PRECISION_P + "=" + precision,
+            ParameterSettings.CONFIDENCE_P + "=" + confidence,
+            };
+        }
+
+    /* Runs as one of the processes of a multi-process sweep.  The parameters are given as key=value arguments.
+       We repeatedly ask the coordinator for a block of jobs on stdout, and it replies on stdin with one or more 
+       "from to" ranges of jobs, all on one line, or with DONE when there's nothing left.  Results go back to it on stdout, each line prefixed with RESULT. */
+    static void runWorker(String[] args) throws IOException, ClassNotFoundException
         {
-        synchronized(nextJobLock)
+        Hashtable map = new Hashtable();
+        for(int i = 1; i < args.length; i++)
+            {
+            int equals = args[i].indexOf('=');
+            map.put(args[i].substring(0, equals), args[i].substring(equals + 1));
+            }
+        
+        // stdout belongs to the protocol; anything the model itself prints goes to stderr instead
+        PrintStream protocol = System.out;
+        System.setOut(System.err);
+                
+        ParameterSweep sweep = new ParameterSweep(new ParameterDatabase(map));
+        sweep.writer = new SweepWriter(protocol);
+        sweep.resultPrefix = RESULT;
+        sweep.format = FORMAT_CSV;  // the coordinator writes the actual format
+        sweep.startPool();
+        BufferedReader in = new BufferedReader(new InputStreamReader(System.in, "UTF-8"));
+        try
             {
-            return jobCount;
+            while(true)
+                {
+                sweep.writer.write((NEXT + "\n").getBytes("UTF-8"));
+                String line = in.readLine();
+                if (line == null || line.equals(DONE)) break;
+                String[] ranges = line.split(" ");
+                for(int i = 0; i < ranges.length; i += 2)
+                    sweep.runJobs(Integer.parseInt(ranges[i]), Integer.parseInt(ranges[i + 1]));
+                }
             }
+        finally
+            {
+            sweep.pool.shutdown();
+            sweep.writer.close();
+            }
+        }
+
+    
+    
+    //// OUTPUT
+        
+    /** Returns a new, empty buffer for results in our output format. */
+    ResultBuffer newResultBuffer()
+        {
+        if (format.equals(FORMAT_COLUMNAR)) return new ColumnarResultBuffer(this);
+        else return new TextResultBuffer(resultPrefix);
+        }
+        
+    /** Returns the number of values recorded per dependent variable per run, every mod steps. */
+    int getSeriesLength()
+        {
+        return (mod == 0 ? 0 : numSteps / mod);
         }
         
-    void writeFileHeader() 
+    /* Opens the output file and the writer.  If we're resuming and the file exists, then we
+       mark the jobs found in it as completed, chop off any partial line or block at the end left behind by a
+       crash, and append to it.  Otherwise we start a new file and write the header. */
+    void openOutput()
+        {
+        try
+            {
+            boolean columnar = format.equals(FORMAT_COLUMNAR);
+            File file = new File(filename);
+            completed = new BitSet();
+            jobCount.set(0);
+            if (resume && file.exists() && file.length() > 0)
+                {
+                long length = (columnar ? readCompletedJobs(file) : readCompletedJobs(file, getFileHeader()));
+                RandomAccessFile raf = new RandomAccessFile(file, "rw");
+                try { raf.setLength(length); }
+                finally { raf.close(); }
+                jobCount.set(completed.cardinality());
+                writer = new SweepWriter(new FileOutputStream(file, true));
+                }
+            else if (columnar)
+                {
+                writer = new SweepWriter(new FileOutputStream(file));
+                writer.write(ColumnarResultBuffer.getHeader(this));
+                }
+            else
+                {
+                if (compress)
+                    writer = new SweepWriter(new GZIPOutputStream(new FileOutputStream(filename + GZIP_POSTFIX)));
+                else 
+                    writer = new SweepWriter(new FileOutputStream(file));
+                writer.write((getFileHeader() + "\n").getBytes("UTF-8"));
+                }
+            }
+        catch (IOException e)
+            {
+            throw new RuntimeException("Could not open file.", e);
+            }
+        }
+    
+    /* Reads the job numbers of all the complete blocks in the given columnar file into the completed set,
+       and returns the length of the file up to the end of its last complete block. */
+    long readCompletedJobs(File file) throws IOException
+        {
+        ColumnarResults results = new ColumnarResults(file);
+        if (!results.hasSchema(ColumnarResultBuffer.getNames(this), ColumnarResultBuffer.getTypes(this), 
+                ColumnarResultBuffer.getWidths(this), compress))
+            throw new IOException("The existing file " + file + " was not written by this sweep.");
+        
+        int totalJobs = getTotalJobs();
+        long[] jobs = results.getLongs(results.getColumn("job"));
+        double[][] finals = new double[depNames.length][];
+        if (adaptiveTrials != null)
+            for(int i = 0; i < finals.length; i++)
+                finals[i] = results.getDoubles(results.getColumn(depNames[i] + "-final"));
+        for(int row = 0; row < jobs.length; row++)
+            {
+            if (jobs[row] < 0 || jobs[row] >= totalJobs || completed.get((int)jobs[row])) continue;
+            int job = (int)jobs[row];
+            if (adaptiveTrials != null)
+                {
+                double[] f = new double[depNames.length];
+                for(int i = 0; i < f.length; i++)
+                    f[i] = finals[i][row];
+                adaptiveTrials.record(job / numTrials, f);
+                }
+            completed.set(job);
+            }
+        return results.getLength();
+        }
+    
+    /* Reads the job numbers of all the complete result lines in the given file into the completed set,
+       and returns the length of the file up to the end of its last complete line. */
+    long readCompletedJobs(File file, String header) throws IOException
+        {
+        int numFields = 3 + indNames.length + 4 * depNames.length + getSeriesLength() * depNames.length;
+        int totalJobs = getTotalJobs();
+        
+        InputStream in = new BufferedInputStream(new FileInputStream(file));
+        try
+            {
+            long position = 0;
+            long length = 0;
+            boolean first = true;
+            ByteArrayOutputStream line = new ByteArrayOutputStream();
+            int b;
+            while((b = in.read()) != -1)
+                {
+                position++;
+                if (b != '\n') { line.write(b); continue; }
+                
+                // we have a complete line
+                String str = line.toString("UTF-8");
+                line.reset();
+                length = position;
+                if (first)
+                    {
+                    if (!str.equals(header))
+                        throw new IOException("The existing file " + file + " was not written by this sweep.");
+                    first = false;
+                    continue;
+                    }
+                String[] fields = str.split(", ");
+                if (fields.length != numFields) continue;  // mangled somehow
+                try
+                    {
+                    int job = Integer.parseInt(fields[0]);
+                    if (job < 0 || job >= totalJobs || completed.get(job)) continue;
+                    if (adaptiveTrials != null)
+                        {
+                        double[] finals = new double[depNames.length];
+                        for(int i = 0; i < finals.length; i++)
+                            finals[i] = Double.parseDouble(fields[3 + indNames.length + 4 * i]);
+                        adaptiveTrials.record(job / numTrials, finals);
+                        }
+                    completed.set(job);
+                    }
+                catch (NumberFormatException e) { }  // mangled somehow
+                }
+            if (first)  // we never got the header
+                throw new IOException("The existing file " + file + " was not written by this sweep.");
+            return length;
+            }
+        finally
+            {
+            in.close();
+            }
+        }
+    
+    public int getTotalJobs()
+        {
+        return numCombinations * numTrials;
+        }
+        
+    public int getJobCount()
+        {
+        return jobCount.get();
+        }
+        
+    String getFileHeader() 
         {
         StringBuilder header = new StringBuilder(); 
         header.append("job, trial, rng");
@@ -375,8 +795,7 @@ public class ParameterSweep
                 }
             }
 
-        println(header.toString());
-        header = null;
+        return header.toString();
         }
     }
 
@@ -387,7 +806,8 @@ class ParameterSweepSimulationJob
     ArrayList<Double> settings;
     ParameterSweep sweep;
     sim.util.Properties properties;
-    StringBuilder builder = new StringBuilder();
+    double[] series;  // the dependent variables every mod steps
+    int seriesLength = 0;
     int jobNumber;
     int trial;
 
@@ -408,6 +828,7 @@ class ParameterSweepSimulationJob
         mins = new double[sweep.depIndexes.length];
         maxes = new double[sweep.depIndexes.length];
         curs = new double[sweep.depIndexes.length];
+        series = new double[sweep.getSeriesLength() * sweep.depIndexes.length];
         }
     
 
@@ -427,33 +848,21 @@ class ParameterSweepSimulationJob
 
             if (sweep.mod != 0 && (step + 1) % sweep.mod == 0)
                 {
-                builder.append(value + ", ");
+                series[seriesLength++] = value;
                 }
             }
         }
 
-    public void recordFinal(sim.util.Properties properties, long seed, ArrayList<Double> combos)
+    public void recordFinal(sim.util.Properties properties, long seed, ArrayList<Double> combos, ResultBuffer out)
         {
-        String str = jobNumber + ", " + (trial + 1) + ", " + seed + ", ";
-        
-        for(int i = 0; i < combos.size(); i++)
-            {
-            str += (combos.get(i) + ", ");
-            }
-
-        for(int i = 0; i < sweep.depIndexes.length; i++)
-            {
-            str += (curs[i] + ", " + 
-                (avgs[i] / sweep.numSteps) + ", " + 
-                mins[i] + ", " +
-                maxes[i] + ", ");
-            }
-        str = str + builder.toString();
-                        
-        sweep.println(str);
+        double[] averages = new double[avgs.length];
+        for(int i = 0; i < avgs.length; i++)
+            averages[i] = avgs[i] / sweep.numSteps;
+        out.add(jobNumber, trial + 1, seed, combos, curs, averages, mins, maxes, series);
         }
     
-    public void run(SimState simState, sim.util.Properties properties, ArrayList<Double> combos) 
+    /** Runs the job and adds its results to out.  Returns false if the sweep was stopped before the job finished. */
+    public boolean run(SimState simState, sim.util.Properties properties, ArrayList<Double> combos, ResultBuffer out) 
         {
         simState.start();
         properties = initSweepValuesFromProperties(properties);
@@ -462,15 +871,16 @@ class ParameterSweepSimulationJob
             if (sweep.stop)
                 {
                 simState.finish();  
-                return;
+                return false;
                 }
                         
             simState.schedule.step(simState);
             record(i, properties);
             }
       
-        recordFinal(properties, simState.seed(), combos);
+        recordFinal(properties, simState.seed(), combos, out);
         simState.finish();
+        return true;
         }
         
     sim.util.Properties initSweepValuesFromProperties(sim.util.Properties properties) 
@@ -478,17 +888,17 @@ class ParameterSweepSimulationJob
 
         for(int index = 0; index < sweep.indIndexes.length; index++)
             {
-            String type = properties.getType(sweep.indIndexes[index]).toString();
+            Class type = properties.getType(sweep.indIndexes[index]);
 
-            if (type.equals("double")) 
+            if (type == Double.TYPE) 
                 {
                 properties.setValue(sweep.indIndexes[index], settings.get(index));
                 }
-            else if (type.equals("int")) 
+            else if (type == Integer.TYPE) 
                 {
                 properties.setValue(sweep.indIndexes[index], Integer.valueOf((int)(settings.get(index).doubleValue())));
                 }
-            else if (type.equals("boolean")) 
+            else if (type == Boolean.TYPE) 
                 {
                 properties.setValue(sweep.indIndexes[index], Boolean.valueOf(settings.get(index).doubleValue() != 0));
                 }
@@ -503,27 +913,14 @@ class ParameterSweepSimulationJob
 
     public double getPropertyValueAsDouble(sim.util.Properties properties, int dependentIndex) 
         {
-        double dValue = 0.0;
-        int propertyIndex = dependentIndex;
-        String type = properties.getType(propertyIndex).toString();
-
-        if (type.equals("double")) 
-            {
-            dValue = (Double)properties.getValue(propertyIndex);
-            }
-        else if (type.equals("int")) 
-            {
-            dValue = ((Integer)properties.getValue(propertyIndex)).doubleValue();
-            }
-        else if (type.equals("boolean")) 
-            {
-            dValue = ((Boolean)properties.getValue(propertyIndex)) ? 1  : 0;
-            }
-        else
+        // getDouble reads primitive properties directly, without reflection or boxing,
+        // since this is called on every dependent variable every step
+        Class type = properties.getType(dependentIndex);
+        if (type != Double.TYPE && type != Integer.TYPE && type != Boolean.TYPE)
             {
-            //System.err.println("Independent: unsupported type " + properties.getType(propertyIndex).toString());
+            //System.err.println("Dependent: unsupported type " + properties.getType(dependentIndex).toString());
             System.exit(1);
             }
-        return dValue;
+        return properties.getDouble(dependentIndex);
         }
     }
@@ -0,0 +1,34 @@
+/*
+  Copyright 2019 by Sean Luke and George Mason University
+  Licensed under the Academic Free License version 3.0
+  See the file "LICENSE" for more information
+*/
+
+package sim.util.sweep;
+
+import java.util.*;
+
+/**
+   Collects the results of finished runs of a sweep, in some output format, until there are enough of them to
+   be worth handing to the SweepWriter as one chunk of bytes.  A ResultBuffer is used by one thread at a time.
+*/
+
+abstract class ResultBuffer
+    {
+    /** Adds the results of one run.  The series holds the values of the dependent variables every mod steps:
+        all of the dependent variables for the first such step, then all of them for the next, and so on. */
+    abstract void add(int job, int trial, long seed, ArrayList<Double> settings, 
+        double[] finals, double[] avgs, double[] mins, double[] maxes, double[] series);
+        
+    /** Adds the results of one run in the form of a line of CSV output, as sent back by a worker process. */
+    abstract void addLine(String line);
+    
+    /** Returns true if the buffer is full enough to be handed off. */
+    abstract boolean isFull();
+    
+    /** Returns true if there's nothing in the buffer. */
+    abstract boolean isEmpty();
+    
+    /** Returns the buffered results, encoded, and empties the buffer. */
+    abstract byte[] take();
+    }
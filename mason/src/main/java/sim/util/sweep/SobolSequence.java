@@ -0,0 +1,90 @@
+/*
+  Copyright 2019 by Sean Luke and George Mason University
+  Licensed under the Academic Free License version 3.0
+  See the file "LICENSE" for more information
+*/
+
+package sim.util.sweep;
+
+/**
+   A Sobol low-discrepancy sequence of points in the unit hypercube, using the direction numbers of
+   Joe and Kuo ("Constructing Sobol sequences with better two-dimensional projections", SIAM J. Sci. Comput. 30, 2008)
+   for up to MAX_DIMENSIONS dimensions.  Points are computed directly from their index (via its Gray code) rather
+   than incrementally, so any point may be had at any time, in any order, from any thread.  The first point, which
+   is all zeros, is skipped.
+*/
+
+class SobolSequence
+    {
+    static final int BITS = 32;
+
+    // Primitive polynomials and initial direction numbers for dimensions 2 and up, from new-joe-kuo-6.21201.
+    // Dimension 1 is the van der Corput sequence and needs none.
+    static final int[] DEGREE = { 1, 2, 3, 3, 4, 4, 5, 5, 5, 5, 5, 5, 6, 6, 6, 6, 6, 6, 7, 7 };
+    static final int[] COEFFICIENTS = { 0, 1, 1, 2, 1, 4, 2, 4, 7, 11, 13, 14, 1, 13, 16, 19, 22, 25, 1, 4 };
+    static final int[][] INITIAL =
+        {
+        { 1 },
+        { 1, 3 },
+        { 1, 3, 1 },
+        { 1, 1, 1 },
+        { 1, 1, 3, 3 },
+        { 1, 3, 5, 13 },
+        { 1, 1, 5, 5, 17 },
+        { 1, 1, 5, 5, 5 },
+        { 1, 1, 7, 11, 19 },
+        { 1, 1, 5, 1, 1 },
+        { 1, 1, 1, 3, 11 },
+        { 1, 3, 5, 5, 31 },
+        { 1, 3, 3, 9, 7, 49 },
+        { 1, 1, 1, 15, 21, 21 },
+        { 1, 3, 1, 13, 27, 49 },
+        { 1, 1, 1, 15, 7, 5 },
+        { 1, 3, 1, 15, 13, 25 },
+        { 1, 1, 5, 5, 19, 61 },
+        { 1, 3, 7, 11, 23, 15, 103 },
+        { 1, 3, 7, 13, 13, 15, 69 },
+        };
+
+    static final int MAX_DIMENSIONS = DEGREE.length + 1;
+
+    long[][] direction;  // [dimension][bit], each scaled by 2^BITS
+
+    SobolSequence(int dimensions)
+        {
+        if (dimensions < 1 || dimensions > MAX_DIMENSIONS)
+            throw new IllegalArgumentException("Sobol sequences are only available in 1 to " + MAX_DIMENSIONS + " dimensions, not " + dimensions);
+
+        direction = new long[dimensions][BITS];
+        for(int k = 0; k < BITS; k++)
+            direction[0][k] = 1L << (BITS - 1 - k);
+
+        for(int d = 1; d < dimensions; d++)
+            {
+            int s = DEGREE[d - 1];
+            int a = COEFFICIENTS[d - 1];
+            int[] m = INITIAL[d - 1];
+            long[] v = direction[d];
+            for(int k = 0; k < s && k < BITS; k++)
+                v[k] = ((long) m[k]) << (BITS - 1 - k);
+            for(int k = s; k < BITS; k++)
+                {
+                v[k] = v[k - s] ^ (v[k - s] >>> s);
+                for(int j = 1; j < s; j++)
+                    if (((a >>> (s - 1 - j)) & 1) != 0)
+                        v[k] ^= v[k - j];
+                }
+            }
+        }
+
+    /** Returns the given dimension of the given point of the sequence, in [0, 1). */
+    double get(int index, int dimension)
+        {
+        long gray = (index + 1L) ^ ((index + 1L) >>> 1);
+        long[] v = direction[dimension];
+        long x = 0;
+        for(int k = 0; gray != 0; k++, gray >>>= 1)
+            if ((gray & 1) != 0) x ^= v[k];
+        return x / (double)(1L << BITS);
+        }
+    }
@@ -0,0 +1,150 @@
+/*
+  Copyright 2019 by Sean Luke and George Mason University
+  Licensed under the Academic Free License version 3.0
+  See the file "LICENSE" for more information
+*/
+
+package sim.util.sweep;
+
+import java.io.*;
+import java.util.*;
+
+/**
+   Shards a ParameterSweep across several worker JVMs on this machine.  Each worker is started as
+   <tt>java sim.util.sweep.ParameterSweep -worker key=value ...</tt> on the same classpath, and runs jobs on
+   its own thread pool.  When a worker runs out of jobs it asks for another block of them, so faster workers
+   wind up doing more of the sweep.  Blocks skip over jobs which were already completed when resuming.  If the
+   sweep is adaptive, each worker decides for itself when to stop the trials of the combinations it has been
+   given; trials completed before resuming are not counted toward that, so a few extra may be run.  The
+   workers send their results back here as lines of CSV, and they all go to the sweep's one output file in 
+   whatever format it has.
+
+   <p>If a worker dies, the jobs it was running are simply missing from the output, and can be picked up by
+   running the sweep again with <tt>resume=true</tt>.
+*/
+
+class SweepCoordinator
+    {
+    // How many blocks of jobs, per thread, a worker is handed at a time
+    static final int JOBS_PER_THREAD = 4;
+
+    ParameterSweep sweep;
+    int blockSize;
+    int next = 0;  // the first job not yet handed out
+    ResultBuffer results;  // shared by all the workers' threads
+    
+    SweepCoordinator(ParameterSweep sweep)
+        {
+        this.sweep = sweep;
+        blockSize = sweep.numThreads * JOBS_PER_THREAD;
+        results = sweep.newResultBuffer();
+        }
+        
+    /** Returns the next block of uncompleted jobs as a string of one or more "from to" ranges, 
+        or null if there are none left or we've been stopped.  If the sweep is adaptive, then blocks are made of 
+        whole combinations, so that one worker sees all the trials of a combination and can decide when to stop. */
+    synchronized String nextBlock()
+        {
+        if (sweep.stop) return null;
+        int total = sweep.getTotalJobs();
+        int from = sweep.completed.nextClearBit(next);
+        if (from >= total) return null;
+        long end = (long)from + blockSize;
+        if (sweep.adaptive)
+            {
+            int combinations = Math.max(1, blockSize / sweep.numTrials);
+            end = ((long)(from / sweep.numTrials) + combinations) * sweep.numTrials;
+            }
+        if (end > total) end = total;
+        next = (int)end;
+
+        StringBuilder block = new StringBuilder();
+        while(from < end)
+            {
+            int to = sweep.completed.nextSetBit(from);
+            if (to < 0 || to > end) to = (int)end;
+            block.append((block.length() == 0 ? "" : " ") + from + " " + to);
+            from = sweep.completed.nextClearBit(to);
+            }
+        return block.toString();
+        }
+    
+    void run()
+        {
+        ArrayList<String> command = new ArrayList<String>();
+        command.add(System.getProperty("java.home") + File.separator + "bin" + File.separator + "java");
+        command.add("-cp");
+        command.add(System.getProperty("java.class.path"));
+        command.add(ParameterSweep.class.getName());
+        command.addAll(Arrays.asList(sweep.getWorkerArguments()));
+        
+        Thread[] threads = new Thread[sweep.numProcesses];
+        for(int i = 0; i < threads.length; i++)
+            {
+            final int worker = i;
+            final Process process;
+            try
+                {
+                ProcessBuilder builder = new ProcessBuilder(command);
+                builder.redirectError(ProcessBuilder.Redirect.INHERIT);
+                process = builder.start();
+                }
+            catch (IOException e)
+                {
+                throw new RuntimeException("Could not start sweep process " + worker, e);
+                }
+            threads[i] = new Thread(new Runnable()
+                {
+                public void run() { serve(worker, process); }
+                }, "MASON Sweep Coordinator " + i);
+            threads[i].start();
+            }
+            
+        for(int i = 0; i < threads.length; i++)
+            {
+            try { threads[i].join(); }
+            catch (InterruptedException e) { }  // does not happen
+            }
+        if (!results.isEmpty()) sweep.writer.write(results.take());
+        }
+        
+    /** Answers a worker's requests for jobs and passes its results on to the writer, until it exits. */
+    void serve(int worker, Process process)
+        {
+        try
+            {
+            BufferedReader in = new BufferedReader(new InputStreamReader(process.getInputStream(), "UTF-8"));
+            Writer out = new OutputStreamWriter(process.getOutputStream(), "UTF-8");
+            String line;
+            while((line = in.readLine()) != null)
+                {
+                if (line.startsWith(ParameterSweep.RESULT))
+                    {
+                    synchronized(results)
+                        {
+                        results.addLine(line.substring(ParameterSweep.RESULT.length()));
+                        if (results.isFull()) sweep.writer.write(results.take());
+                        }
+                    sweep.jobCount.incrementAndGet();
+                    }
+                else if (line.equals(ParameterSweep.NEXT))
+                    {
+                    String block = nextBlock();
+                    out.write((block == null ? ParameterSweep.DONE : block) + "\n");
+                    out.flush();
+                    }
+                else System.err.println(line);  // whatever else the worker printed
+                }
+            int exit = process.waitFor();
+            if (exit != 0)
+                System.err.println("Sweep process " + worker + " failed with exit code " + exit + 
+                    ".  Its unfinished jobs may be rerun by running the sweep again with resume=true.");
+            }
+        catch (IOException e)
+            {
+            System.err.println("Lost contact with sweep process " + worker + ": " + e);
+            process.destroy();
+            }
+        catch (InterruptedException e) { }  // does not happen
+        }
+    }
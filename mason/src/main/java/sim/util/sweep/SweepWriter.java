@@ -0,0 +1,90 @@
+/*
+  Copyright 2019 by Sean Luke and George Mason University
+  Licensed under the Academic Free License version 3.0
+  See the file "LICENSE" for more information
+*/
+
+package sim.util.sweep;
+
+import java.io.*;
+import java.nio.*;
+import java.nio.channels.*;
+import java.util.concurrent.*;
+import java.util.concurrent.locks.*;
+
+/**
+   Writes the results of a sweep from a thread of its own.  The threads running jobs hand finished chunks of
+   encoded output to write(...), which just drops them on a lock-free queue, so they never wait on each other or on the
+   disk.  The writer thread drains the queue into a channel and flushes whenever it runs dry, so that if the sweep 
+   crashes, little more than the jobs still running is lost.  Each chunk is written whole, so lines or blocks from 
+   different threads are never interleaved.
+*/
+
+class SweepWriter implements Runnable
+    {
+    ConcurrentLinkedQueue<byte[]> queue = new ConcurrentLinkedQueue<byte[]>();
+    OutputStream out;
+    WritableByteChannel channel;
+    Thread thread;
+    volatile boolean closed;
+    volatile IOException failure;
+
+    SweepWriter(OutputStream out)
+        {
+        this.out = out;
+        // write files directly through their channels, everything else through the stream
+        channel = (out instanceof FileOutputStream ? ((FileOutputStream)out).getChannel() : Channels.newChannel(out));
+        thread = new Thread(this, "MASON Sweep Writer");
+        thread.setDaemon(true);
+        thread.start();
+        }
+
+    /** Queues the given bytes to be written.  Threadsafe and lock-free. */
+    void write(byte[] bytes)
+        {
+        if (failure != null) throw new RuntimeException("Could not write sweep results.", failure);
+        queue.offer(bytes);
+        LockSupport.unpark(thread);
+        }
+
+    public void run()
+        {
+        try
+            {
+            while(true)
+                {
+                boolean finished = closed;  // check before draining, so nothing written before close() is missed
+                boolean wrote = false;
+                byte[] bytes;
+                while((bytes = queue.poll()) != null)
+                    {
+                    ByteBuffer buffer = ByteBuffer.wrap(bytes);
+                    while(buffer.hasRemaining()) channel.write(buffer);
+                    wrote = true;
+                    }
+                if (wrote) out.flush();
+                if (finished) break;
+                LockSupport.park(this);
+                }
+            }
+        catch (IOException e)
+            {
+            failure = e;
+            }
+        finally
+            {
+            try { out.close(); }
+            catch (IOException e) { if (failure == null) failure = e; }
+            }
+        }
+
+    /** Writes out everything queued so far, then closes the underlying stream. */
+    void close()
+        {
+        closed = true;
+        LockSupport.unpark(thread);
+        try { thread.join(); }
+        catch (InterruptedException e) { }  // does not happen
+        if (failure != null) throw new RuntimeException("Could not write sweep results.", failure);
+        }
+    }
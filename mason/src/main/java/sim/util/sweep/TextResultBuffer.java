@@ -0,0 +1,63 @@
+/*
+  Copyright 2019 by Sean Luke and George Mason University
+  Licensed under the Academic Free License version 3.0
+  See the file "LICENSE" for more information
+*/
+
+package sim.util.sweep;
+
+import java.nio.charset.StandardCharsets;
+import java.util.*;
+
+/**
+   Buffers results as lines of CSV text, each optionally starting with a prefix.
+*/
+
+class TextResultBuffer extends ResultBuffer
+    {
+    // Hand off this much text at a time
+    static final int CAPACITY = 8192;
+    
+    StringBuilder buffer = new StringBuilder();
+    String prefix;
+    
+    TextResultBuffer(String prefix)
+        {
+        this.prefix = prefix;
+        }
+    
+    void add(int job, int trial, long seed, ArrayList<Double> settings, 
+        double[] finals, double[] avgs, double[] mins, double[] maxes, double[] series)
+        {
+        buffer.append(prefix);
+        buffer.append(job).append(", ").append(trial).append(", ").append(seed).append(", ");
+        for(int i = 0; i < settings.size(); i++)
+            buffer.append(settings.get(i).doubleValue()).append(", ");
+        for(int i = 0; i < finals.length; i++)
+            {
+            buffer.append(finals[i]).append(", ");
+            buffer.append(avgs[i]).append(", ");
+            buffer.append(mins[i]).append(", ");
+            buffer.append(maxes[i]).append(", ");
+            }
+        for(int i = 0; i < series.length; i++)
+            buffer.append(series[i]).append(", ");
+        buffer.append('\n');
+        }
+        
+    void addLine(String line)
+        {
+        buffer.append(line).append('\n');
+        }
+
+    boolean isFull() { return buffer.length() >= CAPACITY; }
+
+    boolean isEmpty() { return buffer.length() == 0; }
+
+    byte[] take()
+        {
+        byte[] bytes = buffer.toString().getBytes(StandardCharsets.UTF_8);
+        buffer.setLength(0);
+        return bytes;
+        }
+    }